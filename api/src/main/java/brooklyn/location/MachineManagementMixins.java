@@ -18,6 +18,7 @@
  */
 package brooklyn.location;
 
+import java.util.List;
 import java.util.Map;
 
 public class MachineManagementMixins {
@@ -45,6 +46,13 @@ public class MachineManagementMixins {
         void killMachine(String cloudServiceId);
     }
     
+    public interface ObtainsMachinesInBatches<T extends MachineLocation> {
+        /** Obtains the given number of machines in one request, either all of them or none;
+         *  the machines are released individually, with {@link MachineProvisioningLocation#release(MachineLocation)}.
+         *  @see MachineProvisioningLocation#obtain(Map) for the supported flags */
+        List<T> obtainBatch(int count, Map<?,?> flags) throws NoMachinesAvailableException;
+    }
+    
     /** very lightweight machine record */
     public interface MachineMetadata {
         /** The cloud service ID -- distinct from any Brooklyn {@link Location#getId()} */
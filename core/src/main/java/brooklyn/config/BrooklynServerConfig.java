@@ -32,7 +32,11 @@ import brooklyn.catalog.CatalogLoadMode;
 import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.management.ManagementContext;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpClientRegistry;
+import brooklyn.util.internal.ssh.SshConnectionRegistry;
+import brooklyn.util.jmx.JmxConnectionRegistry;
 import brooklyn.util.os.Os;
+import brooklyn.util.time.Duration;
 
 /** Config keys for the brooklyn server */
 public class BrooklynServerConfig {
@@ -121,6 +125,60 @@ public class BrooklynServerConfig {
     public static final ConfigKey<Boolean> OSGI_CACHE_CLEAN = ConfigKeys.newBooleanConfigKey("brooklyn.osgi.cache.clean",
         "Whether to delete the OSGi directory before and after use; if unset, it will delete if the node ID forms part of the cache dir path (which by default it does) to avoid file leaks");
 
+    public static final ConfigKey<Integer> HTTP_POOL_MAX_CONNECTIONS_PER_ROUTE = ConfigKeys.newIntegerConfigKey("brooklyn.http.pool.maxConnectionsPerRoute",
+        "Maximum number of connections per host held by each shared HTTP client (e.g. those used by HTTP feeds)", 
+        HttpClientRegistry.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    public static final ConfigKey<Integer> HTTP_POOL_MAX_CONNECTIONS_TOTAL = ConfigKeys.newIntegerConfigKey("brooklyn.http.pool.maxConnectionsTotal",
+        "Maximum number of connections held by each shared HTTP client (e.g. those used by HTTP feeds)", 
+        HttpClientRegistry.DEFAULT_MAX_CONNECTIONS_TOTAL);
+    public static final ConfigKey<Duration> HTTP_POOL_IDLE_TIMEOUT = ConfigKeys.newConfigKey(Duration.class, "brooklyn.http.pool.idleTimeout",
+        "Time after which idle connections in shared HTTP clients are closed", 
+        HttpClientRegistry.DEFAULT_IDLE_TIMEOUT);
+    public static final ConfigKey<Integer> HTTP_POOL_ASYNC_IO_THREADS = ConfigKeys.newIntegerConfigKey("brooklyn.http.pool.asyncIoThreads",
+        "Number of I/O threads of each shared non-blocking HTTP client (e.g. those used by asynchronous HTTP feeds)", 
+        HttpClientRegistry.DEFAULT_ASYNC_IO_THREADS);
+    public static final ConfigKey<Integer> HTTP_POOL_ASYNC_MAX_REQUESTS = ConfigKeys.newIntegerConfigKey("brooklyn.http.pool.asyncMaxRequests",
+        "Maximum number of asynchronous HTTP requests in progress at once; further requests fail immediately", 
+        HttpClientRegistry.DEFAULT_ASYNC_MAX_REQUESTS);
+    public static final ConfigKey<Duration> HTTP_POOL_ASYNC_REQUEST_TIMEOUT = ConfigKeys.newConfigKey(Duration.class, "brooklyn.http.pool.asyncRequestTimeout",
+        "Time after which an asynchronous HTTP request fails, if its feed does not set a shorter socket timeout", 
+        HttpClientRegistry.DEFAULT_ASYNC_REQUEST_TIMEOUT);
+    public static final ConfigKey<Duration> HTTP_POOL_LEASE_TIMEOUT = ConfigKeys.newConfigKey(Duration.class, "brooklyn.http.pool.leaseTimeout",
+        "Time a request using a shared HTTP client waits for a connection when the pool is exhausted, before failing", 
+        HttpClientRegistry.DEFAULT_LEASE_TIMEOUT);
+    public static final ConfigKey<Duration> HTTP_POOL_SOCKET_TIMEOUT = ConfigKeys.newConfigKey(Duration.class, "brooklyn.http.pool.socketTimeout",
+        "Socket (read) timeout of shared HTTP clients, where the caller does not set one", 
+        HttpClientRegistry.DEFAULT_SOCKET_TIMEOUT);
+
+    public static final ConfigKey<Boolean> JMX_POOL_ENABLED = ConfigKeys.newBooleanConfigKey("brooklyn.jmx.pool.enabled",
+        "Whether entities (and their JMX feeds) connecting to the same JMX URL with the same credentials share one connection", 
+        true);
+    public static final ConfigKey<Duration> JMX_POOL_IDLE_TIMEOUT = ConfigKeys.newConfigKey(Duration.class, "brooklyn.jmx.pool.idleTimeout",
+        "Time after which shared JMX connections no longer in use are closed", 
+        JmxConnectionRegistry.DEFAULT_IDLE_TIMEOUT);
+    public static final ConfigKey<Duration> JMX_POOL_HEALTH_CHECK_INTERVAL = ConfigKeys.newConfigKey(Duration.class, "brooklyn.jmx.pool.healthCheckInterval",
+        "Time after which a shared JMX connection is checked before being reused", 
+        JmxConnectionRegistry.DEFAULT_HEALTH_CHECK_INTERVAL);
+    public static final ConfigKey<Duration> JMX_POOL_MAX_RECONNECT_BACKOFF = ConfigKeys.newConfigKey(Duration.class, "brooklyn.jmx.pool.maxReconnectBackoff",
+        "Maximum time to wait between attempts to re-establish a shared JMX connection which has failed", 
+        JmxConnectionRegistry.DEFAULT_MAX_RECONNECT_BACKOFF);
+
+    public static final ConfigKey<Boolean> SSH_POOL_ENABLED = ConfigKeys.newBooleanConfigKey("brooklyn.ssh.pool.enabled",
+        "Whether ssh machine locations connecting to the same host with the same user and credentials share their connections", 
+        true);
+    public static final ConfigKey<Integer> SSH_POOL_MAX_SESSIONS_PER_HOST = ConfigKeys.newIntegerConfigKey("brooklyn.ssh.pool.maxSessionsPerHost",
+        "Maximum number of concurrent ssh sessions to each host (and port) using shared connections; 0 (the default) for no limit", 
+        SshConnectionRegistry.DEFAULT_MAX_SESSIONS_PER_HOST);
+    public static final ConfigKey<Duration> SSH_POOL_IDLE_TIMEOUT = ConfigKeys.newConfigKey(Duration.class, "brooklyn.ssh.pool.idleTimeout",
+        "Time after which shared ssh connections no longer in use are closed", 
+        SshConnectionRegistry.DEFAULT_IDLE_TIMEOUT);
+    public static final ConfigKey<Duration> SSH_POOL_KEEP_ALIVE_INTERVAL = ConfigKeys.newConfigKey(Duration.class, "brooklyn.ssh.pool.keepAliveInterval",
+        "Interval between keep-alive messages on shared ssh connections, unless set on the location; zero for none", 
+        SshConnectionRegistry.DEFAULT_KEEP_ALIVE_INTERVAL);
+    public static final ConfigKey<Duration> SSH_POOL_MAX_SESSION_WAIT = ConfigKeys.newConfigKey(Duration.class, "brooklyn.ssh.pool.maxSessionWait",
+        "Maximum time to wait for an ssh session to a host to be free, when at the limit, before going ahead anyway", 
+        SshConnectionRegistry.DEFAULT_MAX_SESSION_WAIT);
+
     public static final ConfigKey<CampPlatform> CAMP_PLATFORM = ConfigKeys.newConfigKey(CampPlatform.class, "brooklyn.camp.platform",
         "Config set at brooklyn management platform to find the CampPlatform instance (bi-directional)");
 
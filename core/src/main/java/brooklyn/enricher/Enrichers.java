@@ -25,6 +25,7 @@ import java.util.*;
 
 import brooklyn.enricher.basic.AbstractEnricher;
 import brooklyn.enricher.basic.Aggregator;
+import brooklyn.enricher.basic.Aggregator.IncrementalReduction;
 import brooklyn.enricher.basic.Combiner;
 import brooklyn.enricher.basic.Propagator;
 import brooklyn.enricher.basic.Transformer;
@@ -170,6 +171,7 @@ public class Enrichers {
         protected AttributeSensor<T> publishing;
         protected Entity fromEntity;
         protected Function<? super Collection<S>, ? extends T> computing;
+        protected IncrementalReduction incrementalReduction;
         protected Boolean fromMembers;
         protected Boolean fromChildren;
         protected Boolean excludingBlank;
@@ -206,6 +208,7 @@ public class Enrichers {
         }
         public B computing(Function<? super Collection<S>, ? extends T> val) {
             this.computing = checkNotNull(val);
+            this.incrementalReduction = null;
             return self();
         }
         @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -216,6 +219,7 @@ public class Enrichers {
                     return sum((Collection)input, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
                 }};
             this.computing((Function)function);
+            this.incrementalReduction = IncrementalReduction.SUM;
             return self();
         }
         @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -226,6 +230,41 @@ public class Enrichers {
                     return average((Collection)input, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
                 }};
             this.computing((Function)function);
+            this.incrementalReduction = IncrementalReduction.AVERAGE;
+            return self();
+        }
+        /** computes the number of non-null values (or of all values, if {@link #defaultValueForUnreportedSensors(Object)} is set) */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public B computingCount() {
+            // relies of TypeCoercion of result from Number to T, and type erasure for us to get away with it!
+            Function<Collection<S>, Number> function = new Function<Collection<S>, Number>() {
+                @Override public Number apply(Collection<S> input) {
+                    return cast(count(input, defaultValueForUnreportedSensors!=null), (TypeToken) publishing.getTypeToken());
+                }};
+            this.computing((Function)function);
+            this.incrementalReduction = IncrementalReduction.COUNT;
+            return self();
+        }
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public B computingMin() {
+            // relies of TypeCoercion of result from Number to T, and type erasure for us to get away with it!
+            Function<Collection<S>, Number> function = new Function<Collection<S>, Number>() {
+                @Override public Number apply(Collection<S> input) {
+                    return extreme((Collection)input, false, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
+                }};
+            this.computing((Function)function);
+            this.incrementalReduction = IncrementalReduction.MIN;
+            return self();
+        }
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public B computingMax() {
+            // relies of TypeCoercion of result from Number to T, and type erasure for us to get away with it!
+            Function<Collection<S>, Number> function = new Function<Collection<S>, Number>() {
+                @Override public Number apply(Collection<S> input) {
+                    return extreme((Collection)input, true, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
+                }};
+            this.computing((Function)function);
+            this.incrementalReduction = IncrementalReduction.MAX;
             return self();
         }
         public B defaultValueForUnreportedSensors(S val) {
@@ -269,6 +308,8 @@ public class Enrichers {
                             .putIfNotNull(Aggregator.FROM_CHILDREN, fromChildren)
                             .putIfNotNull(Aggregator.FROM_MEMBERS, fromMembers)
                             .putIfNotNull(Aggregator.TRANSFORMATION, computing)
+                            .putIfNotNull(Aggregator.INCREMENTAL_REDUCTION, incrementalReduction)
+                            .putIfNotNull(Aggregator.VALUE_TO_REPORT_IF_NO_SENSORS, valueToReportIfNoSensors)
                             .putIfNotNull(Aggregator.FROM_HARDCODED_PRODUCERS, fromHardcodedProducers)
                             .putIfNotNull(Aggregator.ENTITY_FILTER, entityFilter)
                             .putIfNotNull(Aggregator.VALUE_FILTER, valueFilter)
@@ -284,6 +325,7 @@ public class Enrichers {
                     .add("publishing", publishing)
                     .add("fromEntity", fromEntity)
                     .add("computing", computing)
+                    .add("incrementalReduction", incrementalReduction)
                     .add("fromMembers", fromMembers)
                     .add("fromChildren", fromChildren)
                     .add("excludingBlank", excludingBlank)
@@ -665,6 +707,20 @@ public class Enrichers {
         return cast(result, type);
     }
 
+    protected static <N extends Number> N extreme(Iterable<? extends Number> vals, boolean max, Number valueIfNull, Number valueIfNone, TypeToken<N> type) {
+        Double result = null;
+        if (vals!=null) {
+            for (Number val : vals) {
+                if (val==null) val = valueIfNull;
+                if (val==null) continue;
+                double d = val.doubleValue();
+                if (result==null || (max ? d > result : d < result)) result = d;
+            }
+        }
+        if (result==null) return cast(valueIfNone, type);
+        return cast(result, type);
+    }
+
     protected static <N extends Number> N productDeduce(Collection<? extends Number> vals, Number valueIfNull,
                                                         Number valueIfNone, TypeToken<N> type) {
         Long result = 0L;
@@ -35,7 +35,10 @@ import brooklyn.event.SensorEventListener;
 import brooklyn.util.collections.MutableMap;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
 
 /** Building on {@link AbstractAggregator} for a single source sensor (on multiple children and/or members) */
 public abstract class AbstractMultipleSensorAggregator<U> extends AbstractAggregator<Object,U> implements SensorEventListener<Object> {
@@ -46,6 +49,9 @@ public abstract class AbstractMultipleSensorAggregator<U> extends AbstractAggreg
     /** access via {@link #getValues(Sensor)} */
     private final Map<String, Map<Entity,Object>> values = Collections.synchronizedMap(new LinkedHashMap<String, Map<Entity,Object>>());
 
+    /** number of producers with each distinct value, per sensor, kept in step with {@link #values}; access via {@link #getValueCounts(Sensor)} */
+    private final Map<String, Multiset<Object>> valueCounts = Maps.newHashMap();
+
     public AbstractMultipleSensorAggregator() {}
 
     protected abstract Collection<Sensor<?>> getSourceSensors();
@@ -104,7 +110,10 @@ public abstract class AbstractMultipleSensorAggregator<U> extends AbstractAggreg
                     } else {
                         initialVal = null;
                     }
-                    vs.put(producer, initialVal != null ? initialVal : defaultMemberValue);
+                    boolean hadVal = vs.containsKey(producer);
+                    Object newVal = initialVal != null ? initialVal : defaultMemberValue;
+                    vs.put(producer, newVal);
+                    updateValueCount(sensor.getName(), hadVal, vo, true, newVal);
                     // NB: see notes on possible race, in Aggregator#onProducerAdded
                 }
                 
@@ -117,8 +126,10 @@ public abstract class AbstractMultipleSensorAggregator<U> extends AbstractAggreg
         synchronized (values) {
             for (Sensor<?> sensor: getSourceSensors()) {
                 Map<Entity,Object> vs = values.get(sensor.getName());
-                if (vs!=null)
-                    vs.remove(producer);
+                if (vs!=null && vs.containsKey(producer)) {
+                    Object oldVal = vs.remove(producer);
+                    updateValueCount(sensor.getName(), true, oldVal, false, null);
+                }
             }
         }
         onUpdated();
@@ -132,7 +143,9 @@ public abstract class AbstractMultipleSensorAggregator<U> extends AbstractAggreg
             if (vs==null) {
                 LOG.debug(this+" received event when no entry for sensor ("+event+"); likely just added or removed, and will initialize subsequently if needed");
             } else {
-                vs.put(e, event.getValue());
+                boolean hadVal = vs.containsKey(e);
+                Object oldVal = vs.put(e, event.getValue());
+                updateValueCount(event.getSensor().getName(), hadVal, oldVal, true, event.getValue());
             }
         }
         onUpdated();
@@ -147,6 +160,34 @@ public abstract class AbstractMultipleSensorAggregator<U> extends AbstractAggreg
         }
     }
     
+    /**
+     * Returns the number of producers with each distinct value (including null) of the given sensor,
+     * without copying or iterating over all the values as {@link #getValues(Sensor)} does.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Map<T,Integer> getValueCounts(Sensor<T> sensor) {
+        synchronized (values) {
+            Multiset<Object> counts = valueCounts.get(sensor.getName());
+            if (counts==null) return ImmutableMap.of();
+            Map<T,Integer> result = MutableMap.of();
+            for (Multiset.Entry<Object> entry : counts.entrySet()) {
+                result.put((T) entry.getElement(), entry.getCount());
+            }
+            return result;
+        }
+    }
+
+    /** must be called while synchronized on {@link #values} */
+    private void updateValueCount(String sensorName, boolean hadOldVal, Object oldVal, boolean hasNewVal, Object newVal) {
+        Multiset<Object> counts = valueCounts.get(sensorName);
+        if (counts==null) {
+            counts = HashMultiset.create();
+            valueCounts.put(sensorName, counts);
+        }
+        if (hadOldVal) counts.remove(oldVal);
+        if (hasNewVal) counts.add(newVal);
+    }
+
     @Override
     protected abstract Object compute();
 }
@@ -18,6 +18,8 @@
  */
 package brooklyn.enricher.basic;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -40,9 +42,12 @@ import brooklyn.event.SensorEventListener;
 import brooklyn.util.collections.MutableList;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.flags.TypeCoercions;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.TreeMultiset;
 import com.google.common.reflect.TypeToken;
 
 /** Building on {@link AbstractAggregator} for a single source sensor (on multiple children and/or members) */
@@ -54,9 +59,33 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
 
     public static final ConfigKey<Sensor<?>> SOURCE_SENSOR = ConfigKeys.newConfigKey(new TypeToken<Sensor<?>>() {}, "enricher.sourceSensor");
     public static final ConfigKey<Function<? super Collection<?>, ?>> TRANSFORMATION = ConfigKeys.newConfigKey(new TypeToken<Function<? super Collection<?>, ?>>() {}, "enricher.transformation");
+    public static final ConfigKey<IncrementalReduction> INCREMENTAL_REDUCTION = ConfigKeys.newConfigKey(IncrementalReduction.class, "enricher.aggregating.incrementalReduction",
+            "If set, the aggregate is updated incrementally as each value changes, rather than by applying the transformation to all values; "
+            + "the transformation must compute the same result");
+    public static final ConfigKey<Object> VALUE_TO_REPORT_IF_NO_SENSORS = ConfigKeys.newConfigKey(Object.class, "enricher.aggregating.valueToReportIfNoSensors",
+            "Value for the incremental reduction to report when there are no values to aggregate");
+
+    /**
+     * Reductions of numeric values that can be updated as individual values change, in O(1) (or O(log N) for min/max).
+     * Null values are ignored, unless {@link #DEFAULT_MEMBER_VALUE} is set, in which case it is used for them.
+     */
+    public static enum IncrementalReduction {
+        SUM,
+        /** the number of values (including nulls if {@link #DEFAULT_MEMBER_VALUE} is set); values need not be numeric */
+        COUNT,
+        AVERAGE,
+        MIN,
+        MAX;
+    }
+
+    /** Recompute the incremental state from all values after (at least) this many updates, so that floating-point errors do not accumulate. */
+    private static final int MIN_UPDATES_PER_INCREMENTAL_RECOMPUTE = 1000;
 
     protected Sensor<T> sourceSensor;
     protected Function<? super Collection<T>, ? extends U> transformation;
+    protected IncrementalReduction incrementalReduction;
+    protected Object valueToReportIfNoSensors;
+    private IncrementalState incrementalState;
     
     /**
      * Users of values should either on it synchronize when iterating over its entries or use
@@ -72,6 +101,11 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
         super.setEntityLoadingConfig();
         this.sourceSensor = (Sensor<T>) getRequiredConfig(SOURCE_SENSOR);
         this.transformation = (Function<? super Collection<T>, ? extends U>) getRequiredConfig(TRANSFORMATION);
+        this.incrementalReduction = getConfig(INCREMENTAL_REDUCTION);
+        this.valueToReportIfNoSensors = getConfig(VALUE_TO_REPORT_IF_NO_SENSORS);
+        synchronized (values) {
+            this.incrementalState = (incrementalReduction == null) ? null : new IncrementalState(incrementalReduction, defaultMemberValue);
+        }
     }
         
     @Override
@@ -112,7 +146,10 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
                 } else {
                     initialVal = null;
                 }
-                values.put(producer, initialVal != null ? initialVal : defaultMemberValue);
+                T newVal = initialVal != null ? initialVal : defaultMemberValue;
+                boolean hadVal = values.containsKey(producer);
+                values.put(producer, newVal);
+                onValueChanged(hadVal, vo, true, newVal);
                 //we might skip in onEvent in the short window while !values.containsKey(producer)
                 //but that's okay because the put which would have been done there is done here now
             } else {
@@ -125,7 +162,12 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
     
     @Override
     protected void onProducerRemoved(Entity producer) {
-        values.remove(producer);
+        synchronized (values) {
+            if (values.containsKey(producer)) {
+                T oldVal = values.remove(producer);
+                onValueChanged(true, oldVal, false, null);
+            }
+        }
         onUpdated();
     }
 
@@ -134,7 +176,8 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
         Entity e = event.getSource();
         synchronized (values) {
             if (values.containsKey(e)) {
-                values.put(e, event.getValue());
+                T oldVal = values.put(e, event.getValue());
+                onValueChanged(true, oldVal, true, event.getValue());
             } else {
                 if (LOG.isDebugEnabled()) LOG.debug("{} received event for unknown producer ({}); presumably that producer has recently been removed", this, e);
             }
@@ -151,15 +194,47 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
         }
     }
     
+    /**
+     * Updates the incremental state, if any, for a producer's value having changed in {@link #values};
+     * must be called while synchronized on {@link #values}.
+     */
+    private void onValueChanged(boolean hadOldVal, T oldVal, boolean hasNewVal, T newVal) {
+        if (incrementalState == null) return;
+        
+        if (incrementalState.updatesSinceRecompute >= Math.max(MIN_UPDATES_PER_INCREMENTAL_RECOMPUTE, values.size())) {
+            incrementalState.reset();
+            for (T val : values.values()) {
+                if (valueFilter.apply(val)) incrementalState.add(val);
+            }
+            incrementalState.updatesSinceRecompute = 0;
+            incrementalState.recomputeCount++;
+        } else {
+            if (hadOldVal && valueFilter.apply(oldVal)) incrementalState.remove(oldVal);
+            if (hasNewVal && valueFilter.apply(newVal)) incrementalState.add(newVal);
+        }
+    }
+    
     @Override
     protected Object compute() {
         synchronized (values) {
+            if (incrementalState != null) {
+                return incrementalState.getResult(valueToReportIfNoSensors, targetSensor.getTypeToken());
+            }
+            
             // TODO Could avoid copying when filter not needed
             List<T> vs = MutableList.copyOf(Iterables.filter(values.values(), valueFilter));
             return transformation.apply(vs);
         }
     }
     
+    /** @return the number of times the incremental state has been recomputed from all values, or -1 if not incremental */
+    @VisibleForTesting
+    public int getIncrementalRecomputeCount() {
+        synchronized (values) {
+            return (incrementalState != null) ? incrementalState.recomputeCount : -1;
+        }
+    }
+    
     protected Map<Entity, T> copyOfValues() {
         // Don't use ImmutableMap, as can contain null values
         synchronized (values) {
@@ -167,4 +242,90 @@ public class Aggregator<T,U> extends AbstractAggregator<T,U> implements SensorEv
         }
     }
 
+    /** Running state of an {@link IncrementalReduction}; not thread-safe. */
+    private static class IncrementalState {
+        private final IncrementalReduction reduction;
+        /** used in place of null values if set; only the numeric reductions use the value itself */
+        private final Object valueIfNull;
+        private final double numericValueIfNull;
+        private double sum;
+        private int count;
+        private final TreeMultiset<Double> sorted = TreeMultiset.create();
+        private int updatesSinceRecompute;
+        private int recomputeCount;
+
+        IncrementalState(IncrementalReduction reduction, Object valueIfNull) {
+            this.reduction = checkNotNull(reduction, "reduction");
+            this.valueIfNull = valueIfNull;
+            if (valueIfNull != null && reduction != IncrementalReduction.COUNT) {
+                if (!(valueIfNull instanceof Number)) {
+                    throw new IllegalArgumentException("Default member value for "+reduction+" must be a number, but was "+valueIfNull);
+                }
+                this.numericValueIfNull = ((Number) valueIfNull).doubleValue();
+            } else {
+                this.numericValueIfNull = 0;
+            }
+        }
+        
+        void reset() {
+            sum = 0;
+            count = 0;
+            sorted.clear();
+            updatesSinceRecompute = 0;
+        }
+        
+        void add(Object val) {
+            update(val, 1);
+        }
+        
+        void remove(Object val) {
+            update(val, -1);
+        }
+        
+        private void update(Object val, int delta) {
+            updatesSinceRecompute++;
+            if (val == null && valueIfNull == null) return;
+            if (reduction == IncrementalReduction.COUNT) {
+                count += delta;
+                return;
+            }
+            
+            double doubleVal = (val != null) ? ((Number) val).doubleValue() : numericValueIfNull;
+            count += delta;
+            switch (reduction) {
+            case SUM:
+            case AVERAGE:
+                sum += delta * doubleVal;
+                break;
+            case MIN:
+            case MAX:
+                if (delta > 0) sorted.add(doubleVal);
+                else sorted.remove(doubleVal);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected reduction "+reduction);
+            }
+        }
+        
+        Object getResult(Object valueIfNone, TypeToken<?> type) {
+            Object result;
+            if (reduction == IncrementalReduction.COUNT) {
+                result = count;
+            } else if (count == 0) {
+                result = valueIfNone;
+            } else {
+                switch (reduction) {
+                case SUM: result = sum; break;
+                case AVERAGE: result = sum / count; break;
+                case MIN: result = sorted.firstEntry().getElement(); break;
+                case MAX: result = sorted.lastEntry().getElement(); break;
+                default: throw new IllegalStateException("Unexpected reduction "+reduction);
+                }
+            }
+            if (!(result instanceof Number) || !TypeCoercions.isPrimitiveOrBoxer(type.getRawType())) {
+                return result;
+            }
+            return TypeCoercions.castPrimitive(result, type.getRawType());
+        }
+    }
 }
@@ -53,6 +53,7 @@ import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
 import brooklyn.event.basic.AttributeMap;
+import brooklyn.event.basic.AttributeSlots;
 import brooklyn.event.basic.AttributeSensorAndConfigKey;
 import brooklyn.event.basic.BasicNotificationSensor;
 import brooklyn.event.basic.Sensors;
@@ -102,6 +103,7 @@ import com.google.common.base.Objects;
 import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -211,13 +213,16 @@ public abstract class AbstractEntity extends AbstractBrooklynObject implements E
      */
     // TODO Assigning temp value because not everything uses EntitySpec; see setManagementContext()
     private EntityConfigMap configsInternal = new EntityConfigMap(this, Maps.<ConfigKey<?>, Object>newLinkedHashMap());
+    private transient volatile PublishChangesOnly publishChangesOnly;
 
     /**
      * The sensor-attribute values of this entity. Updating this map should be done
      * via getAttribute/setAttribute; it will automatically emit an attribute-change event.
      */
     // TODO Assigning temp value because not everything uses EntitySpec; see setManagementContext()
-    private AttributeMap attributesInternal = new AttributeMap(this, Maps.<Collection<String>, Object>newLinkedHashMap());
+    private AttributeMap attributesInternal = new AttributeMap(this, 
+            BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_ATTRIBUTE_SLOT_STORAGE) ? AttributeSlots.forType(getClass()) : null, 
+            Maps.<Collection<String>, Object>newLinkedHashMap());
 
     /**
      * For temporary data, e.g. timestamps etc for calculating real attribute values, such as when
@@ -802,8 +807,54 @@ public abstract class AbstractEntity extends AbstractBrooklynObject implements E
     
     @Override
     public <T> T setAttribute(AttributeSensor<T> attribute, T val) {
+        if (getPublishChangesOnly().contains(attribute.getName())) {
+            return setAttributeIfChanged(attribute, val);
+        }
+        return setAttribute(attribute, val, false);
+    }
+    
+    /** the resolved {@link BrooklynConfigKeys#PUBLISH_CHANGES_ONLY}, re-resolved only when the config changes */
+    private Set<String> getPublishChangesOnly() {
+        EntityConfigMap configs = configsInternal;
+        if (configs.isSharedStorage()) {
+            // could be changed by other nodes
+            return resolvePublishChangesOnly();
+        }
+        int generation = configs.getGeneration();
+        PublishChangesOnly cached = publishChangesOnly;
+        if (cached == null || cached.configs != configs || cached.generation != generation) {
+            cached = new PublishChangesOnly(configs, generation, resolvePublishChangesOnly());
+            publishChangesOnly = cached;
+        }
+        return cached.names;
+    }
+    
+    private Set<String> resolvePublishChangesOnly() {
+        Set<String> names = getConfig(BrooklynConfigKeys.PUBLISH_CHANGES_ONLY);
+        return (names != null) ? ImmutableSet.copyOf(names) : ImmutableSet.<String>of();
+    }
+    
+    private static class PublishChangesOnly {
+        final EntityConfigMap configs;
+        final int generation;
+        final Set<String> names;
+        
+        PublishChangesOnly(EntityConfigMap configs, int generation, Set<String> names) {
+            this.configs = configs;
+            this.generation = generation;
+            this.names = names;
+        }
+    }
+
+    @Beta
+    @Override
+    public <T> T setAttributeIfChanged(AttributeSensor<T> attribute, T val) {
+        return setAttribute(attribute, val, true);
+    }
+    
+    private <T> T setAttribute(AttributeSensor<T> attribute, T val, boolean onlyIfChanged) {
         if (LOG.isTraceEnabled())
-            LOG.trace(""+this+" setAttribute "+attribute+" "+val);
+            LOG.trace(""+this+" setAttribute "+attribute+" "+val+(onlyIfChanged ? " (if changed)" : ""));
         
         if (Boolean.TRUE.equals(getManagementSupport().isReadOnlyRaw())) {
             T oldVal = getAttribute(attribute);
@@ -822,7 +873,15 @@ public abstract class AbstractEntity extends AbstractBrooklynObject implements E
                 }
             }
         }
-        T result = attributesInternal.update(attribute, val);
+        T result;
+        if (onlyIfChanged) {
+            Maybe<T> changed = attributesInternal.updateIfChanged(attribute, val);
+            // nothing to publish or persist
+            if (changed.isAbsent()) return val;
+            result = changed.get();
+        } else {
+            result = attributesInternal.update(attribute, val);
+        }
         if (result == null) {
             // could be this is a new sensor
             entityType.addSensorIfAbsent(attribute);
@@ -1011,6 +1070,17 @@ public abstract class AbstractEntity extends AbstractBrooklynObject implements E
     public EntityConfigMap getConfigMap() {
         return configsInternal;
     }
+
+    /** internal use only */ @Beta
+    public AttributeMap getAttributeMap() {
+        return attributesInternal;
+    }
+
+    @Beta
+    @Override
+    public Map<String, Long> getAttributePublicationStats() {
+        return attributesInternal.getPublicationStats();
+    }
     
     @Override
     public Map<ConfigKey<?>,Object> getAllConfig() {
@@ -19,6 +19,9 @@
 package brooklyn.entity.basic;
 
 import static brooklyn.entity.basic.ConfigKeys.*;
+
+import java.util.Set;
+
 import brooklyn.config.BrooklynServerConfig;
 import brooklyn.config.ConfigKey;
 import brooklyn.event.basic.AttributeSensorAndConfigKey;
@@ -28,6 +31,7 @@ import brooklyn.util.internal.ssh.SshTool;
 import brooklyn.util.time.Duration;
 
 import com.google.common.base.Preconditions;
+import com.google.common.reflect.TypeToken;
 
 /** Commonly used config keys, for use in entities. Similar to {@link Attributes}.
  * See also {@link BrooklynServerConfig} for config keys for controlling the server. */
@@ -55,6 +59,14 @@ public class BrooklynConfigKeys {
             "this should include something readable, and must include a hash of all data which differentiates an installation " +
             "(e.g. version, plugins, etc), but should be the same where install dirs can be shared to allow for re-use");
 
+    public static final ConfigKey<Set<String>> PUBLISH_CHANGES_ONLY = newConfigKey(new TypeToken<Set<String>>() {}, "sensors.publishChangesOnly",
+            "Names of attribute sensors whose values are only published (and persisted) when they change, "
+            + "rather than every time they are set, e.g. because a feed polls a value which rarely changes");
+
+    public static final ConfigKey<Boolean> DOWNLOAD_CACHE_PUSH = newBooleanConfigKey("download.cache.push",
+            "Whether to download install artifacts to the Brooklyn server's cache and copy them from there to the machine, "
+            + "rather than the machine downloading them itself; defaults to the server's brooklyn.downloads.cache.push");
+
     public static final ConfigKey<Boolean> ENTITY_STARTED = newBooleanConfigKey("entity.started", "Skip the startup process entirely, for running services", Boolean.FALSE);
     public static final ConfigKey<Boolean> SKIP_INSTALLATION = newBooleanConfigKey("install.skip", "Skip the driver install commands entirely, for pre-installed software", Boolean.FALSE);
 
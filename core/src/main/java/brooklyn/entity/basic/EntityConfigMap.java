@@ -21,11 +21,16 @@ package brooklyn.entity.basic;
 import static brooklyn.util.GroovyJavaMethods.elvis;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,9 +38,12 @@ import org.slf4j.LoggerFactory;
 import brooklyn.config.ConfigKey;
 import brooklyn.config.ConfigKey.HasConfigKey;
 import brooklyn.config.ConfigMap;
+import brooklyn.entity.EntityType;
 import brooklyn.event.basic.StructuredConfigKey;
+import brooklyn.internal.BrooklynFeatureEnablement;
 import brooklyn.management.ExecutionContext;
 import brooklyn.management.Task;
+import brooklyn.management.TaskAdaptable;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.flags.FlagUtils;
@@ -45,7 +53,10 @@ import brooklyn.util.guava.Maybe;
 import brooklyn.util.internal.ConfigKeySelfExtracting;
 import brooklyn.util.task.DeferredSupplier;
 
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -72,6 +83,36 @@ public class EntityConfigMap implements ConfigMap {
     private final ConfigBag localConfigBag;
     private final ConfigBag inheritedConfigBag;
 
+    // names of local config keys set since last call to getAndClearDirtyKeyNames (used for incremental persistence);
+    // allDirty is set when the local config is changed in ways which cannot be itemised;
+    // key names are only recorded once that has first been called, so the set does not grow when nothing drains it
+    private final Set<String> dirtyKeyNames = Sets.newConcurrentHashSet();
+    private final AtomicBoolean allDirty = new AtomicBoolean(true);
+    private volatile boolean trackingDirtyKeyNames = false;
+
+    // resolved and coerced values returned by getConfig, by key name; entries are only valid for the generation
+    // in which they were resolved, which is incremented whenever the local or inherited config changes
+    // (or the entity type, which may change the key); null if the cache is disabled
+    private final ConcurrentMap<String, ResolvedValue> resolvedValues;
+    private final AtomicInteger resolvedValuesGeneration = new AtomicInteger();
+    private volatile EntityType resolvedValuesEntityType;
+    private final Set<String> uncachedKeyNames = Sets.newConcurrentHashSet();
+    private final AtomicLong resolvedValueHits = new AtomicLong();
+    private final AtomicLong resolvedValueMisses = new AtomicLong();
+    private final boolean sharedStorage;
+
+    private static class ResolvedValue {
+        final ConfigKey<?> key;
+        final Object value;
+        final int generation;
+        
+        ResolvedValue(ConfigKey<?> key, Object value, int generation) {
+            this.key = key;
+            this.value = value;
+            this.generation = generation;
+        }
+    }
+    
     public EntityConfigMap(AbstractEntity entity, Map<ConfigKey<?>, Object> storage) {
         this.entity = checkNotNull(entity, "entity must be specified");
         this.ownConfig = checkNotNull(storage, "storage map must be specified");
@@ -79,6 +120,11 @@ public class EntityConfigMap implements ConfigMap {
         // TODO store ownUnused in backing-storage
         this.localConfigBag = ConfigBag.newInstance();
         this.inheritedConfigBag = ConfigBag.newInstance();
+        
+        // not with datagrid storage, where the config could be changed by other nodes
+        this.sharedStorage = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_USE_BROOKLYN_LIVE_OBJECTS_DATAGRID_STORAGE);
+        boolean cacheEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_CONFIG_RESOLVED_VALUE_CACHE) && !sharedStorage;
+        this.resolvedValues = cacheEnabled ? Maps.<String, ResolvedValue>newConcurrentMap() : null;
     }
 
     public <T> T getConfig(ConfigKey<T> key) {
@@ -95,6 +141,41 @@ public class EntityConfigMap implements ConfigMap {
     
     @SuppressWarnings("unchecked")
     public <T> T getConfig(ConfigKey<T> key, T defaultValue) {
+        if (resolvedValues == null || defaultValue != null || key instanceof StructuredConfigKey || uncachedKeyNames.contains(key.getName())) {
+            return resolveConfig(key, defaultValue);
+        }
+        
+        EntityType entityType = entity.getEntityType();
+        if (entityType != resolvedValuesEntityType) {
+            invalidateResolvedValues();
+            resolvedValuesEntityType = entityType;
+        }
+        int generation = resolvedValuesGeneration.get();
+        ResolvedValue cached = resolvedValues.get(key.getName());
+        if (cached != null && cached.generation == generation && isEquivalentKey(cached.key, key)) {
+            resolvedValueHits.incrementAndGet();
+            return (T) cached.value;
+        }
+        
+        resolvedValueMisses.incrementAndGet();
+        T result = resolveConfig(key, null);
+        if (isCacheable(getConfigRaw(key, true).orNull(), result)) {
+            resolvedValues.put(key.getName(), new ResolvedValue(key, result, generation));
+        }
+        return result;
+    }
+    
+    /** 
+     * Whether a value resolved for one key can be returned for the other: ad-hoc keys of the same name 
+     * can differ in type or default value (which is used if the key is not declared on the entity). 
+     */
+    private static boolean isEquivalentKey(ConfigKey<?> cachedKey, ConfigKey<?> key) {
+        if (cachedKey == key) return true;
+        return cachedKey.getTypeToken().equals(key.getTypeToken()) && Objects.equal(cachedKey.getDefaultValue(), key.getDefaultValue());
+    }
+    
+    @SuppressWarnings("unchecked")
+    protected <T> T resolveConfig(ConfigKey<T> key, T defaultValue) {
         // FIXME What about inherited task in config?!
         //              alex says: think that should work, no?
         // FIXME What if someone calls getConfig on a task, before setting parent app?
@@ -144,6 +225,70 @@ public class EntityConfigMap implements ConfigMap {
         return TypeCoercions.coerce((defaultValue != null) ? defaultValue : ownKey.getDefaultValue(), key.getTypeToken());
     }
     
+    /**
+     * Whether a resolved value can be returned for subsequent calls to {@link #getConfig(ConfigKey)}
+     * until the config is changed; not if its value is, or contains, something which is evaluated each time
+     * (such as a {@link DeferredSupplier} or a task), or if resolution created a new collection
+     * (which callers might modify).
+     */
+    protected boolean isCacheable(Object rawValue, Object resolvedValue) {
+        if (isDynamic(rawValue) || isDynamic(resolvedValue)) return false;
+        if ((resolvedValue instanceof Map || resolvedValue instanceof Collection) && resolvedValue != rawValue) return false;
+        return true;
+    }
+    
+    private static boolean isDynamic(Object value) {
+        if (value instanceof Future || value instanceof DeferredSupplier || value instanceof TaskAdaptable) return true;
+        if (value instanceof Map) {
+            for (Object v : ((Map<?,?>)value).values()) {
+                if (isDynamic(v)) return true;
+            }
+        } else if (value instanceof Iterable) {
+            for (Object v : (Iterable<?>)value) {
+                if (isDynamic(v)) return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Marks the given key as having a value which must be resolved on every call to {@link #getConfig(ConfigKey)},
+     * e.g. because it is changed by some means other than {@link #setConfig(ConfigKey, Object)}.
+     * Values which are {@link DeferredSupplier}s or tasks are always resolved on every call.
+     */
+    @Beta
+    public void setResolvedValueCacheDisabled(ConfigKey<?> key) {
+        uncachedKeyNames.add(key.getName());
+        if (resolvedValues != null) resolvedValues.remove(key.getName());
+    }
+    
+    /** Counts of calls to {@link #getConfig(ConfigKey)} which used a cached resolved value, and which resolved the value. */
+    @Beta
+    public Map<String, Long> getResolvedValueCacheStats() {
+        return MutableMap.of("hits", resolvedValueHits.get(), "misses", resolvedValueMisses.get());
+    }
+    
+    /** 
+     * A number which changes whenever the local or inherited config is changed through this map, so that
+     * callers can cache values derived from the config (unless {@link #isSharedStorage()}).
+     */
+    @Beta
+    public int getGeneration() {
+        return resolvedValuesGeneration.get();
+    }
+    
+    /** Whether the config is held in storage shared with other nodes, which could change it without this map knowing. */
+    @Beta
+    public boolean isSharedStorage() {
+        return sharedStorage;
+    }
+    
+    private void invalidateResolvedValues() {
+        resolvedValuesGeneration.incrementAndGet();
+        if (resolvedValues == null) return;
+        resolvedValues.clear();
+    }
+    
     @Override
     @Deprecated
     public Object getRawConfig(ConfigKey<?> key) {
@@ -211,10 +356,13 @@ public class EntityConfigMap implements ConfigMap {
             // as it stands if someone set string a.b.c in the config bag then removed structured key a.b, then got a.b.c they'd get a vale);
             // long term fix is to support structured config keys in ConfigBag, at which point i think we could remove ownConfig altogether
             localConfigBag.remove(key);
+            allDirty.set(true);
         } else {
             oldVal = ownConfig.put(key, val);
             localConfigBag.put((ConfigKey<Object>)key, v);
+            if (trackingDirtyKeyNames) dirtyKeyNames.add(key.getName());
         }
+        invalidateResolvedValues();
         entity.refreshInheritedConfigOfChildren();
         return oldVal;
     }
@@ -224,6 +372,8 @@ public class EntityConfigMap implements ConfigMap {
         localConfigBag.clear();
         ownConfig.putAll(vals);
         localConfigBag.putAll(vals);
+        allDirty.set(true);
+        invalidateResolvedValues();
     }
     
     public void setInheritedConfig(Map<ConfigKey<?>, ? extends Object> vals, ConfigBag configBagVals) {
@@ -266,17 +416,45 @@ public class EntityConfigMap implements ConfigMap {
                 inheritedConfigBag.putStringKey(name, value);
             }
         }
+        invalidateResolvedValues();
     }
     
     public void addToLocalBag(Map<String,?> vals) {
         localConfigBag.putAll(vals);
         // quick fix for problem that ownConfig can get out of synch
         ownConfig.putAll(localConfigBag.getAllConfigAsConfigKeyMap());
+        allDirty.set(true);
+        invalidateResolvedValues();
+    }
+
+    /**
+     * Returns the names of the local config keys which have been set since this method was last called,
+     * and resets that record. Returns absent if the local config has changed in a way that cannot be
+     * itemised by key name (e.g. structured keys, or replacing all local config), in which case callers
+     * should treat all config as changed.
+     * <p>
+     * Key names are only recorded once this has been called, so the first call starts recording and returns absent.
+     */
+    @Beta
+    public Maybe<Set<String>> getAndClearDirtyKeyNames() {
+        if (!trackingDirtyKeyNames) {
+            trackingDirtyKeyNames = true;
+            allDirty.set(false);
+            return Maybe.absent("config changes not previously recorded");
+        }
+        boolean wasAllDirty = allDirty.getAndSet(false);
+        Set<String> result = Sets.newLinkedHashSet();
+        for (String name : dirtyKeyNames) {
+            if (dirtyKeyNames.remove(name)) result.add(name);
+        }
+        if (wasAllDirty) return Maybe.absent("config changed in a way which cannot be itemised");
+        return Maybe.<Set<String>>of(result.isEmpty() ? ImmutableSet.<String>of() : result);
     }
 
     public void clearInheritedConfig() {
         inheritedConfig.clear();
         inheritedConfigBag.clear();
+        invalidateResolvedValues();
     }
 
     @Override
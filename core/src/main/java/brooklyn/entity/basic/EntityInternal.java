@@ -57,6 +57,22 @@ public interface EntityInternal extends BrooklynObjectInternal, EntityLocal, Reb
      */
     <T> T setAttributeWithoutPublishing(AttributeSensor<T> sensor, T val);
 
+    /**
+     * Like {@link EntityLocal#setAttribute(AttributeSensor, Object)}, except does nothing (and publishes no 
+     * attribute-change event) if the attribute is already set to an equal value.
+     * <p>
+     * Attributes named in {@link BrooklynConfigKeys#PUBLISH_CHANGES_ONLY} are always set this way.
+     */
+    @Beta
+    <T> T setAttributeIfChanged(AttributeSensor<T> sensor, T val);
+
+    /**
+     * Returns the number of attribute changes published by this entity, and the number of attribute updates
+     * not published because the value was unchanged (see {@link #setAttributeIfChanged(AttributeSensor, Object)}).
+     */
+    @Beta
+    Map<String, Long> getAttributePublicationStats();
+
     EntityConfigMap getConfigMap();
 
     /**
@@ -461,6 +461,14 @@ public class ServiceStateLogic {
         }
 
         protected Object computeServiceNotUp() {
+            // usually quorate, which can be checked from the counts of each value, without iterating over all the values
+            Map<Boolean, Integer> counts = getValueCounts(SERVICE_UP);
+            int entryCount = sum(counts.values()) - (getConfig(IGNORE_ENTITIES_WITH_SERVICE_UP_NULL) ? count(counts, null) : 0);
+            int upCount = count(counts, true);
+            QuorumCheck quorumCheck = getConfig(UP_QUORUM_CHECK);
+            if (quorumCheck!=null ? quorumCheck.isQuorate(upCount, entryCount) : upCount==entryCount)
+                return null;
+
             Map<Entity, Boolean> values = getValues(SERVICE_UP);
             List<Entity> violators = MutableList.of();
             boolean ignoreNull = getConfig(IGNORE_ENTITIES_WITH_SERVICE_UP_NULL);
@@ -494,6 +502,19 @@ public class ServiceStateLogic {
         }
 
         protected Object computeServiceProblems() {
+            // usually quorate, which can be checked from the counts of each value, without iterating over all the values
+            Map<Lifecycle, Integer> counts = getValueCounts(SERVICE_STATE_ACTUAL);
+            Set<Lifecycle> statesToIgnore = getConfig(IGNORE_ENTITIES_WITH_THESE_SERVICE_STATES);
+            int runningCount = count(counts, Lifecycle.RUNNING);
+            int notHealthyCount = 0;
+            for (Map.Entry<Lifecycle, Integer> entry: counts.entrySet()) {
+                if (entry.getKey()!=Lifecycle.RUNNING && !statesToIgnore.contains(entry.getKey()))
+                    notHealthyCount += entry.getValue();
+            }
+            QuorumCheck quorumCheck = getConfig(RUNNING_QUORUM_CHECK);
+            if (quorumCheck!=null ? quorumCheck.isQuorate(runningCount, notHealthyCount+runningCount) : notHealthyCount==0)
+                return null;
+
             Map<Entity, Lifecycle> values = getValues(SERVICE_STATE_ACTUAL);
             int numRunning=0;
             List<Entity> onesNotHealthy=MutableList.of();
@@ -522,6 +543,17 @@ public class ServiceStateLogic {
                     : Strings.join(onesNotHealthy, ", "));
         }
 
+        private static <T> int count(Map<T, Integer> counts, T value) {
+            Integer result = counts.get(value);
+            return (result == null) ? 0 : result;
+        }
+
+        private static int sum(Iterable<Integer> counts) {
+            int result = 0;
+            for (Integer count : counts) result += count;
+            return result;
+        }
+
         protected void updateMapSensor(AttributeSensor<Map<String, Object>> sensor, Object value) {
             if (log.isTraceEnabled()) log.trace("{} updating map sensor {} with {}", new Object[] { this, sensor, value });
 
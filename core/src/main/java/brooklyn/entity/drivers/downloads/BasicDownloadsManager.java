@@ -25,10 +25,17 @@ import java.util.Map;
 import java.util.Set;
 
 import brooklyn.config.StringConfigMap;
+import brooklyn.entity.basic.BrooklynConfigKeys;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.drivers.EntityDriver;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.util.text.Strings;
 
 import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -153,7 +160,54 @@ public class BasicDownloadsManager implements DownloadResolverManager {
             throw new IllegalArgumentException("No filenames matched for "+req+" (targets "+result+")");
         }
         
-        // And return the result
-        return new BasicDownloadResolver(result, filename);
+        // And return the result; if configured, the artifact is copied from the server's download cache to the machine
+        // (and that copy tried first) only when the targets are first used, i.e. when actually installing
+        return new PushingDownloadResolver(req, result, filename);
+    }
+
+    private class PushingDownloadResolver extends BasicDownloadResolver {
+        private final Supplier<List<String>> targetsWithPushed;
+        
+        PushingDownloadResolver(final DownloadRequirement req, Iterable<String> targets, String filename) {
+            super(targets, filename);
+            targetsWithPushed = Suppliers.memoize(new Supplier<List<String>>() {
+                @Override public List<String> get() {
+                    List<String> result = PushingDownloadResolver.super.getTargets();
+                    String pushed = pushFromServerCache(req, result);
+                    if (pushed == null) return result;
+                    Set<String> withPushed = Sets.newLinkedHashSet();
+                    withPushed.add(pushed);
+                    withPushed.addAll(result);
+                    return ImmutableList.copyOf(withPushed);
+                }
+            });
+        }
+        
+        @Override
+        public List<String> getTargets() {
+            return targetsWithPushed.get();
+        }
+    }
+
+    /**
+     * If {@link BrooklynConfigKeys#DOWNLOAD_CACHE_PUSH} is set for the entity (defaulting to 
+     * {@link DownloadArtifactCache#PUSH_ENABLED}), and it is on an ssh machine, copies the artifact
+     * to the machine from the server's {@link DownloadArtifactCache}. Nothing is pushed if
+     * {@link BrooklynConfigKeys#SKIP_INSTALLATION} is set.
+     * 
+     * @return the url of the copy on the machine, or null
+     */
+    protected String pushFromServerCache(DownloadRequirement req, List<String> targets) {
+        EntityDriver driver = req.getEntityDriver();
+        if (driver == null || !(driver.getLocation() instanceof SshMachineLocation) || driver.getEntity() == null) return null;
+        
+        EntityInternal entity = (EntityInternal) driver.getEntity();
+        ManagementContextInternal mgmt = (ManagementContextInternal) entity.getManagementContext();
+        if (Boolean.TRUE.equals(entity.getConfig(BrooklynConfigKeys.SKIP_INSTALLATION))) return null;
+        Boolean push = entity.getConfig(BrooklynConfigKeys.DOWNLOAD_CACHE_PUSH);
+        if (push == null) push = mgmt.getConfig().getConfig(DownloadArtifactCache.PUSH_ENABLED);
+        if (!Boolean.TRUE.equals(push)) return null;
+        
+        return mgmt.getDownloadArtifactCache().pushToMachine((SshMachineLocation) driver.getLocation(), targets);
     }
 }
@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.drivers.downloads;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.ResourceUtils;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.os.Os;
+import brooklyn.util.stream.Streams;
+import brooklyn.util.text.Identifiers;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * A content-addressed cache, on the Brooklyn server, of the artifacts downloaded to install software
+ * (e.g. the tarballs given by a {@link DownloadResolver}).
+ * <p>
+ * Artifacts are stored under their SHA-256 hash, with an index from each URL to the hash of its content
+ * (persisted in the cache directory, so it survives restarts); the same content at several URLs is stored once.
+ * The first request for a URL downloads it to the server; concurrent requests for the same URL wait for that
+ * download rather than fetching it again.
+ * <p>
+ * If {@link #PUSH_ENABLED} (or {@link brooklyn.entity.basic.BrooklynConfigKeys#DOWNLOAD_CACHE_PUSH} on the entity)
+ * is set, the {@link BasicDownloadsManager} uses {@link #pushToMachine(SshMachineLocation, List)} to copy the
+ * cached artifact to each ssh machine, and puts that copy first in the download targets, so the install
+ * reads it from local disk instead of every machine downloading it from the internet.
+ * <p>
+ * If {@link #MAX_SIZE} is set, the least recently used artifacts are removed whenever a download takes the cache
+ * over that size (the last use of each is recorded as its file's modification time, so also survives restarts).
+ */
+public class DownloadArtifactCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DownloadArtifactCache.class);
+
+    public static final ConfigKey<String> CACHE_DIR = ConfigKeys.newStringConfigKey(
+            DownloadProducerFromProperties.DOWNLOAD_CONF_PREFIX+"cache.dir",
+            "Directory on the Brooklyn server for the download artifact cache; defaults to download-cache in the management base dir");
+
+    public static final ConfigKey<Boolean> PUSH_ENABLED = ConfigKeys.newBooleanConfigKey(
+            DownloadProducerFromProperties.DOWNLOAD_CONF_PREFIX+"cache.push",
+            "Whether to download install artifacts to the Brooklyn server's cache, and copy them from there to each machine, "
+            + "rather than each machine downloading them itself; can be overridden on the entity",
+            false);
+
+    public static final ConfigKey<Long> MAX_SIZE = ConfigKeys.newLongConfigKey(
+            DownloadProducerFromProperties.DOWNLOAD_CONF_PREFIX+"cache.maxSize",
+            "Maximum total size, in bytes, of the artifacts in the download artifact cache, "
+            + "beyond which the least recently used are removed (if null or <= 0, then unlimited)");
+
+    /** Directory (relative to the home dir) on the machines where pushed artifacts are put. */
+    public static final String REMOTE_CACHE_DIR = ".brooklyn/download-cache";
+
+    private static final String INDEX_FILENAME = "index.properties";
+
+    private final File dir;
+    private final File artifactsDir;
+    private final File indexFile;
+    private final long maxSize;
+    private final Map<String, String> hashByUrl = Maps.newConcurrentMap();
+    private final Striped<Lock> urlLocks = Striped.lazyWeakLock(64);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong pushesSkipped = new AtomicLong();
+    private final AtomicLong bytesPushed = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DownloadArtifactCache(File dir) {
+        this(dir, 0);
+    }
+
+    /**
+     * @param maxSize the maximum total size of the cached artifacts in bytes, or <= 0 for unlimited
+     */
+    public DownloadArtifactCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.artifactsDir = new File(dir, "sha256");
+        this.indexFile = new File(dir, INDEX_FILENAME);
+        this.maxSize = maxSize;
+        artifactsDir.mkdirs();
+        loadIndex();
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Returns the cached artifact for the first of the given URLs that is already cached, or otherwise
+     * downloads the first of them which can be retrieved from the Brooklyn server.
+     * <p>
+     * URLs to be resolved on the target machine (i.e. including shell variables such as {@code $HOME}) are ignored.
+     *
+     * @return the cached file, or null if none of the URLs could be retrieved
+     */
+    public File get(List<String> urls) {
+        for (String url : urls) {
+            File cached = getIfCached(url);
+            if (cached != null) {
+                recordHit(cached);
+                return cached;
+            }
+        }
+        for (String url : urls) {
+            if (!isCacheable(url)) continue;
+            Lock lock = urlLocks.get(url);
+            lock.lock();
+            try {
+                // another thread may have downloaded it while we waited
+                File cached = getIfCached(url);
+                if (cached != null) {
+                    recordHit(cached);
+                    return cached;
+                }
+                File result = download(url);
+                if (result != null) {
+                    misses.incrementAndGet();
+                    return result;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        failures.incrementAndGet();
+        return null;
+    }
+
+    private void recordHit(File cached) {
+        hits.incrementAndGet();
+        bytesSaved.addAndGet(cached.length());
+        // marks it as recently used, for eviction
+        cached.setLastModified(System.currentTimeMillis());
+    }
+
+    /** @return the cached artifact for the URL, or null if it has not been downloaded */
+    public File getIfCached(String url) {
+        String hash = hashByUrl.get(url);
+        if (hash == null) return null;
+        File result = new File(artifactsDir, hash);
+        return result.isFile() ? result : null;
+    }
+
+    /**
+     * Ensures the artifact for the given URLs is on the machine (copying it from this cache unless already there),
+     * returning the URL of that copy for use as a download target, or null if it could not be cached or copied.
+     */
+    public String pushToMachine(SshMachineLocation machine, List<String> urls) {
+        File artifact = get(urls);
+        if (artifact == null) return null;
+
+        String remotePath = Os.mergePathsUnix(REMOTE_CACHE_DIR, artifact.getName());
+        try {
+            int exists = machine.execCommands("check download cache", ImmutableList.of(
+                    "mkdir -p "+REMOTE_CACHE_DIR,
+                    "test -f "+remotePath));
+            if (exists == 0) {
+                pushesSkipped.incrementAndGet();
+            } else {
+                // copy to a temporary name, then rename, so a partial copy is never taken as the artifact
+                String tmpPath = remotePath+"."+Identifiers.makeRandomId(8)+".tmp";
+                int result = machine.copyTo(artifact, tmpPath);
+                if (result != 0) throw new IllegalStateException("Copy of "+artifact+" to "+machine+" returned "+result);
+                result = machine.execCommands("install from download cache", ImmutableList.of("mv "+tmpPath+" "+remotePath));
+                if (result != 0) throw new IllegalStateException("Rename of "+tmpPath+" on "+machine+" returned "+result);
+                pushes.incrementAndGet();
+                bytesPushed.addAndGet(artifact.length());
+            }
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.warn("Unable to copy cached artifact "+artifact+" ("+urls+") to "+machine+"; machine will download it directly: "+e);
+            return null;
+        }
+        // $HOME is expanded by the shell on the machine, as for the local repo
+        return "file://$HOME/"+remotePath;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = MutableMap.of();
+        result.put("hits", hits.get());
+        result.put("misses", misses.get());
+        result.put("failures", failures.get());
+        result.put("bytesDownloaded", bytesDownloaded.get());
+        result.put("bytesSaved", bytesSaved.get());
+        result.put("pushes", pushes.get());
+        result.put("pushesSkipped", pushesSkipped.get());
+        result.put("bytesPushed", bytesPushed.get());
+        result.put("evictions", evictions.get());
+        result.put("urls", hashByUrl.size());
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadArtifactCache["+dir+"]";
+    }
+
+    protected boolean isCacheable(String url) {
+        return !url.contains("$");
+    }
+
+    protected File download(String url) {
+        File tmp = new File(dir, "download-"+Identifiers.makeRandomId(8)+".tmp");
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = ResourceUtils.create(this).getResourceFromUrl(url);
+            HashingInputStream hashingIn = new HashingInputStream(Hashing.sha256(), in);
+            out = new FileOutputStream(tmp);
+            long size = ByteStreams.copy(hashingIn, out);
+            out.close();
+            out = null;
+            // a short read from the source fails in the copy; this guards against a short write
+            if (tmp.length() != size) {
+                throw new IOException("Incomplete download of "+url+" to "+tmp+": wrote "+tmp.length()+" of "+size+" bytes");
+            }
+            String hash = hashingIn.hash().toString();
+
+            File result = new File(artifactsDir, hash);
+            if (result.isFile()) {
+                // same content as another url
+                tmp.delete();
+            } else if (!tmp.renameTo(result)) {
+                throw new IOException("Unable to rename "+tmp+" to "+result);
+            }
+            result.setLastModified(System.currentTimeMillis());
+            bytesDownloaded.addAndGet(size);
+            hashByUrl.put(url, hash);
+            if (maxSize > 0) evictLeastRecentlyUsed(result);
+            saveIndex();
+            LOG.debug("Cached download of "+url+" ("+size+" bytes) as "+result);
+            return result;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("Unable to cache download of "+url+" (continuing): "+e);
+            return null;
+        } finally {
+            Streams.closeQuietly(in);
+            Streams.closeQuietly(out);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Deletes the least recently used artifacts (other than the given one, just downloaded) until the cache is
+     * within {@link #maxSize}, along with the URLs that referred to them.
+     * <p>
+     * An artifact being copied to a machine when it is deleted fails that copy, so the machine downloads it itself.
+     */
+    private synchronized void evictLeastRecentlyUsed(File keep) {
+        File[] files = artifactsDir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxSize) return;
+        
+        List<File> byLastUse = Lists.newArrayList(files);
+        Collections.sort(byLastUse, new Comparator<File>() {
+            @Override public int compare(File f1, File f2) {
+                return Longs.compare(f1.lastModified(), f2.lastModified());
+            }});
+        for (File file : byLastUse) {
+            if (total <= maxSize) break;
+            if (file.equals(keep)) continue;
+            long length = file.length();
+            if (!file.delete()) {
+                LOG.debug("Unable to delete "+file+" from download cache "+dir+" (continuing)");
+                continue;
+            }
+            total -= length;
+            evictions.incrementAndGet();
+            hashByUrl.values().removeAll(Collections.singleton(file.getName()));
+            LOG.debug("Removed least recently used "+file+" ("+length+" bytes) from download cache "+dir);
+        }
+    }
+
+    private void loadIndex() {
+        if (!indexFile.isFile()) return;
+        InputStream in = null;
+        try {
+            in = new FileInputStream(indexFile);
+            Properties props = new Properties();
+            props.load(in);
+            for (String url : props.stringPropertyNames()) {
+                hashByUrl.put(url, props.getProperty(url));
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to load download cache index "+indexFile+"; artifacts will be downloaded again: "+e);
+        } finally {
+            Streams.closeQuietly(in);
+        }
+    }
+
+    private synchronized void saveIndex() throws IOException {
+        Properties props = new Properties();
+        props.putAll(hashByUrl);
+        File tmp = new File(dir, INDEX_FILENAME+".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            props.store(out, "Download URLs and the SHA-256 of their content");
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tmp.renameTo(indexFile)) throw new IOException("Unable to rename "+tmp+" to "+indexFile);
+        }
+    }
+}
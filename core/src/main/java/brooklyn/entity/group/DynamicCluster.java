@@ -45,6 +45,7 @@ import brooklyn.event.basic.BasicAttributeSensor;
 import brooklyn.event.basic.BasicNotificationSensor;
 import brooklyn.event.basic.Sensors;
 import brooklyn.location.Location;
+import brooklyn.location.MachineProvisioningLocation;
 import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.time.Duration;
 
@@ -158,6 +159,25 @@ public interface DynamicCluster extends AbstractGroup, Cluster, MemberReplaceabl
     ConfigKey<Integer> NUM_AVAILABILITY_ZONES = ConfigKeys.newIntegerConfigKey(
             "dynamiccluster.numAvailabilityZones", "number of availability zones to use (will attempt to auto-discover this number)");
 
+    @SetFromFlag("maxConcurrentChildStarts")
+    ConfigKey<Integer> MAX_CONCURRENT_CHILD_STARTS = ConfigKeys.newIntegerConfigKey(
+            "dynamiccluster.maxConcurrentChildStarts",
+            "Maximum number of members to start concurrently when growing the cluster (if null or <= 0, then unlimited)");
+
+    @SetFromFlag("batchProvisioning")
+    ConfigKey<Boolean> BATCH_PROVISIONING = ConfigKeys.newBooleanConfigKey(
+            "dynamiccluster.batchProvisioning",
+            "Whether to obtain the machines for all new members in one request before starting them, where the location supports it "
+                    + "(the members are then started on those machines, and the cluster releases them when the members are removed)",
+            false);
+
+    @SetFromFlag("releaseMutexWhileStarting")
+    ConfigKey<Boolean> RELEASE_MUTEX_WHILE_STARTING = ConfigKeys.newBooleanConfigKey(
+            "dynamiccluster.releaseMutexWhileStarting",
+            "Whether to let other resize operations proceed while new members are starting; "
+                    + "the new members are added to the cluster before they are started, so they count towards its size",
+            false);
+
     AttributeSensor<List<Location>> SUB_LOCATIONS = new BasicAttributeSensor<List<Location>>(
             new TypeToken<List<Location>>() {},
             "dynamiccluster.subLocations", "Locations for each availability zone to use");
@@ -166,6 +186,10 @@ public interface DynamicCluster extends AbstractGroup, Cluster, MemberReplaceabl
             new TypeToken<Set<Location>>() {},
             "dynamiccluster.failedSubLocations", "Sub locations that seem to have failed");
 
+    @SuppressWarnings("rawtypes")
+    AttributeSensor<MachineProvisioningLocation> BATCH_PROVISIONING_LOCATION = Sensors.newSensor(MachineProvisioningLocation.class,
+            "dynamiccluster.batchProvisioningLocation", "Set on a member if the cluster obtained its machine (from this location), so must release it");
+
     AttributeSensor<Boolean> CLUSTER_MEMBER = Sensors.newBooleanSensor(
             "cluster.member", "Set on an entity if it is a member of a cluster");
 
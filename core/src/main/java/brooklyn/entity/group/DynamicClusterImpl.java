@@ -23,10 +23,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
 
 import javax.annotation.Nullable;
 
@@ -40,6 +43,7 @@ import brooklyn.entity.basic.DelegateEntity;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityFactory;
 import brooklyn.entity.basic.EntityFactoryForLocation;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.entity.basic.Lifecycle;
 import brooklyn.entity.basic.QuorumCheck.QuorumChecks;
@@ -49,13 +53,21 @@ import brooklyn.entity.effector.Effectors;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.entity.trait.Startable;
 import brooklyn.entity.trait.StartableMethods;
+import brooklyn.event.basic.MapConfigKey;
 import brooklyn.location.Location;
+import brooklyn.location.MachineLocation;
+import brooklyn.location.MachineManagementMixins.ObtainsMachinesInBatches;
+import brooklyn.location.MachineProvisioningLocation;
+import brooklyn.location.NoMachinesAvailableException;
+import brooklyn.location.basic.LocationConfigKeys;
 import brooklyn.location.basic.Locations;
+import brooklyn.location.basic.Machines;
 import brooklyn.location.cloud.AvailabilityZoneExtension;
 import brooklyn.management.Task;
 import brooklyn.policy.Policy;
 import brooklyn.util.collections.MutableList;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.config.ConfigBag;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.exceptions.ReferenceWithError;
 import brooklyn.util.flags.TypeCoercions;
@@ -128,6 +140,18 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
      */
     protected final Object mutex = new Object[0];
 
+    /** The members' custom provisioning properties, used when obtaining machines for them in a batch;
+     *  the same key as {@code SoftwareProcess.PROVISIONING_PROPERTIES}. */
+    protected static final MapConfigKey<Object> MEMBER_PROVISIONING_PROPERTIES = new MapConfigKey<Object>(Object.class,
+            "provisioning.properties", "Custom properties to be passed in when provisioning a new machine", MutableMap.<String,Object>of());
+
+    /** How often to check if members have started, when waiting without holding {@link #mutex}. */
+    private static final long RELEASED_MUTEX_POLL_PERIOD_MILLIS = 100;
+
+    private final Object childStartPermitsMutex = new Object[0];
+    private transient Semaphore childStartPermits;
+    private transient int childStartPermitsSize;
+
     private static final Function<Collection<Entity>, Entity> defaultRemovalStrategy = new Function<Collection<Entity>, Entity>() {
         @Override public Entity apply(Collection<Entity> contenders) {
             // choose newest entity that is stoppable
@@ -235,6 +259,29 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
         return getConfig(QUARANTINE_FAILED_ENTITIES);
     }
 
+    protected boolean isBatchProvisioningEnabled() {
+        return Boolean.TRUE.equals(getConfig(BATCH_PROVISIONING));
+    }
+
+    protected boolean isReleaseMutexWhileStartingEnabled() {
+        return Boolean.TRUE.equals(getConfig(RELEASE_MUTEX_WHILE_STARTING));
+    }
+
+    /** @return permits for starting members, shared by all concurrent resizes; or null if unlimited */
+    @Nullable
+    protected Semaphore getChildStartPermits() {
+        Integer maxConcurrent = getConfig(MAX_CONCURRENT_CHILD_STARTS);
+        synchronized (childStartPermitsMutex) {
+            if (maxConcurrent == null || maxConcurrent <= 0) {
+                childStartPermits = null;
+            } else if (childStartPermits == null || childStartPermitsSize != maxConcurrent) {
+                childStartPermits = new Semaphore(maxConcurrent, true);
+                childStartPermitsSize = maxConcurrent;
+            }
+            return childStartPermits;
+        }
+    }
+
     protected QuarantineGroup getQuarantineGroup() {
         return getAttribute(QUARANTINE_GROUP);
     }
@@ -402,6 +449,9 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
             // also stop any remaining stoppable children -- eg those on fire
             // (this ignores the quarantine node which is not stoppable)
             StartableMethods.stop(this);
+            for (Entity child : getChildren()) {
+                releaseBatchProvisionedMachine(child);
+            }
 
             ServiceStateLogic.setExpectedState(this, Lifecycle.STOPPED);
         } catch (Exception e) {
@@ -635,20 +685,57 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
         Map<Entity, Location> addedEntityLocations = Maps.newLinkedHashMap();
         Map<Entity, Task<?>> tasks = Maps.newLinkedHashMap();
 
-        for (Location loc : locations) {
+        List<Location> locationList = ImmutableList.copyOf(locations);
+        for (Location loc : locationList) {
             Entity entity = addNode(loc, flags);
             addedEntities.add(entity);
             addedEntityLocations.put(entity, loc);
-            Map<String, ?> args = ImmutableMap.of("locations", ImmutableList.of(loc));
-            Task<Void> task = Effectors.invocation(entity, Startable.START, args).asTask();
+        }
+
+        List<Location> startLocations = isBatchProvisioningEnabled() ? obtainMachinesInBatches(locationList, addedEntities) : locationList;
+        Semaphore startPermits = getChildStartPermits();
+
+        for (int i = 0; i < locationList.size(); i++) {
+            Location loc = locationList.get(i);
+            Location startLoc = startLocations.get(i);
+            Entity entity = addedEntities.get(i);
+            if (startLoc != loc) {
+                // record the machine now, so it can be released even if the member fails before recording it itself
+                ((EntityInternal) entity).addLocations(ImmutableList.of(startLoc));
+                ((EntityLocal) entity).setAttribute(BATCH_PROVISIONING_LOCATION, (MachineProvisioningLocation<?>) loc);
+            }
+            Map<String, ?> args = ImmutableMap.of("locations", ImmutableList.of(startLoc));
+            Task<?> task = Effectors.invocation(entity, Startable.START, args).asTask();
+            if (startPermits != null) {
+                task = newThrottledStartTask(entity, task, startPermits);
+            }
             tasks.put(entity, task);
         }
 
         Task<List<?>> parallel = Tasks.parallel("starting "+tasks.size()+" node"+Strings.s(tasks.size())+" (parallel)", tasks.values());
         TaskTags.markInessential(parallel);
         DynamicTasks.queueIfPossible(parallel).orSubmitAsync(this);
+
+        boolean releasedMutex = isReleaseMutexWhileStartingEnabled() && Thread.holdsLock(mutex);
+        if (releasedMutex) {
+            waitForTasksReleasingMutex(tasks.values());
+        }
         Map<Entity, Throwable> errors = waitForTasksOnEntityStart(tasks);
 
+        if (releasedMutex) {
+            // members may have been removed (e.g. by a concurrent shrink) while we were not holding the mutex;
+            // those are no longer ours to report on or clean up
+            Set<Entity> members = ImmutableSet.copyOf(getMembers());
+            for (Entity entity : ImmutableList.copyOf(addedEntities)) {
+                if (!members.contains(entity)) {
+                    LOG.debug("In {}, member {} was removed while starting; ignoring its start result", this, entity);
+                    addedEntities.remove(entity);
+                    addedEntityLocations.remove(entity);
+                    errors.remove(entity);
+                }
+            }
+        }
+
         // if tracking, then report success/fail to the ZoneFailureDetector
         if (isAvailabilityZoneEnabled()) {
             for (Map.Entry<Entity, Location> entry : addedEntityLocations.entrySet()) {
@@ -681,6 +768,124 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
         return ReferenceWithError.newInstanceWithoutError(result);
     }
 
+    /**
+     * Obtains machines up-front for each of the given locations that can provision them in batches,
+     * with a single request per distinct location.
+     *
+     * @param members the new member to start in each location
+     * @return the locations in which to start each new member: either a machine obtained here, or the original location
+     *         (e.g. if it does not support batches, or if not enough machines were available)
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected List<Location> obtainMachinesInBatches(List<Location> locations, List<Entity> members) {
+        Map<Location, Integer> counts = Maps.newLinkedHashMap();
+        Map<Location, Entity> firstMembers = Maps.newLinkedHashMap();
+        for (int i = 0; i < locations.size(); i++) {
+            Location loc = locations.get(i);
+            if (loc instanceof ObtainsMachinesInBatches && loc instanceof MachineProvisioningLocation) {
+                Integer count = counts.get(loc);
+                counts.put(loc, (count == null) ? 1 : count + 1);
+                if (count == null) firstMembers.put(loc, members.get(i));
+            }
+        }
+
+        Map<Location, Iterator<? extends MachineLocation>> obtained = Maps.newLinkedHashMap();
+        for (Map.Entry<Location, Integer> entry : counts.entrySet()) {
+            Location loc = entry.getKey();
+            int count = entry.getValue();
+            try {
+                Map<String, Object> provisioningFlags = getBatchProvisioningFlags((MachineProvisioningLocation) loc, firstMembers.get(loc));
+                List<? extends MachineLocation> machines = ((ObtainsMachinesInBatches) loc).obtainBatch(count, provisioningFlags);
+                LOG.debug("In {}, obtained batch of {} machine{} from {}", new Object[] {this, count, Strings.s(count), loc});
+                obtained.put(loc, machines.iterator());
+            } catch (NoMachinesAvailableException e) {
+                LOG.warn("In "+this+", failed to obtain batch of "+count+" machine"+Strings.s(count)+" from "+loc+"; members will provision individually: "+e);
+            }
+        }
+
+        List<Location> result = Lists.newArrayList();
+        for (Location loc : locations) {
+            Iterator<? extends MachineLocation> machines = obtained.get(loc);
+            result.add((machines != null && machines.hasNext()) ? machines.next() : loc);
+        }
+        return result;
+    }
+
+    /**
+     * The flags with which to obtain a batch of machines for members like the given one, as the member would
+     * itself use when obtaining a machine: the location's provisioning flags for the member's type, and the
+     * member's {@link #MEMBER_PROVISIONING_PROPERTIES}.
+     */
+    protected Map<String, Object> getBatchProvisioningFlags(MachineProvisioningLocation<?> loc, Entity member) {
+        ConfigBag result = ConfigBag.newInstance(loc.getProvisioningFlags(ImmutableList.of(Entities.deproxy(member).getClass().getName())));
+        result.putAll(member.getConfig(MEMBER_PROVISIONING_PROPERTIES));
+        result.put(LocationConfigKeys.CALLER_CONTEXT, this);
+        return result.getAllConfigMutable();
+    }
+
+    /** Wraps the start task so that it only runs when one of the given permits is available. */
+    protected Task<?> newThrottledStartTask(final Entity entity, final Task<?> startTask, final Semaphore permits) {
+        return Tasks.<Void>builder()
+                .name("starting "+entity+" (throttled)")
+                .dynamic(true)
+                .body(new Callable<Void>() {
+                    @Override public Void call() throws Exception {
+                        permits.acquire();
+                        try {
+                            DynamicTasks.queue(startTask).getUnchecked();
+                        } finally {
+                            permits.release();
+                        }
+                        return null;
+                    }})
+                .build();
+    }
+
+    /**
+     * Waits for the tasks to complete, without holding {@link #mutex} in the meantime; must be called while
+     * holding the mutex (possibly re-entrantly), and holds it again on return.
+     */
+    protected void waitForTasksReleasingMutex(Iterable<? extends Task<?>> tasks) {
+        try {
+            for (Task<?> task : tasks) {
+                while (!task.isDone()) {
+                    // wait releases all holds on the monitor, allowing other resizes in the meantime
+                    mutex.wait(RELEASED_MUTEX_POLL_PERIOD_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /** Releases the member's machine, if the cluster obtained it as part of a batch. */
+    protected void releaseBatchProvisionedMachine(Entity member) {
+        releaseBatchProvisionedMachine(this, member);
+    }
+
+    /**
+     * Releases the entity's machine, if a cluster obtained it as part of a batch (as the entity cannot release it
+     * itself); for use wherever such an entity is stopped or discarded, including from the {@link QuarantineGroup}.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static void releaseBatchProvisionedMachine(Entity context, Entity member) {
+        MachineProvisioningLocation provisioner = member.getAttribute(BATCH_PROVISIONING_LOCATION);
+        if (provisioner == null) return;
+
+        Maybe<MachineLocation> machine = Machines.findUniqueMachineLocation(member.getLocations());
+        if (!machine.isPresent()) {
+            LOG.warn("In {}, cannot release batch-provisioned machine of {}: no unique machine in {}", new Object[] {context, member, member.getLocations()});
+            return;
+        }
+        try {
+            provisioner.release(machine.get());
+            ((EntityLocal) member).setAttribute(BATCH_PROVISIONING_LOCATION, null);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.warn("In "+context+", failed to release machine "+machine.get()+" of "+member+" to "+provisioner+": "+e, e);
+        }
+    }
+
     protected void quarantineFailedNodes(Collection<Entity> failedEntities) {
         for (Entity entity : failedEntities) {
             emit(ENTITY_QUARANTINED, entity);
@@ -831,6 +1036,7 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
 
     protected void discardNode(Entity entity) {
         removeMember(entity);
+        releaseBatchProvisionedMachine(entity);
         Entities.unmanage(entity);
     }
 
@@ -847,6 +1053,7 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
                 }
             }
         } finally {
+            releaseBatchProvisionedMachine(member);
             Entities.unmanage(member);
         }
     }
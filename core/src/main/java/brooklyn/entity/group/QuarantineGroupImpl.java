@@ -67,6 +67,7 @@ public class QuarantineGroupImpl extends AbstractGroupImpl implements Quarantine
         }
         for (Entity member : members) {
             removeMember(member);
+            DynamicClusterImpl.releaseBatchProvisionedMachine(this, member);
             Entities.unmanage(member);
         }
         if (exception != null) {
@@ -27,12 +27,15 @@ import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
+import brooklyn.entity.EntityType;
 import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
@@ -46,11 +49,15 @@ import brooklyn.management.internal.EffectorUtils;
 import brooklyn.management.internal.EntityManagerInternal;
 import brooklyn.management.internal.ManagementTransitionInfo.ManagementTransitionMode;
 import brooklyn.util.config.ConfigBag;
+import brooklyn.util.guava.Maybe;
 import brooklyn.util.task.DynamicTasks;
 import brooklyn.util.task.TaskTags;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Sets;
 
 /**
@@ -108,6 +115,51 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
         }
     }
     
+    /** How a proxied method is dispatched, in order of the checks in {@link EntityProxyImpl#invoke(Object, Method, Object[])}. */
+    private static enum MethodKind {
+        /** methods on {@link Object}, or permitted when the entity is read-only; always invoked directly */
+        DIRECT,
+        /** other {@link Entity} methods; invoked directly but only if the entity is master */
+        ENTITY_NON_EFFECTOR,
+        /** all other methods; invoked as an effector (if there is one of that name) if the entity is master */
+        EFFECTOR_CANDIDATE
+    }
+
+    /**
+     * The {@link MethodKind} of each method invoked through a proxy, so that steady-state calls need not compute
+     * a {@link MethodSignature} and probe the sets above each time.
+     * <p>
+     * Keys are compared by identity (and held weakly): a proxy class passes the same {@link Method} instances
+     * on every call, so this is in effect a table per proxy class, and does not keep unused classes loaded.
+     */
+    private static final LoadingCache<Method, MethodKind> METHOD_KINDS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Method, MethodKind>() {
+                @Override
+                public MethodKind load(Method m) {
+                    MethodSignature sig = new MethodSignature(m);
+                    if (OBJECT_METHODS.contains(sig) || ENTITY_PERMITTED_READ_ONLY_METHODS.contains(sig)) {
+                        return MethodKind.DIRECT;
+                    } else if (ENTITY_NON_EFFECTOR_METHODS.contains(sig)) {
+                        return MethodKind.ENTITY_NON_EFFECTOR;
+                    } else {
+                        return MethodKind.EFFECTOR_CANDIDATE;
+                    }
+                }
+            });
+
+    /** The effector (if any) for each method, valid while the delegate's entity type is unchanged. */
+    private static class EffectorLookup {
+        final EntityType entityType;
+        final ConcurrentMap<Method, Maybe<Effector<?>>> effectors = new ConcurrentHashMap<Method, Maybe<Effector<?>>>();
+        
+        EffectorLookup(EntityType entityType) {
+            this.entityType = entityType;
+        }
+    }
+    
+    private volatile EffectorLookup effectorLookup;
+    
     public EntityProxyImpl(Entity entity) {
         this.delegate = checkNotNull(entity, "entity");
     }
@@ -180,12 +232,10 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
             throw new IllegalArgumentException("Static methods not supported via proxy on entity "+delegate);
         }
         
-        MethodSignature sig = new MethodSignature(m);
+        MethodKind kind = METHOD_KINDS.getUnchecked(m);
 
         Object result;
-        if (OBJECT_METHODS.contains(sig)) {
-            result = m.invoke(delegate, args);
-        } else if (ENTITY_PERMITTED_READ_ONLY_METHODS.contains(sig)) {
+        if (kind == MethodKind.DIRECT) {
             result = m.invoke(delegate, args);
         } else {
             if (!isMaster()) {
@@ -195,9 +245,9 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
                     // but including in it may allow us to tighten the methods in EntityTransientCopyInternal) 
                     result = m.invoke(delegate, args);
                 } else {
-                    throw new UnsupportedOperationException("Call to '"+sig+"' not permitted on read-only entity "+delegate);
+                    throw new UnsupportedOperationException("Call to '"+new MethodSignature(m)+"' not permitted on read-only entity "+delegate);
                 }
-            } else if (ENTITY_NON_EFFECTOR_METHODS.contains(sig)) {
+            } else if (kind == MethodKind.ENTITY_NON_EFFECTOR) {
                 result = m.invoke(delegate, args);
             } else {
                 Object[] nonNullArgs = (args == null) ? new Object[0] : args;
@@ -220,14 +270,19 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
     }
     
     private Effector<?> findEffector(Method m, Object[] args) {
-        String name = m.getName();
-        Set<Effector<?>> effectors = delegate.getEntityType().getEffectors();
-        for (Effector<?> contender : effectors) {
-            if (name.equals(contender.getName())) {
-                return contender;
-            }
+        // the type snapshot is replaced whenever effectors are added or removed (or the delegate changes)
+        EntityType entityType = delegate.getEntityType();
+        EffectorLookup lookup = effectorLookup;
+        if (lookup == null || lookup.entityType != entityType) {
+            lookup = new EffectorLookup(entityType);
+            effectorLookup = lookup;
+        }
+        Maybe<Effector<?>> result = lookup.effectors.get(m);
+        if (result == null) {
+            result = entityType.getEffectorByName(m.getName());
+            lookup.effectors.put(m, result);
         }
-        return null;
+        return result.orNull();
     }
     
     private static class MethodSignature {
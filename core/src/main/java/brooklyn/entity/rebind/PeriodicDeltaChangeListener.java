@@ -18,6 +18,7 @@
  */
 package brooklyn.entity.rebind;
 
+import java.lang.reflect.Proxy;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -35,8 +36,11 @@ import brooklyn.basic.BrooklynObjectInternal;
 import brooklyn.catalog.CatalogItem;
 import brooklyn.entity.Entity;
 import brooklyn.entity.Feed;
+import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
 import brooklyn.entity.rebind.persister.BrooklynPersistenceUtils;
 import brooklyn.entity.rebind.persister.PersistenceActivityMetrics;
 import brooklyn.internal.BrooklynFeatureEnablement;
@@ -50,6 +54,7 @@ import brooklyn.util.collections.MutableMap;
 import brooklyn.util.collections.MutableSet;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.exceptions.RuntimeInterruptedException;
+import brooklyn.util.guava.Maybe;
 import brooklyn.util.task.ScheduledTask;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.time.CountdownTimer;
@@ -178,13 +183,26 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     private final boolean persistPoliciesEnabled;
     private final boolean persistEnrichersEnabled;
     private final boolean persistFeedsEnabled;
+    private final boolean entityPatchesEnabled;
     
     private final Semaphore persistingMutex = new Semaphore(1);
+
+    /** ids of entities whose record of changed fields was lost (e.g. memento generation failed), so must next be written in full;
+     * only accessed when holding {@link #persistingMutex} */
+    private final Set<String> entitiesNeedingFullWrite = Sets.newLinkedHashSet();
     private final Object startMutex = new Object();
 
     private PersistenceActivityMetrics metrics;
     
     public PeriodicDeltaChangeListener(ExecutionContext executionContext, BrooklynMementoPersister persister, PersistenceExceptionHandler exceptionHandler, PersistenceActivityMetrics metrics, Duration period) {
+        this(executionContext, persister, exceptionHandler, metrics, period, false);
+    }
+    
+    /**
+     * @param entityPatchesEnabled whether to record which fields of each entity have changed, so the persister can
+     *        write them incrementally (see {@link BrooklynMementoPersisterToObjectStore#PERSISTER_ENTITY_PATCHES_ENABLED})
+     */
+    public PeriodicDeltaChangeListener(ExecutionContext executionContext, BrooklynMementoPersister persister, PersistenceExceptionHandler exceptionHandler, PersistenceActivityMetrics metrics, Duration period, boolean entityPatchesEnabled) {
         this.executionContext = executionContext;
         this.persister = persister;
         this.exceptionHandler = exceptionHandler;
@@ -194,6 +212,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         this.persistPoliciesEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_POLICY_PERSISTENCE_PROPERTY);
         this.persistEnrichersEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_ENRICHER_PERSISTENCE_PROPERTY);
         this.persistFeedsEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_FEED_PERSISTENCE_PROPERTY);
+        this.entityPatchesEnabled = entityPatchesEnabled;
     }
     
     @SuppressWarnings("unchecked")
@@ -389,8 +408,14 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                 for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
                     for (BrooklynObject instance: prevDeltaCollector.getCollectionOfType(type)) {
                         try {
+                            if (entityPatchesEnabled && instance instanceof Entity) {
+                                // take the record of changed fields *before* generating the memento, so any concurrent 
+                                // change is either in this memento or recorded for the next
+                                recordChangedFields(persisterDelta, (Entity)instance);
+                            }
                             persisterDelta.add(type, ((BrooklynObjectInternal)instance).getRebindSupport().getMemento());
                         } catch (Exception e) {
+                            if (instance instanceof Entity) entitiesNeedingFullWrite.add(instance.getId());
                             exceptionHandler.onGenerateMementoFailed(type, instance, e);
                         }
                     }
@@ -424,6 +449,18 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         }
     }
     
+    private void recordChangedFields(PersisterDeltaImpl persisterDelta, Entity instance) {
+        // newly managed entities are reported by their proxy
+        Entity real = Proxy.isProxyClass(instance.getClass()) ? Entities.deproxy(instance) : instance;
+        if (!(real instanceof AbstractEntity)) return;
+        AbstractEntity entity = (AbstractEntity) real;
+        Maybe<Set<String>> attributeNames = entity.getAttributeMap().getAndClearDirtyNames();
+        Maybe<Set<String>> configNames = entity.getConfigMap().getAndClearDirtyKeyNames();
+        if (attributeNames.isPresent() && configNames.isPresent() && !entitiesNeedingFullWrite.remove(entity.getId())) {
+            persisterDelta.changedEntityFields(entity.getId(), attributeNames.get(), configNames.get());
+        }
+    }
+
     private static String limitedCountString(Collection<?> items) {
         if (items==null) return null;
         int size = items.size();
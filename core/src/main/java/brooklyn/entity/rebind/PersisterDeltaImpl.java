@@ -20,8 +20,11 @@ package brooklyn.entity.rebind;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 import brooklyn.mementos.BrooklynMementoPersister.Delta;
 import brooklyn.mementos.BrooklynMementoPersister.MutableDelta;
 import brooklyn.mementos.CatalogItemMemento;
@@ -34,6 +37,7 @@ import brooklyn.mementos.PolicyMemento;
 
 import com.google.common.annotations.Beta;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 public class PersisterDeltaImpl implements Delta, MutableDelta {
@@ -54,6 +58,10 @@ public class PersisterDeltaImpl implements Delta, MutableDelta {
     Collection <String> removedFeedIds = Sets.newLinkedHashSet();
     Collection<String> removedCatalogItemIds = Sets.newLinkedHashSet();
 
+    // for entities whose changes are known to be limited to particular attributes and config (keyed by entity id)
+    Map<String, Set<String>> changedEntityAttributeNames = Maps.newLinkedHashMap();
+    Map<String, Set<String>> changedEntityConfigNames = Maps.newLinkedHashMap();
+
     @Override
     public Collection<LocationMemento> locations() {
         return Collections.unmodifiableCollection(locations);
@@ -170,4 +178,29 @@ public class PersisterDeltaImpl implements Delta, MutableDelta {
         getRemovedIdsOfTypeMutable(type).addAll(removedIdsOfType);    
     }
 
+    /**
+     * Records that the only changes to the given entity since it was last persisted are to the named
+     * attributes and config keys (set or removed), so a persister may choose to write just those.
+     * Entities without such a record must be treated as changed in full.
+     */
+    @Beta
+    public void changedEntityFields(String entityId, Set<String> attributeNames, Set<String> configNames) {
+        changedEntityAttributeNames.put(entityId, attributeNames);
+        changedEntityConfigNames.put(entityId, configNames);
+    }
+
+    /** @see #changedEntityFields(String, Set, Set) */
+    @Beta
+    @Nullable
+    public Set<String> getChangedEntityAttributeNames(String entityId) {
+        return changedEntityAttributeNames.get(entityId);
+    }
+
+    /** @see #changedEntityFields(String, Set, Set) */
+    @Beta
+    @Nullable
+    public Set<String> getChangedEntityConfigNames(String entityId) {
+        return changedEntityConfigNames.get(entityId);
+    }
+
 }
@@ -25,9 +25,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -119,6 +123,10 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /** Manages the persistence/rebind process.
  * <p>
@@ -152,6 +160,13 @@ public class RebindManagerImpl implements RebindManager {
                 + "then linear regression to allow max 5% at 100 items and above", 
                 QuorumChecks.newLinearRange("[[0,-2],[10,8],[100,95],[200,190]]"));
 
+    @Beta
+    public static final ConfigKey<Integer> REBIND_PARALLELISM =
+        ConfigKeys.newIntegerConfigKey("rebind.parallelism",
+                "Number of threads to use to instantiate and reconstruct items on rebind, "
+                + "with the entities of each application reconstructed together (parent-first) in one thread; "
+                + "the default of 1 rebinds everything in the calling thread", 1);
+
     public static final Logger LOG = LoggerFactory.getLogger(RebindManagerImpl.class);
 
     private final ManagementContextInternal managementContext;
@@ -179,9 +194,11 @@ public class RebindManagerImpl implements RebindManager {
     private RebindFailureMode addPolicyFailureMode;
     private RebindFailureMode loadPolicyFailureMode;
     private QuorumCheck danglingRefsQuorumRequiredHealthy;
+    private int rebindParallelism;
     
     private PersistenceActivityMetrics rebindMetrics = new PersistenceActivityMetrics();
     private PersistenceActivityMetrics persistMetrics = new PersistenceActivityMetrics();
+    private volatile Map<String, Long> lastRebindPhaseTimesMillis = ImmutableMap.of();
 
     Integer firstRebindAppCount, firstRebindEntityCount, firstRebindItemCount;
     
@@ -224,6 +241,7 @@ public class RebindManagerImpl implements RebindManager {
         loadPolicyFailureMode = managementContext.getConfig().getConfig(LOAD_POLICY_FAILURE_MODE);
         
         danglingRefsQuorumRequiredHealthy = managementContext.getConfig().getConfig(DANGLING_REFERENCES_MIN_REQUIRED_HEALTHY);
+        rebindParallelism = Math.max(1, managementContext.getConfig().getConfig(REBIND_PARALLELISM));
 
         LOG.debug("{} initialized, settings: policies={}, enrichers={}, feeds={}, catalog={}",
                 new Object[]{this, persistPoliciesEnabled, persistEnrichersEnabled, persistFeedsEnabled, persistCatalogItemsEnabled});
@@ -266,7 +284,8 @@ public class RebindManagerImpl implements RebindManager {
         }
         this.persistenceStoreAccess = checkNotNull(val, "persister");
         
-        this.persistenceRealChangeListener = new PeriodicDeltaChangeListener(managementContext.getServerExecutionContext(), persistenceStoreAccess, exceptionHandler, persistMetrics, periodicPersistPeriod);
+        this.persistenceRealChangeListener = new PeriodicDeltaChangeListener(managementContext.getServerExecutionContext(), persistenceStoreAccess, exceptionHandler, persistMetrics, periodicPersistPeriod,
+                managementContext.getConfig().getConfig(BrooklynMementoPersisterToObjectStore.PERSISTER_ENTITY_PATCHES_ENABLED));
         this.persistencePublicChangeListener = new SafeChangeListener(persistenceRealChangeListener);
         
         if (persistenceRunning) {
@@ -543,9 +562,11 @@ public class RebindManagerImpl implements RebindManager {
             readOnlyRebindCount++;
 
         Stopwatch timer = Stopwatch.createStarted();
+        PhaseTimings phaseTimings = new PhaseTimings();
+        ListeningExecutorService executor = newRebindExecutor();
         try {
             Reflections reflections = new Reflections(classLoader);
-            RebindContextImpl rebindContext = new RebindContextImpl(exceptionHandler, classLoader);
+            final RebindContextImpl rebindContext = new RebindContextImpl(exceptionHandler, classLoader);
             
             exceptionHandler.onStart(rebindContext);
             
@@ -568,6 +589,9 @@ public class RebindManagerImpl implements RebindManager {
             //  6. reconstruct the entities etc (i.e. calling rebind() on the already-instantiated instances)
             //  7. add policies+enrichers+feeds to all the entities.
             //  8. manage the entities
+            //
+            // With rebind.parallelism > 1, instantiation in (3) and (5) is done concurrently, and (6) and (7)
+            // concurrently for each application; (1) and (4) are always done on the persister's thread pool.
             
             // TODO if underlying data-store is changed between first and second manifest read (e.g. to add an
             // entity), then second phase might try to reconstitute an entity that has not been put in
@@ -603,7 +627,8 @@ public class RebindManagerImpl implements RebindManager {
                 ") from "+getPersister().getBackingStoreDescription()+"...");
 
             BrooklynMementoRawData mementoRawData = persistenceStoreAccess.loadMementoRawData(exceptionHandler);
-            BrooklynMementoManifest mementoManifest = persistenceStoreAccess.loadMementoManifest(mementoRawData, exceptionHandler);
+            final BrooklynMementoManifest mementoManifest = persistenceStoreAccess.loadMementoManifest(mementoRawData, exceptionHandler);
+            phaseTimings.phaseComplete("load");
 
             boolean overwritingMaster = false;
             boolean isEmpty = mementoManifest.isEmpty();
@@ -630,7 +655,7 @@ public class RebindManagerImpl implements RebindManager {
             // PHASE TWO - build catalog so we can load other things
             //
             
-            BrooklynObjectInstantiator instantiator = new BrooklynObjectInstantiator(classLoader, rebindContext, reflections);
+            final BrooklynObjectInstantiator instantiator = new BrooklynObjectInstantiator(classLoader, rebindContext, reflections);
             
             // Instantiate catalog items
             if (persistCatalogItemsEnabled) {
@@ -702,50 +727,71 @@ public class RebindManagerImpl implements RebindManager {
             }
             
             
+            phaseTimings.phaseComplete("catalog");
+            
             //
             // PHASE THREE
             //
             
             // Instantiate locations
             logRebindingDebug("RebindManager instantiating locations: {}", mementoManifest.getLocationIdToType().keySet());
-            for (Map.Entry<String, String> entry : mementoManifest.getLocationIdToType().entrySet()) {
-                String locId = entry.getKey();
-                String locType = entry.getValue();
-                if (LOG.isTraceEnabled()) LOG.trace("RebindManager instantiating location {}", locId);
-                
-                try {
-                    Location location = instantiator.newLocation(locId, locType);
-                    rebindContext.registerLocation(locId, location);
-                } catch (Exception e) {
-                    exceptionHandler.onCreateFailed(BrooklynObjectType.LOCATION, locId, locType, e);
-                }
+            final Map<String, Location> newLocations = Maps.newConcurrentMap();
+            List<Runnable> tasks = Lists.newArrayList();
+            for (final Map.Entry<String, String> entry : mementoManifest.getLocationIdToType().entrySet()) {
+                tasks.add(new Runnable() { public void run() {
+                    String locId = entry.getKey();
+                    String locType = entry.getValue();
+                    if (LOG.isTraceEnabled()) LOG.trace("RebindManager instantiating location {}", locId);
+                    
+                    try {
+                        newLocations.put(locId, instantiator.newLocation(locId, locType));
+                    } catch (Exception e) {
+                        exceptionHandler.onCreateFailed(BrooklynObjectType.LOCATION, locId, locType, e);
+                    }
+                }});
+            }
+            runAll(executor, tasks);
+            // registered in the original order, whatever order they were instantiated in
+            for (String locId : mementoManifest.getLocationIdToType().keySet()) {
+                Location location = newLocations.get(locId);
+                if (location != null) rebindContext.registerLocation(locId, location);
             }
             
             // Instantiate entities
             logRebindingDebug("RebindManager instantiating entities: {}", mementoManifest.getEntityIdToManifest().keySet());
-            for (Map.Entry<String, EntityMementoManifest> entry : mementoManifest.getEntityIdToManifest().entrySet()) {
-                String entityId = entry.getKey();
-                EntityMementoManifest entityManifest = entry.getValue();
-                String catalogItemId = findCatalogItemId(classLoader, mementoManifest.getEntityIdToManifest(), entityManifest);
-                
-                if (LOG.isTraceEnabled()) LOG.trace("RebindManager instantiating entity {}", entityId);
-                
-                try {
-                    Entity entity = (Entity) instantiator.newEntity(entityId, entityManifest.getType(), catalogItemId);
-                    ((EntityInternal)entity).getManagementSupport().setReadOnly( rebindContext.isReadOnly(entity) );
-                    rebindContext.registerEntity(entityId, entity);
-
-                } catch (Exception e) {
-                    exceptionHandler.onCreateFailed(BrooklynObjectType.ENTITY, entityId, entityManifest.getType(), e);
-                }
+            final Map<String, Entity> newEntities = Maps.newConcurrentMap();
+            tasks = Lists.newArrayList();
+            for (final Map.Entry<String, EntityMementoManifest> entry : mementoManifest.getEntityIdToManifest().entrySet()) {
+                tasks.add(new Runnable() { public void run() {
+                    String entityId = entry.getKey();
+                    EntityMementoManifest entityManifest = entry.getValue();
+                    String catalogItemId = findCatalogItemId(classLoader, mementoManifest.getEntityIdToManifest(), entityManifest);
+                    
+                    if (LOG.isTraceEnabled()) LOG.trace("RebindManager instantiating entity {}", entityId);
+                    
+                    try {
+                        Entity entity = (Entity) instantiator.newEntity(entityId, entityManifest.getType(), catalogItemId);
+                        ((EntityInternal)entity).getManagementSupport().setReadOnly( rebindContext.isReadOnly(entity) );
+                        newEntities.put(entityId, entity);
+    
+                    } catch (Exception e) {
+                        exceptionHandler.onCreateFailed(BrooklynObjectType.ENTITY, entityId, entityManifest.getType(), e);
+                    }
+                }});
             }
-            
+            runAll(executor, tasks);
+            for (String entityId : mementoManifest.getEntityIdToManifest().keySet()) {
+                Entity entity = newEntities.get(entityId);
+                if (entity != null) rebindContext.registerEntity(entityId, entity);
+            }
+            phaseTimings.phaseComplete("instantiate");
             
             //
             // PHASE FOUR
             //
             
             BrooklynMemento memento = persistenceStoreAccess.loadMemento(mementoRawData, realLookupContext, exceptionHandler);
+            phaseTimings.phaseComplete("deserialize");
             
             
             //
@@ -755,15 +801,23 @@ public class RebindManagerImpl implements RebindManager {
             // Instantiate policies
             if (persistPoliciesEnabled) {
                 logRebindingDebug("RebindManager instantiating policies: {}", memento.getPolicyIds());
-                for (PolicyMemento policyMemento : memento.getPolicyMementos().values()) {
-                    logRebindingDebug("RebindManager instantiating policy {}", policyMemento);
-                    
-                    try {
-                        Policy policy = instantiator.newPolicy(policyMemento);
-                        rebindContext.registerPolicy(policyMemento.getId(), policy);
-                    } catch (Exception e) {
-                        exceptionHandler.onCreateFailed(BrooklynObjectType.POLICY, policyMemento.getId(), policyMemento.getType(), e);
-                    }
+                final Map<String, Policy> newPolicies = Maps.newConcurrentMap();
+                tasks = Lists.newArrayList();
+                for (final PolicyMemento policyMemento : memento.getPolicyMementos().values()) {
+                    tasks.add(new Runnable() { public void run() {
+                        logRebindingDebug("RebindManager instantiating policy {}", policyMemento);
+                        
+                        try {
+                            newPolicies.put(policyMemento.getId(), instantiator.newPolicy(policyMemento));
+                        } catch (Exception e) {
+                            exceptionHandler.onCreateFailed(BrooklynObjectType.POLICY, policyMemento.getId(), policyMemento.getType(), e);
+                        }
+                    }});
+                }
+                runAll(executor, tasks);
+                for (String policyId : memento.getPolicyMementos().keySet()) {
+                    Policy policy = newPolicies.get(policyId);
+                    if (policy != null) rebindContext.registerPolicy(policyId, policy);
                 }
             } else {
                 logRebindingDebug("Not rebinding policies; feature disabled: {}", memento.getPolicyIds());
@@ -772,15 +826,23 @@ public class RebindManagerImpl implements RebindManager {
             // Instantiate enrichers
             if (persistEnrichersEnabled) {
                 logRebindingDebug("RebindManager instantiating enrichers: {}", memento.getEnricherIds());
-                for (EnricherMemento enricherMemento : memento.getEnricherMementos().values()) {
-                    logRebindingDebug("RebindManager instantiating enricher {}", enricherMemento);
-
-                    try {
-                        Enricher enricher = instantiator.newEnricher(enricherMemento);
-                        rebindContext.registerEnricher(enricherMemento.getId(), enricher);
-                    } catch (Exception e) {
-                        exceptionHandler.onCreateFailed(BrooklynObjectType.ENRICHER, enricherMemento.getId(), enricherMemento.getType(), e);
-                    }
+                final Map<String, Enricher> newEnrichers = Maps.newConcurrentMap();
+                tasks = Lists.newArrayList();
+                for (final EnricherMemento enricherMemento : memento.getEnricherMementos().values()) {
+                    tasks.add(new Runnable() { public void run() {
+                        logRebindingDebug("RebindManager instantiating enricher {}", enricherMemento);
+    
+                        try {
+                            newEnrichers.put(enricherMemento.getId(), instantiator.newEnricher(enricherMemento));
+                        } catch (Exception e) {
+                            exceptionHandler.onCreateFailed(BrooklynObjectType.ENRICHER, enricherMemento.getId(), enricherMemento.getType(), e);
+                        }
+                    }});
+                }
+                runAll(executor, tasks);
+                for (String enricherId : memento.getEnricherMementos().keySet()) {
+                    Enricher enricher = newEnrichers.get(enricherId);
+                    if (enricher != null) rebindContext.registerEnricher(enricherId, enricher);
                 }
             } else {
                 logRebindingDebug("Not rebinding enrichers; feature disabled: {}", memento.getEnricherIds());
@@ -789,19 +851,28 @@ public class RebindManagerImpl implements RebindManager {
             // Instantiate feeds
             if (persistFeedsEnabled) {
                 logRebindingDebug("RebindManager instantiating feeds: {}", memento.getFeedIds());
-                for (FeedMemento feedMemento : memento.getFeedMementos().values()) {
-                    if (LOG.isDebugEnabled()) LOG.debug("RebindManager instantiating feed {}", feedMemento);
-
-                    try {
-                        Feed feed = instantiator.newFeed(feedMemento);
-                        rebindContext.registerFeed(feedMemento.getId(), feed);
-                    } catch (Exception e) {
-                        exceptionHandler.onCreateFailed(BrooklynObjectType.FEED, feedMemento.getId(), feedMemento.getType(), e);
-                    }
+                final Map<String, Feed> newFeeds = Maps.newConcurrentMap();
+                tasks = Lists.newArrayList();
+                for (final FeedMemento feedMemento : memento.getFeedMementos().values()) {
+                    tasks.add(new Runnable() { public void run() {
+                        if (LOG.isDebugEnabled()) LOG.debug("RebindManager instantiating feed {}", feedMemento);
+    
+                        try {
+                            newFeeds.put(feedMemento.getId(), instantiator.newFeed(feedMemento));
+                        } catch (Exception e) {
+                            exceptionHandler.onCreateFailed(BrooklynObjectType.FEED, feedMemento.getId(), feedMemento.getType(), e);
+                        }
+                    }});
+                }
+                runAll(executor, tasks);
+                for (String feedId : memento.getFeedMementos().keySet()) {
+                    Feed feed = newFeeds.get(feedId);
+                    if (feed != null) rebindContext.registerFeed(feedId, feed);
                 }
             } else {
                 logRebindingDebug("Not rebinding feeds; feature disabled: {}", memento.getFeedIds());
             } 
+            phaseTimings.phaseComplete("instantiateAdjuncts");
 
             //
             // PHASE SIX
@@ -889,23 +960,32 @@ public class RebindManagerImpl implements RebindManager {
             }
     
             // Reconstruct entities
+            // (each application's entities parent-first in one task, as reconstructing an entity updates its parent and children)
             logRebindingDebug("RebindManager reconstructing entities");
-            for (EntityMemento entityMemento : sortParentFirst(memento.getEntityMementos()).values()) {
-                Entity entity = rebindContext.lookup().lookupEntity(entityMemento.getId());
-                logRebindingDebug("RebindManager reconstructing entity {}", entityMemento);
-    
-                if (entity == null) {
-                    // usually because of creation-failure, when not using fail-fast
-                    exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
-                } else {
-                    try {
-                        entityMemento.injectTypeClass(entity.getClass());
-                        ((EntityInternal)entity).getRebindSupport().reconstruct(rebindContext, entityMemento);
-                    } catch (Exception e) {
-                        exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
+            Collection<List<EntityMemento>> entityTrees = groupByRoot(sortParentFirst(memento.getEntityMementos())).values();
+            tasks = Lists.newArrayList();
+            for (final List<EntityMemento> entityTree : entityTrees) {
+                tasks.add(new Runnable() { public void run() {
+                    for (EntityMemento entityMemento : entityTree) {
+                        Entity entity = rebindContext.lookup().lookupEntity(entityMemento.getId());
+                        logRebindingDebug("RebindManager reconstructing entity {}", entityMemento);
+            
+                        if (entity == null) {
+                            // usually because of creation-failure, when not using fail-fast
+                            exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
+                        } else {
+                            try {
+                                entityMemento.injectTypeClass(entity.getClass());
+                                ((EntityInternal)entity).getRebindSupport().reconstruct(rebindContext, entityMemento);
+                            } catch (Exception e) {
+                                exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
+                            }
+                        }
                     }
-                }
+                }});
             }
+            runAll(executor, tasks);
+            phaseTimings.phaseComplete("reconstruct");
 
             //
             // PHASE SEVEN
@@ -913,27 +993,33 @@ public class RebindManagerImpl implements RebindManager {
             
             // Associate policies+enrichers+feeds with entities
             logRebindingDebug("RebindManager reconstructing entities");
-            for (EntityMemento entityMemento : sortParentFirst(memento.getEntityMementos()).values()) {
-                Entity entity = rebindContext.getEntity(entityMemento.getId());
-                logRebindingDebug("RebindManager reconstructing entity {}", entityMemento);
-    
-                if (entity == null) {
-                    // usually because of creation-failure, when not using fail-fast
-                    exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
-                } else {
-                    try {
-                        entityMemento.injectTypeClass(entity.getClass());
-                        // TODO these call to the entity which in turn sets the entity on the underlying feeds and enrichers;
-                        // that is taken as the cue to start, but it should not be. start should be a separate call.
-                        ((EntityInternal)entity).getRebindSupport().addPolicies(rebindContext, entityMemento);
-                        ((EntityInternal)entity).getRebindSupport().addEnrichers(rebindContext, entityMemento);
-                        ((EntityInternal)entity).getRebindSupport().addFeeds(rebindContext, entityMemento);
-                    } catch (Exception e) {
-                        exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
+            tasks = Lists.newArrayList();
+            for (final List<EntityMemento> entityTree : entityTrees) {
+                tasks.add(new Runnable() { public void run() {
+                    for (EntityMemento entityMemento : entityTree) {
+                        Entity entity = rebindContext.getEntity(entityMemento.getId());
+                        logRebindingDebug("RebindManager reconstructing entity {}", entityMemento);
+            
+                        if (entity == null) {
+                            // usually because of creation-failure, when not using fail-fast
+                            exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
+                        } else {
+                            try {
+                                entityMemento.injectTypeClass(entity.getClass());
+                                // TODO these call to the entity which in turn sets the entity on the underlying feeds and enrichers;
+                                // that is taken as the cue to start, but it should not be. start should be a separate call.
+                                ((EntityInternal)entity).getRebindSupport().addPolicies(rebindContext, entityMemento);
+                                ((EntityInternal)entity).getRebindSupport().addEnrichers(rebindContext, entityMemento);
+                                ((EntityInternal)entity).getRebindSupport().addFeeds(rebindContext, entityMemento);
+                            } catch (Exception e) {
+                                exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
+                            }
+                        }
                     }
-                }
+                }});
             }
-            
+            runAll(executor, tasks);
+            phaseTimings.phaseComplete("associateAdjuncts");
             
             //
             // PHASE EIGHT
@@ -997,9 +1083,12 @@ public class RebindManagerImpl implements RebindManager {
                entityManager.unmanage(entityManager.getEntity(oldEntityId), ManagementTransitionMode.REBINDING_DESTROYED); 
             }
 
+            phaseTimings.phaseComplete("manage");
+
             exceptionHandler.onDone();
             
             rebindMetrics.noteSuccess(Duration.of(timer));
+            lastRebindPhaseTimesMillis = phaseTimings.asMap();
             noteErrors(exceptionHandler, null);
             if (firstRebindAppCount==null) {
                 firstRebindAppCount = apps.size();
@@ -1020,6 +1109,7 @@ public class RebindManagerImpl implements RebindManager {
                     rebindContext.getCatalogItems().size(), Strings.s(rebindContext.getCatalogItems())
                 });
             }
+            logRebindingDebug("RebindManager phase times (ms): {}", lastRebindPhaseTimesMillis);
 
             // Return the top-level applications
             logRebindingDebug("RebindManager complete; apps: {}", memento.getApplicationIds());
@@ -1033,11 +1123,68 @@ public class RebindManagerImpl implements RebindManager {
             throw exceptionHandler.onFailed(e);
             
         } finally {
+            executor.shutdownNow();
             rebindActive.release();
             RebindTracker.reset();
         }
     }
 
+    private ListeningExecutorService newRebindExecutor() {
+        if (rebindParallelism <= 1) return MoreExecutors.sameThreadExecutor();
+        final AtomicInteger threadCount = new AtomicInteger();
+        return MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(rebindParallelism, new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                return new Thread(r, "brooklyn-rebind-"+threadCount.incrementAndGet());
+            }}));
+    }
+
+    /**
+     * Runs the given tasks on the executor, as rebinding, and waits for them all to complete; 
+     * the tasks are expected to report their own failures to the exception handler, 
+     * so any exception thrown (e.g. when failing fast) is propagated.
+     */
+    private void runAll(ListeningExecutorService executor, List<Runnable> tasks) {
+        List<ListenableFuture<?>> futures = Lists.newArrayListWithCapacity(tasks.size());
+        for (final Runnable task : tasks) {
+            futures.add(executor.submit(new Runnable() {
+                @Override public void run() {
+                    boolean wasRebinding = RebindTracker.isRebinding();
+                    RebindTracker.setRebinding();
+                    try {
+                        task.run();
+                    } finally {
+                        if (!wasRebinding) RebindTracker.reset();
+                    }
+                }}));
+        }
+        try {
+            Futures.allAsList(futures).get();
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } finally {
+            for (ListenableFuture<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /** Records the time taken by each phase of rebind, in the order they completed. */
+    private static class PhaseTimings {
+        private final Stopwatch stopwatch = Stopwatch.createStarted();
+        private final Map<String, Long> timesMillis = MutableMap.of();
+        
+        void phaseComplete(String phase) {
+            timesMillis.put(phase, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+            stopwatch.reset().start();
+        }
+        
+        Map<String, Long> asMap() {
+            return ImmutableMap.copyOf(timesMillis);
+        }
+    }
+
     private void noteErrors(final RebindExceptionHandler exceptionHandler, Exception primaryException) {
         List<Exception> exceptions = exceptionHandler.getExceptions();
         List<String> warnings = exceptionHandler.getWarnings();
@@ -1176,6 +1323,28 @@ public class RebindManagerImpl implements RebindManager {
         return result;
     }
 
+    /**
+     * Groups the nodes by the root of their tree (i.e. the first ancestor whose parent is missing), 
+     * keeping the order of the given map (so each tree is parent-first if the map is).
+     */
+    @VisibleForTesting
+    <T extends TreeNode> Map<String, List<T>> groupByRoot(Map<String, T> nodes) {
+        Map<String, List<T>> result = Maps.newLinkedHashMap();
+        for (T node : nodes.values()) {
+            T root = node;
+            while (root.getParent() != null && nodes.containsKey(root.getParent())) {
+                root = nodes.get(root.getParent());
+            }
+            List<T> tree = result.get(root.getId());
+            if (tree == null) {
+                tree = Lists.newArrayList();
+                result.put(root.getId(), tree);
+            }
+            tree.add(node);
+        }
+        return result;
+    }
+
     private class BrooklynObjectInstantiator {
 
         private final ClassLoader classLoader;
@@ -1483,6 +1652,7 @@ public class RebindManagerImpl implements RebindManager {
 
         result.put("rebind", rebindMetrics.asMap());
         result.put("persist", persistMetrics.asMap());
+        result.put("lastRebindPhaseTimesMillis", lastRebindPhaseTimesMillis);
         
         if (readOnlyRebindCount>=0)
             result.put("rebindReadOnlyCount", readOnlyRebindCount);
@@ -20,8 +20,10 @@ package brooklyn.entity.rebind.dto;
 
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.codehaus.jackson.annotate.JsonAutoDetect;
 import org.codehaus.jackson.annotate.JsonAutoDetect.Visibility;
@@ -42,6 +44,7 @@ import brooklyn.event.basic.Sensors;
 import brooklyn.mementos.EntityMemento;
 import brooklyn.mementos.TreeNode;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -94,6 +97,30 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
             tags.addAll(other.getTags());
             return this;
         }
+        /**
+         * Drops all config and attributes other than those named, along with all other non-identifying fields;
+         * the resulting memento describes only those values, e.g. to be applied as a patch on top of a full memento.
+         */
+        @Beta
+        public Builder retainOnly(Set<String> configNames, Set<String> attributeNames) {
+            for (Iterator<ConfigKey<?>> iter = config.keySet().iterator(); iter.hasNext();) {
+                if (!configNames.contains(iter.next().getName())) iter.remove();
+            }
+            configUnmatched.keySet().retainAll(configNames);
+            for (Iterator<AttributeSensor<?>> iter = attributes.keySet().iterator(); iter.hasNext();) {
+                if (!attributeNames.contains(iter.next().getName())) iter.remove();
+            }
+            locations.clear();
+            policies.clear();
+            enrichers.clear();
+            feeds.clear();
+            members.clear();
+            effectors.clear();
+            children.clear();
+            tags.clear();
+            customFields.clear();
+            return this;
+        }
         public EntityMemento build() {
             invalidate();
             return new BasicEntityMemento(this);
@@ -0,0 +1,441 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.thoughtworks.xstream.converters.ErrorWriter;
+import com.thoughtworks.xstream.io.ExtendedHierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.StreamException;
+import com.thoughtworks.xstream.io.naming.NoNameCoder;
+import com.thoughtworks.xstream.io.xml.AbstractDocumentReader;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+
+/**
+ * Serializes mementos in a compact binary form of the XML written by {@link XmlMementoSerializer}:
+ * the same converters and aliases are used, but the document is written as a stream of tokens
+ * without any of the XML syntax, escaping or indentation.
+ * <p>
+ * Element and attribute names (and attribute values, which are mostly class names) are written as
+ * numeric ids: either into a fixed dictionary of the names common to all mementos, or else defined
+ * inline on their first use in the memento. As fields are still tagged by name (rather than by
+ * position), mementos remain as tolerant of class evolution as the XML form.
+ * <p>
+ * The persistence stores hold strings, so the tokens are written as chars, all but those of text
+ * being less than 256 (and so compact when the string is written as UTF-8). The result is prefixed
+ * with {@link #PREFIX} so that it can be told apart from XML; both forms can be read by either
+ * serializer, and converted to the other without loading any classes.
+ */
+@Beta
+public class BinaryMementoSerializer<T> extends XmlMementoSerializer<T> {
+
+    /** prefix of the binary form, which can never start an XML document; includes the format version */
+    public static final String PREFIX = "brooklyn-binary-memento:1:";
+
+    private static final char START_NODE = 1;
+    private static final char ATTRIBUTE = 2;
+    private static final char VALUE = 3;
+    private static final char END_NODE = 4;
+
+    /**
+     * Names which are given ids without being defined in each memento.
+     * Part of the format: this must not be changed without changing the version in the {@link #PREFIX}.
+     */
+    private static final List<String> DICTIONARY = ImmutableList.of(
+            // elements of the mementos
+            "brooklyn", "entity", "location", "policy", "enricher", "feed", "catalogItem",
+            "brooklynVersion", "type", "id", "displayName", "catalogItemId", "parent", "children",
+            "locations", "policies", "enrichers", "feeds", "members", "effectors", "tags", "uniqueTag",
+            "config", "configKeys", "configUnmatched", "attributes", "attributeKeys", "flags",
+            "locationConfig", "locationConfigUnused", "locationConfigDescription", "customFields",
+            "attributeSensor", "configKey", "effector", "parameter", "name", "description", "defaultValue",
+            "reconfigurable", "inheritance", "typeToken", "runtimeType", "rawType", "argumentsList",
+            "entityProxy", "locationProxy", "entityRef", "locationRef", "policyRef", "enricherRef",
+            // elements of common values
+            "string", "int", "long", "double", "float", "short", "byte", "char", "boolean", "null",
+            "map", "set", "list", "entry", "MutableMap", "MutableSet", "MutableList", "ImmutableList",
+            "java-class", "java.util.Map", "java.util.List", "java.util.Set", "java.lang.Object",
+            "java.lang.String", "java.lang.Integer", "java.lang.Long", "java.lang.Boolean", "java.lang.Double",
+            // attributes
+            "class", "key", "reference", "resolves-to", "defined-in",
+            "com.google.common.reflect.TypeToken$SimpleTypeToken",
+            "com.google.common.reflect.Types$ParameterizedTypeImpl");
+
+    private static final Map<String, Integer> DICTIONARY_IDS;
+    static {
+        ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+        for (int i = 0; i < DICTIONARY.size(); i++) {
+            builder.put(DICTIONARY.get(i), i);
+        }
+        DICTIONARY_IDS = builder.build();
+    }
+
+    /** the driver used by default by xstream, and so for the XML form */
+    private static final XppDriver XML_DRIVER = new XppDriver();
+
+    public BinaryMementoSerializer(ClassLoader classLoader) {
+        super(classLoader);
+    }
+
+    @Override
+    public String toString(T memento) {
+        BinaryWriter writer = new BinaryWriter();
+        xstream.marshal(memento, writer);
+        return writer.getResult();
+    }
+
+    public static boolean isBinary(String contents) {
+        return contents != null && contents.startsWith(PREFIX);
+    }
+
+    /** Returns a reader for the given memento, whether binary or XML. */
+    public static HierarchicalStreamReader newReader(String contents) {
+        if (isBinary(contents)) {
+            return new BinaryReader(contents);
+        } else {
+            return XML_DRIVER.createReader(new StringReader(contents));
+        }
+    }
+
+    /** Converts the given memento (binary or XML) to its binary form. */
+    public static String toBinary(String contents) {
+        if (isBinary(contents)) return contents;
+        BinaryWriter writer = new BinaryWriter();
+        copy(newReader(contents), writer);
+        return writer.getResult();
+    }
+
+    /** Converts the given memento (binary or XML) to XML, as would be written by {@link XmlMementoSerializer}. */
+    public static String toXml(String contents) {
+        if (!isBinary(contents)) return contents;
+        StringWriter out = new StringWriter(contents.length() * 2);
+        copy(newReader(contents), XML_DRIVER.createWriter(out));
+        return out.append("\n").toString();
+    }
+
+    private static void copy(HierarchicalStreamReader reader, HierarchicalStreamWriter writer) {
+        try {
+            copyNode(reader, writer);
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    /**
+     * As {@link com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier}, but ignoring the whitespace between
+     * the children of an element (xstream does not write mixed content), and empty values (which both forms
+     * read as the empty string anyway).
+     */
+    private static void copyNode(HierarchicalStreamReader reader, HierarchicalStreamWriter writer) {
+        writer.startNode(reader.getNodeName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            writer.addAttribute(reader.getAttributeName(i), reader.getAttribute(i));
+        }
+        if (reader.hasMoreChildren()) {
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                copyNode(reader, writer);
+                reader.moveUp();
+            }
+        } else {
+            String value = reader.getValue();
+            if (value != null && value.length() > 0) writer.setValue(value);
+        }
+        writer.endNode();
+    }
+
+    /**
+     * Returns the value of the given child of the memento's root element (e.g. its {@code id} or {@code type}),
+     * or the empty string if there is no such child; the equivalent of the xpath {@code /<root>/<childName>}.
+     */
+    public static String getTopLevelValue(String contents, String childName) {
+        HierarchicalStreamReader reader = newReader(contents);
+        try {
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                try {
+                    if (childName.equals(reader.getNodeName())) return reader.getValue();
+                } finally {
+                    reader.moveUp();
+                }
+            }
+            return "";
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static class BinaryWriter implements ExtendedHierarchicalStreamWriter {
+        private final StringBuilder out = new StringBuilder(PREFIX);
+        private final Map<String, Integer> definedIds = Maps.newHashMap();
+
+        @Override
+        public void startNode(String name) {
+            out.append(START_NODE);
+            writeName(name);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public void startNode(String name, Class clazz) {
+            startNode(name);
+        }
+
+        @Override
+        public void addAttribute(String name, String value) {
+            out.append(ATTRIBUTE);
+            writeName(name);
+            writeName(value);
+        }
+
+        @Override
+        public void setValue(String text) {
+            out.append(VALUE);
+            writeString(text);
+        }
+
+        @Override
+        public void endNode() {
+            out.append(END_NODE);
+        }
+
+        /** writes the id of the name plus one, or zero followed by the name where it is not yet defined */
+        private void writeName(String name) {
+            Integer id = DICTIONARY_IDS.get(name);
+            if (id == null) id = definedIds.get(name);
+            if (id != null) {
+                writeInt(id + 1);
+            } else {
+                writeInt(0);
+                writeString(name);
+                definedIds.put(name, DICTIONARY.size() + definedIds.size());
+            }
+        }
+
+        private void writeString(String text) {
+            writeInt(text.length());
+            out.append(text);
+        }
+
+        /** variable length, in chars of 7 bits */
+        private void writeInt(int val) {
+            while ((val & ~0x7F) != 0) {
+                out.append((char) ((val & 0x7F) | 0x80));
+                val >>>= 7;
+            }
+            out.append((char) val);
+        }
+
+        String getResult() {
+            return out.toString();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public HierarchicalStreamWriter underlyingWriter() {
+            return this;
+        }
+    }
+
+    private static class Node {
+        final String name;
+        final Node parent;
+        final List<String> attributeNames = new ArrayList<String>(2);
+        final List<String> attributeValues = new ArrayList<String>(2);
+        final List<Node> children = new ArrayList<Node>(4);
+        String value;
+
+        Node(String name, Node parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+    }
+
+    /** reads the whole memento into a tree of {@link Node}s, which is then navigated as any xstream document */
+    private static class BinaryReader extends AbstractDocumentReader {
+        private Node current;
+
+        BinaryReader(String contents) {
+            super(new Parser(contents).parse(), new NoNameCoder());
+        }
+
+        @Override
+        protected void reassignCurrentElement(Object element) {
+            current = (Node) element;
+        }
+
+        @Override
+        protected Object getParent() {
+            return current.parent;
+        }
+
+        @Override
+        protected Object getChild(int index) {
+            return current.children.get(index);
+        }
+
+        @Override
+        protected int getChildCount() {
+            return current.children.size();
+        }
+
+        @Override
+        public String getNodeName() {
+            return current.name;
+        }
+
+        @Override
+        public String getValue() {
+            return current.value == null ? "" : current.value;
+        }
+
+        @Override
+        public String getAttribute(String name) {
+            int index = current.attributeNames.indexOf(name);
+            return (index < 0) ? null : current.attributeValues.get(index);
+        }
+
+        @Override
+        public String getAttribute(int index) {
+            return current.attributeValues.get(index);
+        }
+
+        @Override
+        public int getAttributeCount() {
+            return current.attributeNames.size();
+        }
+
+        @Override
+        public String getAttributeName(int index) {
+            return current.attributeNames.get(index);
+        }
+
+        @Override
+        public void appendErrors(ErrorWriter errorWriter) {
+            errorWriter.add("binary-memento-node", current.name);
+        }
+    }
+
+    private static class Parser {
+        private final String in;
+        private final List<String> definedNames = Lists.newArrayList();
+        private int pos = PREFIX.length();
+
+        Parser(String in) {
+            this.in = in;
+        }
+
+        Node parse() {
+            Node root = null;
+            Node current = null;
+            while (pos < in.length()) {
+                char token = in.charAt(pos++);
+                switch (token) {
+                case START_NODE:
+                    Node node = new Node(readName(), current);
+                    if (current != null) {
+                        current.children.add(node);
+                    } else if (root == null) {
+                        root = node;
+                    } else {
+                        throw new StreamException("Malformed binary memento: multiple root elements");
+                    }
+                    current = node;
+                    break;
+                case ATTRIBUTE:
+                    checkInNode(current);
+                    current.attributeNames.add(readName());
+                    current.attributeValues.add(readName());
+                    break;
+                case VALUE:
+                    checkInNode(current);
+                    current.value = readString();
+                    break;
+                case END_NODE:
+                    checkInNode(current);
+                    current = current.parent;
+                    break;
+                default:
+                    throw new StreamException("Malformed binary memento: unexpected token "+(int)token+" at "+(pos-1));
+                }
+            }
+            if (root == null || current != null) {
+                throw new StreamException("Malformed binary memento: incomplete");
+            }
+            return root;
+        }
+
+        private void checkInNode(Node current) {
+            if (current == null) throw new StreamException("Malformed binary memento: no element at "+(pos-1));
+        }
+
+        private String readName() {
+            int id = readInt();
+            if (id == 0) {
+                String result = readString();
+                definedNames.add(result);
+                return result;
+            }
+            id--;
+            if (id < DICTIONARY.size()) return DICTIONARY.get(id);
+            id -= DICTIONARY.size();
+            if (id < definedNames.size()) return definedNames.get(id);
+            throw new StreamException("Malformed binary memento: undefined name "+id+" at "+pos);
+        }
+
+        private String readString() {
+            int length = readInt();
+            if (pos + length > in.length()) throw new StreamException("Malformed binary memento: truncated at "+pos);
+            String result = in.substring(pos, pos + length);
+            pos += length;
+            return result;
+        }
+
+        private int readInt() {
+            int result = 0;
+            int shift = 0;
+            while (true) {
+                if (pos >= in.length()) throw new StreamException("Malformed binary memento: truncated at "+pos);
+                char c = in.charAt(pos++);
+                result |= (c & 0x7F) << shift;
+                if ((c & 0x80) == 0) return result;
+                shift += 7;
+            }
+        }
+    }
+}
@@ -24,6 +24,8 @@ import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -42,6 +44,7 @@ import brooklyn.catalog.CatalogItem;
 import brooklyn.catalog.internal.CatalogUtils;
 import brooklyn.config.ConfigKey;
 import brooklyn.config.StringConfigMap;
+import brooklyn.event.AttributeSensor;
 import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.entity.rebind.BrooklynObjectType;
 import brooklyn.entity.rebind.PeriodicDeltaChangeListener;
@@ -49,6 +52,7 @@ import brooklyn.entity.rebind.PersistenceExceptionHandler;
 import brooklyn.entity.rebind.PersisterDeltaImpl;
 import brooklyn.entity.rebind.RebindExceptionHandler;
 import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
 import brooklyn.entity.rebind.dto.BrooklynMementoManifestImpl;
 import brooklyn.entity.rebind.persister.PersistenceObjectStore.StoreObjectAccessor;
 import brooklyn.entity.rebind.persister.PersistenceObjectStore.StoreObjectAccessorWithLock;
@@ -58,8 +62,10 @@ import brooklyn.mementos.BrooklynMementoManifest;
 import brooklyn.mementos.BrooklynMementoPersister;
 import brooklyn.mementos.BrooklynMementoRawData;
 import brooklyn.mementos.CatalogItemMemento;
+import brooklyn.mementos.EntityMemento;
 import brooklyn.mementos.Memento;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.collections.MutableSet;
 import brooklyn.util.exceptions.CompoundRuntimeException;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.text.Strings;
@@ -73,6 +79,8 @@ import com.google.common.base.Objects;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -99,13 +107,47 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             "Maximum number of attempts to serialize a memento (e.g. if first attempts fail because of concurrent modifications of an entity)", 
             5);
 
+    @Beta
+    public static final ConfigKey<Boolean> PERSISTER_ENTITY_PATCHES_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "persister.entityPatches.enabled",
+            "Whether to persist entities incrementally where possible, appending just their changed attributes and config "
+            + "rather than rewriting the whole memento", 
+            false);
+
+    @Beta
+    public static final ConfigKey<Integer> PERSISTER_ENTITY_PATCHES_COMPACT_AFTER = ConfigKeys.newIntegerConfigKey(
+            "persister.entityPatches.compactAfter",
+            "Number of patches after which an entity is written in full again (it is also written in full "
+            + "once its patches are larger than its full memento)", 
+            20);
+
+    @Beta
+    public static final ConfigKey<MementoSerializationFormat> PERSISTER_SERIALIZATION_FORMAT = ConfigKeys.newConfigKey(
+            MementoSerializationFormat.class,
+            "persister.serializationFormat",
+            "Format in which mementos are written: XML, or BINARY for a more compact form which is faster to write and read "
+            + "(mementos in either format are always read)", 
+            MementoSerializationFormat.XML);
+
+    static final String ENTITY_PATCHES_SUBPATH = "entityPatches";
+
     private final PersistenceObjectStore objectStore;
+    private final MementoSerializationFormat serializationFormat;
     private final MementoSerializer<Object> serializerWithStandardClassLoader;
 
     private final Map<String, StoreObjectAccessorWithLock> writers = new LinkedHashMap<String, PersistenceObjectStore.StoreObjectAccessorWithLock>();
 
     private final ListeningExecutorService executor;
 
+    private final boolean entityPatchesEnabled;
+    private final int entityPatchesCompactAfter;
+
+    /** entities written in full by this persister, to which patches can be appended */
+    private final ConcurrentMap<String, EntityPatchState> entityPatchStates = Maps.newConcurrentMap();
+    /** entities which may have patches in the store not tracked in {@link #entityPatchStates} (e.g. found when loading), 
+     * which must be deleted when the entity is next written in full */
+    private final Set<String> entitiesWithUntrackedPatches = Sets.newConcurrentHashSet();
+
     private volatile boolean writesAllowed = false;
     private volatile boolean writesShuttingDown = false;
     private StringConfigMap brooklynProperties;
@@ -121,10 +163,13 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         this.brooklynProperties = brooklynProperties;
         
         int maxSerializationAttempts = brooklynProperties.getConfig(PERSISTER_MAX_SERIALIZATION_ATTEMPTS);
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        this.serializationFormat = checkNotNull(brooklynProperties.getConfig(PERSISTER_SERIALIZATION_FORMAT), "serializationFormat");
+        MementoSerializer<Object> rawSerializer = serializationFormat.newSerializer(classLoader);
         this.serializerWithStandardClassLoader = new RetryingMementoSerializer<Object>(rawSerializer, maxSerializationAttempts);
 
         int maxThreadPoolSize = brooklynProperties.getConfig(PERSISTER_MAX_THREAD_POOL_SIZE);
+        entityPatchesEnabled = brooklynProperties.getConfig(PERSISTER_ENTITY_PATCHES_ENABLED);
+        entityPatchesCompactAfter = brooklynProperties.getConfig(PERSISTER_ENTITY_PATCHES_COMPACT_AFTER);
 
         objectStore.createSubPath("entities");
         objectStore.createSubPath("locations");
@@ -132,6 +177,7 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         objectStore.createSubPath("enrichers");
         objectStore.createSubPath("feeds");
         objectStore.createSubPath("catalog");
+        if (entityPatchesEnabled) objectStore.createSubPath(ENTITY_PATCHES_SUBPATH);
 
         // FIXME does it belong here or to ManagementPlaneSyncRecordPersisterToObjectStore ?
         objectStore.createSubPath("plane");
@@ -154,7 +200,7 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     
     protected MementoSerializer<Object> getSerializerWithCustomClassLoader(LookupContext lookupContext, ClassLoader classLoader) {
         int maxSerializationAttempts = brooklynProperties.getConfig(PERSISTER_MAX_SERIALIZATION_ATTEMPTS);
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        MementoSerializer<Object> rawSerializer = serializationFormat.newSerializer(classLoader);
         MementoSerializer<Object> result = new RetryingMementoSerializer<Object>(rawSerializer, maxSerializationAttempts);
         result.setLookupContext(lookupContext);
         return result;
@@ -217,12 +263,11 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     }
 
     protected StoreObjectAccessorWithLock getWriter(String path) {
-        String id = path.substring(path.lastIndexOf('/')+1);
         synchronized (writers) {
-            StoreObjectAccessorWithLock writer = writers.get(id);
+            StoreObjectAccessorWithLock writer = writers.get(path);
             if (writer == null) {
                 writer = new StoreObjectAccessorLocking( objectStore.newAccessor(path) );
-                writers.put(id, writer);
+                writers.put(path, writer);
             }
             return writer;
         }
@@ -267,6 +312,7 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     
     public BrooklynMementoRawData loadMementoRawData(final RebindExceptionHandler exceptionHandler) {
         BrooklynMementoRawData subPathData = listMementoSubPathsAsData(exceptionHandler);
+        final Map<String, String> entityPatchSubPaths = listEntityPatchSubPaths(exceptionHandler);
         
         final BrooklynMementoRawData.Builder builder = BrooklynMementoRawData.builder();
         
@@ -281,7 +327,13 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
                     exceptionHandler.onLoadMementoFailed(type, "memento "+id+" read error", e);
                 }
                 
-                String xmlId = (String) XmlUtil.xpath(contents, "/"+type.toCamelCase()+"/id");
+                if (type == BrooklynObjectType.ENTITY && contents != null && entityPatchSubPaths.containsKey(id)) {
+                    // patches are XML, so the result is too (whatever format the full memento was written in)
+                    contents = EntityMementoPatches.applyPatches(BinaryMementoSerializer.toXml(contents), read(entityPatchSubPaths.get(id)));
+                    entitiesWithUntrackedPatches.add(id);
+                }
+                
+                String xmlId = getTopLevelValue(type, contents, "id");
                 String safeXmlId = Strings.makeValidFilename(xmlId);
                 if (!Objects.equal(id, safeXmlId))
                     LOG.warn("ID mismatch on "+type.toCamelCase()+", "+id+" from path, "+safeXmlId+" from xml");
@@ -307,6 +359,25 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         return result;
     }
 
+    /** Returns the value of the given top-level element of the memento, whatever its {@link MementoSerializationFormat}. */
+    private static String getTopLevelValue(BrooklynObjectType type, String contents, String name) {
+        if (BinaryMementoSerializer.isBinary(contents)) {
+            return BinaryMementoSerializer.getTopLevelValue(contents, name);
+        }
+        return (String) XmlUtil.xpath(contents, "/"+type.toCamelCase()+"/"+name);
+    }
+
+    private Map<String, String> listEntityPatchSubPaths(RebindExceptionHandler exceptionHandler) {
+        // listed regardless of whether patches are enabled, so that any written previously are not lost 
+        try {
+            return makeIdSubPathMap(objectStore.listContentsWithSubPath(ENTITY_PATCHES_SUBPATH));
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            exceptionHandler.onLoadMementoFailed(BrooklynObjectType.ENTITY, "Failed to list entity patches", e);
+            throw new IllegalStateException("Failed to list entity patches in "+objectStore, e);
+        }
+    }
+
     @Override
     public BrooklynMementoManifest loadMementoManifest(final RebindExceptionHandler exceptionHandler) throws IOException {
         return loadMementoManifest(null, exceptionHandler);
@@ -321,12 +392,10 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
 
         Visitor visitor = new Visitor() {
             @Override
-            public void visit(BrooklynObjectType type, String objectId, final String contents) throws Exception {
-                final String prefix = "/"+type.toCamelCase()+"/";
-
+            public void visit(final BrooklynObjectType type, String objectId, final String contents) throws Exception {
                 class XPathHelper {
                     private String get(String innerPath) {
-                        return (String) XmlUtil.xpath(contents, prefix+innerPath);
+                        return getTopLevelValue(type, contents, innerPath);
                     }
                 }
                 XPathHelper x = new XPathHelper();
@@ -515,6 +584,10 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             
             for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
                 for (Map.Entry<String, String> entry : newMemento.getObjectsOfType(type).entrySet()) {
+                    if (type == BrooklynObjectType.ENTITY && forgetEntityPatches(entry.getKey())) {
+                        // raw data includes any patches, so they are harmless until the entity is next written in full 
+                        entitiesWithUntrackedPatches.add(entry.getKey());
+                    }
                     futures.add(asyncPersist(type.getSubPathName(), type, entry.getKey(), entry.getValue(), exceptionHandler));
                 }
             }
@@ -586,11 +659,18 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             
             for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
                 for (Memento entity : delta.getObjectsOfType(type)) {
-                    futures.add(asyncPersist(type.getSubPathName(), entity, exceptionHandler));
+                    if (type == BrooklynObjectType.ENTITY) {
+                        futures.add(asyncPersistEntity((EntityMemento) entity, delta, exceptionHandler));
+                    } else {
+                        futures.add(asyncPersist(type.getSubPathName(), entity, exceptionHandler));
+                    }
                 }
             }
             for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
                 for (String id : delta.getRemovedIdsOfType(type)) {
+                    if (type == BrooklynObjectType.ENTITY && forgetEntityPatches(id)) {
+                        futures.add(asyncDelete(ENTITY_PATCHES_SUBPATH, id, exceptionHandler));
+                    }
                     futures.add(asyncDelete(type.getSubPathName(), id, exceptionHandler));
                 }
             }
@@ -649,12 +729,103 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         }
     }
     
+    /**
+     * Writes the entity, either by appending a patch of its changed attributes and config where the 
+     * delta records what those are (see {@link PersisterDeltaImpl#changedEntityFields(String, Set, Set)}),
+     * or in full (which also compacts any patches).
+     */
+    private void persistEntity(EntityMemento memento, Delta delta, PersistenceExceptionHandler exceptionHandler) {
+        String id = memento.getId();
+        try {
+            EntityPatchState state = entityPatchStates.get(id);
+            List<Object> structure = structureOf(memento);
+            
+            if (state != null && delta instanceof PersisterDeltaImpl && state.structure.equals(structure)
+                    && state.patchCount < entityPatchesCompactAfter && memento.getCustomFields().isEmpty()) {
+                Set<String> changedAttributes = ((PersisterDeltaImpl)delta).getChangedEntityAttributeNames(id);
+                Set<String> changedConfig = ((PersisterDeltaImpl)delta).getChangedEntityConfigNames(id);
+                if (changedAttributes != null && changedConfig != null) {
+                    String patch = newEntityPatch(memento, changedAttributes, changedConfig);
+                    if (patch != null && state.patchSize + patch.length() <= state.fullSize) {
+                        getWriter(getPath(ENTITY_PATCHES_SUBPATH, id)).append(patch);
+                        state.patchCount++;
+                        state.patchSize += patch.length();
+                        return;
+                    }
+                }
+            }
+            
+            String contents = getSerializerWithStandardClassLoader().toString(memento);
+            if (forgetEntityPatches(id)) {
+                // delete patches before the full write, so they are never applied to a newer memento 
+                getWriter(getPath(ENTITY_PATCHES_SUBPATH, id)).delete();
+            }
+            getWriter(getPath(BrooklynObjectType.ENTITY.getSubPathName(), id)).put(contents);
+            
+            // xstream references are relative to the whole document, so patches cannot safely be applied to such mementos;
+            // and patches are only written alongside XML mementos
+            if (entityPatchesEnabled && serializationFormat == MementoSerializationFormat.XML && !contents.contains(" reference=\"")) {
+                entityPatchStates.put(id, new EntityPatchState(structure, contents.length()));
+            }
+        } catch (Exception e) {
+            entityPatchStates.remove(id);
+            exceptionHandler.onPersistMementoFailed(memento, e);
+        }
+    }
+
+    /** returns null if the changes cannot be written as a patch */
+    @Nullable
+    private String newEntityPatch(EntityMemento memento, Set<String> changedAttributes, Set<String> changedConfig) {
+        EntityMemento partialMemento = BasicEntityMemento.builder().from(memento).retainOnly(changedConfig, changedAttributes).build();
+        String contents = getSerializerWithStandardClassLoader().toString(partialMemento);
+        if (contents.contains(" reference=\"")) return null;
+        
+        Set<String> removedAttributes = MutableSet.copyOf(changedAttributes);
+        for (AttributeSensor<?> key : memento.getAttributes().keySet()) {
+            removedAttributes.remove(key.getName());
+        }
+        Set<String> removedConfig = MutableSet.copyOf(changedConfig);
+        for (ConfigKey<?> key : memento.getConfig().keySet()) {
+            removedConfig.remove(key.getName());
+        }
+        removedConfig.removeAll(memento.getConfigUnmatched().keySet());
+        
+        return EntityMementoPatches.newPatch(contents, removedAttributes, removedConfig);
+    }
+
+    /** returns whether there may be patches in the store for the given entity */
+    private boolean forgetEntityPatches(String id) {
+        EntityPatchState state = entityPatchStates.remove(id);
+        boolean untracked = entitiesWithUntrackedPatches.remove(id);
+        return untracked || (state != null && state.patchCount > 0);
+    }
+
+    /** the parts of an entity memento which are not included in patches */
+    private static List<Object> structureOf(EntityMemento memento) {
+        return Lists.<Object>newArrayList(memento.getType(), memento.getDisplayName(), memento.getCatalogItemId(), 
+                memento.isTopLevelApp(), memento.getParent(), memento.getChildren(), memento.getLocations(), memento.getMembers(),
+                memento.getPolicies(), memento.getEnrichers(), memento.getFeeds(), memento.getEffectors(), memento.getTags());
+    }
+
+    private static class EntityPatchState {
+        final List<Object> structure;
+        final int fullSize;
+        // only accessed when writing the entity, which is not done concurrently
+        int patchCount;
+        long patchSize;
+        
+        EntityPatchState(List<Object> structure, int fullSize) {
+            this.structure = structure;
+            this.fullSize = fullSize;
+        }
+    }
+
     private void persist(String subPath, BrooklynObjectType type, String id, String content, PersistenceExceptionHandler exceptionHandler) {
         try {
             if (content==null) {
                 LOG.warn("Null content for "+type+" "+id);
             }
-            getWriter(getPath(subPath, id)).put(content);
+            getWriter(getPath(subPath, id)).put(content==null ? null : serializationFormat.convert(content));
         } catch (Exception e) {
             exceptionHandler.onPersistRawMementoFailed(type, id, e);
         }
@@ -662,10 +833,11 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     
     private void delete(String subPath, String id, PersistenceExceptionHandler exceptionHandler) {
         try {
-            StoreObjectAccessorWithLock w = getWriter(getPath(subPath, id));
+            String path = getPath(subPath, id);
+            StoreObjectAccessorWithLock w = getWriter(path);
             w.delete();
             synchronized (writers) {
-                writers.remove(id);
+                writers.remove(path);
             }
         } catch (Exception e) {
             exceptionHandler.onDeleteMementoFailed(id, e);
@@ -679,6 +851,13 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             }});
     }
 
+    private ListenableFuture<?> asyncPersistEntity(final EntityMemento memento, final Delta delta, final PersistenceExceptionHandler exceptionHandler) {
+        return executor.submit(new Runnable() {
+            public void run() {
+                persistEntity(memento, delta, exceptionHandler);
+            }});
+    }
+
     private ListenableFuture<?> asyncPersist(final String subPath, final BrooklynObjectType type, final String id, final String content, final PersistenceExceptionHandler exceptionHandler) {
         return executor.submit(new Runnable() {
             public void run() {
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.escape.Escaper;
+import com.google.common.xml.XmlEscapers;
+import com.thoughtworks.xstream.io.xml.XmlFriendlyNameCoder;
+
+/**
+ * Support for persisting entity mementos incrementally. A patch records just the attributes and config
+ * which have been set or removed since the entity's full memento was written; patches are appended to
+ * a per-entity object until they are compacted back into a full memento.
+ * <p>
+ * A patch contains a partial entity memento, serialized in the normal way, whose {@code attributes},
+ * {@code attributeKeys}, {@code config} and {@code configKeys} entries are overlaid on those of the
+ * full memento's XML when loading, followed by the names of any attributes and config which were removed.
+ */
+@Beta
+public class EntityMementoPatches {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityMementoPatches.class);
+
+    static final String PATCH_ELEMENT = "entityPatch";
+    static final String REMOVED_ATTRIBUTE_ELEMENT = "removedAttribute";
+    static final String REMOVED_CONFIG_ELEMENT = "removedConfig";
+
+    private static final String[] ATTRIBUTE_SECTIONS = {"attributes", "attributeKeys"};
+    private static final String[] CONFIG_SECTIONS = {"config", "configKeys"};
+
+    private static final String PATCH_END = "</"+PATCH_ELEMENT+">";
+
+    private static final XmlFriendlyNameCoder NAME_CODER = new XmlFriendlyNameCoder();
+
+    private EntityMementoPatches() {}
+
+    /**
+     * Creates a patch record, to be appended to any existing patches for the entity.
+     *
+     * @param partialMementoXml the serialized entity memento containing only the changed attributes and config
+     */
+    public static String newPatch(String partialMementoXml, Collection<String> removedAttributes, Collection<String> removedConfig) {
+        Escaper escaper = XmlEscapers.xmlContentEscaper();
+        StringBuilder result = new StringBuilder();
+        result.append("<").append(PATCH_ELEMENT).append(">\n");
+        for (String name : removedAttributes) {
+            result.append("<").append(REMOVED_ATTRIBUTE_ELEMENT).append(">").append(escaper.escape(name))
+                .append("</").append(REMOVED_ATTRIBUTE_ELEMENT).append(">\n");
+        }
+        for (String name : removedConfig) {
+            result.append("<").append(REMOVED_CONFIG_ELEMENT).append(">").append(escaper.escape(name))
+                .append("</").append(REMOVED_CONFIG_ELEMENT).append(">\n");
+        }
+        result.append(partialMementoXml).append("\n");
+        result.append(PATCH_END).append("\n");
+        return result.toString();
+    }
+
+    /**
+     * Applies the given patches (concatenated, in the order they were written) to the entity's full memento,
+     * returning the XML of the up-to-date memento. An incomplete trailing patch (e.g. if a write was
+     * interrupted) is ignored.
+     */
+    public static String applyPatches(String mementoXml, String patches) {
+        try {
+            Document doc = parse(mementoXml);
+            Element memento = doc.getDocumentElement();
+
+            for (Element patch : childElements(parsePatches(patches).getDocumentElement(), PATCH_ELEMENT)) {
+                List<Element> partialMementos = childElements(patch, memento.getTagName());
+                if (partialMementos.size() != 1) {
+                    throw new IllegalStateException("Malformed patch, expected a single "+memento.getTagName()+" element");
+                }
+                for (String section : ATTRIBUTE_SECTIONS) {
+                    overlay(memento, partialMementos.get(0), section);
+                }
+                for (String section : CONFIG_SECTIONS) {
+                    overlay(memento, partialMementos.get(0), section);
+                }
+                for (Element removed : childElements(patch, REMOVED_ATTRIBUTE_ELEMENT)) {
+                    for (String section : ATTRIBUTE_SECTIONS) {
+                        remove(memento, section, removed.getTextContent());
+                    }
+                }
+                for (Element removed : childElements(patch, REMOVED_CONFIG_ELEMENT)) {
+                    for (String section : CONFIG_SECTIONS) {
+                        remove(memento, section, removed.getTextContent());
+                    }
+                }
+            }
+
+            return toXml(doc);
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static Document parsePatches(String patches) throws Exception {
+        try {
+            return parse("<patches>"+patches+"</patches>");
+        } catch (SAXException e) {
+            int lastEnd = patches.lastIndexOf(PATCH_END);
+            String truncated = (lastEnd >= 0) ? patches.substring(0, lastEnd + PATCH_END.length()) : "";
+            if (truncated.length() == patches.trim().length()) throw e;
+            LOG.warn("Ignoring incomplete trailing memento patch ("+(patches.length()-truncated.length())+" chars): "+e);
+            return parse("<patches>"+truncated+"</patches>");
+        }
+    }
+
+    /** Replaces or adds each entry of the given section of the patch in the corresponding section of the memento. */
+    private static void overlay(Element memento, Element partialMemento, String section) {
+        List<Element> patchSections = childElements(partialMemento, section);
+        if (patchSections.isEmpty()) return;
+
+        Document doc = memento.getOwnerDocument();
+        List<Element> targetSections = childElements(memento, section);
+        if (targetSections.isEmpty()) {
+            memento.appendChild(doc.importNode(patchSections.get(0), true));
+            return;
+        }
+        Element target = targetSections.get(0);
+        Map<String, Element> targetEntries = entriesByName(target);
+        for (Element entry : childElements(patchSections.get(0), null)) {
+            Node replacement = doc.importNode(entry, true);
+            Element existing = targetEntries.get(entryName(entry));
+            if (existing != null) {
+                target.replaceChild(replacement, existing);
+            } else {
+                target.appendChild(replacement);
+            }
+        }
+    }
+
+    private static void remove(Element memento, String section, String name) {
+        for (Element target : childElements(memento, section)) {
+            Element existing = entriesByName(target).get(name);
+            if (existing != null) target.removeChild(existing);
+            if (childElements(target, null).isEmpty()) memento.removeChild(target);
+        }
+    }
+
+    private static Map<String, Element> entriesByName(Element section) {
+        Map<String, Element> result = Maps.newLinkedHashMap();
+        for (Element entry : childElements(section, null)) {
+            result.put(entryName(entry), entry);
+        }
+        return result;
+    }
+
+    /**
+     * The map key of an entry, as written by {@link brooklyn.util.xstream.StringKeyMapConverter}:
+     * either the element name, or the {@code key} attribute where the key is not a valid element name.
+     */
+    private static String entryName(Element entry) {
+        if (entry.hasAttribute("key")) return entry.getAttribute("key");
+        return NAME_CODER.decodeNode(entry.getTagName());
+    }
+
+    private static List<Element> childElements(Element parent, String tagName) {
+        List<Element> result = Lists.newArrayList();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && (tagName == null || tagName.equals(((Element)child).getTagName()))) {
+                result.add((Element) child);
+            }
+        }
+        return result;
+    }
+
+    private static Document parse(String xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+
+    private static String toXml(Document doc) throws Exception {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        StringWriter result = new StringWriter();
+        transformer.transform(new DOMSource(doc), new StreamResult(result));
+        return result.toString();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.rebind.BrooklynObjectType;
+import brooklyn.entity.rebind.persister.PersistenceObjectStore.StoreObjectAccessor;
+import brooklyn.management.ManagementContext;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Stopwatch;
+
+/**
+ * Rewrites the mementos in an existing persistence store in a given {@link MementoSerializationFormat},
+ * e.g. to migrate a store written as XML to {@link MementoSerializationFormat#BINARY} (or back again).
+ * <p>
+ * Conversion works on the serialized form, so no classes need to be loaded. Any entity patches
+ * (see {@link EntityMementoPatches}) are applied and compacted into the converted memento.
+ * This should not be run against a store which a Brooklyn server is using.
+ */
+@Beta
+public class MementoFormatConverter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MementoFormatConverter.class);
+
+    private MementoFormatConverter() {}
+
+    /**
+     * Converts the store at the given location (as for {@link BrooklynPersistenceUtils#newPersistenceObjectStore(ManagementContext, String, String)},
+     * so for example a blank spec and the path of a persistence directory).
+     *
+     * @return the number of mementos rewritten
+     */
+    public static int convert(ManagementContext managementContext, String locationSpec, String locationContainer, MementoSerializationFormat format) {
+        PersistenceObjectStore store = BrooklynPersistenceUtils.newPersistenceObjectStore(managementContext, locationSpec, locationContainer);
+        try {
+            return convert(store, format);
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Converts the mementos in the given store, which must have been prepared for use.
+     *
+     * @return the number of mementos rewritten
+     */
+    public static int convert(PersistenceObjectStore store, MementoSerializationFormat format) {
+        checkNotNull(store, "store");
+        checkNotNull(format, "format");
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        store.prepareForMasterUse();
+
+        Map<String, String> patchSubPaths = MutableMap.of();
+        for (String subPath : store.listContentsWithSubPath(BrooklynMementoPersisterToObjectStore.ENTITY_PATCHES_SUBPATH)) {
+            patchSubPaths.put(idOf(subPath), subPath);
+        }
+
+        int count = 0;
+        for (BrooklynObjectType type : BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            for (String subPath : store.listContentsWithSubPath(type.getSubPathName())) {
+                StoreObjectAccessor accessor = store.newAccessor(subPath);
+                String contents = accessor.get();
+                if (contents == null) continue;
+
+                String patchSubPath = (type == BrooklynObjectType.ENTITY) ? patchSubPaths.get(idOf(subPath)) : null;
+                if (patchSubPath != null) {
+                    contents = EntityMementoPatches.applyPatches(BinaryMementoSerializer.toXml(contents), store.newAccessor(patchSubPath).get());
+                }
+
+                String converted = format.convert(contents);
+                if (patchSubPath != null || !converted.equals(contents)) {
+                    accessor.put(converted);
+                    count++;
+                }
+                if (patchSubPath != null) {
+                    // only once the compacted memento has been written
+                    store.newAccessor(patchSubPath).delete();
+                }
+            }
+        }
+
+        LOG.info("Converted {} mementos in {} to {}, in {}", new Object[] {
+                count, store.getSummaryName(), format, Time.makeTimeStringRounded(Duration.of(stopwatch)) });
+        return count;
+    }
+
+    private static String idOf(String subPath) {
+        return subPath.substring(subPath.lastIndexOf('/')+1);
+    }
+}
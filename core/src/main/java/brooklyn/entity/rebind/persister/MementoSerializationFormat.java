@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import com.google.common.annotations.Beta;
+
+/** The form in which mementos are written; mementos in any of these forms can always be read. */
+@Beta
+public enum MementoSerializationFormat {
+    XML {
+        @Override
+        public <T> MementoSerializer<T> newSerializer(ClassLoader classLoader) {
+            return new XmlMementoSerializer<T>(classLoader);
+        }
+        @Override
+        public String convert(String contents) {
+            return BinaryMementoSerializer.toXml(contents);
+        }
+    },
+    BINARY {
+        @Override
+        public <T> MementoSerializer<T> newSerializer(ClassLoader classLoader) {
+            return new BinaryMementoSerializer<T>(classLoader);
+        }
+        @Override
+        public String convert(String contents) {
+            return BinaryMementoSerializer.toBinary(contents);
+        }
+    };
+
+    public abstract <T> MementoSerializer<T> newSerializer(ClassLoader classLoader);
+
+    /** Converts the given serialized memento, in any format, to this format. */
+    public abstract String convert(String contents);
+}
@@ -137,6 +137,21 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
         }
     }
 
+    /** Deserializes the given memento, whether XML or in the form written by {@link BinaryMementoSerializer}. */
+    @SuppressWarnings("unchecked")
+    @Override
+    public T fromString(String string) {
+        if (BinaryMementoSerializer.isBinary(string)) {
+            HierarchicalStreamReader reader = BinaryMementoSerializer.newReader(string);
+            try {
+                return (T) xstream.unmarshal(reader);
+            } finally {
+                reader.close();
+            }
+        }
+        return super.fromString(string);
+    }
+
     @Override
     public void setLookupContext(LookupContext lookupContext) {
         this.lookupContext = checkNotNull(lookupContext, "lookupContext");
@@ -30,6 +30,7 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
+import brooklyn.entity.rebind.persister.BinaryMementoSerializer;
 import brooklyn.entity.rebind.transformer.RawDataTransformer;
 
 import com.google.common.annotations.Beta;
@@ -47,7 +48,9 @@ public class XsltTransformer implements RawDataTransformer {
     
     public String transform(String input) throws IOException, URISyntaxException, TransformerException {
         Transformer transformer = factory.newTransformer(xslt);
-        
+        // binary mementos are transformed in their XML form
+        input = BinaryMementoSerializer.toXml(input);
+
         Source text = new StreamSource(new ByteArrayInputStream(input.getBytes()));
         ByteArrayOutputStream baos = new ByteArrayOutputStream(input.length());
         transformer.transform(text, new StreamResult(baos));
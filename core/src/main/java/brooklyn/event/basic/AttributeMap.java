@@ -22,7 +22,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,18 +35,26 @@ import brooklyn.config.BrooklynLogging;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.event.AttributeSensor;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.guava.Maybe;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * A {@link Map} of {@link Entity} attribute values.
+ * <p>
+ * If constructed with {@link AttributeSlots}, the values of the sensors declared on the entity type are held
+ * in an array indexed by slot, and only other sensors (e.g. those added dynamically) are held in the map.
+ * The {@link #asMap()} and {@link #asRawMap()} views include both.
  */
 public final class AttributeMap implements Serializable {
 
@@ -59,6 +71,19 @@ public final class AttributeMap implements Serializable {
     // Assumed to be something like a ConcurrentMap passed in.
     private final Map<Collection<String>, Object> values;
 
+    // values for the sensors declared on the entity type, if using slots; null where never set
+    private final AttributeSlots slots;
+    private final AtomicReferenceArray<Object> slotValues;
+
+    // names of attributes updated or removed since last call to getAndClearDirtyNames (used for incremental persistence);
+    // only recorded once that has first been called, so the set does not grow when nothing drains it
+    private final Set<String> dirtyNames = Sets.newConcurrentHashSet();
+    private volatile boolean trackingDirtyNames = false;
+
+    // counts of attribute-change events published, and of updates not published because the value was unchanged
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong suppressedCount = new AtomicLong();
+
     /**
      * Creates a new AttributeMap.
      *
@@ -66,16 +91,40 @@ public final class AttributeMap implements Serializable {
      * @throws IllegalArgumentException if entity is null
      */
     public AttributeMap(AbstractEntity entity, Map<Collection<String>, Object> storage) {
+        this(entity, null, storage);
+    }
+
+    /**
+     * Creates a new AttributeMap, holding the values of sensors in the given slots (if not null) in an array,
+     * and the values of any other sensors in the given storage.
+     */
+    public AttributeMap(AbstractEntity entity, AttributeSlots slots, Map<Collection<String>, Object> storage) {
         this.entity = checkNotNull(entity, "entity must be specified");
         this.values = checkNotNull(storage, "storage map must not be null");
+        this.slots = (slots != null && slots.size() > 0) ? slots : null;
+        this.slotValues = (this.slots != null) ? new AtomicReferenceArray<Object>(this.slots.size()) : null;
     }
 
     public Map<Collection<String>, Object> asRawMap() {
-        return ImmutableMap.copyOf(values);
+        if (slots == null) return ImmutableMap.copyOf(values);
+        
+        Map<Collection<String>, Object> result = Maps.newLinkedHashMap();
+        for (int i = 0; i < slotValues.length(); i++) {
+            Object val = slotValues.get(i);
+            if (val != null) result.put(slots.getPath(i), val);
+        }
+        result.putAll(values);
+        return ImmutableMap.copyOf(result);
     }
 
     public Map<String, Object> asMap() {
         Map<String, Object> result = Maps.newLinkedHashMap();
+        if (slots != null) {
+            for (int i = 0; i < slotValues.length(); i++) {
+                Object val = slotValues.get(i);
+                if (val != null) result.put(slots.getName(i), isNull(val) ? null : val);
+            }
+        }
         for (Map.Entry<Collection<String>, Object> entry : values.entrySet()) {
             String sensorName = Joiner.on('.').join(entry.getKey());
             Object val = (isNull(entry.getValue())) ? null : entry.getValue();
@@ -104,8 +153,10 @@ public final class AttributeMap implements Serializable {
             log.trace("setting sensor {}={} for {}", new Object[] {path, newValue, entity});
         }
 
+        int slot = (slots != null) ? slots.slotOf(path) : -1;
         @SuppressWarnings("unchecked")
-        T oldValue = (T) values.put(path, newValue);
+        T oldValue = (T) ((slot >= 0) ? slotValues.getAndSet(slot, newValue) : values.put(path, newValue));
+        if (trackingDirtyNames) dirtyNames.add((slot >= 0) ? slots.getName(slot) : Joiner.on('.').join(path));
         return (isNull(oldValue)) ? null : oldValue;
     }
 
@@ -117,9 +168,55 @@ public final class AttributeMap implements Serializable {
     public <T> T update(AttributeSensor<T> attribute, T newValue) {
         T oldValue = updateWithoutPublishing(attribute, newValue);
         entity.emitInternal(attribute, newValue);
+        publishedCount.incrementAndGet();
         return oldValue;
     }
     
+    /**
+     * Updates the value and publishes it, as for {@link #update(AttributeSensor, Object)}, 
+     * unless the attribute is already set to an equal value, in which case nothing is changed or published.
+     * 
+     * @return the old value, or absent if the value was unchanged
+     */
+    @Beta
+    public <T> Maybe<T> updateIfChanged(AttributeSensor<T> attribute, T newValue) {
+        synchronized (values) {
+            Object oldValue = getRawValue(attribute);
+            if (oldValue != null && isUnchanged(attribute, oldValue, newValue)) {
+                suppressedCount.incrementAndGet();
+                if (log.isTraceEnabled()) log.trace("attribute {} unchanged at {}; not emitting on {}", new Object[] {attribute.getName(), newValue, entity});
+                return Maybe.absent("unchanged");
+            }
+            return Maybe.of(update(attribute, newValue));
+        }
+    }
+    
+    /** 
+     * Whether the (set) raw value is equal to the new value; only coerces if the raw value is not equal and not already
+     * of the sensor's type, and treats a value which cannot be coerced as changed.
+     */
+    private boolean isUnchanged(AttributeSensor<?> attribute, Object rawOldValue, Object newValue) {
+        if (isNull(rawOldValue)) return newValue == null;
+        if (Objects.equal(rawOldValue, newValue)) return true;
+        if (newValue == null || attribute.getType().isInstance(rawOldValue)) return false;
+        try {
+            return Objects.equal(TypeCoercions.coerce(rawOldValue, attribute.getType()), newValue);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            if (log.isTraceEnabled()) log.trace("attribute "+attribute.getName()+" value "+rawOldValue+" cannot be coerced for comparison on "+entity+"; treating as changed", e);
+            return false;
+        }
+    }
+    
+    /**
+     * Returns the number of attribute-change events published, and the number of updates which were not published
+     * because the value was unchanged (see {@link #updateIfChanged(AttributeSensor, Object)}).
+     */
+    @Beta
+    public Map<String, Long> getPublicationStats() {
+        return ImmutableMap.of("published", publishedCount.get(), "suppressed", suppressedCount.get());
+    }
+    
     public <T> T updateWithoutPublishing(AttributeSensor<T> attribute, T newValue) {
         if (log.isTraceEnabled()) {
             Object oldValue = getValue(attribute);
@@ -130,7 +227,14 @@ public final class AttributeMap implements Serializable {
             }
         }
 
-        T oldValue = (T) update(attribute.getNameParts(), newValue);
+        int slot = (slots != null) ? slots.slotOf(attribute) : -1;
+        if (slot < 0) {
+            return update(attribute.getNameParts(), newValue);
+        }
+        
+        @SuppressWarnings("unchecked")
+        T oldValue = (T) slotValues.getAndSet(slot, (newValue == null) ? typedNull() : newValue);
+        if (trackingDirtyNames) dirtyNames.add(attribute.getName());
         
         return (isNull(oldValue)) ? null : oldValue;
     }
@@ -168,7 +272,35 @@ public final class AttributeMap implements Serializable {
             log.trace("removing sensor {} for {}", new Object[] {path, entity});
         }
 
-        values.remove(path);
+        int slot = (slots != null) ? slots.slotOf(path) : -1;
+        if (slot >= 0) {
+            slotValues.set(slot, null);
+        } else {
+            values.remove(path);
+        }
+        if (trackingDirtyNames) dirtyNames.add((slot >= 0) ? slots.getName(slot) : Joiner.on('.').join(path));
+    }
+
+    /**
+     * Returns the names of the attributes which have been updated or removed since this method was last called,
+     * and resets that record. Used by the persister to write only the attributes which have changed.
+     * <p>
+     * Changes are only recorded once this has been called, so the first call starts recording and returns absent,
+     * in which case callers should treat all attributes as changed.
+     */
+    @Beta
+    public Maybe<Set<String>> getAndClearDirtyNames() {
+        if (!trackingDirtyNames) {
+            trackingDirtyNames = true;
+            return Maybe.absent("attribute changes not previously recorded");
+        }
+        if (dirtyNames.isEmpty()) return Maybe.<Set<String>>of(ImmutableSet.<String>of());
+        Set<String> result = Sets.newLinkedHashSet();
+        for (String name : dirtyNames) {
+            // remove individually so concurrent additions are never lost
+            if (dirtyNames.remove(name)) result.add(name);
+        }
+        return Maybe.of(result);
     }
 
     /**
@@ -183,13 +315,26 @@ public final class AttributeMap implements Serializable {
         // or the leaf value if only one value. Arguably that is not required - what is/was the use-case?
         // 
         checkPath(path);
-        Object result = values.get(path);
+        int slot = (slots != null) ? slots.slotOf(path) : -1;
+        Object result = (slot >= 0) ? slotValues.get(slot) : values.get(path);
         return (isNull(result)) ? null : result;
     }
 
     @SuppressWarnings("unchecked")
     public <T> T getValue(AttributeSensor<T> sensor) {
-        return (T) TypeCoercions.coerce(getValue(sensor.getNameParts()), sensor.getType());
+        Object result = getRawValue(sensor);
+        return (T) TypeCoercions.coerce((isNull(result)) ? null : result, sensor.getType());
+    }
+
+    /** the value as stored, i.e. null if not set and the null marker if set to null */
+    private Object getRawValue(AttributeSensor<?> sensor) {
+        int slot = (slots != null) ? slots.slotOf(sensor) : -1;
+        if (slot < 0) {
+            List<String> path = sensor.getNameParts();
+            checkPath(path);
+            return values.get(path);
+        }
+        return slotValues.get(slot);
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.basic;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityDynamicType;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Joiner;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
+
+/**
+ * A dense index of the attribute sensors declared on an entity type, used by {@link AttributeMap}
+ * to hold the values of those sensors in an array rather than a map keyed by name parts.
+ * <p>
+ * The index is computed once per entity class (from the static sensor fields, as for {@link EntityDynamicType})
+ * and shared by all entities of that class. Sensors not known to the index (e.g. added dynamically)
+ * are stored in the {@link AttributeMap}'s fallback map.
+ * <p>
+ * The slot of each sensor instance is remembered, so looking up a sensor's slot does not hash its name.
+ * <p>
+ * The per-class cache holds its keys weakly and its values softly, so a cached index never
+ * keeps an entity class (or its class loader) loaded; an entity keeps its own index alive.
+ */
+@Beta
+public final class AttributeSlots implements Serializable {
+
+    private static final long serialVersionUID = 6328441745260815932L;
+
+    private static final LoadingCache<Class<? extends Entity>, AttributeSlots> SLOTS_BY_TYPE = CacheBuilder.newBuilder()
+            .weakKeys()
+            .softValues()
+            .build(new CacheLoader<Class<? extends Entity>, AttributeSlots>() {
+                @Override
+                public AttributeSlots load(Class<? extends Entity> type) {
+                    return new AttributeSlots(EntityDynamicType.findSensors(type, null).values());
+                }
+            });
+
+    /** @return the (shared) index of the attribute sensors declared on the given entity type */
+    public static AttributeSlots forType(Class<? extends Entity> type) {
+        return SLOTS_BY_TYPE.getUnchecked(type);
+    }
+
+    private final Map<String, Integer> slotsByName;
+    private final Map<List<String>, Integer> slotsByPath;
+    private final String[] names;
+    private final List<List<String>> paths;
+    // the slot (or -1) of each sensor instance looked up; weak (so identity) keys, so dynamic sensors are not retained
+    private transient volatile ConcurrentMap<Sensor<?>, Integer> slotsBySensor;
+
+    AttributeSlots(Collection<? extends Sensor<?>> sensors) {
+        ImmutableMap.Builder<String, Integer> slotsByNameBuilder = ImmutableMap.builder();
+        ImmutableMap.Builder<List<String>, Integer> slotsByPathBuilder = ImmutableMap.builder();
+        ImmutableList.Builder<String> namesBuilder = ImmutableList.builder();
+        ImmutableList.Builder<List<String>> pathsBuilder = ImmutableList.builder();
+        int slot = 0;
+        for (Sensor<?> sensor : sensors) {
+            if (!(sensor instanceof AttributeSensor)) continue;
+            List<String> path = ImmutableList.copyOf(sensor.getNameParts());
+            slotsByPathBuilder.put(path, slot);
+            slotsByNameBuilder.put(sensor.getName(), slot++);
+            namesBuilder.add(sensor.getName());
+            pathsBuilder.add(path);
+        }
+        this.slotsByName = slotsByNameBuilder.build();
+        this.slotsByPath = slotsByPathBuilder.build();
+        this.names = namesBuilder.build().toArray(new String[0]);
+        this.paths = pathsBuilder.build();
+    }
+
+    /** @return the number of slots */
+    public int size() {
+        return names.length;
+    }
+
+    /** @return the slot for the sensor with the given name, or -1 if it has none */
+    public int slotOf(String name) {
+        Integer result = slotsByName.get(name);
+        return (result == null) ? -1 : result;
+    }
+
+    /** @return the slot for the given path, or -1 if it has none */
+    public int slotOf(Collection<String> path) {
+        if (path instanceof List) {
+            Integer result = slotsByPath.get(path);
+            return (result == null) ? -1 : result;
+        }
+        return slotOf(Joiner.on('.').join(path));
+    }
+
+    /** @return the slot for the given sensor, or -1 if it has none; remembered for each sensor instance */
+    public int slotOf(Sensor<?> sensor) {
+        ConcurrentMap<Sensor<?>, Integer> cache = slotsBySensor;
+        if (cache == null) {
+            cache = new MapMaker().weakKeys().makeMap();
+            slotsBySensor = cache;
+        }
+        Integer result = cache.get(sensor);
+        if (result == null) {
+            result = slotOf(sensor.getName());
+            cache.put(sensor, result);
+        }
+        return result;
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    /** @return the name parts of the sensor in the given slot, as used for the keys of {@link AttributeMap#asRawMap()} */
+    public List<String> getPath(int slot) {
+        return paths.get(slot);
+    }
+
+    @Override
+    public String toString() {
+        return "AttributeSlots"+slotsByName.keySet();
+    }
+}
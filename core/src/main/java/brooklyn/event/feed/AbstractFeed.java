@@ -21,6 +21,7 @@ package brooklyn.event.feed;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,11 @@ import brooklyn.mementos.FeedMemento;
 import brooklyn.policy.basic.AbstractEntityAdjunct;
 import brooklyn.util.javalang.JavaClassNames;
 import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableMap;
 
 /** 
  * Captures common fields and processes for sensor feeds.
@@ -49,6 +55,24 @@ public abstract class AbstractFeed extends AbstractEntityAdjunct implements Feed
 
     public static final ConfigKey<Boolean> ONLY_IF_SERVICE_UP = ConfigKeys.newBooleanConfigKey("feed.onlyIfServiceUp", "", false);
     
+    // The poll scheduling keys below can also be set in brooklyn.properties, as defaults for all feeds
+    
+    public static final ConfigKey<Duration> POLL_START_SPREAD = ConfigKeys.newDurationConfigKey("feed.poll.startSpread", 
+            "Maximum random delay before the first poll (capped at the poll period), to spread the polls of many entities", 
+            Duration.ZERO);
+    
+    public static final ConfigKey<Double> POLL_JITTER = ConfigKeys.newDoubleConfigKey("feed.poll.jitter", 
+            "Fraction of the period by which each delay between polls is randomly varied, e.g. 0.1 for +/-10%", 
+            0d);
+    
+    public static final ConfigKey<Boolean> POLL_ADAPTIVE = ConfigKeys.newBooleanConfigKey("feed.poll.adaptive", 
+            "Whether to back off the poll period while polls fail or return unchanged values, resetting it when values change", 
+            false);
+    
+    public static final ConfigKey<Integer> POLL_ADAPTIVE_MAX_BACKOFF = ConfigKeys.newIntegerConfigKey("feed.poll.adaptive.maxBackoff", 
+            "Maximum multiple of the poll period to back off to, in adaptive mode", 
+            8);
+    
     private final Object pollerStateMutex = new Object();
     private transient volatile Poller<?> poller;
     private transient volatile boolean activated;
@@ -122,6 +146,9 @@ public abstract class AbstractFeed extends AbstractEntityAdjunct implements Feed
         }
         
         poller = new Poller<Object>(entity, getConfig(ONLY_IF_SERVICE_UP));
+        poller.setStartSpread(getPollConfig(POLL_START_SPREAD));
+        poller.setJitter(getPollConfig(POLL_JITTER));
+        poller.setAdaptive(getPollConfig(POLL_ADAPTIVE), getPollConfig(POLL_ADAPTIVE_MAX_BACKOFF), getPollChangeKey());
         activated = true;
         preStart();
         synchronized (pollerStateMutex) {
@@ -219,6 +246,28 @@ public abstract class AbstractFeed extends AbstractEntityAdjunct implements Feed
         // TODO Auto-generated method stub
     }
 
+    /** Returns the feed's value for the key if set, otherwise the management context's (e.g. from brooklyn.properties). */
+    protected <T> T getPollConfig(ConfigKey<T> key) {
+        if (configsInternal.getConfigRaw(key, false).isPresent() || entity == null) {
+            return getConfig(key);
+        }
+        return ((EntityInternal)entity).getManagementContext().getConfig().getConfig(key);
+    }
+    
+    /**
+     * For overriding; the value to compare between successive polls, to tell whether the polled value
+     * has changed (for adaptive polling). Defaults to the value itself.
+     */
+    protected Function<Object, ?> getPollChangeKey() {
+        return Functions.identity();
+    }
+    
+    /** @see Poller#getMetrics() */
+    public Map<String,Object> getPollMetrics() {
+        Poller<?> p = getPoller();
+        return (p != null) ? p.getMetrics() : ImmutableMap.<String,Object>of();
+    }
+    
     /**
      * For overriding.
      */
@@ -207,6 +207,8 @@ public class AttributePollHandler<V> implements PollHandler<V> {
             ((EntityInternal)entity).removeAttribute(sensor);
         } else if (sensor == FeedConfig.NO_SENSOR) {
             // nothing
+        } else if (config.isSuppressDuplicates()) {
+            ((EntityInternal)entity).setAttributeIfChanged(sensor, TypeCoercions.coerce(v, sensor.getType()));
         } else {
             entity.setAttribute(sensor, TypeCoercions.coerce(v, sensor.getType()));
         }
@@ -62,6 +62,7 @@ public class FeedConfig<V, T, F extends FeedConfig<V, T, F>> {
     private Function<? super V, T> onfailure;
     private Function<? super Exception, T> onexception;
     private Predicate<? super V> checkSuccess;
+    private boolean suppressDuplicates;
 
     public FeedConfig(AttributeSensor<T> sensor) {
         this.sensor = checkNotNull(sensor, "sensor");
@@ -73,6 +74,7 @@ public class FeedConfig<V, T, F extends FeedConfig<V, T, F>> {
         this.onfailure = other.onfailure;
         this.onexception = other.onexception;
         this.checkSuccess = other.checkSuccess;
+        this.suppressDuplicates = other.suppressDuplicates;
     }
 
     @SuppressWarnings("unchecked")
@@ -175,6 +177,16 @@ public class FeedConfig<V, T, F extends FeedConfig<V, T, F>> {
         return onFailureOrException(Functions.constant(val));
     }
 
+    /** whether to set the sensor only when its value changes, so that polling an unchanged value publishes no events */
+    public F suppressDuplicates(boolean val) {
+        this.suppressDuplicates = val;
+        return self();
+    }
+    
+    public boolean isSuppressDuplicates() {
+        return suppressDuplicates;
+    }
+
     public boolean hasSuccessHandler() {
         return this.onsuccess != null;
     }
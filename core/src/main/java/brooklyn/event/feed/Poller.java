@@ -18,9 +18,17 @@
  */
 package brooklyn.event.feed;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +38,7 @@ import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
+import brooklyn.management.ExecutionContext;
 import brooklyn.management.Task;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.task.DynamicSequentialTask;
@@ -37,7 +46,13 @@ import brooklyn.util.task.ScheduledTask;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.time.Duration;
 
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.base.Objects;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 
 /** 
@@ -46,6 +61,12 @@ import com.google.common.base.Objects;
  * The jobs will then be executed periodically, and the handler called for the result/failure.
  * 
  * Assumes the schedule+start will be done single threaded, and that stop will not be done concurrently.
+ * <p>
+ * To avoid many pollers (e.g. across the members of a large cluster) firing in lockstep, the first poll
+ * can be delayed by a random amount up to {@link #setStartSpread(Duration)}, and each subsequent delay varied
+ * by {@link #setJitter(double)}. In {@link #setAdaptive(boolean, int, Function) adaptive} mode the period
+ * is backed off (doubling, up to a maximum multiple) while polls fail or return an unchanged value, 
+ * and reset to the configured period as soon as the value changes.
  */
 public class Poller<V> {
     public static final Logger log = LoggerFactory.getLogger(Poller.class);
@@ -58,11 +79,40 @@ public class Poller<V> {
     private final Set<ScheduledTask> tasks = new LinkedHashSet<ScheduledTask>();
     private volatile boolean started = false;
     
+    private Duration startSpread = Duration.ZERO;
+    private double jitter = 0;
+    private boolean adaptive = false;
+    private int adaptiveMaxBackoff = 8;
+    private Function<? super V, ?> adaptiveChangeKey = Functions.identity();
+    
+    /** A poll job which returns a future for its result, for use with {@link Poller#scheduleAtFixedRateAsync(AsyncCallable, PollHandler, Duration)}. */
+    public interface AsyncCallable<V> {
+        ListenableFuture<? extends V> call() throws Exception;
+    }
+    
     private static class PollJob<V> {
         final PollHandler<? super V> handler;
         final Duration pollPeriod;
         final Runnable wrappedJob;
         private boolean loggedPreviousException = false;
+        private volatile ListenableFuture<? extends V> inFlight;
+        private final AtomicBoolean inProgress = new AtomicBoolean();
+        private volatile ScheduledTask scheduledTask;
+        // where the handler is called for async jobs; set by the poller on start to run in the entity's context
+        private volatile Executor callbackExecutor = MoreExecutors.sameThreadExecutor();
+        
+        // adaptive scheduling state, configured by the poller on start
+        private double jitter;
+        private boolean adaptive;
+        private int adaptiveMaxBackoff;
+        private Function<? super V, ?> adaptiveChangeKey;
+        private volatile Duration currentPeriod;
+        private Object lastValueKey;
+        private boolean hasLastValue;
+        
+        final AtomicLong pollsRun = new AtomicLong();
+        final AtomicLong pollsSkipped = new AtomicLong();
+        final AtomicLong pollsBackedOff = new AtomicLong();
         
         PollJob(final Callable<V> job, final PollHandler<? super V> handler, Duration period) {
             this.handler = handler;
@@ -72,26 +122,138 @@ public class Poller<V> {
                 public void run() {
                     try {
                         V val = job.call();
-                        loggedPreviousException = false;
-                        if (handler.checkSuccess(val)) {
-                            handler.onSuccess(val);
-                        } else {
-                            handler.onFailure(val);
-                        }
+                        onResult(val);
                     } catch (Exception e) {
-                        // 2013-12-21 AH adding add'l logging because seeing strange scheduled task abortion from here
-                        // even though all paths should be catching it
-                        if (loggedPreviousException) {
-                            if (log.isTraceEnabled()) log.trace("PollJob for {}, repeated consecutive failures, handling {} using {}", new Object[] {job, e, handler});
-                        } else {
-                            if (log.isDebugEnabled()) log.debug("PollJob for {} handling {} using {}", new Object[] {job, e, handler});
-                            loggedPreviousException = true;
-                        }
-                        handler.onException(e);
+                        onException(job, e);
                     }
                 }
             };
         }
+        
+        /**
+         * For jobs which return immediately with a future; the handler is called when the future completes,
+         * so no thread is held by the poller while waiting. A poll is skipped if the previous one is still in flight
+         * (or its result is still being handled).
+         */
+        PollJob(final AsyncCallable<V> job, final PollHandler<? super V> handler, Duration period) {
+            this.handler = handler;
+            this.pollPeriod = period;
+            
+            wrappedJob = new Runnable() {
+                public void run() {
+                    // in progress until the handler has run, so results are handled in order
+                    if (!inProgress.compareAndSet(false, true)) {
+                        if (log.isTraceEnabled()) log.trace("PollJob for {} skipping poll, as previous still in progress", job);
+                        pollsSkipped.incrementAndGet();
+                        return;
+                    }
+                    try {
+                        final ListenableFuture<? extends V> future = job.call();
+                        inFlight = future;
+                        Futures.addCallback(future, new FutureCallback<V>() {
+                            @Override public void onSuccess(V val) {
+                                try {
+                                    onResult(val);
+                                } finally {
+                                    inProgress.set(false);
+                                }
+                            }
+                            @Override public void onFailure(Throwable t) {
+                                try {
+                                    // cancelled when the poller is stopped; don't report that as a poll failure
+                                    if (future.isCancelled()) return;
+                                    onException(job, (t instanceof Exception) ? (Exception)t : new ExecutionException(t));
+                                } finally {
+                                    inProgress.set(false);
+                                }
+                            }
+                        }, new Executor() {
+                            @Override public void execute(Runnable command) {
+                                try {
+                                    callbackExecutor.execute(command);
+                                } catch (RuntimeException e) {
+                                    // e.g. the entity is no longer managed; the handler will not run, 
+                                    // so must not leave the job in progress (which would skip all subsequent polls)
+                                    inProgress.set(false);
+                                    if (log.isDebugEnabled()) log.debug("PollJob for {} unable to handle result: {}", job, e);
+                                }
+                            }});
+                    } catch (Exception e) {
+                        inProgress.set(false);
+                        onException(job, e);
+                    }
+                }
+            };
+        }
+        
+        private void onResult(V val) {
+            loggedPreviousException = false;
+            if (handler.checkSuccess(val)) {
+                if (adaptive) adapt(val);
+                handler.onSuccess(val);
+            } else {
+                if (adaptive) backOff();
+                handler.onFailure(val);
+            }
+        }
+        
+        private synchronized void adapt(V val) {
+            Object valueKey = adaptiveChangeKey.apply(val);
+            if (hasLastValue && Objects.equal(lastValueKey, valueKey)) {
+                backOff();
+            } else {
+                currentPeriod = pollPeriod;
+                updateDelay();
+            }
+            lastValueKey = valueKey;
+            hasLastValue = true;
+        }
+        
+        private synchronized void backOff() {
+            Duration max = pollPeriod.multiply(adaptiveMaxBackoff);
+            Duration next = Duration.min(currentPeriod.multiply(2), max);
+            if (next.compareTo(currentPeriod) > 0) {
+                currentPeriod = next;
+                pollsBackedOff.incrementAndGet();
+                updateDelay();
+            }
+        }
+        
+        /**
+         * Sets the delay before the next poll from the current period, varied by the jitter.
+         * Called after each poll, and when a result changes the period; for synchronous jobs the result 
+         * has been handled by then, so a backoff or reset applies to the very next poll.
+         */
+        void updateDelay() {
+            ScheduledTask task = scheduledTask;
+            if (task == null) return;
+            Duration period = currentPeriod;
+            if (jitter > 0) {
+                double factor = 1 + jitter * (2*Math.random() - 1);
+                period = Duration.millis(Math.max(1, (long) (period.toMilliseconds() * factor)));
+            }
+            task.period(period);
+        }
+        
+        private void onException(Object job, Exception e) {
+            // 2013-12-21 AH adding add'l logging because seeing strange scheduled task abortion from here
+            // even though all paths should be catching it
+            if (loggedPreviousException) {
+                if (log.isTraceEnabled()) log.trace("PollJob for {}, repeated consecutive failures, handling {} using {}", new Object[] {job, e, handler});
+            } else {
+                if (log.isDebugEnabled()) log.debug("PollJob for {} handling {} using {}", new Object[] {job, e, handler});
+                loggedPreviousException = true;
+            }
+            if (adaptive) backOff();
+            handler.onException(e);
+        }
+        
+        void cancelInFlight() {
+            ListenableFuture<? extends V> future = inFlight;
+            if (future != null) future.cancel(true);
+            inFlight = null;
+            inProgress.set(false);
+        }
     }
     
     /** @deprecated since 0.7.0, pass in whether should run onlyIfServiceUp */
@@ -104,6 +266,31 @@ public class Poller<V> {
         this.onlyIfServiceUp = onlyIfServiceUp;
     }
     
+    /** Maximum random delay before each job's first poll (capped at the job's period); defaults to zero. */
+    public void setStartSpread(Duration val) {
+        this.startSpread = checkNotNull(val, "startSpread");
+    }
+    
+    /** Fraction of the period by which each delay between polls is randomly varied, e.g. 0.1 for +/-10%; defaults to zero. */
+    public void setJitter(double val) {
+        checkArgument(val >= 0 && val < 1, "jitter must be in range [0,1), but was %s", val);
+        this.jitter = val;
+    }
+    
+    /**
+     * Enables adaptive polling, where the period doubles (up to {@code maxBackoff} times the configured period)
+     * each time a poll fails or returns an unchanged value, and is reset when the value changes.
+     * Values are compared using the result of {@code changeKey}, e.g. to ignore timestamps in a response.
+     * The new period applies to the next poll, except for asynchronous jobs, whose next poll is
+     * scheduled before their result arrives.
+     */
+    public void setAdaptive(boolean val, int maxBackoff, Function<? super V, ?> changeKey) {
+        checkArgument(maxBackoff >= 1, "maxBackoff must be at least 1, but was %s", maxBackoff);
+        this.adaptive = val;
+        this.adaptiveMaxBackoff = maxBackoff;
+        this.adaptiveChangeKey = checkNotNull(changeKey, "changeKey");
+    }
+    
     /** Submits a one-off poll job; recommended that callers supply to-String so that task has a decent description */
     public void submit(Callable<?> job) {
         if (started) {
@@ -123,6 +310,19 @@ public class Poller<V> {
         pollJobs.add(foo);
     }
 
+    /**
+     * As {@link #scheduleAtFixedRate(Callable, PollHandler, Duration)}, but for a job which starts the poll
+     * and returns a future for its result, rather than blocking until the result is available.
+     * The handler is called on completion, in a task in the entity's execution context (rather than
+     * in the thread which completes the future, which is typically one of a small shared pool).
+     */
+    public void scheduleAtFixedRateAsync(AsyncCallable<V> job, PollHandler<? super V> handler, Duration period) {
+        if (started) {
+            throw new IllegalStateException("Cannot schedule additional tasks after poller has started");
+        }
+        pollJobs.add(new PollJob<V>(job, handler, period));
+    }
+
     @SuppressWarnings({ "unchecked" })
     public void start() {
         // TODO Previous incarnation of this logged this logged polledSensors.keySet(), but we don't know that anymore
@@ -144,21 +344,37 @@ public class Poller<V> {
         for (final PollJob<V> pollJob : pollJobs) {
             final String scheduleName = pollJob.handler.getDescription();
             if (pollJob.pollPeriod.compareTo(Duration.ZERO) > 0) {
+                pollJob.jitter = jitter;
+                pollJob.adaptive = adaptive;
+                pollJob.adaptiveMaxBackoff = adaptiveMaxBackoff;
+                pollJob.adaptiveChangeKey = adaptiveChangeKey;
+                pollJob.currentPeriod = pollJob.pollPeriod;
+                pollJob.callbackExecutor = callbackExecutor(scheduleName, pollJob);
+                
                 Callable<Task<?>> pollingTaskFactory = new Callable<Task<?>>() {
                     public Task<?> call() {
                         DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", scheduleName, "entity", entity), 
                             new Callable<Void>() { public Void call() {
-                                if (onlyIfServiceUp && !Boolean.TRUE.equals(entity.getAttribute(Attributes.SERVICE_UP))) {
+                                try {
+                                    if (onlyIfServiceUp && !Boolean.TRUE.equals(entity.getAttribute(Attributes.SERVICE_UP))) {
+                                        pollJob.pollsSkipped.incrementAndGet();
                                         return null;
+                                    }
+                                    pollJob.pollsRun.incrementAndGet();
+                                    pollJob.wrappedJob.run();
+                                    return null;
+                                } finally {
+                                    // sets the delay before the next poll, once this poll's result (if synchronous) has been handled
+                                    pollJob.updateDelay();
                                 }
-                                pollJob.wrappedJob.run();
-                                return null; 
                             } } );
                         BrooklynTaskTags.setTransient(task);
                         return task;
                     }
                 };
                 ScheduledTask task = new ScheduledTask(MutableMap.of("period", pollJob.pollPeriod, "displayName", "scheduled:"+scheduleName), pollingTaskFactory);
+                task.delay(initialDelay(pollJob));
+                pollJob.scheduledTask = task;
                 tasks.add((ScheduledTask)Entities.submit(entity, task));
             } else {
                 if (log.isDebugEnabled()) log.debug("Activating poll (but leaving off, as period {}) for {} (using {})", new Object[] {pollJob.pollPeriod, entity, this});
@@ -166,6 +382,48 @@ public class Poller<V> {
         }
     }
     
+    private Executor callbackExecutor(final String scheduleName, final PollJob<V> pollJob) {
+        final ExecutionContext executionContext = ((EntityInternal)entity).getExecutionContext();
+        return new Executor() {
+            @Override public void execute(final Runnable command) {
+                final AtomicBoolean ran = new AtomicBoolean();
+                Task<?> task = Tasks.builder().dynamic(false).body(new Runnable() {
+                        public void run() {
+                            ran.set(true);
+                            command.run();
+                        }})
+                        .name("Poll result").description("Handling result of poll "+scheduleName).build();
+                BrooklynTaskTags.setTransient(task);
+                final Task<?> submitted = executionContext.submit(task);
+                // if cancelled before it runs, the handler (which ends the poll) never runs, 
+                // so must not leave the job in progress (which would skip all subsequent polls)
+                submitted.addListener(new Runnable() {
+                    public void run() {
+                        if (submitted.isCancelled() && !ran.get()) pollJob.inProgress.set(false);
+                    }}, MoreExecutors.sameThreadExecutor());
+            }};
+    }
+    
+    private Duration initialDelay(PollJob<V> pollJob) {
+        if (!startSpread.isPositive()) return Duration.ZERO;
+        Duration maxDelay = Duration.min(startSpread, pollJob.pollPeriod);
+        return Duration.millis((long) (Math.random() * maxDelay.toMilliseconds()));
+    }
+    
+    /**
+     * Counts of polls run, skipped (because the service was not up, or an asynchronous poll was still 
+     * in progress) and backed off (in adaptive mode), summed over all jobs.
+     */
+    public Map<String,Object> getMetrics() {
+        long run = 0, skipped = 0, backedOff = 0;
+        for (PollJob<V> pollJob : pollJobs) {
+            run += pollJob.pollsRun.get();
+            skipped += pollJob.pollsSkipped.get();
+            backedOff += pollJob.pollsBackedOff.get();
+        }
+        return MutableMap.<String,Object>of("pollsRun", run, "pollsSkipped", skipped, "pollsBackedOff", backedOff);
+    }
+    
     public void stop() {
         if (log.isDebugEnabled()) log.debug("Stopping poll for {} (using {})", new Object[] {entity, this});
         if (!started) { 
@@ -180,6 +438,9 @@ public class Poller<V> {
         for (ScheduledTask task : tasks) {
             if (task != null) task.cancel();
         }
+        for (PollJob<V> pollJob : pollJobs) {
+            pollJob.cancelInFlight();
+        }
         oneOffTasks.clear();
         tasks.clear();
     }
@@ -22,6 +22,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,22 +33,29 @@ import java.util.concurrent.TimeUnit;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
 import brooklyn.event.feed.Poller;
+import brooklyn.event.feed.Poller.AsyncCallable;
+import brooklyn.management.ManagementContext;
+import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.util.http.HttpClientRegistry;
 import brooklyn.util.http.HttpTool;
 import brooklyn.util.http.HttpTool.HttpClientBuilder;
 import brooklyn.util.http.HttpToolResponse;
 import brooklyn.util.time.Duration;
 
+import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
@@ -58,6 +67,7 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * Provides a feed of attribute values, by polling over http.
@@ -112,6 +122,11 @@ public class HttpFeed extends AbstractFeed {
             new TypeToken<SetMultimap<HttpPollIdentifier, HttpPollConfig<?>>>() {},
             "polls");
 
+    public static final ConfigKey<Boolean> ASYNC = ConfigKeys.newBooleanConfigKey("feed.http.async", 
+            "Whether to issue requests with the management context's shared non-blocking HTTP clients, rather than " +
+            "holding an execution manager thread for the duration of each poll; requests time out after " +
+            "brooklyn.http.pool.asyncRequestTimeout", false);
+
     public static Builder builder() {
         return new Builder();
     }
@@ -126,6 +141,7 @@ public class HttpFeed extends AbstractFeed {
         private Map<String, String> baseUriVars = Maps.newLinkedHashMap();
         private Map<String, String> headers = Maps.newLinkedHashMap();
         private boolean suspended = false;
+        private boolean async = false;
         private Credentials credentials;
         private String uniqueTag;
         private volatile boolean built;
@@ -194,6 +210,14 @@ public class HttpFeed extends AbstractFeed {
             this.suspended = startsSuspended;
             return this;
         }
+        /** @see HttpFeed#ASYNC */
+        public Builder async() {
+            return async(true);
+        }
+        public Builder async(boolean val) {
+            this.async = val;
+            return this;
+        }
         public Builder credentials(String username, String password) {
             this.credentials = new UsernamePasswordCredentials(username, password);
             return this;
@@ -275,6 +299,7 @@ public class HttpFeed extends AbstractFeed {
     
     protected HttpFeed(Builder builder) {
         setConfig(ONLY_IF_SERVICE_UP, builder.onlyIfServiceUp);
+        setConfig(ASYNC, builder.async);
         Map<String,String> baseHeaders = ImmutableMap.copyOf(checkNotNull(builder.headers, "headers"));
         
         SetMultimap<HttpPollIdentifier, HttpPollConfig<?>> polls = HashMultimap.<HttpPollIdentifier,HttpPollConfig<?>>create();
@@ -311,16 +336,9 @@ public class HttpFeed extends AbstractFeed {
     @Override
     protected void preStart() {
         SetMultimap<HttpPollIdentifier, HttpPollConfig<?>> polls = getConfig(POLLS);
+        HttpClientRegistry asyncRegistry = Boolean.TRUE.equals(getConfig(ASYNC)) ? getHttpClientRegistry() : null;
         
         for (final HttpPollIdentifier pollInfo : polls.keySet()) {
-            // Though HttpClients are thread safe and can take advantage of connection pooling
-            // and authentication caching, the httpcomponents documentation says:
-            //    "While HttpClient instances are thread safe and can be shared between multiple
-            //     threads of execution, it is highly recommended that each thread maintains its
-            //     own dedicated instance of HttpContext.
-            //  http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html
-            final HttpClient httpClient = createHttpClient(pollInfo);
-
             Set<HttpPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
             Set<AttributePollHandler<? super HttpToolResponse>> handlers = Sets.newLinkedHashSet();
@@ -329,37 +347,97 @@ public class HttpFeed extends AbstractFeed {
                 handlers.add(new AttributePollHandler<HttpToolResponse>(config, entity, this));
                 if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
             }
-
-            Callable<HttpToolResponse> pollJob;
             
-            if (pollInfo.method.equals("get")) {
-                pollJob = new Callable<HttpToolResponse>() {
-                    public HttpToolResponse call() throws Exception {
-                        if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
-                        return HttpTool.httpGet(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
-                    }};
-            } else if (pollInfo.method.equals("post")) {
-                pollJob = new Callable<HttpToolResponse>() {
-                    public HttpToolResponse call() throws Exception {
-                        if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
-                        return HttpTool.httpPost(httpClient, pollInfo.uriProvider.get(), pollInfo.headers, pollInfo.body);
-                    }};
-            } else if (pollInfo.method.equals("head")) {
-                pollJob = new Callable<HttpToolResponse>() {
-                    public HttpToolResponse call() throws Exception {
-                        if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
-                        return HttpTool.httpHead(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
-                    }};
+            DelegatingPollHandler<HttpToolResponse> handler = new DelegatingPollHandler<HttpToolResponse>(handlers);
+            if (asyncRegistry != null) {
+                getPoller().scheduleAtFixedRateAsync(asyncPollJob(asyncRegistry, pollInfo), handler, Duration.millis(minPeriod));
             } else {
-                throw new IllegalStateException("Unexpected http method: "+pollInfo.method);
+                getPoller().scheduleAtFixedRate(pollJob(pollInfo), handler, minPeriod);
             }
-            
-            getPoller().scheduleAtFixedRate(pollJob, new DelegatingPollHandler<HttpToolResponse>(handlers), minPeriod);
         }
     }
 
+    private Callable<HttpToolResponse> pollJob(final HttpPollIdentifier pollInfo) {
+        // The client comes from the management context's shared pool, so keep-alive connections
+        // are reused across all feeds (on all entities) with the same settings. HttpClients are 
+        // thread safe; the httpcomponents documentation says:
+        //    "While HttpClient instances are thread safe and can be shared between multiple
+        //     threads of execution, it is highly recommended that each thread maintains its
+        //     own dedicated instance of HttpContext.
+        //  http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html
+        // which HttpTool does, by not passing a context (so one is created per request).
+        // The shared client is looked up for each poll, as the registry discards clients which go unused for a while.
+        final HttpClientBuilder builder = createHttpClientBuilder(pollInfo);
+        HttpClientRegistry registry = getHttpClientRegistry();
+        final Supplier<HttpClient> httpClient;
+        if (registry != null) {
+            builder.sharedPool(registry);
+            httpClient = new Supplier<HttpClient>() {
+                public HttpClient get() {
+                    return builder.build();
+                }};
+        } else {
+            httpClient = Suppliers.ofInstance(builder.build());
+        }
+
+        if (pollInfo.method.equals("get")) {
+            return new Callable<HttpToolResponse>() {
+                public HttpToolResponse call() throws Exception {
+                    if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
+                    return HttpTool.httpGet(httpClient.get(), pollInfo.uriProvider.get(), pollInfo.headers);
+                }};
+        } else if (pollInfo.method.equals("post")) {
+            return new Callable<HttpToolResponse>() {
+                public HttpToolResponse call() throws Exception {
+                    if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
+                    return HttpTool.httpPost(httpClient.get(), pollInfo.uriProvider.get(), pollInfo.headers, pollInfo.body);
+                }};
+        } else if (pollInfo.method.equals("head")) {
+            return new Callable<HttpToolResponse>() {
+                public HttpToolResponse call() throws Exception {
+                    if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
+                    return HttpTool.httpHead(httpClient.get(), pollInfo.uriProvider.get(), pollInfo.headers);
+                }};
+        } else {
+            throw new IllegalStateException("Unexpected http method: "+pollInfo.method);
+        }
+    }
+    
+    /** 
+     * Polls with the registry's shared non-blocking client for this poll's settings, so no thread is held
+     * while waiting for the response; the poller runs the handlers in the entity's execution context.
+     */
+    private AsyncCallable<HttpToolResponse> asyncPollJob(final HttpClientRegistry registry, final HttpPollIdentifier pollInfo) {
+        final HttpClientBuilder builder = createHttpClientBuilder(pollInfo);
+        // must not wait indefinitely on an unresponsive server (though the registry's request timeout also applies)
+        if (pollInfo.connectionTimeout == null) builder.connectionTimeout(registry.getAsyncRequestTimeout());
+        if (pollInfo.socketTimeout == null) builder.socketTimeout(registry.getAsyncRequestTimeout());
+        if (!pollInfo.method.equals("get") && !pollInfo.method.equals("post") && !pollInfo.method.equals("head")) {
+            throw new IllegalStateException("Unexpected http method: "+pollInfo.method);
+        }
+        
+        return new AsyncCallable<HttpToolResponse>() {
+            public ListenableFuture<HttpToolResponse> call() {
+                if (log.isTraceEnabled()) log.trace("http polling (async) for {} sensors at {}", entity, pollInfo);
+                URI uri = pollInfo.uriProvider.get();
+                HttpUriRequest request;
+                if (pollInfo.method.equals("get")) {
+                    request = new HttpTool.HttpGetBuilder(uri).headers(pollInfo.headers).build();
+                } else if (pollInfo.method.equals("post")) {
+                    request = new HttpTool.HttpPostBuilder(uri).headers(pollInfo.headers).body(pollInfo.body).build();
+                } else {
+                    request = new HttpTool.HttpHeadBuilder(uri).headers(pollInfo.headers).build();
+                }
+                return registry.executeAsync(builder, request);
+            }
+            @Override
+            public String toString() {
+                return "async:"+pollInfo;
+            }};
+    }
+
     // TODO Should we really trustAll for https? Make configurable?
-    private HttpClient createHttpClient(HttpPollIdentifier pollIdentifier) {
+    private HttpClientBuilder createHttpClientBuilder(HttpPollIdentifier pollIdentifier) {
         URI uri = pollIdentifier.uriProvider.get();
         HttpClientBuilder builder = HttpTool.httpClientBuilder()
                 .trustAll()
@@ -372,9 +450,29 @@ public class HttpFeed extends AbstractFeed {
         if (pollIdentifier.socketTimeout != null) {
             builder.socketTimeout(pollIdentifier.socketTimeout);
         }
-        return builder.build();
+        return builder;
     }
 
+    private HttpClientRegistry getHttpClientRegistry() {
+        ManagementContext managementContext = ((EntityInternal)entity).getManagementContext();
+        if (managementContext instanceof ManagementContextInternal) {
+            return ((ManagementContextInternal)managementContext).getHttpClientRegistry();
+        }
+        return null;
+    }
+    
+    /** Compares responses by status code and content, ignoring e.g. latency and date headers. */
+    @Override
+    protected Function<Object, ?> getPollChangeKey() {
+        return new Function<Object, Object>() {
+            public Object apply(Object input) {
+                HttpToolResponse response = (HttpToolResponse) input;
+                // copy the content, so the key compares equal only if the bytes are the same (not just their hash)
+                byte[] content = response.getContent();
+                return Arrays.asList(response.getResponseCode(), (content == null) ? null : ByteBuffer.wrap(content.clone()));
+            }};
+    }
+    
     @SuppressWarnings("unchecked")
     protected Poller<HttpToolResponse> getPoller() {
         return (Poller<HttpToolResponse>) super.getPoller();
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.ssh;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.text.Identifiers;
+import brooklyn.util.text.StringEscapes.BashStringEscapes;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Combines several commands into one script, so that they can be run with a single ssh exec,
+ * and splits the output of that script back into the result of each command.
+ * <p>
+ * Each command runs in its own subshell (with its own environment, and with stdout and stderr
+ * captured to temporary files), and the script then writes each command's output between
+ * marker lines which include a random token, followed by its exit status.
+ * <p>
+ * If a command timeout is set, each command is killed if it runs for longer than that (reporting
+ * exit status {@value #TIMED_OUT_EXIT_STATUS}), so that one command which hangs does not prevent
+ * results for the others.
+ */
+class MultiplexedSshScript {
+
+    private static final String TMP_DIR_VAR = "BROOKLYN_SSH_FEED_DIR";
+    
+    /** exit status reported for a command killed after the command timeout, as for the coreutils {@code timeout} command */
+    static final int TIMED_OUT_EXIT_STATUS = 124;
+
+    private final List<String> commands;
+    private final List<Map<String, String>> envs;
+    private final boolean failOnError;
+    private final Duration commandTimeout;
+    private final String token;
+
+    /**
+     * @param failOnError whether each command runs with {@code set -e}, as it would if run as a script on its own
+     */
+    MultiplexedSshScript(List<String> commands, List<Map<String, String>> envs, boolean failOnError) {
+        this(commands, envs, failOnError, null);
+    }
+    
+    /**
+     * @param failOnError whether each command runs with {@code set -e}, as it would if run as a script on its own
+     * @param commandTimeout time after which each command is killed (rounded up to whole seconds), or null for no limit
+     */
+    MultiplexedSshScript(List<String> commands, List<Map<String, String>> envs, boolean failOnError, Duration commandTimeout) {
+        if (commands.size() != envs.size()) throw new IllegalArgumentException("Must have one env per command: "+commands.size()+" commands, "+envs.size()+" envs");
+        this.commands = ImmutableList.copyOf(commands);
+        this.envs = Lists.newArrayList(envs);
+        this.failOnError = failOnError;
+        this.commandTimeout = commandTimeout;
+        this.token = "BROOKLYN-SSH-FEED-"+Identifiers.makeRandomId(12);
+    }
+
+    List<String> getScriptLines() {
+        List<String> result = Lists.newArrayList();
+        result.add("set +e");
+        result.add(TMP_DIR_VAR+"=$(mktemp -d 2>/dev/null || mktemp -d -t brooklyn-ssh-feed)");
+        for (int i = 0; i < commands.size(); i++) {
+            result.add("(");
+            if (failOnError) result.add("set -e");
+            Map<String, String> env = envs.get(i) != null ? envs.get(i) : Collections.<String, String>emptyMap();
+            for (Map.Entry<String, String> entry : env.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) continue;
+                result.add("export "+entry.getKey()+"=\""+BashStringEscapes.escapeLiteralForDoubleQuotedBash(entry.getValue())+"\"");
+            }
+            result.add(commands.get(i));
+            if (commandTimeout == null) {
+                result.add(") > \"$"+TMP_DIR_VAR+"/out\" 2> \"$"+TMP_DIR_VAR+"/err\" < /dev/null");
+                result.add(TMP_DIR_VAR+"_EXIT=$?");
+            } else {
+                addTimeoutLines(result);
+            }
+            // each section ends with a newline which is not part of the command's output, so it can be exactly reconstructed
+            result.add("echo "+marker("out", i)+"; cat \"$"+TMP_DIR_VAR+"/out\"; echo");
+            result.add("echo "+marker("err", i)+"; cat \"$"+TMP_DIR_VAR+"/err\"; echo");
+            result.add("echo "+marker("exit", i)+" $"+TMP_DIR_VAR+"_EXIT");
+        }
+        result.add("rm -rf \"$"+TMP_DIR_VAR+"\"");
+        result.add("exit 0");
+        return result;
+    }
+
+    /**
+     * Runs the command's subshell in the background, with a watchdog which kills it (and its children, 
+     * where {@code pkill} is available) after the timeout; the watchdog is stopped when the command completes.
+     */
+    private void addTimeoutLines(List<String> result) {
+        long timeoutSeconds = Math.max(1, (commandTimeout.toMilliseconds() + 999) / 1000);
+        String pid = "$"+TMP_DIR_VAR+"_PID";
+        String timedOutFile = "\"$"+TMP_DIR_VAR+"/timedout\"";
+        result.add(") > \"$"+TMP_DIR_VAR+"/out\" 2> \"$"+TMP_DIR_VAR+"/err\" < /dev/null &");
+        result.add(TMP_DIR_VAR+"_PID=$!");
+        result.add("( trap 'kill $! 2>/dev/null; exit 0' TERM; sleep "+timeoutSeconds+" & wait $!; "
+                + "touch "+timedOutFile+"; pkill -TERM -P "+pid+" 2>/dev/null; kill -TERM "+pid+" 2>/dev/null ) > /dev/null 2>&1 &");
+        result.add(TMP_DIR_VAR+"_WATCHDOG=$!");
+        result.add("wait "+pid);
+        result.add(TMP_DIR_VAR+"_EXIT=$?");
+        result.add("kill $"+TMP_DIR_VAR+"_WATCHDOG 2>/dev/null; wait $"+TMP_DIR_VAR+"_WATCHDOG 2>/dev/null");
+        result.add("if [ -e "+timedOutFile+" ]; then "+TMP_DIR_VAR+"_EXIT="+TIMED_OUT_EXIT_STATUS+"; rm -f "+timedOutFile+"; fi");
+    }
+
+    /**
+     * Splits the output of the script into a result for each command, in order;
+     * the result is null for any command whose output is missing or incomplete
+     * (e.g. if the script was killed part way through).
+     */
+    List<SshPollValue> parse(SshMachineLocation machine, String output) {
+        List<SshPollValue> result = Lists.newArrayListWithCapacity(commands.size());
+        int pos = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            SshPollValue value = null;
+            String outMarker = marker("out", i)+"\n";
+            String errMarker = "\n"+marker("err", i)+"\n";
+            String exitMarker = "\n"+marker("exit", i)+" ";
+            int outStart = output.indexOf(outMarker, pos);
+            int errStart = (outStart >= 0) ? output.indexOf(errMarker, outStart + outMarker.length()) : -1;
+            int exitStart = (errStart >= 0) ? output.indexOf(exitMarker, errStart + errMarker.length()) : -1;
+            int exitEnd = (exitStart >= 0) ? output.indexOf('\n', exitStart + exitMarker.length()) : -1;
+            if (exitEnd >= 0) {
+                String stdout = output.substring(outStart + outMarker.length(), errStart);
+                String stderr = output.substring(errStart + errMarker.length(), exitStart);
+                try {
+                    int exitStatus = Integer.parseInt(output.substring(exitStart + exitMarker.length(), exitEnd).trim());
+                    value = new SshPollValue(machine, exitStatus, stdout, stderr);
+                } catch (NumberFormatException e) {
+                    // leave as null; treated as no result
+                }
+                pos = exitEnd;
+            }
+            result.add(value);
+        }
+        return result;
+    }
+
+    private String marker(String section, int index) {
+        return token+"-"+section+"-"+index;
+    }
+}
@@ -22,11 +22,14 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,20 +41,25 @@ import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
+import brooklyn.event.feed.PollHandler;
 import brooklyn.event.feed.Poller;
 import brooklyn.location.basic.Locations;
 import brooklyn.location.basic.Machines;
 import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.internal.ssh.SshTool;
 import brooklyn.util.time.Duration;
 
+import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
@@ -101,6 +109,12 @@ public class SshFeed extends AbstractFeed {
     
     public static final ConfigKey<Boolean> EXEC_AS_COMMAND = ConfigKeys.newBooleanConfigKey("execAsCommand");
     
+    public static final ConfigKey<Boolean> MULTIPLEXED = ConfigKeys.newBooleanConfigKey("multiplexed");
+    
+    public static final ConfigKey<Duration> MULTIPLEXED_COMMAND_TIMEOUT = ConfigKeys.newConfigKey(Duration.class, "multiplexedCommandTimeout", 
+            "Time after which each command in a multiplexed script is killed, so that one hung command does not delay the others' results", 
+            Duration.ONE_MINUTE);
+    
     @SuppressWarnings("serial")
     public static final ConfigKey<SetMultimap<SshPollIdentifier, SshPollConfig<?>>> POLLS = ConfigKeys.newConfigKey(
             new TypeToken<SetMultimap<SshPollIdentifier, SshPollConfig<?>>>() {},
@@ -117,6 +131,8 @@ public class SshFeed extends AbstractFeed {
         private Duration period = Duration.of(500, TimeUnit.MILLISECONDS);
         private List<SshPollConfig<?>> polls = Lists.newArrayList();
         private boolean execAsCommand = false;
+        private boolean multiplexed = false;
+        private Duration multiplexedCommandTimeout;
         private String uniqueTag;
         private volatile boolean built;
         
@@ -158,6 +174,21 @@ public class SshFeed extends AbstractFeed {
             execAsCommand = false;
             return this;
         }
+        /**
+         * Combines all the commands polled with the same period into one script, so they are run with a single
+         * ssh exec rather than one each, and their output is split back out for each poll's handlers.
+         * Each command still runs in its own sub-shell with its own env.
+         */
+        public Builder multiplexed() { return multiplexed(true); }
+        public Builder multiplexed(boolean multiplexed) {
+            this.multiplexed = multiplexed;
+            return this;
+        }
+        /** @see SshFeed#MULTIPLEXED_COMMAND_TIMEOUT */
+        public Builder multiplexedCommandTimeout(Duration val) {
+            this.multiplexedCommandTimeout = val;
+            return this;
+        }
         public Builder uniqueTag(String uniqueTag) {
             this.uniqueTag = uniqueTag;
             return this;
@@ -206,6 +237,9 @@ public class SshFeed extends AbstractFeed {
         return Machines.findUniqueSshMachineLocation(entity.getLocations()).orNull();
     }
 
+    private final AtomicLong execs = new AtomicLong();
+    private final AtomicLong commandsRun = new AtomicLong();
+
     /**
      * For rebind; do not call directly; use builder
      */
@@ -216,6 +250,8 @@ public class SshFeed extends AbstractFeed {
         setConfig(ONLY_IF_SERVICE_UP, builder.onlyIfServiceUp);
         setConfig(MACHINE, builder.machine != null ? builder.machine : null);
         setConfig(EXEC_AS_COMMAND, builder.execAsCommand);
+        setConfig(MULTIPLEXED, builder.multiplexed);
+        if (builder.multiplexedCommandTimeout != null) setConfig(MULTIPLEXED_COMMAND_TIMEOUT, builder.multiplexedCommandTimeout);
         
         SetMultimap<SshPollIdentifier, SshPollConfig<?>> polls = HashMultimap.<SshPollIdentifier,SshPollConfig<?>>create();
         for (SshPollConfig<?> config : builder.polls) {
@@ -240,6 +276,7 @@ public class SshFeed extends AbstractFeed {
     @Override
     protected void preStart() {
         SetMultimap<SshPollIdentifier, SshPollConfig<?>> polls = getConfig(POLLS);
+        Map<Long, Map<SshPollIdentifier, PollHandler<SshPollValue>>> handlersByPeriod = Maps.newLinkedHashMap();
         
         for (final SshPollIdentifier pollInfo : polls.keySet()) {
             Set<SshPollConfig<?>> configs = polls.get(pollInfo);
@@ -251,6 +288,16 @@ public class SshFeed extends AbstractFeed {
                 if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
             }
             
+            if (Boolean.TRUE.equals(getConfig(MULTIPLEXED))) {
+                Map<SshPollIdentifier, PollHandler<SshPollValue>> handlersForPeriod = handlersByPeriod.get(minPeriod);
+                if (handlersForPeriod == null) {
+                    handlersForPeriod = Maps.newLinkedHashMap();
+                    handlersByPeriod.put(minPeriod, handlersForPeriod);
+                }
+                handlersForPeriod.put(pollInfo, new DelegatingPollHandler<SshPollValue>(handlers));
+                continue;
+            }
+            
             getPoller().scheduleAtFixedRate(
                     new Callable<SshPollValue>() {
                         public SshPollValue call() throws Exception {
@@ -259,6 +306,109 @@ public class SshFeed extends AbstractFeed {
                     new DelegatingPollHandler<SshPollValue>(handlers),
                     minPeriod);
         }
+        
+        for (Map.Entry<Long, Map<SshPollIdentifier, PollHandler<SshPollValue>>> entry : handlersByPeriod.entrySet()) {
+            registerMultiplexedPoller(entry.getValue(), entry.getKey());
+        }
+    }
+    
+    /**
+     * Polls all the given commands with one ssh exec, passing each command's result to its handler.
+     * The commands and envs are evaluated (from their suppliers) on each poll, as for non-multiplexed polls;
+     * if that fails for one poll, only that poll's handler is given the exception, and the others still run.
+     */
+    @SuppressWarnings("unchecked")
+    private void registerMultiplexedPoller(final Map<SshPollIdentifier, PollHandler<SshPollValue>> handlers, long period) {
+        final List<SshPollIdentifier> pollInfos = ImmutableList.copyOf(handlers.keySet());
+        
+        // the poller's values are the list of results, rather than a single SshPollValue
+        ((Poller<Object>) super.getPoller()).scheduleAtFixedRate(
+                new Callable<Object>() {
+                    public Object call() throws Exception {
+                        // one entry per poll: its SshPollValue, or the exception evaluating its command or env,
+                        // or null if its output was incomplete
+                        List<Object> results = Lists.newArrayList(Collections.nCopies(pollInfos.size(), null));
+                        List<Integer> indexes = Lists.newArrayList();
+                        List<String> commands = Lists.newArrayList();
+                        List<Map<String, String>> envs = Lists.newArrayList();
+                        for (int i = 0; i < pollInfos.size(); i++) {
+                            SshPollIdentifier pollInfo = pollInfos.get(i);
+                            try {
+                                String command = pollInfo.command.get();
+                                Map<String, String> env = pollInfo.env.get();
+                                commands.add(command);
+                                envs.add(env);
+                                indexes.add(i);
+                            } catch (Exception e) {
+                                Exceptions.propagateIfFatal(e);
+                                results.set(i, e);
+                            }
+                        }
+                        if (!commands.isEmpty()) {
+                            List<SshPollValue> vals = execMultiplexed(commands, envs);
+                            for (int j = 0; j < indexes.size(); j++) {
+                                results.set(indexes.get(j), vals.get(j));
+                            }
+                        }
+                        return results;
+                    }},
+                new PollHandler<Object>() {
+                    @Override public boolean checkSuccess(Object val) {
+                        return true;
+                    }
+                    @Override public void onSuccess(Object val) {
+                        List<Object> vals = (List<Object>) val;
+                        for (int i = 0; i < pollInfos.size(); i++) {
+                            PollHandler<SshPollValue> handler = handlers.get(pollInfos.get(i));
+                            Object result = vals.get(i);
+                            if (result == null) {
+                                handler.onException(new IllegalStateException("No result in multiplexed ssh output for command "+(i+1)+" of "+pollInfos.size()));
+                            } else if (result instanceof Exception) {
+                                handler.onException((Exception) result);
+                            } else if (handler.checkSuccess((SshPollValue) result)) {
+                                handler.onSuccess((SshPollValue) result);
+                            } else {
+                                handler.onFailure((SshPollValue) result);
+                            }
+                        }
+                    }
+                    @Override public void onFailure(Object val) {
+                        onSuccess(val);
+                    }
+                    @Override public void onException(Exception exception) {
+                        for (PollHandler<SshPollValue> handler : handlers.values()) {
+                            handler.onException(exception);
+                        }
+                    }
+                    @Override public String getDescription() {
+                        return "multiplexed ssh "+pollInfos.size()+" command"+(pollInfos.size() == 1 ? "" : "s");
+                    }
+                },
+                period);
+    }
+    
+    /** 
+     * Compares results by exit status and output, ignoring the machine. For {@link #MULTIPLEXED} polls the value 
+     * is the list of each command's result (or the exception evaluating the command, or null), compared element-wise.
+     */
+    @Override
+    protected Function<Object, ?> getPollChangeKey() {
+        return new Function<Object, Object>() {
+            public Object apply(Object input) {
+                if (input instanceof List) {
+                    List<Object> keys = Lists.newArrayList();
+                    for (Object result : (List<?>) input) {
+                        keys.add(apply(result));
+                    }
+                    return keys;
+                } else if (input instanceof Exception) {
+                    return input.toString();
+                } else if (input == null) {
+                    return null;
+                }
+                SshPollValue value = (SshPollValue) input;
+                return Arrays.asList(value.getExitStatus(), value.getStdout(), value.getStderr());
+            }};
     }
     
     @SuppressWarnings("unchecked")
@@ -278,6 +428,8 @@ public class SshFeed extends AbstractFeed {
             .configure(SshTool.PROP_NO_EXTRA_OUTPUT, true)
             .configure(SshTool.PROP_OUT_STREAM, stdout)
             .configure(SshTool.PROP_ERR_STREAM, stderr);
+        execs.incrementAndGet();
+        commandsRun.incrementAndGet();
         if (Boolean.TRUE.equals(execAsCommand)) {
             exitStatus = machine.execCommands(flags.getAllConfig(),
                     "ssh-feed", ImmutableList.of(command), env);
@@ -288,4 +440,44 @@ public class SshFeed extends AbstractFeed {
 
         return new SshPollValue(machine, exitStatus, new String(stdout.toByteArray()), new String(stderr.toByteArray()));
     }
+    
+    /**
+     * Runs all the commands in one script, returning their results in order (null for any which did not complete).
+     * Always executed as a script; when not {@link #EXEC_AS_COMMAND} each command also fails on error,
+     * as it would in its own script.
+     */
+    private List<SshPollValue> execMultiplexed(List<String> commands, List<Map<String,String>> envs) throws IOException {
+        SshMachineLocation machine = getMachine();
+        MultiplexedSshScript script = new MultiplexedSshScript(commands, envs, !Boolean.TRUE.equals(getConfig(EXEC_AS_COMMAND)), 
+                getConfig(MULTIPLEXED_COMMAND_TIMEOUT));
+        if (log.isTraceEnabled()) log.trace("Ssh polling for {}, executing multiplexed {} with envs {}", new Object[] {machine, commands, envs});
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+        // stdout is not logged, as the logging stream drops blank lines, which the script's output framing relies on
+        ConfigBag flags = ConfigBag.newInstance()
+            .configure(SshTool.PROP_NO_EXTRA_OUTPUT, true)
+            .configure(SshMachineLocation.NO_STDOUT_LOGGING, true)
+            .configure(SshTool.PROP_OUT_STREAM, stdout)
+            .configure(SshTool.PROP_ERR_STREAM, stderr);
+        execs.incrementAndGet();
+        commandsRun.addAndGet(commands.size());
+        int exitStatus = machine.execScript(flags.getAllConfig(), "ssh-feed", script.getScriptLines());
+        
+        List<SshPollValue> result = script.parse(machine, new String(stdout.toByteArray()));
+        if (exitStatus != 0 && log.isDebugEnabled()) {
+            log.debug("Multiplexed ssh poll for {} on {} exited with {}; stderr: {}", new Object[] {entity, machine, exitStatus, new String(stderr.toByteArray())});
+        }
+        return result;
+    }
+    
+    /** Adds to {@link AbstractFeed#getPollMetrics()} the number of ssh execs, and of commands run by them. */
+    @Override
+    public Map<String, Object> getPollMetrics() {
+        return MutableMap.<String, Object>builder()
+                .putAll(super.getPollMetrics())
+                .put("sshExecs", execs.get())
+                .put("sshCommands", commandsRun.get())
+                .build();
+    }
 }
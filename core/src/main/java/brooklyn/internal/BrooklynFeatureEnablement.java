@@ -84,6 +84,20 @@ public class BrooklynFeatureEnablement {
      */
     public static final String FEATURE_INFER_CATALOG_ITEM_ON_REBIND = "brooklyn.backwardCompatibility.feature.inferCatalogItemOnRebind";
     
+    /**
+     * Whether entities hold the values of the attribute sensors declared on their type in an array indexed by
+     * {@link brooklyn.event.basic.AttributeSlots slot}, rather than in a map keyed by sensor name parts;
+     * this makes attribute access cheaper, and entities smaller. Off by default; when on, {@link brooklyn.event.basic.AttributeMap#asMap()}
+     * lists the declared sensors before any others.
+     */
+    public static final String FEATURE_ATTRIBUTE_SLOT_STORAGE = "brooklyn.entity.attributeSlotStorage";
+
+    /**
+     * Whether entities cache the resolved value of each config key, until their config (or their parent's) changes;
+     * values which are tasks or deferred suppliers are always resolved on each call.
+     */
+    public static final String FEATURE_CONFIG_RESOLVED_VALUE_CACHE = "brooklyn.entity.configResolvedValueCache";
+
     private static final Map<String, Boolean> FEATURE_ENABLEMENTS = Maps.newLinkedHashMap();
 
     private static final Object MUTEX = new Object();
@@ -102,6 +116,8 @@ public class BrooklynFeatureEnablement {
         setDefault(FEATURE_USE_BROOKLYN_LIVE_OBJECTS_DATAGRID_STORAGE, false);
         setDefault(FEATURE_RENAME_THREADS, false);
         setDefault(FEATURE_INFER_CATALOG_ITEM_ON_REBIND, true);
+        setDefault(FEATURE_ATTRIBUTE_SLOT_STORAGE, false);
+        setDefault(FEATURE_CONFIG_RESOLVED_VALUE_CACHE, true);
     }
     
     static {
@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import brooklyn.location.Location;
 import brooklyn.location.LocationSpec;
 import brooklyn.location.MachineLocation;
+import brooklyn.location.MachineManagementMixins.ObtainsMachinesInBatches;
 import brooklyn.location.MachineProvisioningLocation;
 import brooklyn.location.NoMachinesAvailableException;
 import brooklyn.management.LocationManager;
@@ -45,8 +46,11 @@ import brooklyn.util.text.WildcardGlobs;
 import brooklyn.util.text.WildcardGlobs.PhraseTreatment;
 
 import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -60,7 +64,7 @@ import com.google.common.collect.Sets;
  * (override provisionMore and canProvisionMore).
  */
 public class FixedListMachineProvisioningLocation<T extends MachineLocation> extends AbstractLocation 
-implements MachineProvisioningLocation<T>, Closeable {
+implements MachineProvisioningLocation<T>, ObtainsMachinesInBatches<T>, Closeable {
 
     // TODO Synchronization looks very wrong for accessing machines/inUse 
     // e.g. removeChild doesn't synchronize when doing machines.remove(...),
@@ -251,6 +255,25 @@ implements MachineProvisioningLocation<T>, Closeable {
         return machine;
     }
 
+    @Override
+    public List<T> obtainBatch(int count, Map<?,?> flags) throws NoMachinesAvailableException {
+        Preconditions.checkArgument(count >= 0, "count must be non-negative, but was %s", count);
+        
+        synchronized (lock) {
+            Set<T> a = getAvailable();
+            if (a.size() < count && canProvisionMore()) {
+                provisionMore(count - a.size(), flags);
+                a = getAvailable();
+            }
+            if (a.size() < count)
+                throw new NoMachinesAvailableException("Only "+a.size()+" of "+count+" machines available in "+toString());
+            
+            List<T> result = ImmutableList.copyOf(Iterables.limit(a, count));
+            inUse.addAll(result);
+            return result;
+        }
+    }
+
     @Override
     public void release(T machine) {
         synchronized (lock) {
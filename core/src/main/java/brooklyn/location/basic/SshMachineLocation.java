@@ -35,6 +35,7 @@ import java.io.StringReader;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.security.KeyPair;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +50,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.config.BrooklynLogging;
+import brooklyn.config.BrooklynServerConfig;
 import brooklyn.config.ConfigKey;
 import brooklyn.config.ConfigKey.HasConfigKey;
 import brooklyn.config.ConfigUtils;
@@ -62,7 +64,10 @@ import brooklyn.location.MachineLocation;
 import brooklyn.location.OsDetails;
 import brooklyn.location.PortRange;
 import brooklyn.location.PortSupplier;
+import brooklyn.management.ManagementContext;
 import brooklyn.management.Task;
+import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.management.internal.NonDeploymentManagementContext;
 import brooklyn.util.ResourceUtils;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
@@ -74,6 +79,7 @@ import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.guava.KeyTransformingLoadingCache.KeyTransformingSameTypeLoadingCache;
 import brooklyn.util.internal.ssh.ShellTool;
+import brooklyn.util.internal.ssh.SshConnectionRegistry;
 import brooklyn.util.internal.ssh.SshException;
 import brooklyn.util.internal.ssh.SshTool;
 import brooklyn.util.internal.ssh.sshj.SshjTool;
@@ -197,6 +203,13 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
             SshTool.PROP_SCRIPT_HEADER, SshTool.PROP_PERMISSIONS, SshTool.PROP_LAST_MODIFICATION_DATE,
             SshTool.PROP_LAST_ACCESS_DATE, SshTool.PROP_OWNER_UID, SshTool.PROP_SSH_RETRY_DELAY);
 
+    private static final Set<String> REUSABLE_SSH_PROP_NAMES = ImmutableSet.copyOf(
+            Iterables.transform(REUSABLE_SSH_PROPS, new Function<ConfigKey<?>, String>() {
+                @Override public String apply(ConfigKey<?> input) {
+                    return input.getName();
+                }
+            }));
+
     public static final Set<HasConfigKey<?>> ALL_SSH_CONFIG_KEYS =
             ImmutableSet.<HasConfigKey<?>>builder()
                     .addAll(ConfigUtils.getStaticKeysOnClass(SshMachineLocation.class))
@@ -226,6 +239,8 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
     }
 
     private final transient Object poolCacheMutex = new Object();
+    /** connections this location has used in the management context's {@link SshConnectionRegistry}, closed with this location */
+    private final transient Set<Map<String, Object>> sharedConnectionKeys = Sets.newConcurrentHashSet();
     @Nonnull
     private LoadingCache<Map<String, ?>, Pool<SshTool>> getSshPoolCache() {
         synchronized (poolCacheMutex) {
@@ -239,8 +254,8 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
 
     private LoadingCache<Map<String, ?>, Pool<SshTool>> buildSshToolPoolCacheLoader() {
         // TODO: Appropriate numbers for maximum size and expire after access
-        // At the moment every SshMachineLocation instance creates its own pool.
-        // It might make more sense to create one pool and inject it into all SshMachineLocations.
+        // Only used when there is no management context's SshConnectionRegistry (or it is disabled),
+        // in which case every SshMachineLocation instance creates its own pool.
         Duration expiryDuration = getConfig(SSH_CACHE_EXPIRY_DURATION);
         
         LoadingCache<Map<String, ?>, Pool<SshTool>> delegate = CacheBuilder.newBuilder()
@@ -283,12 +298,6 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
                     }
                 });
 
-        final Set<String> reusableSshProperties = ImmutableSet.copyOf(
-                Iterables.transform(REUSABLE_SSH_PROPS, new Function<ConfigKey<?>, String>() {
-                    @Override public String apply(ConfigKey<?> input) {
-                        return input.getName();
-                    }
-                }));
         // Groovy-eclipse compiler refused to compile `KeyTransformingSameTypeLoadingCache.from(...)`
         return new KeyTransformingSameTypeLoadingCache<Map<String, ?>, Pool<SshTool>>(
                 delegate,
@@ -296,7 +305,7 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
                     @Override
                     public Map<String, ?> apply(@Nullable Map<String, ?> input) {
                         Map<String, Object> copy = new HashMap<String, Object>(input);
-                        copy.keySet().removeAll(reusableSshProperties);
+                        copy.keySet().removeAll(REUSABLE_SSH_PROP_NAMES);
                         return copy;
                     }
                 });
@@ -413,6 +422,13 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
             cleanupTask = null;
             sshPoolCacheOrNull = null;
         }
+        if (!sharedConnectionKeys.isEmpty()) {
+            SshConnectionRegistry registry = getSshConnectionRegistry();
+            for (Map<String, Object> connectionKey : sharedConnectionKeys) {
+                if (registry != null) registry.closeIdleConnections(connectionKey);
+            }
+            sharedConnectionKeys.clear();
+        }
     }
 
     // should not be necessary, and causes objects to be kept around a lot longer than desired
@@ -472,6 +488,10 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
     }
 
     protected <T> T execSsh(final Map<String, ?> props, final Function<ShellTool, T> task) {
+        SshConnectionRegistry registry = getSshConnectionRegistry();
+        if (registry != null) {
+            return execSshShared(registry, props, task);
+        }
         final LoadingCache<Map<String, ?>, Pool<SshTool>> sshPoolCache = getSshPoolCache();
         Pool<SshTool> pool = sshPoolCache.getUnchecked(props);
         if (LOG.isTraceEnabled()) {
@@ -501,39 +521,79 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
         return connectSsh(ImmutableMap.of());
     }
 
+    /**
+     * Returns the management context's registry of shared ssh connections, if this location has a running
+     * management context and sharing is enabled; otherwise null, in which case this location pools its own connections.
+     */
+    @Nullable
+    private SshConnectionRegistry getSshConnectionRegistry() {
+        ManagementContext managementContext = getManagementContext();
+        if (!(managementContext instanceof ManagementContextInternal) || !managementContext.isRunning()) return null;
+        if (managementContext instanceof NonDeploymentManagementContext) return null;
+        if (!Boolean.TRUE.equals(managementContext.getConfig().getConfig(BrooklynServerConfig.SSH_POOL_ENABLED))) return null;
+        return ((ManagementContextInternal)managementContext).getSshConnectionRegistry();
+    }
+
+    private <T> T execSshShared(SshConnectionRegistry registry, Map<String, ?> props, Function<ShellTool, T> task) {
+        Map<String, Object> connectProps = new HashMap<String, Object>(props);
+        connectProps.keySet().removeAll(REUSABLE_SSH_PROP_NAMES);
+        if (!connectProps.containsKey(SshTool.PROP_KEEP_ALIVE_INTERVAL.getName())) {
+            // a value configured on this location still takes precedence, as location config overrides these props
+            connectProps.put(SshTool.PROP_KEEP_ALIVE_INTERVAL.getName(), registry.getKeepAliveInterval().toMilliseconds());
+        }
+        final Map<String, ?> toolProps = Collections.unmodifiableMap(connectProps);
+        // connections are shared with all locations which would create an identical tool, i.e. same host, user, credentials etc
+        Map<String, Object> connectionKey = new HashMap<String, Object>(getSshToolArgs(toolProps).getAllConfig());
+        connectionKey.keySet().removeAll(REUSABLE_SSH_PROP_NAMES);
+        sharedConnectionKeys.add(connectionKey);
+        return registry.exec(connectionKey,
+                new Supplier<SshTool>() {
+                    @Override public SshTool get() {
+                        return connectSsh(toolProps);
+                    }},
+                task,
+                truth(props.get(CLOSE_CONNECTION.getName())));
+    }
+
+    /** The arguments for creating an {@link SshTool} for this machine: the given props, overridden by this location's ssh config. */
+    private ConfigBag getSshToolArgs(Map<String, ?> props) {
+        if (!truth(user)) {
+            String newUser = getUser();
+            if (LOG.isTraceEnabled()) LOG.trace("For "+this+", setting user in connectSsh: oldUser="+user+"; newUser="+newUser);
+            user = newUser;
+        }
+
+        ConfigBag args = new ConfigBag()
+            .configure(SshTool.PROP_USER, user)
+            // default value of host, overridden if SSH_HOST is supplied
+            .configure(SshTool.PROP_HOST, address.getHostName())
+            .putAll(props);
+
+        for (Map.Entry<String,Object> entry: getAllConfigBag().getAllConfig().entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(SshTool.BROOKLYN_CONFIG_KEY_PREFIX)) {
+                key = Strings.removeFromStart(key, SshTool.BROOKLYN_CONFIG_KEY_PREFIX);
+            } else if (ALL_SSH_CONFIG_KEY_NAMES.contains(entry.getKey())) {
+                // key should be included, and does not need to be changed
+
+                // TODO make this config-setting mechanism more universal
+                // currently e.g. it will not admit a tool-specific property.
+                // thinking either we know about the tool here,
+                // or we don't allow unadorned keys to be set
+                // (require use of BROOKLYN_CONFIG_KEY_PREFIX)
+            } else {
+                // this key is not applicable here; ignore it
+                continue;
+            }
+            args.putStringKey(key, entry.getValue());
+        }
+        return args;
+    }
+
     protected boolean previouslyConnected = false;
     protected SshTool connectSsh(Map props) {
         try {
-            if (!truth(user)) {
-                String newUser = getUser();
-                if (LOG.isTraceEnabled()) LOG.trace("For "+this+", setting user in connectSsh: oldUser="+user+"; newUser="+newUser);
-                user = newUser;
-            }
-
-            ConfigBag args = new ConfigBag()
-                .configure(SshTool.PROP_USER, user)
-                // default value of host, overridden if SSH_HOST is supplied
-                .configure(SshTool.PROP_HOST, address.getHostName())
-                .putAll(props);
-
-            for (Map.Entry<String,Object> entry: getAllConfigBag().getAllConfig().entrySet()) {
-                String key = entry.getKey();
-                if (key.startsWith(SshTool.BROOKLYN_CONFIG_KEY_PREFIX)) {
-                    key = Strings.removeFromStart(key, SshTool.BROOKLYN_CONFIG_KEY_PREFIX);
-                } else if (ALL_SSH_CONFIG_KEY_NAMES.contains(entry.getKey())) {
-                    // key should be included, and does not need to be changed
-
-                    // TODO make this config-setting mechanism more universal
-                    // currently e.g. it will not admit a tool-specific property.
-                    // thinking either we know about the tool here,
-                    // or we don't allow unadorned keys to be set
-                    // (require use of BROOKLYN_CONFIG_KEY_PREFIX)
-                } else {
-                    // this key is not applicable here; ignore it
-                    continue;
-                }
-                args.putStringKey(key, entry.getValue());
-            }
+            ConfigBag args = getSshToolArgs(props);
             if (LOG.isTraceEnabled()) LOG.trace("creating ssh session for "+args);
             if (!user.equals(args.get(SshTool.PROP_USER))) {
                 LOG.warn("User mismatch configuring ssh for "+this+": preferring user "+args.get(SshTool.PROP_USER)+" over "+user);
@@ -21,6 +21,7 @@ package brooklyn.management.internal;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
 
+import java.io.File;
 import java.net.URI;
 import java.net.URL;
 import java.util.Map;
@@ -48,6 +49,7 @@ import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.drivers.BasicEntityDriverManager;
 import brooklyn.entity.drivers.EntityDriverManager;
 import brooklyn.entity.drivers.downloads.BasicDownloadsManager;
+import brooklyn.entity.drivers.downloads.DownloadArtifactCache;
 import brooklyn.entity.drivers.downloads.DownloadResolverManager;
 import brooklyn.entity.rebind.RebindManager;
 import brooklyn.entity.rebind.RebindManagerImpl;
@@ -73,8 +75,13 @@ import brooklyn.util.ResourceUtils;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpClientRegistry;
+import brooklyn.util.internal.ssh.SshConnectionRegistry;
+import brooklyn.util.jmx.JmxConnectionRegistry;
+import brooklyn.util.os.Os;
 import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.Tasks;
+import brooklyn.util.text.Strings;
 
 import com.google.api.client.repackaged.com.google.common.base.Objects;
 import com.google.common.base.Function;
@@ -146,6 +153,10 @@ public abstract class AbstractManagementContext implements ManagementContextInte
 
     private final EntityDriverManager entityDriverManager;
     protected DownloadResolverManager downloadsManager;
+    private HttpClientRegistry httpClientRegistry;
+    private JmxConnectionRegistry jmxConnectionRegistry;
+    private SshConnectionRegistry sshConnectionRegistry;
+    private DownloadArtifactCache downloadArtifactCache;
 
     protected EntitlementManager entitlementManager;
     
@@ -181,6 +192,11 @@ public abstract class AbstractManagementContext implements ManagementContextInte
         highAvailabilityManager.stop();
         rebindManager.stop();
         storage.terminate();
+        synchronized (this) {
+            if (httpClientRegistry != null) httpClientRegistry.close();
+            if (jmxConnectionRegistry != null) jmxConnectionRegistry.close();
+            if (sshConnectionRegistry != null) sshConnectionRegistry.close();
+        }
         // Don't unmanage everything; different entities get given their events at different times 
         // so can cause problems (e.g. a group finds out that a member is unmanaged, before the
         // group itself has been told that it is unmanaged).
@@ -238,6 +254,56 @@ public abstract class AbstractManagementContext implements ManagementContextInte
         return entityDriverManager;
     }
 
+    @Override
+    public synchronized HttpClientRegistry getHttpClientRegistry() {
+        if (httpClientRegistry == null) {
+            httpClientRegistry = new HttpClientRegistry(
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POOL_MAX_CONNECTIONS_PER_ROUTE),
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POOL_MAX_CONNECTIONS_TOTAL),
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POOL_IDLE_TIMEOUT),
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POOL_ASYNC_IO_THREADS),
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POOL_ASYNC_MAX_REQUESTS),
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POOL_ASYNC_REQUEST_TIMEOUT),
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POOL_LEASE_TIMEOUT),
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POOL_SOCKET_TIMEOUT));
+        }
+        return httpClientRegistry;
+    }
+
+    @Override
+    public synchronized JmxConnectionRegistry getJmxConnectionRegistry() {
+        if (jmxConnectionRegistry == null) {
+            jmxConnectionRegistry = new JmxConnectionRegistry(
+                    configMap.getConfig(BrooklynServerConfig.JMX_POOL_IDLE_TIMEOUT),
+                    configMap.getConfig(BrooklynServerConfig.JMX_POOL_HEALTH_CHECK_INTERVAL),
+                    configMap.getConfig(BrooklynServerConfig.JMX_POOL_MAX_RECONNECT_BACKOFF));
+        }
+        return jmxConnectionRegistry;
+    }
+
+    @Override
+    public synchronized SshConnectionRegistry getSshConnectionRegistry() {
+        if (sshConnectionRegistry == null) {
+            sshConnectionRegistry = new SshConnectionRegistry(
+                    configMap.getConfig(BrooklynServerConfig.SSH_POOL_MAX_SESSIONS_PER_HOST),
+                    configMap.getConfig(BrooklynServerConfig.SSH_POOL_IDLE_TIMEOUT),
+                    configMap.getConfig(BrooklynServerConfig.SSH_POOL_KEEP_ALIVE_INTERVAL),
+                    configMap.getConfig(BrooklynServerConfig.SSH_POOL_MAX_SESSION_WAIT));
+        }
+        return sshConnectionRegistry;
+    }
+
+    @Override
+    public synchronized DownloadArtifactCache getDownloadArtifactCache() {
+        if (downloadArtifactCache == null) {
+            String dir = configMap.getConfig(DownloadArtifactCache.CACHE_DIR);
+            if (Strings.isBlank(dir)) dir = Os.mergePaths(BrooklynServerConfig.getMgmtBaseDir(this), "download-cache");
+            Long maxSize = configMap.getConfig(DownloadArtifactCache.MAX_SIZE);
+            downloadArtifactCache = new DownloadArtifactCache(new File(Os.tidyPath(dir)), (maxSize != null) ? maxSize : 0);
+        }
+        return downloadArtifactCache;
+    }
+
     @Override
     public DownloadResolverManager getEntityDownloadsManager() {
         return downloadsManager;
@@ -95,6 +95,11 @@ public abstract class AbstractSubscriptionManager implements SubscriptionManager
      * <li>subscriberExecutionManagerTag - a tag to pass to execution manager (without setting any execution semantics / TaskPreprocessor);
      *      if not supplied and there is a subscriber, this will be inferred from the subscriber and set up with SingleThreadedScheduler
      * <li>eventFilter - a Predicate&lt;SensorEvent&gt; instance to filter what events are delivered
+     * <li>batchDelivery - if true, events are appended to a queue for the subscriber and delivered
+     *      in batches by a single task, rather than by one task per event; events are still delivered in order
+     *      with respect to other batched subscriptions of the same subscriber
+     * <li>latestValueOnly - if true (implies batchDelivery), where several events for the same producer and sensor
+     *      are waiting to be delivered, only the most recent is delivered; for subscribers which only need the current value
      * </ul>
      * 
      * @see SubscriptionManager#subscribe(Map, Entity, Sensor, SensorEventListener)
@@ -18,6 +18,7 @@
  */
 package brooklyn.management.internal;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -35,11 +36,15 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.config.BrooklynProperties;
+import brooklyn.config.BrooklynServerConfig;
 import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.BrooklynTaskTags.WrappedEntity;
@@ -55,6 +60,7 @@ import brooklyn.util.collections.MutableMap;
 import brooklyn.util.collections.MutableSet;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.javalang.MemoryUsageTracker;
+import brooklyn.util.os.Os;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.ExecutionListener;
 import brooklyn.util.task.Tasks;
@@ -81,6 +87,10 @@ import com.google.common.collect.Iterables;
  * and keeping at most 100000 tasks in the system,
  * max 1000 tasks per entity, 50 per effector within that entity, and 50 per other non-effector tag
  * within that entity (or global if not attached to an entity).
+ * <p>
+ * If {@link #TASK_HISTORY_ENABLED} is set, the tasks it deletes are first recorded in a {@link TaskHistoryStore}
+ * on disk, so their history remains available (e.g. in the REST API): both those deleted for age or capacity
+ * reasons, and those of entities which have been unmanaged.
  * 
  * @author aled
  */
@@ -133,6 +143,31 @@ public class BrooklynGarbageCollector {
             "brooklyn.gc.maxTaskAge", 
             "the duration after which a completed task will be automatically deleted", 
             Duration.days(30));
+
+    public static final ConfigKey<Boolean> TASK_HISTORY_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.gc.taskHistory.enabled", 
+            "whether to record tasks to disk when they are deleted, so that their history can still be viewed; "
+            + "see "+TaskHistoryStore.class.getSimpleName(), 
+            false);
+
+    public static final ConfigKey<String> TASK_HISTORY_DIR = ConfigKeys.newStringConfigKey(
+            "brooklyn.gc.taskHistory.dir", 
+            "the directory for the task history, if enabled; defaults to task-history in the management base dir");
+
+    public static final ConfigKey<Long> TASK_HISTORY_MAX_SIZE = ConfigKeys.newLongConfigKey(
+            "brooklyn.gc.taskHistory.maxSize", 
+            "the approximate maximum size in bytes of the task history on disk, after which the oldest records are discarded", 
+            100L*1024*1024);
+
+    public static final ConfigKey<Integer> TASK_HISTORY_MAX_STREAM_SIZE = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.gc.taskHistory.maxStreamSize", 
+            "the number of characters recorded of each task stream (e.g. stdout and stderr), keeping the end of the stream", 
+            4096);
+
+    public static final ConfigKey<Integer> TASK_HISTORY_RECENT_TASKS = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.gc.taskHistory.recentTasksInMemory", 
+            "the number of recently deleted tasks kept in memory in full, in addition to their record on disk", 
+            100);
     
     protected final static Comparator<Task<?>> TASKS_OLDEST_FIRST_COMPARATOR = new Comparator<Task<?>>() {
         @Override public int compare(Task<?> t1, Task<?> t2) {
@@ -146,6 +181,7 @@ public class BrooklynGarbageCollector {
     private final BrooklynStorage storage;
     private final BrooklynProperties brooklynProperties;
     private final ScheduledExecutorService executor;
+    private final TaskHistoryStore taskHistory;
     private ScheduledFuture<?> activeCollector;
     private Map<Entity,Task<?>> unmanagedEntitiesNeedingGc = new LinkedHashMap<Entity, Task<?>>();
     
@@ -159,6 +195,7 @@ public class BrooklynGarbageCollector {
         this.brooklynProperties = brooklynProperties;
 
         doSystemGc = brooklynProperties.getConfig(DO_SYSTEM_GC);
+        taskHistory = brooklynProperties.getConfig(TASK_HISTORY_ENABLED) ? newTaskHistoryStore() : null;
         
         executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
                 @Override public Thread newThread(Runnable r) {
@@ -173,6 +210,23 @@ public class BrooklynGarbageCollector {
         scheduleCollector(true);
     }
 
+    protected TaskHistoryStore newTaskHistoryStore() {
+        String dir = brooklynProperties.getConfig(TASK_HISTORY_DIR);
+        if (Strings.isBlank(dir)) dir = Os.mergePaths(BrooklynServerConfig.getMgmtBaseDir((StringConfigMap)brooklynProperties), "task-history");
+        TaskHistoryStore result = new TaskHistoryStore(new File(Os.tidyPath(dir)), 
+                brooklynProperties.getConfig(TASK_HISTORY_MAX_SIZE), 
+                brooklynProperties.getConfig(TASK_HISTORY_MAX_STREAM_SIZE), 
+                brooklynProperties.getConfig(TASK_HISTORY_RECENT_TASKS));
+        LOG.debug("Recording history of deleted tasks in "+result);
+        return result;
+    }
+
+    /** @return the history of tasks deleted by this collector, or null if not enabled (see {@link #TASK_HISTORY_ENABLED}) */
+    @Nullable
+    public TaskHistoryStore getTaskHistory() {
+        return taskHistory;
+    }
+
     protected synchronized void scheduleCollector(boolean canInterruptCurrent) {
         if (activeCollector != null) activeCollector.cancel(canInterruptCurrent);
         
@@ -238,6 +292,7 @@ public class BrooklynGarbageCollector {
         running = false;
         if (activeCollector != null) activeCollector.cancel(true);
         if (executor != null) executor.shutdownNow();
+        if (taskHistory != null) taskHistory.close();
     }
     
     public void onUnmanaged(Entity entity) {
@@ -250,10 +305,25 @@ public class BrooklynGarbageCollector {
     
     public void deleteTasksForEntity(Entity entity) {
         // remove all references to this entity from tasks
-        executionManager.deleteTag(entity);
-        executionManager.deleteTag(BrooklynTaskTags.tagForContextEntity(entity));
-        executionManager.deleteTag(BrooklynTaskTags.tagForCallerEntity(entity));
-        executionManager.deleteTag(BrooklynTaskTags.tagForTargetEntity(entity));
+        deleteTasksWithTag(entity);
+        deleteTasksWithTag(BrooklynTaskTags.tagForContextEntity(entity));
+        deleteTasksWithTag(BrooklynTaskTags.tagForCallerEntity(entity));
+        deleteTasksWithTag(BrooklynTaskTags.tagForTargetEntity(entity));
+    }
+    
+    protected void deleteTasksWithTag(Object tag) {
+        if (taskHistory != null) {
+            for (Task<?> task: executionManager.getTasksWithTag(tag)) {
+                taskHistory.archive(task);
+            }
+        }
+        executionManager.deleteTag(tag);
+    }
+    
+    /** deletes the task (and its children), first recording it in the task history if enabled */
+    protected void deleteTask(Task<?> task) {
+        if (taskHistory != null) taskHistory.archive(task);
+        executionManager.deleteTask(task);
     }
     
     public void onUnmanaged(Location loc) {
@@ -433,7 +503,7 @@ public class BrooklynGarbageCollector {
         }
         
         for (Task<?> task: tasksToDelete) {
-            executionManager.deleteTask(task);
+            deleteTask(task);
         }
     }
     
@@ -469,7 +539,7 @@ public class BrooklynGarbageCollector {
         }
         
         for (Task<?> task: tasksToDelete) {
-            executionManager.deleteTask(task);
+            deleteTask(task);
         }
         return tasksToDelete.size();
     }
@@ -568,7 +638,7 @@ public class BrooklynGarbageCollector {
             if (delete) {
                 // delete this and update overcapacity info
                 deleted++;
-                executionManager.deleteTask(task);
+                deleteTask(task);
                 for (Object tag: task.getTags()) {
                     AtomicInteger counter = taskAllTagsOverCapacity.get(tag);
                     if (counter!=null && counter.decrementAndGet()<=0)
@@ -616,7 +686,7 @@ public class BrooklynGarbageCollector {
         
         int numDeleted = 0;
         while (numDeleted < numToDelete && tasks.size()>numDeleted) {
-            executionManager.deleteTask( tasks.get(numDeleted++) );
+            deleteTask( tasks.get(numDeleted++) );
         }
         if (LOG.isDebugEnabled())
             LOG.debug("brooklyn-gc deleted "+numDeleted+" tasks as was over global limit, now have "+executionManager.allTasksLive().size());
@@ -294,7 +294,7 @@ public class LocalManagementContext extends AbstractManagementContext {
         if (!isRunning()) throw new IllegalStateException("Management context no longer running");
 
         if (subscriptions == null) {
-            subscriptions = new LocalSubscriptionManager(getExecutionManager());
+            subscriptions = new LocalSubscriptionManager(getExecutionManager(), configMap);
         }
         return subscriptions;
     }
@@ -310,6 +310,11 @@ public class LocalManagementContext extends AbstractManagementContext {
         return execution;
     }
     
+    @Override
+    public synchronized TaskHistoryStore getTaskHistory() {
+        return (gc != null) ? gc.getTaskHistory() : null;
+    }
+    
     @Override
     public void terminate() {
         INSTANCES.remove(this);
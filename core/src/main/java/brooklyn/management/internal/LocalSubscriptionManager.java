@@ -23,35 +23,50 @@ import static brooklyn.util.JavaGroovyEquivalents.groovyTruth;
 import static brooklyn.util.JavaGroovyEquivalents.join;
 import static brooklyn.util.JavaGroovyEquivalents.mapOf;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
 import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.entity.basic.Entities;
+import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
+import brooklyn.management.Task;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.SingleThreadedScheduler;
+import brooklyn.util.task.SingleThreadedScheduler.OverflowPolicy;
 import brooklyn.util.text.Identifiers;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * A {@link SubscriptionManager} that stores subscription details locally.
@@ -60,12 +75,30 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     
     private static final Logger LOG = LoggerFactory.getLogger(LocalSubscriptionManager.class);
 
+    public static final ConfigKey<Integer> DELIVERY_QUEUE_MAX_SIZE = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.subscriptions.deliveryQueue.maxSize", 
+            "the maximum number of events queued for delivery to each subscriber; unbounded if not set");
+    
+    public static final ConfigKey<OverflowPolicy> DELIVERY_QUEUE_OVERFLOW_POLICY = ConfigKeys.newConfigKey(
+            OverflowPolicy.class,
+            "brooklyn.subscriptions.deliveryQueue.overflowPolicy", 
+            "what to do when a subscriber's delivery queue is full: COALESCE with an undelivered value of the same attribute (the default), "
+            + "DROP_OLDEST undelivered attribute value, "
+            + "or BLOCK the publisher (which can deadlock, as events are published while holding the entity's attribute lock); "
+            + "other events are never discarded, exceeding the limit if there is nothing which can be coalesced or dropped",
+            OverflowPolicy.COALESCE);
+
     protected final ExecutionManager em;
     
+    private final Integer deliveryQueueMaxSize;
+    private final OverflowPolicy deliveryQueueOverflowPolicy;
+    
     private final String tostring = "SubscriptionContext("+Identifiers.getBase64IdFromValue(System.identityHashCode(this), 5)+")";
 
     private final AtomicLong totalEventsPublishedCount = new AtomicLong();
     private final AtomicLong totalEventsDeliveredCount = new AtomicLong();
+    private final AtomicLong totalEventsCoalescedCount = new AtomicLong();
+    private final AtomicLong totalEventsDroppedCount = new AtomicLong();
     
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<String, Subscription> allSubscriptions = new ConcurrentHashMap<String, Subscription>();
@@ -73,9 +106,18 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsBySubscriber = new ConcurrentHashMap<Object, Set<Subscription>>();
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, Set<Subscription>>();
+    /** queues for subscriptions which have requested batch delivery, keyed by subscriber execution manager tag */
+    protected final ConcurrentMap<Object, SubscriberEventQueue> deliveryQueuesByTag = new ConcurrentHashMap<Object, SubscriberEventQueue>();
     
     public LocalSubscriptionManager(ExecutionManager m) {
+        this(m, null);
+    }
+    
+    /** @param config optional, for configuring the subscriber delivery queues */
+    public LocalSubscriptionManager(ExecutionManager m, @Nullable StringConfigMap config) {
         this.em = m;
+        this.deliveryQueueMaxSize = (config != null) ? config.getConfig(DELIVERY_QUEUE_MAX_SIZE) : null;
+        this.deliveryQueueOverflowPolicy = (config != null) ? config.getConfig(DELIVERY_QUEUE_OVERFLOW_POLICY) : DELIVERY_QUEUE_OVERFLOW_POLICY.getDefaultValue();
     }
         
     public long getNumSubscriptions() {
@@ -90,6 +132,16 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return totalEventsDeliveredCount.get();
     }
     
+    /** count of events not delivered because a later event superseded them, for subscriptions with latestValueOnly */
+    public long getTotalEventsCoalesced() {
+        return totalEventsCoalescedCount.get();
+    }
+    
+    /** count of events not delivered because a batch subscriber's queue was full, with {@link OverflowPolicy#DROP_OLDEST} */
+    public long getTotalEventsDropped() {
+        return totalEventsDroppedCount.get();
+    }
+    
     @SuppressWarnings("unchecked")
     protected synchronized <T> SubscriptionHandle subscribe(Map<String, Object> flags, Subscription<T> s) {
         Entity producer = s.producer;
@@ -106,6 +158,18 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
             s.subscriberExecutionManagerTagSupplied = false;
         }
         s.eventFilter = (Predicate<SensorEvent<T>>) flags.remove("eventFilter");
+        s.latestValueOnly = Boolean.TRUE.equals(flags.remove("latestValueOnly"));
+        boolean batchDelivery = Boolean.TRUE.equals(flags.remove("batchDelivery")) || s.latestValueOnly;
+        if (batchDelivery) {
+            Object queueKey = getDeliveryQueueKey(s);
+            SubscriberEventQueue queue = deliveryQueuesByTag.get(queueKey);
+            if (queue==null) {
+                SubscriberEventQueue newQueue = new SubscriberEventQueue(s.subscriberExecutionManagerTag);
+                queue = deliveryQueuesByTag.putIfAbsent(queueKey, newQueue);
+                if (queue==null) queue = newQueue;
+            }
+            s.deliveryQueue = queue;
+        }
         s.flags = flags;
         
         if (LOG.isDebugEnabled()) LOG.debug("Creating subscription {} for {} on {} {} in {}", new Object[] {s.id, s.subscriber, producer, sensor, this});
@@ -115,11 +179,30 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
             addToMapOfSets(subscriptionsBySubscriber, s.subscriber, s);
         }
         if (!s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
-            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+            setDeliverySchedulerForTag(s.subscriberExecutionManagerTag);
         }
         return s;
     }
 
+    private void setDeliverySchedulerForTag(Object tag) {
+        BasicExecutionManager bem = (BasicExecutionManager) em;
+        if (deliveryQueueMaxSize==null) {
+            bem.setTaskSchedulerForTag(tag, SingleThreadedScheduler.class);
+        } else if (bem.getTaskSchedulerForTag(tag)==null) {
+            SingleThreadedScheduler scheduler = new SingleThreadedScheduler(deliveryQueueMaxSize, deliveryQueueOverflowPolicy);
+            scheduler.setName(""+tag);
+            bem.setTaskSchedulerForTag(tag, scheduler);
+        }
+    }
+    
+    @SuppressWarnings("rawtypes")
+    private static Object getDeliveryQueueKey(Subscription s) {
+        if (s.subscriberExecutionManagerTag!=null) return s.subscriberExecutionManagerTag;
+        if (s.subscriber!=null) return s.subscriber;
+        // nothing to share a queue on
+        return s.id;
+    }
+
     @SuppressWarnings("unchecked")
     public Set<SubscriptionHandle> getSubscriptionsForSubscriber(Object subscriber) {
         return (Set<SubscriptionHandle>) ((Set<?>) elvis(subscriptionsBySubscriber.get(subscriber), Collections.emptySet()));
@@ -149,10 +232,16 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (s.subscriber!=null) {
             boolean b3 = removeFromMapOfCollections(subscriptionsBySubscriber, s.subscriber, s);
             assert b3 == b2;
+            if (s.deliveryQueue!=null && !subscriptionsBySubscriber.containsKey(s.subscriber)) {
+                // events already queued are still delivered by the existing drain task, which holds the queue
+                deliveryQueuesByTag.remove(getDeliveryQueueKey(s), s.deliveryQueue);
+            }
+        } else if (s.deliveryQueue!=null && s.id.equals(getDeliveryQueueKey(s))) {
+            deliveryQueuesByTag.remove(s.id, s.deliveryQueue);
         }
 
         // FIXME ALEX - this seems wrong
-        ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+        setDeliverySchedulerForTag(s.subscriberExecutionManagerTag);
         return result;
     }
 
@@ -179,6 +268,10 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
             for (Subscription s : subs) {
                 if (s.eventFilter!=null && !s.eventFilter.apply(event))
                     continue;
+                if (s.deliveryQueue!=null) {
+                    s.deliveryQueue.add(s, event);
+                    continue;
+                }
                 final Subscription sAtClosureCreation = s;
                 
 //                Set<Object> tags = MutableSet.of();
@@ -189,6 +282,10 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
                 // that will cause them to be cancelled when the entity is unmanaged
                 // (not sure that is useful, and likely NOT worth the expense, but it might be...) -Alex Oct 2014
                 Map<String, Object> tagsMap = mapOf("tag", s.subscriberExecutionManagerTag);
+                if (event.getSensor() instanceof AttributeSensor) {
+                    // a full queue can replace (or drop) an undelivered value of this attribute, as a newer one follows
+                    tagsMap.put("coalescingKey", ImmutableList.of(s.id, makeEntitySensorToken(event)));
+                }
                 
                 em.submit(tagsMap, new Runnable() {
                     @Override
@@ -196,19 +293,255 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
                         return "LSM.publish("+event+")";
                     }
                     public void run() {
+                        deliver(sAtClosureCreation, event);
+                    }});
+                totalEventsDeliveredCount.incrementAndGet();
+            }
+        }
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected void deliver(Subscription s, SensorEvent<?> event) {
+        try {
+            s.listener.onEvent(event);
+        } catch (Throwable t) {
+            if (event!=null && event.getSource()!=null && Entities.isNoLongerManaged(event.getSource())) {
+                LOG.debug("Error in "+this+" delivering "+event+", after entity unmanaged: "+t, t);
+            } else {
+                LOG.warn("Error in "+this+" delivering "+event+": "+t, t);
+            }
+        }
+    }
+    
+    /**
+     * Queue of events awaiting delivery to a subscriber which has requested batch delivery.
+     * At most one drain task is submitted at a time (with the subscriber's execution manager tag, so that it
+     * runs in order with respect to that subscriber's other deliveries); it delivers everything queued,
+     * including events added while it runs. If the drain task is cancelled, fails or is interrupted, the undelivered
+     * events are kept and another is submitted.
+     * <p>
+     * The queue is bounded by {@link LocalSubscriptionManager#DELIVERY_QUEUE_MAX_SIZE}, if set, with the
+     * same {@link OverflowPolicy} as the subscriber's scheduler; only attribute values are dropped or coalesced.
+     */
+    protected class SubscriberEventQueue {
+        private final Object subscriberExecutionManagerTag;
+        // entries are delivered in order; entries for latestValueOnly subscriptions are also indexed by
+        // (subscription, producer, sensor) so a newer event can replace one still waiting
+        private List<PendingDelivery> pending = new ArrayList<PendingDelivery>();
+        private final Map<List<Object>, PendingDelivery> pendingLatestValues = new HashMap<List<Object>, PendingDelivery>();
+        private boolean drainSubmitted = false;
+        private Thread drainThread;
+        // the most recently submitted drain task, so only its cancellation resubmits
+        private Task<?> drainTask;
+        
+        protected SubscriberEventQueue(Object subscriberExecutionManagerTag) {
+            this.subscriberExecutionManagerTag = subscriberExecutionManagerTag;
+        }
+        
+        @SuppressWarnings("rawtypes")
+        public void add(Subscription s, SensorEvent<?> event) {
+            boolean submitDrain = false;
+            synchronized (this) {
+                List<Object> key = null;
+                if (s.latestValueOnly) {
+                    key = ImmutableList.<Object>of(s, makeEntitySensorToken(event));
+                    PendingDelivery existing = pendingLatestValues.get(key);
+                    if (existing!=null) {
+                        existing.event = event;
+                        totalEventsCoalescedCount.incrementAndGet();
+                        return;
+                    }
+                }
+                if (deliveryQueueMaxSize!=null && pending.size() >= deliveryQueueMaxSize) {
+                    if (makeRoom(s, event)) return;
+                }
+                PendingDelivery delivery = new PendingDelivery(s, event);
+                pending.add(delivery);
+                if (key!=null) pendingLatestValues.put(key, delivery);
+                if (!drainSubmitted) {
+                    drainSubmitted = true;
+                    submitDrain = true;
+                }
+            }
+            if (submitDrain) submitDrain();
+        }
+        
+        /** 
+         * Applies the overflow policy to the full queue; returns true if the event was coalesced 
+         * with a pending one (so should not be added). 
+         */
+        @SuppressWarnings("rawtypes")
+        private boolean makeRoom(Subscription s, SensorEvent<?> event) {
+            switch (deliveryQueueOverflowPolicy) {
+            case BLOCK:
+                if (Thread.currentThread()==drainThread) {
+                    // would deadlock waiting for ourselves
+                    return false;
+                }
+                try {
+                    while (pending.size() >= deliveryQueueMaxSize && drainSubmitted) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    throw Exceptions.propagate(e);
+                }
+                return false;
+            case DROP_OLDEST:
+                for (Iterator<PendingDelivery> it = pending.iterator(); it.hasNext(); ) {
+                    PendingDelivery oldest = it.next();
+                    if (oldest.event.getSensor() instanceof AttributeSensor) {
+                        it.remove();
+                        pendingLatestValues.values().remove(oldest);
+                        totalEventsDroppedCount.incrementAndGet();
+                        if (LOG.isDebugEnabled()) LOG.debug("{} is full, dropping oldest attribute value {}", this, oldest.event);
+                        return false;
+                    }
+                }
+                return false;
+            case COALESCE:
+                if (event.getSensor() instanceof AttributeSensor) {
+                    Object token = makeEntitySensorToken(event);
+                    for (PendingDelivery existing : pending) {
+                        if (existing.subscription==s && token.equals(makeEntitySensorToken(existing.event))) {
+                            existing.event = event;
+                            totalEventsCoalescedCount.incrementAndGet();
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            default:
+                throw new IllegalStateException("Unknown overflow policy "+deliveryQueueOverflowPolicy+" in "+this);
+            }
+        }
+        
+        private void submitDrain() {
+            final Task<?> task = em.submit(mapOf("tag", subscriberExecutionManagerTag), new Runnable() {
+                @Override
+                public String toString() {
+                    return "LSM.publishBatch("+subscriberExecutionManagerTag+")";
+                }
+                public void run() {
+                    drain();
+                }});
+            synchronized (this) {
+                drainTask = task;
+            }
+            task.addListener(new Runnable() {
+                public void run() {
+                    // e.g. dropped by a full scheduler; otherwise nothing would be delivered again
+                    // (don't use isError here, as it blocks on the result, which may not yet be set)
+                    if (task.isCancelled()) {
+                        boolean resubmit;
+                        synchronized (SubscriberEventQueue.this) {
+                            if (drainThread!=null || drainTask!=task) return;
+                            resubmit = !pending.isEmpty();
+                            drainSubmitted = resubmit;
+                            SubscriberEventQueue.this.notifyAll();
+                        }
+                        if (LOG.isDebugEnabled()) LOG.debug("Drain task for {} was cancelled; {}", 
+                                SubscriberEventQueue.this, resubmit ? "resubmitting" : "none pending");
+                        if (resubmit) submitDrain();
+                    }
+                }}, MoreExecutors.sameThreadExecutor());
+        }
+        
+        protected void drain() {
+            synchronized (this) {
+                drainThread = Thread.currentThread();
+            }
+            boolean completed = false;
+            List<PendingDelivery> batch = null;
+            int delivered = 0;
+            try {
+                while (true) {
+                    synchronized (this) {
+                        if (pending.isEmpty()) {
+                            drainSubmitted = false;
+                            drainThread = null;
+                            notifyAll();
+                            completed = true;
+                            return;
+                        }
+                        batch = pending;
+                        delivered = 0;
+                        pending = new ArrayList<PendingDelivery>();
+                        pendingLatestValues.clear();
+                        notifyAll();
+                    }
+                    for (PendingDelivery delivery : batch) {
+                        // counted first, so an event whose delivery fails is not retried
+                        delivered++;
+                        deliver(delivery.subscription, delivery.event);
+                        totalEventsDeliveredCount.incrementAndGet();
+                    }
+                }
+            } finally {
+                if (!completed) {
+                    // e.g. interrupted; keep what was not delivered, and submit another drain task for it
+                    // (otherwise it would wait for the next event to be added)
+                    boolean resubmit;
+                    synchronized (this) {
+                        if (batch != null && delivered < batch.size()) requeue(batch.subList(delivered, batch.size()));
+                        drainThread = null;
+                        drainTask = null;
+                        resubmit = !pending.isEmpty();
+                        drainSubmitted = resubmit;
+                        notifyAll();
+                    }
+                    if (LOG.isDebugEnabled()) LOG.debug("Drain task for {} did not complete; {} events pending{}", 
+                            new Object[] {this, size(), resubmit ? ", resubmitting" : ""});
+                    if (resubmit) {
                         try {
-                            sAtClosureCreation.listener.onEvent(event);
-                        } catch (Throwable t) {
-                            if (event!=null && event.getSource()!=null && Entities.isNoLongerManaged(event.getSource())) {
-                                LOG.debug("Error in "+this+", after entity unmanaged: "+t, t);
-                            } else {
-                                LOG.warn("Error in "+this+": "+t, t);
+                            submitDrain();
+                        } catch (Exception e) {
+                            Exceptions.propagateIfFatal(e);
+                            synchronized (this) {
+                                drainSubmitted = false;
+                                notifyAll();
                             }
+                            LOG.warn("Unable to resubmit drain task for "+this+"; pending events will be delivered when the next is added", e);
                         }
-                    }});
-                totalEventsDeliveredCount.incrementAndGet();
+                    }
+                }
             }
         }
+        
+        /** puts undelivered events back at the head of the queue, unless a newer value is pending for a latestValueOnly subscription */
+        private void requeue(List<PendingDelivery> undelivered) {
+            List<PendingDelivery> newPending = new ArrayList<PendingDelivery>(undelivered.size() + pending.size());
+            for (PendingDelivery delivery : undelivered) {
+                if (delivery.subscription.latestValueOnly) {
+                    List<Object> key = ImmutableList.<Object>of(delivery.subscription, makeEntitySensorToken(delivery.event));
+                    if (pendingLatestValues.containsKey(key)) continue;
+                    pendingLatestValues.put(key, delivery);
+                }
+                newPending.add(delivery);
+            }
+            newPending.addAll(pending);
+            pending = newPending;
+        }
+        
+        /** number of events waiting to be delivered */
+        public synchronized int size() {
+            return pending.size();
+        }
+        
+        @Override
+        public String toString() {
+            return "SubscriberEventQueue["+subscriberExecutionManagerTag+"]";
+        }
+    }
+    
+    @SuppressWarnings("rawtypes")
+    private static class PendingDelivery {
+        final Subscription subscription;
+        SensorEvent<?> event;
+        
+        PendingDelivery(Subscription subscription, SensorEvent<?> event) {
+            this.subscription = subscription;
+            this.event = event;
+        }
     }
     
     @Override
@@ -29,6 +29,7 @@ import brooklyn.config.ConfigKey;
 import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.entity.drivers.downloads.DownloadArtifactCache;
 import brooklyn.entity.proxying.InternalEntityFactory;
 import brooklyn.entity.proxying.InternalLocationFactory;
 import brooklyn.entity.proxying.InternalPolicyFactory;
@@ -38,6 +39,9 @@ import brooklyn.management.ManagementContext;
 import brooklyn.management.Task;
 import brooklyn.management.ha.OsgiManager;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpClientRegistry;
+import brooklyn.util.internal.ssh.SshConnectionRegistry;
+import brooklyn.util.jmx.JmxConnectionRegistry;
 import brooklyn.util.task.TaskTags;
 
 public interface ManagementContextInternal extends ManagementContext {
@@ -84,6 +88,36 @@ public interface ManagementContextInternal extends ManagementContext {
      */
     Maybe<OsgiManager> getOsgiManager();
 
+    /**
+     * @return The registry of connection-pooled HTTP clients shared across this management context
+     * (e.g. by all {@link brooklyn.event.feed.http.HttpFeed}s).
+     */
+    HttpClientRegistry getHttpClientRegistry();
+
+    /**
+     * @return The registry of JMX connections shared across this management context
+     * (e.g. by all entities' JMX feeds connecting to the same JVM).
+     */
+    JmxConnectionRegistry getJmxConnectionRegistry();
+
+    /**
+     * @return The registry of ssh connections shared across this management context
+     * (e.g. by all ssh machine locations for the same host and credentials).
+     */
+    SshConnectionRegistry getSshConnectionRegistry();
+
+    /**
+     * @return The history of tasks which have been deleted from the execution manager by the garbage collector,
+     * or null if this is not enabled (see {@link BrooklynGarbageCollector#TASK_HISTORY_ENABLED}).
+     */
+    TaskHistoryStore getTaskHistory();
+
+    /**
+     * @return The cache of install artifacts downloaded to this server
+     * (e.g. for copying to each machine, rather than every machine downloading the same artifact).
+     */
+    DownloadArtifactCache getDownloadArtifactCache();
+
     InternalEntityFactory getEntityFactory();
     
     InternalLocationFactory getLocationFactory();
@@ -42,6 +42,7 @@ import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.entity.drivers.EntityDriverManager;
+import brooklyn.entity.drivers.downloads.DownloadArtifactCache;
 import brooklyn.entity.drivers.downloads.DownloadResolverManager;
 import brooklyn.entity.proxying.InternalEntityFactory;
 import brooklyn.entity.proxying.InternalLocationFactory;
@@ -71,6 +72,9 @@ import brooklyn.management.ha.OsgiManager;
 import brooklyn.mementos.BrooklynMementoPersister;
 import brooklyn.mementos.BrooklynMementoRawData;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpClientRegistry;
+import brooklyn.util.internal.ssh.SshConnectionRegistry;
+import brooklyn.util.jmx.JmxConnectionRegistry;
 import brooklyn.util.time.Duration;
 
 import com.google.common.base.Objects;
@@ -247,6 +251,36 @@ public class NonDeploymentManagementContext implements ManagementContextInternal
     }
 
     // TODO the methods below should delegate to the application?
+    @Override
+    public HttpClientRegistry getHttpClientRegistry() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getHttpClientRegistry();
+    }
+
+    @Override
+    public JmxConnectionRegistry getJmxConnectionRegistry() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getJmxConnectionRegistry();
+    }
+
+    @Override
+    public SshConnectionRegistry getSshConnectionRegistry() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getSshConnectionRegistry();
+    }
+
+    @Override
+    public TaskHistoryStore getTaskHistory() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getTaskHistory();
+    }
+
+    @Override
+    public DownloadArtifactCache getDownloadArtifactCache() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getDownloadArtifactCache();
+    }
+
     @Override
     public EntityDriverManager getEntityDriverManager() {
         checkInitialManagementContextReal();
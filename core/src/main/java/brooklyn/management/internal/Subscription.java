@@ -41,6 +41,10 @@ class Subscription<T> implements SubscriptionHandle {
     public final SensorEventListener<? super T> listener;
     public Map<String,Object> flags;
     public Predicate<SensorEvent<T>> eventFilter;
+    /** if non-null, events are appended to this (per-subscriber) queue and delivered in batches */
+    public LocalSubscriptionManager.SubscriberEventQueue deliveryQueue;
+    /** whether (when batching) only the latest undelivered event per producer and sensor need be delivered */
+    public boolean latestValueOnly;
 
     public Subscription(Entity producer, Sensor<T> sensor, SensorEventListener<? super T> listener) {
         this.producer = producer;
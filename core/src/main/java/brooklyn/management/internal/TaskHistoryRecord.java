@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.management.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.entity.basic.BrooklynTaskTags.WrappedStream;
+import brooklyn.management.HasTaskChildren;
+import brooklyn.management.Task;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+
+/**
+ * A compact, immutable summary of a completed {@link Task}, as written to the {@link TaskHistoryStore}
+ * when the task is removed from memory by the {@link BrooklynGarbageCollector}.
+ * <p>
+ * Holds only strings and primitives (tags, the result and any error are kept as their string representation,
+ * and streams such as stdout and stderr are truncated), so that it does not reference entities or other tasks.
+ */
+public class TaskHistoryRecord {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final String id;
+    private final String displayName;
+    private final String description;
+    private final String entityId;
+    private final String entityDisplayName;
+    private final String applicationId;
+    private final String submittedByTaskId;
+    private final List<String> childIds;
+    private final List<String> tags;
+    private final long submitTimeUtc;
+    private final long startTimeUtc;
+    private final long endTimeUtc;
+    private final String statusSummary;
+    private final String statusDetail;
+    private final String result;
+    private final boolean error;
+    private final boolean cancelled;
+    private final Map<String, String> streams;
+
+    private TaskHistoryRecord(String id, String displayName, String description, String entityId, String entityDisplayName,
+            String applicationId, String submittedByTaskId, List<String> childIds, List<String> tags,
+            long submitTimeUtc, long startTimeUtc, long endTimeUtc, String statusSummary, String statusDetail,
+            String result, boolean error, boolean cancelled, Map<String, String> streams) {
+        this.id = id;
+        this.displayName = displayName;
+        this.description = description;
+        this.entityId = entityId;
+        this.entityDisplayName = entityDisplayName;
+        this.applicationId = applicationId;
+        this.submittedByTaskId = submittedByTaskId;
+        this.childIds = Collections.unmodifiableList(MutableList.copyOf(childIds));
+        this.tags = Collections.unmodifiableList(MutableList.copyOf(tags));
+        this.submitTimeUtc = submitTimeUtc;
+        this.startTimeUtc = startTimeUtc;
+        this.endTimeUtc = endTimeUtc;
+        this.statusSummary = statusSummary;
+        this.statusDetail = statusDetail;
+        this.result = result;
+        this.error = error;
+        this.cancelled = cancelled;
+        this.streams = Collections.unmodifiableMap(MutableMap.copyOf(streams));
+    }
+
+    /**
+     * Summarises the given task; the result, status detail and each stream are truncated
+     * to keep at most {@code maxStreamSize} characters (the end being kept, as it is usually the most interesting).
+     */
+    public static TaskHistoryRecord of(Task<?> task, int maxStreamSize) {
+        Entity entity = BrooklynTaskTags.getContextEntity(task);
+
+        List<String> childIds = MutableList.of();
+        if (task instanceof HasTaskChildren) {
+            for (Task<?> child : ((HasTaskChildren)task).getChildren()) {
+                childIds.add(child.getId());
+            }
+        }
+
+        List<String> tags = MutableList.of();
+        Map<String, String> streams = MutableMap.of();
+        for (Object tag : task.getTags()) {
+            if (tag instanceof WrappedStream) {
+                WrappedStream stream = (WrappedStream) tag;
+                streams.put(stream.streamType, truncate(stream.streamContents.get(), maxStreamSize));
+            } else if (tag != null) {
+                tags.add(tag.toString());
+            }
+        }
+
+        String result = null;
+        boolean error = false;
+        if (task.isDone()) {
+            try {
+                Object value = task.get();
+                result = (value != null) ? truncate(value.toString(), maxStreamSize) : null;
+            } catch (Throwable t) {
+                Exceptions.propagateIfFatal(t);
+                error = true;
+                result = truncate(Exceptions.collapseText(t), maxStreamSize);
+            }
+        }
+
+        return new TaskHistoryRecord(task.getId(), task.getDisplayName(), task.getDescription(),
+                entity != null ? entity.getId() : null,
+                entity != null ? entity.getDisplayName() : null,
+                entity != null ? entity.getApplicationId() : null,
+                task.getSubmittedByTask() != null ? task.getSubmittedByTask().getId() : null,
+                childIds, tags,
+                task.getSubmitTimeUtc(), task.getStartTimeUtc(), task.getEndTimeUtc(),
+                task.getStatusSummary(), truncate(task.getStatusDetail(true), maxStreamSize),
+                result, error, task.isCancelled(), streams);
+    }
+
+    static String truncate(String text, int maxSize) {
+        if (text == null || text.length() <= maxSize) return text;
+        String prefix = "(truncated "+(text.length()-maxSize)+" chars) ...";
+        return prefix + text.substring(text.length()-maxSize);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /** @return the id of the context entity, or null if the task was not associated with an entity */
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public String getEntityDisplayName() {
+        return entityDisplayName;
+    }
+
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+    public String getSubmittedByTaskId() {
+        return submittedByTaskId;
+    }
+
+    public List<String> getChildIds() {
+        return childIds;
+    }
+
+    /** @return the string representation of the task's tags, other than its streams */
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public long getSubmitTimeUtc() {
+        return submitTimeUtc;
+    }
+
+    public long getStartTimeUtc() {
+        return startTimeUtc;
+    }
+
+    public long getEndTimeUtc() {
+        return endTimeUtc;
+    }
+
+    public String getStatusSummary() {
+        return statusSummary;
+    }
+
+    public String getStatusDetail() {
+        return statusDetail;
+    }
+
+    /** @return the string representation of the task's result, or of its error if {@link #isError()} */
+    public String getResult() {
+        return result;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** @return the (truncated) contents of the task's streams, keyed by stream type (e.g. {@link BrooklynTaskTags#STREAM_STDOUT}) */
+    public Map<String, String> getStreams() {
+        return streams;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).omitNullValues()
+                .add("id", id)
+                .add("displayName", displayName)
+                .add("entityId", entityId)
+                .toString();
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, id);
+        writeString(out, displayName);
+        writeString(out, description);
+        writeString(out, entityId);
+        writeString(out, entityDisplayName);
+        writeString(out, applicationId);
+        writeString(out, submittedByTaskId);
+        writeStrings(out, childIds);
+        writeStrings(out, tags);
+        out.writeLong(submitTimeUtc);
+        out.writeLong(startTimeUtc);
+        out.writeLong(endTimeUtc);
+        writeString(out, statusSummary);
+        writeString(out, statusDetail);
+        writeString(out, result);
+        out.writeBoolean(error);
+        out.writeBoolean(cancelled);
+        out.writeInt(streams.size());
+        for (Map.Entry<String, String> entry : streams.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    static TaskHistoryRecord readFrom(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) throw new IOException("Unsupported task history record version "+version);
+        String id = readString(in);
+        String displayName = readString(in);
+        String description = readString(in);
+        String entityId = readString(in);
+        String entityDisplayName = readString(in);
+        String applicationId = readString(in);
+        String submittedByTaskId = readString(in);
+        List<String> childIds = readStrings(in);
+        List<String> tags = readStrings(in);
+        long submitTimeUtc = in.readLong();
+        long startTimeUtc = in.readLong();
+        long endTimeUtc = in.readLong();
+        String statusSummary = readString(in);
+        String statusDetail = readString(in);
+        String result = readString(in);
+        boolean error = in.readBoolean();
+        boolean cancelled = in.readBoolean();
+        int numStreams = in.readInt();
+        Map<String, String> streams = MutableMap.of();
+        for (int i = 0; i < numStreams; i++) {
+            streams.put(readString(in), readString(in));
+        }
+        return new TaskHistoryRecord(id, displayName, description, entityId, entityDisplayName, applicationId,
+                submittedByTaskId, childIds, tags, submitTimeUtc, startTimeUtc, endTimeUtc, statusSummary, statusDetail,
+                result, error, cancelled, streams);
+    }
+
+    // DataOutput.writeUTF is limited to 64k, so strings are written as a length and UTF-8 bytes; -1 for null
+    private static void writeString(DataOutput out, String val) throws IOException {
+        if (val == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = val.getBytes(Charsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutput out, List<String> vals) throws IOException {
+        out.writeInt(vals.size());
+        for (String val : vals) {
+            writeString(out, val);
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<String> result = MutableList.of();
+        for (int i = 0; i < size; i++) {
+            result.add(readString(in));
+        }
+        return result;
+    }
+}
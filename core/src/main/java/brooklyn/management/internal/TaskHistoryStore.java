@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.management.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.management.HasTaskChildren;
+import brooklyn.management.Task;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.text.Identifiers;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Keeps the history of tasks after they have been deleted from the execution manager by the
+ * {@link BrooklynGarbageCollector}, so that they can still be viewed (e.g. through the REST API)
+ * without holding every {@link Task} in memory.
+ * <p>
+ * Each archived task is appended as a compact {@link TaskHistoryRecord} to a log file, and an in-memory index
+ * maps the task id to the record's position. Only the most recently archived tasks are kept as full {@link Task}
+ * objects, in a small LRU cache; older ones are read back from disk on demand.
+ * <p>
+ * The log is split in two segments: when the current one exceeds half the configured maximum size it becomes
+ * the previous segment, and the records in the segment before that are discarded. The log files are deleted
+ * when the store is {@link #close() closed}.
+ * <p>
+ * Each store holds a lock on a lock file alongside its log files while it is open. When a store is created it
+ * deletes any other log files in its directory whose lock is not held, i.e. those left by a process which
+ * was killed before it could close its store, but not those of other live management nodes sharing the directory.
+ */
+public class TaskHistoryStore implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TaskHistoryStore.class);
+
+    /** Index entries hold the segment generation in the high bits and the offset in the segment in the low bits. */
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private static final String FILE_PREFIX = "tasks-";
+    private static final String LOCK_SUFFIX = ".lock";
+
+    private final File currentFile;
+    private final File previousFile;
+    private final File lockFile;
+    private final long maxSegmentSize;
+    private final int maxStreamSize;
+
+    private final Map<String, Long> index = new LinkedHashMap<String, Long>();
+    private final Map<String, Task<?>> recentTasks;
+
+    private RandomAccessFile current;
+    private RandomAccessFile previous;
+    private RandomAccessFile lockFileAccess;
+    private FileLock lock;
+    private long currentLength;
+    private long generation;
+    private boolean closed;
+
+    private long numArchived;
+    private long numReadFromDisk;
+    private boolean loggedWriteFailure;
+
+    /**
+     * @param dir           the directory for the log files, created if necessary
+     * @param maxSize       the approximate maximum size in bytes of the log files
+     * @param maxStreamSize the number of characters to keep of each stream (and of the result)
+     * @param maxRecentTasks the number of recently archived tasks to keep in memory
+     */
+    public TaskHistoryStore(File dir, long maxSize, int maxStreamSize, final int maxRecentTasks) {
+        Preconditions.checkArgument(maxSize > 0, "maxSize must be positive, but was %s", maxSize);
+        Preconditions.checkArgument(maxStreamSize >= 0, "maxStreamSize must be non-negative, but was %s", maxStreamSize);
+        Preconditions.checkArgument(maxRecentTasks >= 0, "maxRecentTasks must be non-negative, but was %s", maxRecentTasks);
+        this.maxSegmentSize = Math.min(maxSize / 2, OFFSET_MASK);
+        this.maxStreamSize = maxStreamSize;
+        this.recentTasks = new LinkedHashMap<String, Task<?>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Task<?>> eldest) {
+                return size() > maxRecentTasks;
+            }
+        };
+
+        dir.mkdirs();
+        String prefix = FILE_PREFIX+Identifiers.makeRandomId(8);
+        this.currentFile = new File(dir, prefix+".log");
+        this.previousFile = new File(dir, prefix+".log.old");
+        this.lockFile = new File(dir, prefix+LOCK_SUFFIX);
+        // lock before creating the log files, so another store never sees our logs without our lock
+        try {
+            lockFileAccess = new RandomAccessFile(lockFile, "rw");
+            lock = lockFileAccess.getChannel().tryLock();
+        } catch (IOException e) {
+            LOG.debug("Unable to lock "+lockFile+"; not deleting task history files left by other stores: "+e);
+        }
+        if (lock != null) deleteStaleFiles(dir, prefix);
+        try {
+            current = new RandomAccessFile(currentFile, "rw");
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /** Deletes the log files in the directory which are not locked by an open store (other than ours). */
+    private static void deleteStaleFiles(File dir, String ourPrefix) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Map<String, Boolean> staleByPrefix = new LinkedHashMap<String, Boolean>();
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(FILE_PREFIX) || name.indexOf('.') < 0) continue;
+            String prefix = name.substring(0, name.indexOf('.'));
+            if (prefix.equals(ourPrefix) || staleByPrefix.containsKey(prefix)) continue;
+            staleByPrefix.put(prefix, !isLocked(new File(dir, prefix+LOCK_SUFFIX)));
+        }
+        int count = 0;
+        for (Map.Entry<String, Boolean> entry : staleByPrefix.entrySet()) {
+            if (!entry.getValue()) continue;
+            String prefix = entry.getKey();
+            for (String suffix : new String[] {".log", ".log.old", LOCK_SUFFIX}) {
+                if (new File(dir, prefix+suffix).delete()) count++;
+            }
+        }
+        if (count > 0) LOG.info("Deleted "+count+" task history file"+(count == 1 ? "" : "s")+" left in "+dir+" by stores which were not closed");
+    }
+
+    /** @return whether the lock file exists and is locked by an open store (in this or another process) */
+    private static boolean isLocked(File lockFile) {
+        if (!lockFile.isFile()) return false;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(lockFile, "rw");
+            FileLock lock = file.getChannel().tryLock();
+            if (lock == null) return true;
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            // held by a store in this process
+            return true;
+        } catch (IOException e) {
+            LOG.debug("Unable to check lock "+lockFile+"; assuming in use: "+e);
+            return true;
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    /**
+     * Records the given task (and its children, unless already recorded), keeping it in memory
+     * until it is pushed out by more recently archived tasks. Tasks tagged as
+     * {@link BrooklynTaskTags#TRANSIENT_TASK_TAG transient} are not recorded.
+     */
+    public synchronized void archive(Task<?> task) {
+        if (closed || task == null) return;
+        if (index.containsKey(task.getId())) return;
+        if (task.getTags().contains(BrooklynTaskTags.TRANSIENT_TASK_TAG)) return;
+
+        try {
+            append(TaskHistoryRecord.of(task, maxStreamSize));
+            recentTasks.put(task.getId(), task);
+            numArchived++;
+        } catch (IOException e) {
+            if (!loggedWriteFailure) {
+                LOG.warn("Unable to record history of task "+task+" in "+currentFile+" (subsequent failures logged at debug): "+e, e);
+                loggedWriteFailure = true;
+            } else {
+                LOG.debug("Unable to record history of task "+task+" in "+currentFile+": "+e);
+            }
+            return;
+        }
+
+        if (task instanceof HasTaskChildren) {
+            for (Task<?> child : ((HasTaskChildren)task).getChildren()) {
+                archive(child);
+            }
+        }
+    }
+
+    /** @return the archived task if it is still held in memory, otherwise null (see {@link #getRecord(String)}) */
+    public synchronized Task<?> getRecentTask(String id) {
+        return recentTasks.get(id);
+    }
+
+    /** @return the record of the archived task, read from disk, or null if not known (or discarded as too old) */
+    public synchronized TaskHistoryRecord getRecord(String id) {
+        if (closed) return null;
+        Long position = index.get(id);
+        if (position == null) return null;
+
+        long segment = position >>> OFFSET_BITS;
+        long offset = position & OFFSET_MASK;
+        RandomAccessFile file = (segment == generation) ? current : previous;
+        try {
+            file.seek(offset);
+            byte[] bytes = new byte[file.readInt()];
+            file.readFully(bytes);
+            numReadFromDisk++;
+            return TaskHistoryRecord.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            LOG.warn("Unable to read history of task "+id+" from "+(file == current ? currentFile : previousFile)+": "+e, e);
+            return null;
+        }
+    }
+
+    /** @return whether there is a record of the given task */
+    public synchronized boolean contains(String id) {
+        return index.containsKey(id);
+    }
+
+    /** @return the number of tasks whose records are available */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("records", index.size());
+        result.put("recentTasks", recentTasks.size());
+        result.put("archived", numArchived);
+        result.put("readFromDisk", numReadFromDisk);
+        result.put("bytesInCurrentSegment", currentLength);
+        result.put("segmentsRolled", generation);
+        return result;
+    }
+
+    /** Discards the history, and deletes the log files. */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        index.clear();
+        recentTasks.clear();
+        closeQuietly(current);
+        closeQuietly(previous);
+        current = null;
+        previous = null;
+        currentFile.delete();
+        previousFile.delete();
+        // release the lock only once the logs are gone, so they are never deleted by another store while in use
+        try {
+            if (lock != null) lock.release();
+        } catch (IOException e) {
+            LOG.debug("Error releasing task history lock "+lockFile+" (continuing): "+e);
+        }
+        closeQuietly(lockFileAccess);
+        lock = null;
+        lockFileAccess = null;
+        lockFile.delete();
+    }
+
+    @Override
+    public String toString() {
+        return "TaskHistoryStore["+currentFile+"]";
+    }
+
+    private void append(TaskHistoryRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        record.writeTo(out);
+        out.flush();
+        byte[] data = bytes.toByteArray();
+        int length = data.length - 4;
+        data[0] = (byte) (length >>> 24);
+        data[1] = (byte) (length >>> 16);
+        data[2] = (byte) (length >>> 8);
+        data[3] = (byte) length;
+
+        if (currentLength > 0 && currentLength + data.length > maxSegmentSize) {
+            rollSegment();
+        }
+        current.seek(currentLength);
+        current.write(data);
+        index.put(record.getId(), (generation << OFFSET_BITS) | currentLength);
+        currentLength += data.length;
+    }
+
+    private void rollSegment() throws IOException {
+        closeQuietly(previous);
+        previous = null;
+        current.close();
+        if (previousFile.exists() && !previousFile.delete()) {
+            throw new IOException("Unable to delete "+previousFile);
+        }
+        if (!currentFile.renameTo(previousFile)) {
+            throw new IOException("Unable to rename "+currentFile+" to "+previousFile);
+        }
+        previous = new RandomAccessFile(previousFile, "r");
+        current = new RandomAccessFile(currentFile, "rw");
+        currentLength = 0;
+        generation++;
+
+        // the index is in insertion order, so the discarded records are all at the start
+        for (Iterator<Long> iter = index.values().iterator(); iter.hasNext();) {
+            if ((iter.next() >>> OFFSET_BITS) >= generation-1) break;
+            iter.remove();
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Rolled task history "+currentFile+"; now "+index.size()+" records");
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException e) {
+            LOG.debug("Error closing task history file (continuing): "+e);
+        }
+    }
+}
@@ -39,7 +39,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.GuardedBy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +68,10 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -87,9 +90,34 @@ public class TypeCoercions {
     
     private TypeCoercions() {}
 
-    /** Store the coercion {@link Function functions} in a {@link Table table}. */
-    @GuardedBy("TypeCoercions.class")
-    private static Table<Class, Class, Function> registry = HashBasedTable.create();
+    /** Store the coercion {@link Function functions} in a {@link Table table}; 
+     * copy-on-write, so readers need not synchronize (writers synchronize on the class, in {@link #registerAdapter(Class, Class, Function)}). */
+    private static volatile Table<Class, Class, Function> registry = HashBasedTable.create();
+
+    /** Cache of the {@code asX()} or {@code fromX(..)} method (if any) to use for coercion, by source then target class;
+     * absent if there is no such method.
+     * <p>
+     * Classes are held weakly (and compared by identity), so the cache does not keep unused classes, and their
+     * class loaders, loaded. The methods are held softly, as they strongly reference their declaring class. */
+    private static final LoadingCache<Class<?>, Cache<Class<?>, Maybe<Method>>> reflectiveAdapters = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Class<?>, Cache<Class<?>, Maybe<Method>>>() {
+                @Override
+                public Cache<Class<?>, Maybe<Method>> load(Class<?> sourceType) {
+                    return CacheBuilder.newBuilder().weakKeys().softValues().build();
+                }
+            });
+    
+    /** Cache of the registry function (if any) to use for coercion, by source then target class; absent if none applies. 
+     * Classes are held weakly, as for {@link #reflectiveAdapters}. Cleared whenever an adapter is registered. */
+    private static final LoadingCache<Class<?>, Cache<Class<?>, Maybe<Function>>> registryAdapters = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Class<?>, Cache<Class<?>, Maybe<Function>>>() {
+                @Override
+                public Cache<Class<?>, Maybe<Function>> load(Class<?> sourceType) {
+                    return CacheBuilder.newBuilder().weakKeys().build();
+                }
+            });
 
     /**
      * Attempts to coerce {@code value} to {@code targetType}.
@@ -178,35 +206,19 @@ public class TypeCoercions {
             return (T) value.toString();
         }
 
-        //look for value.asType where Type is castable to targetType
-        String targetTypeSimpleName = getVerySimpleName(targetType);
-        if (targetTypeSimpleName!=null && targetTypeSimpleName.length()>0) {
-            for (Method m: value.getClass().getMethods()) {
-                if (m.getName().startsWith("as") && m.getParameterTypes().length==0 &&
-                        targetType.isAssignableFrom(m.getReturnType()) ) {
-                    if (m.getName().equals("as"+getVerySimpleName(m.getReturnType()))) {
-                        try {
-                            return (T) m.invoke(value);
-                        } catch (Exception e) {
-                            throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                        }
-                    }
-                }
-            }
-        }
-        
-        //now look for static TargetType.fromType(Type t) where value instanceof Type  
-        for (Method m: targetType.getMethods()) {
-            if (((m.getModifiers()&Modifier.STATIC)==Modifier.STATIC) && 
-                    m.getName().startsWith("from") && m.getParameterTypes().length==1 &&
-                    m.getParameterTypes()[0].isInstance(value)) {
-                if (m.getName().equals("from"+getVerySimpleName(m.getParameterTypes()[0]))) {
-                    try {
-                        return (T) m.invoke(null, value);
-                    } catch (Exception e) {
-                        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                    }
+        //look for value.asType where Type is castable to targetType,
+        //or static TargetType.fromType(Type t) where value instanceof Type
+        Maybe<Method> reflectiveAdapter = getReflectiveAdapter(value.getClass(), targetType);
+        if (reflectiveAdapter.isPresent()) {
+            Method m = reflectiveAdapter.get();
+            try {
+                if ((m.getModifiers()&Modifier.STATIC)==Modifier.STATIC) {
+                    return (T) m.invoke(null, value);
+                } else {
+                    return (T) m.invoke(value);
                 }
+            } catch (Exception e) {
+                throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
             }
         }
         
@@ -234,30 +246,84 @@ public class TypeCoercions {
         }
 
         //now look in registry
-        synchronized (TypeCoercions.class) {
-            Map<Class, Function> adapters = registry.row(targetType);
-            for (Map.Entry<Class, Function> entry : adapters.entrySet()) {
-                if (entry.getKey().isInstance(value)) {
-                    T result = (T) entry.getValue().apply(value);
-                    
-                    // Check if need to unwrap again (e.g. if want List<Integer> and are given a String "1,2,3"
-                    // then we'll have so far converted to List.of("1", "2", "3"). Call recursively.
-                    // First check that value has changed, to avoid stack overflow!
-                    if (!Objects.equal(value, result) && targetTypeToken.getType() instanceof ParameterizedType) {
-                        // Could duplicate check for `result instanceof Collection` etc; but recursive call
-                        // will be fine as if that doesn't match we'll safely reach `targetType.isInstance(value)`
-                        // and just return the result.
-                        return coerce(result, targetTypeToken);
-                    }
-                    return result;
-                }
-            }
+        Maybe<Function> adapter = getRegistryAdapter(value.getClass(), targetType);
+        if (adapter.isPresent()) {
+            T result = (T) adapter.get().apply(value);
+            
+            // Check if need to unwrap again (e.g. if want List<Integer> and are given a String "1,2,3"
+            // then we'll have so far converted to List.of("1", "2", "3"). Call recursively.
+            // First check that value has changed, to avoid stack overflow!
+            if (!Objects.equal(value, result) && targetTypeToken.getType() instanceof ParameterizedType) {
+                // Could duplicate check for `result instanceof Collection` etc; but recursive call
+                // will be fine as if that doesn't match we'll safely reach `targetType.isInstance(value)`
+                // and just return the result.
+                return coerce(result, targetTypeToken);
+            }
+            return result;
         }
 
         //not found
         throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
     }
 
+    /** Finds, or returns cached, the {@code asX()} method on the source type or static {@code fromX(..)} 
+     * method on the target type to use for coercion; absent if there is none. */
+    private static Maybe<Method> getReflectiveAdapter(Class<?> sourceType, Class<?> targetType) {
+        Cache<Class<?>, Maybe<Method>> byTarget = reflectiveAdapters.getUnchecked(sourceType);
+        Maybe<Method> result = byTarget.getIfPresent(targetType);
+        if (result==null) {
+            result = findReflectiveAdapter(sourceType, targetType);
+            byTarget.put(targetType, result);
+        }
+        return result;
+    }
+
+    private static Maybe<Method> findReflectiveAdapter(Class<?> sourceType, Class<?> targetType) {
+        String targetTypeSimpleName = getVerySimpleName(targetType);
+        if (targetTypeSimpleName!=null && targetTypeSimpleName.length()>0) {
+            for (Method m: sourceType.getMethods()) {
+                if (m.getName().startsWith("as") && m.getParameterTypes().length==0 &&
+                        targetType.isAssignableFrom(m.getReturnType()) ) {
+                    if (m.getName().equals("as"+getVerySimpleName(m.getReturnType()))) {
+                        return Maybe.of(m);
+                    }
+                }
+            }
+        }
+        
+        for (Method m: targetType.getMethods()) {
+            if (((m.getModifiers()&Modifier.STATIC)==Modifier.STATIC) && 
+                    m.getName().startsWith("from") && m.getParameterTypes().length==1 &&
+                    m.getParameterTypes()[0].isAssignableFrom(sourceType)) {
+                if (m.getName().equals("from"+getVerySimpleName(m.getParameterTypes()[0]))) {
+                    return Maybe.of(m);
+                }
+            }
+        }
+        
+        return Maybe.absent();
+    }
+    
+    /** Finds, or returns cached, the registered adapter to use for coercion; absent if there is none. */
+    private static Maybe<Function> getRegistryAdapter(Class<?> sourceType, Class<?> targetType) {
+        Cache<Class<?>, Maybe<Function>> byTarget = registryAdapters.getUnchecked(sourceType);
+        Maybe<Function> result = byTarget.getIfPresent(targetType);
+        if (result==null) {
+            Table<Class, Class, Function> registryUsed = registry;
+            result = Maybe.absent();
+            for (Map.Entry<Class, Function> entry : registryUsed.row(targetType).entrySet()) {
+                if (entry.getKey().isAssignableFrom(sourceType)) {
+                    result = Maybe.of(entry.getValue());
+                    break;
+                }
+            }
+            // only cache if the registry was not changed in the meantime (registering clears the cache)
+            byTarget.put(targetType, result);
+            if (registryUsed!=registry) byTarget.invalidate(targetType);
+        }
+        return result;
+    }
+
     /**
      * Type coercion {@link Function function} for {@link Enum enums}.
      * <p>
@@ -474,7 +540,10 @@ public class TypeCoercions {
     }
 
     public synchronized static <A,B> void registerAdapter(Class<A> sourceType, Class<B> targetType, Function<? super A,B> fn) {
-        registry.put(targetType, sourceType, fn);
+        Table<Class, Class, Function> newRegistry = HashBasedTable.create(registry);
+        newRegistry.put(targetType, sourceType, fn);
+        registry = newRegistry;
+        registryAdapters.invalidateAll();
     }
 
     static {
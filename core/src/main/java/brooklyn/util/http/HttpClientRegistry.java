@@ -0,0 +1,544 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.nio.conn.AsyncSchemeRegistryFactory;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.http.HttpTool.HttpClientBuilder;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Shares connection-pooled {@link HttpClient} instances between callers which use the same
+ * trust, credential, redirect and timeout settings, so that keep-alive connections (and TLS sessions)
+ * are reused e.g. across all the entities polling the same load balancer.
+ * <p>
+ * Normally accessed via {@link HttpClientBuilder#sharedPool(HttpClientRegistry)}; one instance is
+ * held by each management context. Clients handed out are shared, so callers must not shut down 
+ * their connection manager (doing so is ignored), and must consume response entities 
+ * (as {@link HttpTool#execAndConsume(HttpClient, org.apache.http.client.methods.HttpUriRequest)} does).
+ * A shared client which has not been used for the {@link #getClientExpiry() client expiry} time is shut down and
+ * discarded, so callers which use a client only occasionally should get it again rather than holding on to it.
+ * <p>
+ * Also shares non-blocking {@link HttpAsyncClient} instances, for {@link #executeAsync(HttpClientBuilder, HttpUriRequest) asynchronous}
+ * requests: these are multiplexed over a few I/O threads per client, so a request in progress does not hold a thread.
+ */
+public class HttpClientRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClientRegistry.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 200;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.seconds(30);
+    public static final int DEFAULT_ASYNC_IO_THREADS = 2;
+    public static final int DEFAULT_ASYNC_MAX_REQUESTS = 1000;
+    public static final Duration DEFAULT_ASYNC_REQUEST_TIMEOUT = Duration.ONE_MINUTE;
+    public static final Duration DEFAULT_LEASE_TIMEOUT = Duration.seconds(30);
+    public static final Duration DEFAULT_SOCKET_TIMEOUT = Duration.ONE_MINUTE;
+    public static final Duration DEFAULT_CLIENT_EXPIRY = Duration.minutes(10);
+
+    private final int maxConnectionsPerRoute;
+    private final int maxConnectionsTotal;
+    private final Duration idleTimeout;
+    private final int asyncIoThreads;
+    private final int asyncMaxRequests;
+    private final Duration asyncRequestTimeout;
+    private final Duration leaseTimeout;
+    private final Duration defaultSocketTimeout;
+    private final Duration clientExpiry;
+    
+    private final ConcurrentMap<PoolKey, HttpClient> clients = Maps.newConcurrentMap();
+    private final ConcurrentMap<PoolKey, SharedConnectionManager> connectionManagers = Maps.newConcurrentMap();
+    private final ConcurrentMap<PoolKey, HttpAsyncClient> asyncClients = Maps.newConcurrentMap();
+    private final ConcurrentMap<PoolKey, PoolingClientAsyncConnectionManager> asyncConnectionManagers = Maps.newConcurrentMap();
+    private final ScheduledExecutorService idleEvictor;
+    
+    private final AtomicLong clientRequests = new AtomicLong();
+    private final AtomicLong clientsCreated = new AtomicLong();
+    private final AtomicLong clientsEvicted = new AtomicLong();
+    private final AtomicLong asyncClientsCreated = new AtomicLong();
+    private final AtomicLong idleEvictionRuns = new AtomicLong();
+    private final AtomicLong asyncRequestsSubmitted = new AtomicLong();
+    private final AtomicLong asyncRequestsActive = new AtomicLong();
+    private final AtomicLong asyncRequestsRejected = new AtomicLong();
+    private final AtomicLong asyncRequestsTimedOut = new AtomicLong();
+    private volatile boolean closed = false;
+
+    public HttpClientRegistry() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_TOTAL, DEFAULT_IDLE_TIMEOUT);
+    }
+    
+    public HttpClientRegistry(int maxConnectionsPerRoute, int maxConnectionsTotal, Duration idleTimeout) {
+        this(maxConnectionsPerRoute, maxConnectionsTotal, idleTimeout, DEFAULT_ASYNC_IO_THREADS);
+    }
+    
+    public HttpClientRegistry(int maxConnectionsPerRoute, int maxConnectionsTotal, Duration idleTimeout, int asyncIoThreads) {
+        this(maxConnectionsPerRoute, maxConnectionsTotal, idleTimeout, asyncIoThreads, DEFAULT_ASYNC_MAX_REQUESTS, DEFAULT_ASYNC_REQUEST_TIMEOUT);
+    }
+    
+    public HttpClientRegistry(int maxConnectionsPerRoute, int maxConnectionsTotal, Duration idleTimeout, 
+            int asyncIoThreads, int asyncMaxRequests, Duration asyncRequestTimeout) {
+        this(maxConnectionsPerRoute, maxConnectionsTotal, idleTimeout, asyncIoThreads, asyncMaxRequests, asyncRequestTimeout,
+                DEFAULT_LEASE_TIMEOUT, DEFAULT_SOCKET_TIMEOUT);
+    }
+    
+    public HttpClientRegistry(int maxConnectionsPerRoute, int maxConnectionsTotal, Duration idleTimeout, 
+            int asyncIoThreads, int asyncMaxRequests, Duration asyncRequestTimeout, Duration leaseTimeout, Duration defaultSocketTimeout) {
+        this(maxConnectionsPerRoute, maxConnectionsTotal, idleTimeout, asyncIoThreads, asyncMaxRequests, asyncRequestTimeout,
+                leaseTimeout, defaultSocketTimeout, DEFAULT_CLIENT_EXPIRY);
+    }
+    
+    public HttpClientRegistry(int maxConnectionsPerRoute, int maxConnectionsTotal, Duration idleTimeout, 
+            int asyncIoThreads, int asyncMaxRequests, Duration asyncRequestTimeout, Duration leaseTimeout, Duration defaultSocketTimeout,
+            Duration clientExpiry) {
+        checkArgument(asyncIoThreads > 0, "asyncIoThreads must be positive");
+        checkArgument(asyncMaxRequests > 0, "asyncMaxRequests must be positive");
+        checkArgument(maxConnectionsPerRoute > 0, "maxConnectionsPerRoute must be positive");
+        checkArgument(maxConnectionsTotal > 0, "maxConnectionsTotal must be positive");
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.maxConnectionsTotal = maxConnectionsTotal;
+        this.idleTimeout = checkNotNull(idleTimeout, "idleTimeout");
+        this.asyncIoThreads = asyncIoThreads;
+        this.asyncMaxRequests = asyncMaxRequests;
+        this.asyncRequestTimeout = checkNotNull(asyncRequestTimeout, "asyncRequestTimeout");
+        checkArgument(asyncRequestTimeout.isPositive(), "asyncRequestTimeout must be positive");
+        this.leaseTimeout = checkTimeout(leaseTimeout, "leaseTimeout");
+        this.defaultSocketTimeout = checkTimeout(defaultSocketTimeout, "defaultSocketTimeout");
+        this.clientExpiry = checkNotNull(clientExpiry, "clientExpiry");
+        checkArgument(clientExpiry.isPositive(), "clientExpiry must be positive");
+        
+        idleEvictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("brooklyn-http-pool-evictor-%d")
+                .setDaemon(true)
+                .build());
+        long periodMillis = Math.max(1000, idleTimeout.toMilliseconds() / 2);
+        idleEvictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictIdleConnections();
+            }}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+    
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+    
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+    
+    /** Default time after which an asynchronous request fails with a {@link TimeoutException}. */
+    public Duration getAsyncRequestTimeout() {
+        return asyncRequestTimeout;
+    }
+    
+    /** Time a request waits for a connection from a full pool, before failing with a {@link ConnectionPoolTimeoutException}. */
+    public Duration getLeaseTimeout() {
+        return leaseTimeout;
+    }
+    
+    /** Socket timeout of shared clients whose builder does not set one. */
+    public Duration getDefaultSocketTimeout() {
+        return defaultSocketTimeout;
+    }
+    
+    /** Time after which a shared (blocking) client which has not been used, and has no requests in progress, is shut down. */
+    public Duration getClientExpiry() {
+        return clientExpiry;
+    }
+    
+    private static Duration checkTimeout(Duration val, String name) {
+        checkNotNull(val, name);
+        checkArgument(val.isPositive() && val.toMilliseconds() <= Integer.MAX_VALUE, "%s must be positive, and at most max-int millis: %s", name, val);
+        return val;
+    }
+    
+    /**
+     * Returns the shared client for the settings in the given builder, creating it if necessary.
+     * The builder's URI is only significant when credentials are set (as they are scoped to the host).
+     */
+    public HttpClient getClient(HttpClientBuilder builder) {
+        if (closed) throw new IllegalStateException("HTTP client registry "+this+" has been closed");
+        clientRequests.incrementAndGet();
+        PoolKey key = builder.poolKey();
+        HttpClient result = clients.get(key);
+        SharedConnectionManager existing = connectionManagers.get(key);
+        if (result != null && existing != null) {
+            existing.touch();
+            return result;
+        }
+        
+        synchronized (clients) {
+            result = clients.get(key);
+            if (result != null) {
+                connectionManagers.get(key).touch();
+                return result;
+            }
+            
+            SharedConnectionManager connectionManager = new SharedConnectionManager();
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            connectionManager.setMaxTotal(maxConnectionsTotal);
+            result = builder.buildShared(connectionManager);
+            // otherwise a request waits indefinitely for a connection when the pool is exhausted, or for a response which never comes
+            HttpParams params = result.getParams();
+            params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, leaseTimeout.toMilliseconds());
+            if (HttpConnectionParams.getSoTimeout(params) == 0) {
+                HttpConnectionParams.setSoTimeout(params, (int) defaultSocketTimeout.toMilliseconds());
+            }
+            connectionManagers.put(key, connectionManager);
+            clients.put(key, result);
+            clientsCreated.incrementAndGet();
+            if (LOG.isDebugEnabled()) LOG.debug("Created shared http client for {} in {}", key, this);
+            return result;
+        }
+    }
+    
+    /**
+     * Returns the shared non-blocking client for the settings in the given builder, creating and starting it if necessary.
+     * Unlike {@link #getClient(HttpClientBuilder)}, credentials are not part of the client's settings: 
+     * they are passed with each request by {@link #executeAsync(HttpClientBuilder, HttpUriRequest)}.
+     */
+    public HttpAsyncClient getAsyncClient(HttpClientBuilder builder) {
+        if (closed) throw new IllegalStateException("HTTP client registry "+this+" has been closed");
+        checkArgument(builder.isShareable(), "Asynchronous http clients cannot have custom connection settings");
+        PoolKey key = builder.asyncPoolKey();
+        HttpAsyncClient result = asyncClients.get(key);
+        if (result != null) return result;
+        
+        synchronized (clients) {
+            result = asyncClients.get(key);
+            if (result != null) return result;
+            
+            PoolingClientAsyncConnectionManager connectionManager;
+            try {
+                IOReactorConfig ioReactorConfig = new IOReactorConfig();
+                ioReactorConfig.setIoThreadCount(asyncIoThreads);
+                connectionManager = new PoolingClientAsyncConnectionManager(
+                        new DefaultConnectingIOReactor(ioReactorConfig, new ThreadFactoryBuilder()
+                                .setNameFormat("brooklyn-http-async-io-%d")
+                                .setDaemon(true)
+                                .build()), 
+                        AsyncSchemeRegistryFactory.createDefault());
+            } catch (IOReactorException e) {
+                throw Exceptions.propagate(e);
+            }
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            connectionManager.setMaxTotal(maxConnectionsTotal);
+            result = builder.buildSharedAsync(connectionManager);
+            HttpParams params = result.getParams();
+            params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, leaseTimeout.toMilliseconds());
+            if (HttpConnectionParams.getSoTimeout(params) == 0) {
+                HttpConnectionParams.setSoTimeout(params, (int) defaultSocketTimeout.toMilliseconds());
+            }
+            result.start();
+            asyncConnectionManagers.put(key, connectionManager);
+            asyncClients.put(key, result);
+            asyncClientsCreated.incrementAndGet();
+            if (LOG.isDebugEnabled()) LOG.debug("Created shared asynchronous http client for {} in {}", key, this);
+            return result;
+        }
+    }
+    
+    /**
+     * Executes the request with the {@link #getAsyncClient(HttpClientBuilder) shared non-blocking client} for the builder's settings,
+     * returning immediately; the response is read in full before the returned future completes.
+     * No thread is held while the request is in progress; the future's listeners run in one of the client's I/O threads,
+     * so must not block (e.g. they should hand off to another executor). If {@link #getAsyncMaxRequests()} requests are
+     * already in progress the returned future fails immediately with a {@link RejectedExecutionException}. Requests fail 
+     * with a {@link TimeoutException} after the {@link #getAsyncRequestTimeout() default request timeout}.
+     */
+    public ListenableFuture<HttpToolResponse> executeAsync(HttpClientBuilder builder, HttpUriRequest request) {
+        return executeAsync(builder, request, asyncRequestTimeout);
+    }
+    
+    /** As {@link #executeAsync(HttpClientBuilder, HttpUriRequest)}, but failing after the given timeout (measured from submission). */
+    public ListenableFuture<HttpToolResponse> executeAsync(HttpClientBuilder builder, final HttpUriRequest request, final Duration timeout) {
+        if (closed) throw new IllegalStateException("HTTP client registry "+this+" has been closed");
+        checkArgument(checkNotNull(timeout, "timeout").isPositive(), "timeout must be positive");
+        HttpAsyncClient client = getAsyncClient(builder);
+        asyncRequestsSubmitted.incrementAndGet();
+        if (asyncRequestsActive.incrementAndGet() > asyncMaxRequests) {
+            asyncRequestsActive.decrementAndGet();
+            asyncRequestsRejected.incrementAndGet();
+            if (LOG.isDebugEnabled()) LOG.debug("Rejected asynchronous http request {} in {}: {} requests in progress", new Object[] {request, this, asyncMaxRequests});
+            return Futures.immediateFailedFuture(new RejectedExecutionException("Too many asynchronous http requests in progress (limit "+asyncMaxRequests+")"));
+        }
+        
+        final SettableFuture<HttpToolResponse> result = SettableFuture.create();
+        final long startTime = System.currentTimeMillis();
+        final Future<HttpResponse> future;
+        try {
+            future = client.execute(request, builder.asyncContext(), new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
+                @Override public void completed(HttpResponse response) {
+                    try {
+                        // the response has been read into memory, so this does not block
+                        result.set(new HttpToolResponse(response, startTime));
+                    } catch (Exception e) {
+                        result.setException(e);
+                    }
+                }
+                @Override public void failed(Exception e) {
+                    result.setException(e);
+                }
+                @Override public void cancelled() {
+                    result.cancel(false);
+                }});
+        } catch (RuntimeException e) {
+            asyncRequestsActive.decrementAndGet();
+            throw e;
+        }
+        
+        // the result fails on timeout, aborting the request (and releasing its connection)
+        final ScheduledFuture<?> timeoutCheck = idleEvictor.schedule(new Runnable() {
+            public void run() {
+                // counted first, so the metric is up to date when callers see the failure
+                asyncRequestsTimedOut.incrementAndGet();
+                if (result.setException(new TimeoutException("HTTP request "+request+" did not complete within "+timeout))) {
+                    future.cancel(true);
+                } else {
+                    asyncRequestsTimedOut.decrementAndGet();
+                }
+            }}, timeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+        result.addListener(new Runnable() {
+            public void run() {
+                asyncRequestsActive.decrementAndGet();
+                timeoutCheck.cancel(false);
+                if (result.isCancelled()) future.cancel(true);
+            }}, MoreExecutors.sameThreadExecutor());
+        return result;
+    }
+    
+    /** Maximum number of asynchronous requests in progress at once, over all the shared asynchronous clients. */
+    public int getAsyncMaxRequests() {
+        return asyncMaxRequests;
+    }
+    
+    /** 
+     * Closes expired connections, and those idle for longer than the idle timeout, in all pools;
+     * and shuts down shared clients not used within the {@link #getClientExpiry() client expiry} time.
+     */
+    public void evictIdleConnections() {
+        idleEvictionRuns.incrementAndGet();
+        for (SharedConnectionManager connectionManager : connectionManagers.values()) {
+            try {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleTimeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                LOG.warn("Error evicting idle http connections in "+this+" (continuing)", e);
+            }
+        }
+        for (PoolingClientAsyncConnectionManager connectionManager : asyncConnectionManagers.values()) {
+            try {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleTimeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                LOG.warn("Error evicting idle asynchronous http connections in "+this+" (continuing)", e);
+            }
+        }
+        evictUnusedClients();
+    }
+    
+    private void evictUnusedClients() {
+        long now = System.currentTimeMillis();
+        synchronized (clients) {
+            for (Map.Entry<PoolKey, SharedConnectionManager> entry : connectionManagers.entrySet()) {
+                SharedConnectionManager connectionManager = entry.getValue();
+                if (now - connectionManager.lastUsed < clientExpiry.toMilliseconds()) continue;
+                PoolStats stats = connectionManager.getTotalStats();
+                if (stats.getLeased() > 0 || stats.getPending() > 0) continue;
+                
+                clients.remove(entry.getKey());
+                connectionManagers.remove(entry.getKey());
+                clientsEvicted.incrementAndGet();
+                if (LOG.isDebugEnabled()) LOG.debug("Shutting down shared http client for {} in {}, unused for {}", new Object[] {entry.getKey(), this, clientExpiry});
+                try {
+                    connectionManager.shutdownShared();
+                } catch (Exception e) {
+                    LOG.warn("Error shutting down unused http client in "+this+" (continuing)", e);
+                }
+            }
+        }
+    }
+    
+    /** Pool statistics, summed over all the shared clients. */
+    public Map<String,Object> getMetrics() {
+        int leased = 0, available = 0, pending = 0;
+        for (SharedConnectionManager connectionManager : connectionManagers.values()) {
+            PoolStats stats = connectionManager.getTotalStats();
+            leased += stats.getLeased();
+            available += stats.getAvailable();
+            pending += stats.getPending();
+        }
+        int asyncLeased = 0, asyncAvailable = 0, asyncPending = 0;
+        for (PoolingClientAsyncConnectionManager connectionManager : asyncConnectionManagers.values()) {
+            PoolStats stats = connectionManager.getTotalStats();
+            asyncLeased += stats.getLeased();
+            asyncAvailable += stats.getAvailable();
+            asyncPending += stats.getPending();
+        }
+        return MutableMap.<String,Object>builder()
+                .put("clients", clients.size())
+                .put("clientRequests", clientRequests.get())
+                .put("clientsCreated", clientsCreated.get())
+                .put("clientsEvicted", clientsEvicted.get())
+                .put("connectionsLeased", leased)
+                .put("connectionsAvailable", available)
+                .put("connectionsPending", pending)
+                .put("maxConnectionsPerRoute", maxConnectionsPerRoute)
+                .put("maxConnectionsTotal", maxConnectionsTotal)
+                .put("idleEvictionRuns", idleEvictionRuns.get())
+                .put("asyncClients", asyncClients.size())
+                .put("asyncClientsCreated", asyncClientsCreated.get())
+                .put("asyncIoThreads", asyncIoThreads)
+                .put("asyncConnectionsLeased", asyncLeased)
+                .put("asyncConnectionsAvailable", asyncAvailable)
+                .put("asyncConnectionsPending", asyncPending)
+                .put("asyncRequestsSubmitted", asyncRequestsSubmitted.get())
+                .put("asyncRequestsActive", asyncRequestsActive.get())
+                .put("asyncMaxRequests", asyncMaxRequests)
+                .put("asyncRequestsRejected", asyncRequestsRejected.get())
+                .put("asyncRequestsTimedOut", asyncRequestsTimedOut.get())
+                .put("leaseTimeoutMillis", leaseTimeout.toMilliseconds())
+                .build();
+    }
+    
+    /** Shuts down all pooled connections; subsequent requests for a client will fail. */
+    public void close() {
+        closed = true;
+        idleEvictor.shutdownNow();
+        synchronized (clients) {
+            for (SharedConnectionManager connectionManager : connectionManagers.values()) {
+                connectionManager.shutdownShared();
+            }
+            connectionManagers.clear();
+            clients.clear();
+            for (HttpAsyncClient client : asyncClients.values()) {
+                try {
+                    client.shutdown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    LOG.warn("Error shutting down asynchronous http client in "+this+" (continuing)", e);
+                }
+            }
+            asyncConnectionManagers.clear();
+            asyncClients.clear();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+"@"+Integer.toHexString(System.identityHashCode(this));
+    }
+    
+    /** 
+     * Pooling connection manager which ignores {@link #shutdown()} from individual users of a shared client,
+     * and records when it was last used (including by callers holding on to the client).
+     */
+    private static class SharedConnectionManager extends PoolingClientConnectionManager {
+        volatile long lastUsed = System.currentTimeMillis();
+        
+        SharedConnectionManager() {
+            super(SchemeRegistryFactory.createDefault());
+        }
+        void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+        @Override
+        public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+            touch();
+            return super.requestConnection(route, state);
+        }
+        @Override
+        public void shutdown() {
+            if (LOG.isDebugEnabled()) LOG.debug("Ignoring shutdown of shared http connection manager {}", this);
+        }
+        void shutdownShared() {
+            super.shutdown();
+        }
+    }
+    
+    /** Identifies the settings which must match for a client to be shared; created by {@link HttpClientBuilder}. */
+    static final class PoolKey {
+        private final Object[] settings;
+        
+        PoolKey(Object... settings) {
+            this.settings = settings;
+        }
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(settings);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PoolKey) && Arrays.equals(settings, ((PoolKey)obj).settings);
+        }
+        @Override
+        public String toString() {
+            // exclude credentials from the string, so they are never logged
+            return "PoolKey["+settings.length+" settings, hash "+hashCode()+"]";
+        }
+    }
+}
@@ -47,6 +47,7 @@ import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeSocketFactory;
@@ -55,12 +56,20 @@ import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
 import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.conn.ClientAsyncConnectionManager;
+import org.apache.http.nio.conn.scheme.AsyncScheme;
+import org.apache.http.nio.conn.ssl.SSLLayeringStrategy;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -98,6 +107,10 @@ public class HttpTool {
         private ConnectionReuseStrategy reuseStrategy;
         private boolean trustAll;
         private boolean trustSelfSigned;
+        private Duration connectionTimeout;
+        private Duration socketTimeout;
+        private boolean customHttpParams;
+        private HttpClientRegistry sharedPool;
 
         public HttpClientBuilder clientConnectionManager(ClientConnectionManager val) {
             this.clientConnectionManager = checkNotNull(val, "clientConnectionManager");
@@ -106,6 +119,7 @@ public class HttpTool {
         public HttpClientBuilder httpParams(HttpParams val) {
             checkState(httpParams == null, "Must not call httpParams multiple times, or after other methods like connectionTimeout");
             this.httpParams = checkNotNull(val, "httpParams");
+            this.customHttpParams = true;
             return this;
         }
         public HttpClientBuilder connectionTimeout(Duration val) {
@@ -113,6 +127,7 @@ public class HttpTool {
             long millis = checkNotNull(val, "connectionTimeout").toMilliseconds();
             if (millis > Integer.MAX_VALUE) throw new IllegalStateException("HttpClient only accepts upto max-int millis for connectionTimeout, but given "+val);
             HttpConnectionParams.setConnectionTimeout(httpParams, (int) millis);
+            this.connectionTimeout = val;
             return this;
         }
         public HttpClientBuilder socketTimeout(Duration val) {
@@ -120,6 +135,7 @@ public class HttpTool {
             long millis = checkNotNull(val, "socketTimeout").toMilliseconds();
             if (millis > Integer.MAX_VALUE) throw new IllegalStateException("HttpClient only accepts upto max-int millis for socketTimeout, but given "+val);
             HttpConnectionParams.setSoTimeout(httpParams, (int) millis);
+            this.socketTimeout = val;
             return this;
         }
         public HttpClientBuilder reuseStrategy(ConnectionReuseStrategy val) {
@@ -166,7 +182,94 @@ public class HttpTool {
             this.trustSelfSigned = true;
             return this;
         }
+        /**
+         * Causes {@link #build()} to return a client from the given registry, shared with other callers
+         * using the same settings, rather than a new client with its own connections.
+         * Ignored if a custom connection manager, http params, socket factory, reuse strategy or port is set.
+         */
+        public HttpClientBuilder sharedPool(HttpClientRegistry val) {
+            this.sharedPool = checkNotNull(val, "sharedPool");
+            return this;
+        }
         public HttpClient build() {
+            if (sharedPool != null) {
+                if (isShareable()) return sharedPool.getClient(this);
+                if (LOG.isDebugEnabled()) LOG.debug("Not using shared http client pool for {}, as builder has custom connection settings", uri);
+            }
+            return buildUnshared(clientConnectionManager);
+        }
+        boolean isShareable() {
+            return clientConnectionManager == null && !customHttpParams && socketFactory == null && reuseStrategy == null && port == null;
+        }
+        HttpClientRegistry.PoolKey poolKey() {
+            boolean isHttps = (https == Boolean.TRUE || (uri!=null && uri.toString().startsWith("https:")));
+            // credentials are scoped to the host, so only distinguish by host when they are set
+            String authHost = (uri != null && credentials != null) ? uri.getHost()+":"+uri.getPort() : null;
+            return new HttpClientRegistry.PoolKey(isHttps, trustAll, trustSelfSigned, laxRedirect, 
+                    connectionTimeout, socketTimeout, authHost, credentials, 
+                    // Credentials.equals typically only compares the principal
+                    (credentials != null) ? credentials.getPassword() : null);
+        }
+        /** 
+         * as {@link #poolKey()}, but for a client in {@link HttpClientRegistry#getAsyncClient(HttpClientBuilder)}, 
+         * which is shared regardless of credentials (as those are given with each request, by {@link #asyncContext()})
+         */
+        HttpClientRegistry.PoolKey asyncPoolKey() {
+            boolean isHttps = (https == Boolean.TRUE || (uri!=null && uri.toString().startsWith("https:")));
+            return new HttpClientRegistry.PoolKey("async", isHttps, trustAll, trustSelfSigned, laxRedirect, 
+                    connectionTimeout, socketTimeout);
+        }
+        /** the context for each request of a client from {@link #buildSharedAsync(ClientAsyncConnectionManager)}, holding the credentials */
+        HttpContext asyncContext() {
+            HttpContext context = new BasicHttpContext();
+            if (uri != null && credentials != null) {
+                BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(new AuthScope(uri.getHost(), uri.getPort()), credentials);
+                context.setAttribute(ClientContext.CREDS_PROVIDER, credentialsProvider);
+            }
+            return context;
+        }
+        /** for a (not yet started) client in {@link HttpClientRegistry#getAsyncClient(HttpClientBuilder)}, with the same settings as {@link #buildShared(ClientConnectionManager)} */
+        HttpAsyncClient buildSharedAsync(ClientAsyncConnectionManager clientConnectionManager) {
+            final DefaultHttpAsyncClient httpClient = new DefaultHttpAsyncClient(clientConnectionManager);
+            // only the timeouts are set in the params of a shareable builder; keep the client's other defaults
+            if (connectionTimeout != null) {
+                HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), (int) connectionTimeout.toMilliseconds());
+            }
+            if (socketTimeout != null) {
+                HttpConnectionParams.setSoTimeout(httpClient.getParams(), (int) socketTimeout.toMilliseconds());
+            }
+            if (laxRedirect) {
+                httpClient.setRedirectStrategy(new LaxRedirectStrategy());
+            }
+            if (https == Boolean.TRUE || (uri!=null && uri.toString().startsWith("https:"))) {
+                try {
+                    SSLLayeringStrategy layeringStrategy = null;
+                    if (trustAll) {
+                        layeringStrategy = new SSLLayeringStrategy(new TrustAllStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+                    } else if (trustSelfSigned) {
+                        layeringStrategy = new SSLLayeringStrategy(new TrustSelfSignedStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+                    } else {
+                        // Using default https scheme: based on default java truststore, which is pretty strict!
+                    }
+                    if (layeringStrategy != null) {
+                        clientConnectionManager.getSchemeRegistry().register(new AsyncScheme("https", 443, layeringStrategy));
+                    }
+                } catch (Exception e) {
+                    LOG.warn("Error setting trust for uri {}", uri);
+                    throw Exceptions.propagate(e);
+                }
+            }
+            return httpClient;
+        }
+        HttpClient buildUnshared(ClientConnectionManager clientConnectionManager) {
+            return buildUnshared(clientConnectionManager, false);
+        }
+        /** for a client in {@link HttpClientRegistry}, which does not depend on the port of this builder's URI */
+        HttpClient buildShared(ClientConnectionManager clientConnectionManager) {
+            return buildUnshared(clientConnectionManager, true);
+        }
+        private HttpClient buildUnshared(ClientConnectionManager clientConnectionManager, boolean shared) {
             final DefaultHttpClient httpClient = new DefaultHttpClient(clientConnectionManager);
             httpClient.setParams(httpParams);
     
@@ -180,8 +283,15 @@ public class HttpTool {
             }
             if (https == Boolean.TRUE || (uri!=null && uri.toString().startsWith("https:"))) {
                 try {
-                    if (port == null) {
-                        port = (uri != null && uri.getPort() >= 0) ? uri.getPort() : 443;
+                    // the scheme's default port applies only to URIs without a port, so a shared client 
+                    // (used for many URIs) must not default to the port of the first
+                    int schemePort;
+                    if (port != null) {
+                        schemePort = port;
+                    } else if (!shared && uri != null && uri.getPort() >= 0) {
+                        schemePort = uri.getPort();
+                    } else {
+                        schemePort = 443;
                     }
                     if (socketFactory == null) {
                         if (trustAll) {
@@ -197,7 +307,7 @@ public class HttpTool {
                         }
                     }
                     if (socketFactory != null) {
-                        Scheme sch = new Scheme("https", port, socketFactory);
+                        Scheme sch = new Scheme("https", schemePort, socketFactory);
                         httpClient.getConnectionManager().getSchemeRegistry().register(sch);
                     }
                 } catch (Exception e) {
@@ -283,7 +393,7 @@ public class HttpTool {
     }
     
     public static class HttpPostBuilder extends HttpEntityEnclosingRequestBaseBuilder<HttpPostBuilder, HttpPost> {
-        HttpPostBuilder(URI uri) {
+        public HttpPostBuilder(URI uri) {
             super(new HttpPost(uri));
         }
     }
@@ -0,0 +1,389 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.internal.ssh;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Shares {@link SshTool} connections between all callers which connect to the same host and port
+ * with the same user, credentials and tool settings, e.g. several {@code SshMachineLocation} instances
+ * for the same machine (as happens after rebind, or when locations are created for an existing server),
+ * so that each does not open its own connections.
+ * <p>
+ * A connection is used by one caller at a time: callers {@link #exec(Map, Supplier, Function, boolean) exec}
+ * a task, which reuses an idle connection if there is one which is still connected, or otherwise opens a new one.
+ * If {@link #getMaxSessionsPerHost()} is set (it is unlimited by default), at most that many tasks run concurrently
+ * against each host and port; further callers wait for up to {@link #getMaxSessionWait()}, after which they proceed
+ * anyway (with a warning) rather than risk deadlock. Connections idle for longer than the idle timeout are disconnected. Pooled connections can be kept
+ * alive by the tool (see {@link SshTool#PROP_KEEP_ALIVE_INTERVAL}), so that firewalls do not drop them while idle.
+ * <p>
+ * One instance is held by each management context.
+ */
+public class SshConnectionRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SshConnectionRegistry.class);
+
+    /** no limit on the number of concurrent sessions per host */
+    public static final int DEFAULT_MAX_SESSIONS_PER_HOST = 0;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.FIVE_MINUTES;
+    public static final Duration DEFAULT_KEEP_ALIVE_INTERVAL = Duration.seconds(30);
+    public static final Duration DEFAULT_MAX_SESSION_WAIT = Duration.ONE_MINUTE;
+
+    private final int maxSessionsPerHost;
+    private final Duration idleTimeout;
+    private final Duration keepAliveInterval;
+    private final Duration maxSessionWait;
+
+    // guarded by itself
+    private final Map<ConnectionKey, Deque<IdleConnection>> idleConnections = Maps.newLinkedHashMap();
+    private final ConcurrentMap<String, Semaphore> sessionPermits = Maps.newConcurrentMap();
+    private final ScheduledExecutorService idleEvictor;
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicLong opens = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong notViableDiscarded = new AtomicLong();
+    private final AtomicLong idleConnectionsClosed = new AtomicLong();
+    private final AtomicLong sessionLimitWaits = new AtomicLong();
+    private final AtomicLong sessionLimitExceeded = new AtomicLong();
+    private volatile boolean closed = false;
+
+    public SshConnectionRegistry() {
+        this(DEFAULT_MAX_SESSIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT, DEFAULT_KEEP_ALIVE_INTERVAL, DEFAULT_MAX_SESSION_WAIT);
+    }
+
+    public SshConnectionRegistry(int maxSessionsPerHost, Duration idleTimeout, Duration keepAliveInterval, Duration maxSessionWait) {
+        checkArgument(maxSessionsPerHost >= 0, "maxSessionsPerHost must not be negative, but was %s", maxSessionsPerHost);
+        this.maxSessionsPerHost = maxSessionsPerHost;
+        this.idleTimeout = checkNotNull(idleTimeout, "idleTimeout");
+        this.keepAliveInterval = checkNotNull(keepAliveInterval, "keepAliveInterval");
+        this.maxSessionWait = checkNotNull(maxSessionWait, "maxSessionWait");
+
+        idleEvictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("brooklyn-ssh-pool-evictor-%d")
+                .setDaemon(true)
+                .build());
+        long periodMillis = Math.max(1000, idleTimeout.toMilliseconds() / 2);
+        idleEvictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                closeIdleConnections();
+            }}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** the maximum number of concurrent sessions to each host and port, or 0 for no limit */
+    public int getMaxSessionsPerHost() {
+        return maxSessionsPerHost;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /** The keep-alive interval callers should configure on the tools they create for this registry; zero for none. */
+    public Duration getKeepAliveInterval() {
+        return keepAliveInterval;
+    }
+
+    public Duration getMaxSessionWait() {
+        return maxSessionWait;
+    }
+
+    /**
+     * Runs the task with a connected tool for the given connection properties, reusing an idle connection
+     * for the same properties if there is one, or otherwise creating one with the given connector (which
+     * should return a connected tool). The properties are those used to create the tool, so must include the
+     * user and host (and port, credentials etc as applicable); they must not include per-command properties.
+     *
+     * @param closeAfterUse whether to disconnect the tool after the task, along with any idle connections for the same properties
+     */
+    public <T> T exec(Map<String, ?> connectionProps, Supplier<? extends SshTool> connector, Function<? super SshTool, T> task, boolean closeAfterUse) {
+        if (closed) throw new IllegalStateException("SSH connection registry "+this+" has been closed");
+        checkNotNull(connector, "connector");
+        checkNotNull(task, "task");
+        ConnectionKey key = new ConnectionKey(checkNotNull(connectionProps, "connectionProps"));
+
+        Semaphore permits = (maxSessionsPerHost > 0) ? getSessionPermits(key.getHostAndPort()) : null;
+        boolean permitted = (permits != null) && acquireSessionPermit(permits, key);
+        activeSessions.incrementAndGet();
+        try {
+            SshTool tool = borrow(key, connector);
+            try {
+                return task.apply(tool);
+            } finally {
+                if (closeAfterUse) {
+                    disconnect(key, tool);
+                    closeIdleConnections(key);
+                } else {
+                    giveBack(key, tool);
+                }
+            }
+        } finally {
+            activeSessions.decrementAndGet();
+            if (permitted) permits.release();
+        }
+    }
+
+    private Semaphore getSessionPermits(String hostAndPort) {
+        Semaphore result = sessionPermits.get(hostAndPort);
+        if (result == null) {
+            sessionPermits.putIfAbsent(hostAndPort, new Semaphore(maxSessionsPerHost, true));
+            result = sessionPermits.get(hostAndPort);
+        }
+        return result;
+    }
+
+    private boolean acquireSessionPermit(Semaphore permits, ConnectionKey key) {
+        if (permits.tryAcquire()) return true;
+        sessionLimitWaits.incrementAndGet();
+        if (LOG.isDebugEnabled()) LOG.debug("Waiting for one of {} ssh sessions to {} to be free", maxSessionsPerHost, key.getHostAndPort());
+        try {
+            if (permits.tryAcquire(maxSessionWait.toMilliseconds(), TimeUnit.MILLISECONDS)) return true;
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+        sessionLimitExceeded.incrementAndGet();
+        LOG.warn("No ssh session to {} became free within {} (max {} sessions); proceeding anyway",
+                new Object[] {key.getHostAndPort(), maxSessionWait, maxSessionsPerHost});
+        return false;
+    }
+
+    private SshTool borrow(ConnectionKey key, Supplier<? extends SshTool> connector) {
+        while (true) {
+            IdleConnection idle;
+            synchronized (idleConnections) {
+                Deque<IdleConnection> deque = idleConnections.get(key);
+                idle = (deque != null) ? deque.pollLast() : null;
+                if (deque != null && deque.isEmpty()) idleConnections.remove(key);
+            }
+            if (idle == null) break;
+            if (idle.tool.isConnected()) {
+                reuses.incrementAndGet();
+                if (LOG.isTraceEnabled()) LOG.trace("Reusing ssh connection {} to {}", idle.tool, key);
+                return idle.tool;
+            }
+            notViableDiscarded.incrementAndGet();
+            if (LOG.isDebugEnabled()) LOG.debug("Discarding ssh connection {} to {} as no longer connected", idle.tool, key);
+            disconnect(key, idle.tool);
+        }
+
+        SshTool result;
+        try {
+            result = checkNotNull(connector.get(), "connector returned null");
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            throw e;
+        }
+        opens.incrementAndGet();
+        if (LOG.isDebugEnabled()) LOG.debug("Opened ssh connection {} to {}", result, key);
+        return result;
+    }
+
+    private void giveBack(ConnectionKey key, SshTool tool) {
+        if (!closed) {
+            synchronized (idleConnections) {
+                Deque<IdleConnection> deque = idleConnections.get(key);
+                if (deque == null) {
+                    deque = Lists.newLinkedList();
+                    idleConnections.put(key, deque);
+                }
+                if (maxSessionsPerHost == 0 || deque.size() < maxSessionsPerHost) {
+                    deque.addLast(new IdleConnection(tool, System.currentTimeMillis()));
+                    return;
+                }
+            }
+        }
+        // registry closed, or already enough idle connections for this host
+        disconnect(key, tool);
+    }
+
+    /** Disconnects connections which have been idle for longer than the idle timeout. */
+    public void closeIdleConnections() {
+        long cutoff = System.currentTimeMillis() - idleTimeout.toMilliseconds();
+        Map<ConnectionKey, List<SshTool>> toClose = Maps.newLinkedHashMap();
+        synchronized (idleConnections) {
+            for (Iterator<Map.Entry<ConnectionKey, Deque<IdleConnection>>> iter = idleConnections.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<ConnectionKey, Deque<IdleConnection>> entry = iter.next();
+                // oldest first, as connections are reused from the end
+                for (Iterator<IdleConnection> connIter = entry.getValue().iterator(); connIter.hasNext();) {
+                    IdleConnection idle = connIter.next();
+                    if (idle.lastUsedTime > cutoff) break;
+                    connIter.remove();
+                    addTo(toClose, entry.getKey(), idle.tool);
+                }
+                if (entry.getValue().isEmpty()) iter.remove();
+            }
+        }
+        // disconnecting can block (e.g. if the other side has gone away), so done outside the lock
+        for (Map.Entry<ConnectionKey, List<SshTool>> entry : toClose.entrySet()) {
+            for (SshTool tool : entry.getValue()) {
+                idleConnectionsClosed.incrementAndGet();
+                if (LOG.isDebugEnabled()) LOG.debug("Closing idle ssh connection {} to {}", tool, entry.getKey());
+                disconnect(entry.getKey(), tool);
+            }
+        }
+    }
+
+    /**
+     * Disconnects the idle connections for the given connection properties (as passed to
+     * {@link #exec(Map, Supplier, Function, boolean)}), e.g. when a location using them is closed.
+     */
+    public void closeIdleConnections(Map<String, ?> connectionProps) {
+        closeIdleConnections(new ConnectionKey(checkNotNull(connectionProps, "connectionProps")));
+    }
+
+    private void closeIdleConnections(ConnectionKey key) {
+        Deque<IdleConnection> toClose;
+        synchronized (idleConnections) {
+            toClose = idleConnections.remove(key);
+        }
+        if (toClose != null) {
+            for (IdleConnection idle : toClose) {
+                disconnect(key, idle.tool);
+            }
+        }
+    }
+
+    private static void addTo(Map<ConnectionKey, List<SshTool>> map, ConnectionKey key, SshTool tool) {
+        List<SshTool> tools = map.get(key);
+        if (tools == null) {
+            tools = Lists.newArrayList();
+            map.put(key, tools);
+        }
+        tools.add(tool);
+    }
+
+    private void disconnect(ConnectionKey key, SshTool tool) {
+        try {
+            tool.disconnect();
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            if (LOG.isDebugEnabled()) LOG.debug("Caught exception disconnecting ssh connection "+tool+" to "+key+" ("+e.getMessage()+")");
+        }
+    }
+
+    /** Counts of connections and sessions, and of connections opened, reused and failed. */
+    public Map<String,Object> getMetrics() {
+        int connectionKeys = 0, idleCount = 0;
+        synchronized (idleConnections) {
+            connectionKeys = idleConnections.size();
+            for (Deque<IdleConnection> deque : idleConnections.values()) {
+                idleCount += deque.size();
+            }
+        }
+        return MutableMap.<String,Object>builder()
+                .put("idleConnectionKeys", connectionKeys)
+                .put("idleConnections", idleCount)
+                .put("activeSessions", activeSessions.get())
+                .put("opens", opens.get())
+                .put("reuses", reuses.get())
+                .put("failures", failures.get())
+                .put("notViableDiscarded", notViableDiscarded.get())
+                .put("idleConnectionsClosed", idleConnectionsClosed.get())
+                .put("sessionLimitWaits", sessionLimitWaits.get())
+                .put("sessionLimitExceeded", sessionLimitExceeded.get())
+                .build();
+    }
+
+    /** Disconnects all idle connections; those in use are disconnected when their task completes, and subsequent calls to exec will fail. */
+    public void close() {
+        closed = true;
+        idleEvictor.shutdownNow();
+        Map<ConnectionKey, Deque<IdleConnection>> toClose;
+        synchronized (idleConnections) {
+            toClose = Maps.newLinkedHashMap(idleConnections);
+            idleConnections.clear();
+        }
+        for (Map.Entry<ConnectionKey, Deque<IdleConnection>> entry : toClose.entrySet()) {
+            for (IdleConnection idle : entry.getValue()) {
+                disconnect(entry.getKey(), idle.tool);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+"@"+Integer.toHexString(System.identityHashCode(this));
+    }
+
+    private static class IdleConnection {
+        final SshTool tool;
+        final long lastUsedTime;
+
+        IdleConnection(SshTool tool, long lastUsedTime) {
+            this.tool = tool;
+            this.lastUsedTime = lastUsedTime;
+        }
+    }
+
+    /** Identifies the connections which can be shared; credentials are deliberately not included in {@link #toString()}. */
+    private static final class ConnectionKey {
+        final Map<String, Object> props;
+
+        ConnectionKey(Map<String, ?> props) {
+            this.props = Collections.unmodifiableMap(new HashMap<String, Object>(props));
+        }
+        String getHostAndPort() {
+            Object host = props.get(SshTool.PROP_HOST.getName());
+            Object port = props.get(SshTool.PROP_PORT.getName());
+            return host+":"+(port != null ? port : SshTool.PROP_PORT.getDefaultValue());
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof ConnectionKey) && props.equals(((ConnectionKey) obj).props);
+        }
+        @Override
+        public int hashCode() {
+            return props.hashCode();
+        }
+        @Override
+        public String toString() {
+            Object user = props.get(SshTool.PROP_USER.getName());
+            return (user != null ? user+"@" : "")+getHostAndPort();
+        }
+    }
+}
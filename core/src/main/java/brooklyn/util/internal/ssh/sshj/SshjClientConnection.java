@@ -57,6 +57,7 @@ public class SshjClientConnection implements SshAction<SSHClient> {
         protected File privateKeyFile;
         protected long connectTimeout;
         protected long sessionTimeout;
+        protected long keepAliveInterval;
         protected boolean strictHostKeyChecking;
 
         public Builder hostAndPort(HostAndPort hostAndPort) {
@@ -110,13 +111,19 @@ public class SshjClientConnection implements SshAction<SSHClient> {
             return this;
         }
 
+        /** interval in millis between keep-alive messages; sshj sends these at a granularity of whole seconds */
+        public Builder keepAliveInterval(long keepAliveInterval) {
+            this.keepAliveInterval = keepAliveInterval;
+            return this;
+        }
+
         public SshjClientConnection build() {
             return new SshjClientConnection(this);
         }
 
         protected static Builder fromSSHClientConnection(SshjClientConnection in) {
             return new Builder().hostAndPort(in.getHostAndPort()).connectTimeout(in.getConnectTimeout()).sessionTimeout(
-                    in.getSessionTimeout()).username(in.username).password(in.password).privateKey(in.privateKeyData).privateKeyFile(in.privateKeyFile);
+                    in.getSessionTimeout()).keepAliveInterval(in.getKeepAliveInterval()).username(in.username).password(in.password).privateKey(in.privateKeyData).privateKeyFile(in.privateKeyFile);
         }
     }
 
@@ -129,6 +136,7 @@ public class SshjClientConnection implements SshAction<SSHClient> {
     private final boolean strictHostKeyChecking;
     private final int connectTimeout;
     private final int sessionTimeout;
+    private final long keepAliveInterval;
     
     SSHClient ssh;
 
@@ -142,6 +150,7 @@ public class SshjClientConnection implements SshAction<SSHClient> {
         this.strictHostKeyChecking = builder.strictHostKeyChecking;
         this.connectTimeout = checkInt("connectTimeout", builder.connectTimeout, Integer.MAX_VALUE);
         this.sessionTimeout = checkInt("sessionTimeout", builder.sessionTimeout, Integer.MAX_VALUE);
+        this.keepAliveInterval = builder.keepAliveInterval;
     }
 
     static Integer checkInt(String context, long value, Integer ifTooLarge) {
@@ -187,6 +196,9 @@ public class SshjClientConnection implements SshAction<SSHClient> {
             ssh.setTimeout(sessionTimeout);
         }
         ssh.connect(hostAndPort.getHostText(), hostAndPort.getPortOrDefault(22));
+        if (keepAliveInterval > 0) {
+            ssh.getTransport().setHeartbeatInterval((int) Math.max(1, Math.min(Integer.MAX_VALUE, keepAliveInterval / 1000)));
+        }
         
         if (password != null) {
             ssh.authPassword(username, password);
@@ -242,6 +254,14 @@ public class SshjClientConnection implements SshAction<SSHClient> {
         return sessionTimeout;
     }
 
+    /**
+     *
+     * @return interval in millis between keep-alive messages, or {@code 0} for none
+     */
+    public long getKeepAliveInterval() {
+        return keepAliveInterval;
+    }
+
     /**
      * 
      * @return the current ssh or {@code null} if not connected
@@ -128,6 +128,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
     public static class Builder<T extends SshjTool, B extends Builder<T,B>> extends AbstractSshToolBuilder<T,B> {
         protected long connectTimeout;
         protected long sessionTimeout;
+        protected long keepAliveInterval;
         protected int sshTries = 4;  //allow 4 tries by default, much safer
         protected long sshTriesTimeout = 2*60*1000;  //allow 2 minutes by default (so if too slow trying sshTries times, abort anyway)
         protected long sshRetryDelay = 50L;
@@ -140,6 +141,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
             sshRetryDelay = getOptionalVal(props, PROP_SSH_RETRY_DELAY);
             connectTimeout = getOptionalVal(props, PROP_CONNECT_TIMEOUT);
             sessionTimeout = getOptionalVal(props, PROP_SESSION_TIMEOUT);
+            keepAliveInterval = getOptionalVal(props, PROP_KEEP_ALIVE_INTERVAL);
             return self();
         }
         public B connectTimeout(int val) {
@@ -148,6 +150,9 @@ public class SshjTool extends SshAbstractTool implements SshTool {
         public B sessionTimeout(int val) {
             this.sessionTimeout = val; return self();
         }
+        public B keepAliveInterval(long val) {
+            this.keepAliveInterval = val; return self();
+        }
         public B sshRetries(int val) {
             this.sshTries = val; return self();
         }
@@ -185,6 +190,7 @@ public class SshjTool extends SshAbstractTool implements SshTool {
                 .strictHostKeyChecking(strictHostKeyChecking)
                 .connectTimeout(builder.connectTimeout)
                 .sessionTimeout(builder.sessionTimeout)
+                .keepAliveInterval(builder.keepAliveInterval)
                 .build();
         
         if (LOG.isTraceEnabled()) LOG.trace("Created SshTool {} ({})", this, System.identityHashCode(this));
@@ -0,0 +1,404 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.jmx;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Shares JMX connections between callers which connect to the same JMX URL with the same credentials,
+ * e.g. the JMX feeds of an entity, its enrichers and any MXBean polling, so that only one connection
+ * is opened to each JVM.
+ * <p>
+ * Callers {@link #acquire(String, String, String, Callable) acquire} a {@link Lease}, and must
+ * {@link Lease#release() release} it rather than closing the connection. Connections are reference-counted:
+ * one with no leases is closed once idle for longer than the idle timeout. A connection which has been
+ * idle for a while is checked before being handed out again; if a caller finds the connection broken it
+ * should {@link Lease#invalidate() invalidate} it, so the next acquire reconnects. Repeated reconnect failures
+ * back off exponentially (up to a maximum), so many callers do not all hammer a JVM which has gone away.
+ * <p>
+ * One instance is held by each management context.
+ */
+public class JmxConnectionRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmxConnectionRegistry.class);
+
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.seconds(30);
+    public static final Duration DEFAULT_HEALTH_CHECK_INTERVAL = Duration.seconds(10);
+    public static final Duration DEFAULT_MIN_RECONNECT_BACKOFF = Duration.millis(250);
+    public static final Duration DEFAULT_MAX_RECONNECT_BACKOFF = Duration.seconds(10);
+
+    private final Duration idleTimeout;
+    private final Duration healthCheckInterval;
+    private final Duration minReconnectBackoff;
+    private final Duration maxReconnectBackoff;
+
+    // guarded by itself
+    private final Map<ConnectionKey, SharedConnection> connections = Maps.newLinkedHashMap();
+    private final ScheduledExecutorService idleEvictor;
+
+    private final AtomicLong acquires = new AtomicLong();
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final AtomicLong healthCheckFailures = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong idleConnectionsClosed = new AtomicLong();
+    private volatile boolean closed = false;
+
+    public JmxConnectionRegistry() {
+        this(DEFAULT_IDLE_TIMEOUT, DEFAULT_HEALTH_CHECK_INTERVAL, DEFAULT_MAX_RECONNECT_BACKOFF);
+    }
+
+    public JmxConnectionRegistry(Duration idleTimeout, Duration healthCheckInterval, Duration maxReconnectBackoff) {
+        this(idleTimeout, healthCheckInterval, DEFAULT_MIN_RECONNECT_BACKOFF, maxReconnectBackoff);
+    }
+
+    public JmxConnectionRegistry(Duration idleTimeout, Duration healthCheckInterval, Duration minReconnectBackoff, Duration maxReconnectBackoff) {
+        this.idleTimeout = checkNotNull(idleTimeout, "idleTimeout");
+        this.healthCheckInterval = checkNotNull(healthCheckInterval, "healthCheckInterval");
+        this.minReconnectBackoff = checkNotNull(minReconnectBackoff, "minReconnectBackoff");
+        this.maxReconnectBackoff = checkNotNull(maxReconnectBackoff, "maxReconnectBackoff");
+
+        idleEvictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("brooklyn-jmx-pool-evictor-%d")
+                .setDaemon(true)
+                .build());
+        long periodMillis = Math.max(1000, idleTimeout.toMilliseconds() / 2);
+        idleEvictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                closeIdleConnections();
+            }}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    public Duration getMaxReconnectBackoff() {
+        return maxReconnectBackoff;
+    }
+
+    /**
+     * Returns a lease on the shared connection for the given URL and credentials, connecting
+     * (using the given factory) if there is not already a healthy connection.
+     *
+     * @throws IOException if connecting fails, or if a reconnect was attempted too recently (backing off)
+     */
+    public Lease acquire(String url, String user, String password, Callable<? extends JMXConnector> connectorFactory) throws IOException {
+        if (closed) throw new IllegalStateException("JMX connection registry "+this+" has been closed");
+        checkNotNull(connectorFactory, "connectorFactory");
+        acquires.incrementAndGet();
+        ConnectionKey key = new ConnectionKey(checkNotNull(url, "url"), user, password);
+
+        SharedConnection shared;
+        synchronized (connections) {
+            shared = connections.get(key);
+            if (shared == null) {
+                shared = new SharedConnection(key);
+                connections.put(key, shared);
+            }
+            shared.leases++;
+        }
+        try {
+            return shared.lease(connectorFactory);
+        } catch (IOException e) {
+            release(shared);
+            throw e;
+        } catch (RuntimeException e) {
+            release(shared);
+            throw e;
+        }
+    }
+
+    private void release(SharedConnection shared) {
+        synchronized (connections) {
+            shared.leases--;
+            shared.lastReleasedTime = System.currentTimeMillis();
+        }
+    }
+
+    /** Closes connections which have had no leases for longer than the idle timeout. */
+    public void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        List<SharedConnection> toClose = Lists.newArrayList();
+        synchronized (connections) {
+            for (Iterator<SharedConnection> iter = connections.values().iterator(); iter.hasNext();) {
+                SharedConnection shared = iter.next();
+                if (shared.leases <= 0 && now - shared.lastReleasedTime >= idleTimeout.toMilliseconds()) {
+                    iter.remove();
+                    toClose.add(shared);
+                }
+            }
+        }
+        // closing can block (e.g. if the other side has gone away), so done outside the lock
+        for (SharedConnection shared : toClose) {
+            if (shared.close()) {
+                idleConnectionsClosed.incrementAndGet();
+                if (LOG.isDebugEnabled()) LOG.debug("Closed idle shared JMX connection to {}", shared.key);
+            }
+        }
+    }
+
+    /** Counts of connections and leases, and of connection attempts and failures. */
+    public Map<String,Object> getMetrics() {
+        int connectionCount, openConnections = 0, leases = 0;
+        synchronized (connections) {
+            connectionCount = connections.size();
+            for (SharedConnection shared : connections.values()) {
+                if (shared.isOpen()) openConnections++;
+                leases += shared.leases;
+            }
+        }
+        return MutableMap.<String,Object>builder()
+                .put("connections", connectionCount)
+                .put("openConnections", openConnections)
+                .put("leases", leases)
+                .put("acquires", acquires.get())
+                .put("connectionsCreated", connectionsCreated.get())
+                .put("reconnects", reconnects.get())
+                .put("connectFailures", connectFailures.get())
+                .put("healthCheckFailures", healthCheckFailures.get())
+                .put("invalidations", invalidations.get())
+                .put("idleConnectionsClosed", idleConnectionsClosed.get())
+                .build();
+    }
+
+    /** Closes all connections; subsequent attempts to acquire a connection will fail. */
+    public void close() {
+        closed = true;
+        idleEvictor.shutdownNow();
+        List<SharedConnection> toClose;
+        synchronized (connections) {
+            toClose = Lists.newArrayList(connections.values());
+            connections.clear();
+        }
+        for (SharedConnection shared : toClose) {
+            shared.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+"@"+Integer.toHexString(System.identityHashCode(this));
+    }
+
+    /**
+     * A caller's use of a shared connection. The connection must not be closed directly;
+     * instead call {@link #release()} when done with it.
+     */
+    public class Lease {
+        private final SharedConnection shared;
+        private final MBeanServerConnection connection;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(SharedConnection shared, MBeanServerConnection connection) {
+            this.shared = shared;
+            this.connection = connection;
+        }
+
+        public MBeanServerConnection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Indicates that the connection is broken: it is closed, if no-one has already replaced it,
+         * so that the next {@link JmxConnectionRegistry#acquire(String, String, String, Callable) acquire} reconnects.
+         * The lease should still be released.
+         */
+        public void invalidate() {
+            shared.invalidate(connection);
+        }
+
+        /** Gives up this lease on the connection; can safely be called more than once. */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                JmxConnectionRegistry.this.release(shared);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Lease["+shared.key+"]";
+        }
+    }
+
+    private class SharedConnection {
+        final ConnectionKey key;
+        // guarded by the registry's connections map
+        int leases;
+        long lastReleasedTime;
+
+        // guarded by this
+        private JMXConnector connector;
+        private MBeanServerConnection connection;
+        private long lastCheckedTime;
+        private boolean everConnected;
+        private int consecutiveFailures;
+        private long lastFailureTime;
+
+        SharedConnection(ConnectionKey key) {
+            this.key = key;
+        }
+
+        synchronized boolean isOpen() {
+            return connection != null;
+        }
+
+        synchronized Lease lease(Callable<? extends JMXConnector> connectorFactory) throws IOException {
+            if (connection != null && System.currentTimeMillis() - lastCheckedTime >= healthCheckInterval.toMilliseconds()) {
+                checkHealth();
+            }
+            if (connection == null) {
+                connect(connectorFactory);
+            }
+            return new Lease(this, connection);
+        }
+
+        private void checkHealth() {
+            try {
+                connection.getMBeanCount();
+                lastCheckedTime = System.currentTimeMillis();
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                healthCheckFailures.incrementAndGet();
+                if (LOG.isDebugEnabled()) LOG.debug("Shared JMX connection to {} failed health check; will reconnect ({})", key, e.getMessage());
+                closeConnector();
+            }
+        }
+
+        private void connect(Callable<? extends JMXConnector> connectorFactory) throws IOException {
+            if (consecutiveFailures > 0 && everConnected) {
+                long backoff = getReconnectBackoffMillis(consecutiveFailures);
+                long timeSince = System.currentTimeMillis() - lastFailureTime;
+                if (timeSince < backoff) {
+                    throw new IOException("Not reconnecting to JMX at "+key.url+" because attempt failed "+Time.makeTimeStringRounded(timeSince)+" ago "
+                            + "("+consecutiveFailures+" consecutive failure"+(consecutiveFailures == 1 ? "" : "s")+")");
+                }
+            }
+            try {
+                JMXConnector newConnector = connectorFactory.call();
+                MBeanServerConnection newConnection = newConnector.getMBeanServerConnection();
+                connector = newConnector;
+                connection = newConnection;
+            } catch (Exception e) {
+                consecutiveFailures++;
+                lastFailureTime = System.currentTimeMillis();
+                connectFailures.incrementAndGet();
+                if (e instanceof IOException) throw (IOException) e;
+                throw Exceptions.propagate(e);
+            }
+            connectionsCreated.incrementAndGet();
+            if (everConnected) reconnects.incrementAndGet();
+            everConnected = true;
+            consecutiveFailures = 0;
+            lastCheckedTime = System.currentTimeMillis();
+            if (LOG.isDebugEnabled()) LOG.debug("Opened shared JMX connection to {}", key);
+        }
+
+        synchronized void invalidate(MBeanServerConnection staleConnection) {
+            if (connection != null && connection == staleConnection) {
+                invalidations.incrementAndGet();
+                if (LOG.isDebugEnabled()) LOG.debug("Shared JMX connection to {} invalidated; will reconnect", key);
+                closeConnector();
+            }
+        }
+
+        synchronized boolean close() {
+            boolean wasOpen = (connection != null);
+            closeConnector();
+            return wasOpen;
+        }
+
+        private void closeConnector() {
+            if (connector != null) {
+                try {
+                    connector.close();
+                } catch (Exception e) {
+                    // the other side has often already gone away, so nothing to do
+                    if (LOG.isDebugEnabled()) LOG.debug("Caught exception closing shared JMX connection to {} ({})", key, e.getMessage());
+                }
+            }
+            connector = null;
+            connection = null;
+        }
+    }
+
+    private long getReconnectBackoffMillis(int consecutiveFailures) {
+        long backoff = minReconnectBackoff.toMilliseconds() << Math.min(consecutiveFailures - 1, 30);
+        return Math.min(backoff, maxReconnectBackoff.toMilliseconds());
+    }
+
+    /** Identifies the connections which can be shared; the password is deliberately not included in {@link #toString()}. */
+    private static final class ConnectionKey {
+        final String url;
+        final String user;
+        final String password;
+
+        ConnectionKey(String url, String user, String password) {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ConnectionKey)) return false;
+            ConnectionKey o = (ConnectionKey) obj;
+            return url.equals(o.url) && Objects.equal(user, o.user) && Objects.equal(password, o.password);
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(url, user, password);
+        }
+        @Override
+        public String toString() {
+            return url+(user != null ? " (user "+user+")" : "");
+        }
+    }
+}
@@ -20,8 +20,10 @@ package brooklyn.util.task;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -54,6 +56,7 @@ import brooklyn.management.HasTaskChildren;
 import brooklyn.management.Task;
 import brooklyn.management.TaskAdaptable;
 import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.text.Identifiers;
 
@@ -95,12 +98,12 @@ public class BasicExecutionManager implements ExecutionManager {
     // TODO Could have a set of all knownTasks; but instead we're having a separate set per tag,
     // so the same task could be listed multiple times if it has multiple tags...
 
-    //access to this field AND to members in this field is synchronized, 
-    //to allow us to preserve order while guaranteeing thread-safe
-    //(but more testing is needed before we are completely sure it is thread-safe!)
-    //synch blocks are as finely grained as possible for efficiency;
-    //NB CopyOnWriteArraySet is a perf bottleneck, and the simple map makes it easier to remove when a tag is empty
-    private Map<Object,Set<Task<?>>> tasksByTag = new HashMap<Object,Set<Task<?>>>();
+    //concurrent index of tag to tasks, so that submission, completion and lookups don't contend on a single lock;
+    //each tag maps tasks to their submission sequence number, so that copies can be returned in submission order;
+    //when a tag's map becomes empty it is removed, and writers re-check the mapping after adding (see addTaskToTag)
+    private final ConcurrentMap<Object,ConcurrentMap<Task<?>,Long>> tasksByTag = new ConcurrentHashMap<Object,ConcurrentMap<Task<?>,Long>>();
+    
+    private final AtomicLong taskSequence = new AtomicLong();
     
     private ConcurrentMap<String,Task<?>> tasksById = new ConcurrentHashMap<String,Task<?>>();
 
@@ -117,6 +120,9 @@ public class BasicExecutionManager implements ExecutionManager {
     
     private final List<ExecutionListener> listeners = new CopyOnWriteArrayList<ExecutionListener>();
     
+    /** those {@link #listeners} which also want to know about submission and start */
+    private final List<TaskStateListener> stateListeners = new CopyOnWriteArrayList<TaskStateListener>();
+    
     private final static ThreadLocal<String> threadOriginalName = new ThreadLocal<String>() {
         protected String initialValue() {
             // should not happen, as only access is in _afterEnd with a check that _beforeStart was invoked 
@@ -163,12 +169,15 @@ public class BasicExecutionManager implements ExecutionManager {
         delayedRunner.shutdownNow();
     }
     
+    /** adds a listener for tasks completing; if it is a {@link TaskStateListener} it is also told of tasks being submitted and started */
     public void addListener(ExecutionListener listener) {
         listeners.add(listener);
+        if (listener instanceof TaskStateListener) stateListeners.add((TaskStateListener)listener);
     }
     
     public void removeListener(ExecutionListener listener) {
         listeners.remove(listener);
+        stateListeners.remove(listener);
     }
     
     /**
@@ -178,12 +187,9 @@ public class BasicExecutionManager implements ExecutionManager {
      * a reference to it as a tag.
      */
     public void deleteTag(Object tag) {
-        Set<Task<?>> tasks;
-        synchronized (tasksByTag) {
-            tasks = tasksByTag.remove(tag);
-        }
+        Map<Task<?>,Long> tasks = tasksByTag.remove(tag);
         if (tasks != null) {
-            for (Task<?> task : tasks) {
+            for (Task<?> task : tasks.keySet()) {
                 deleteTask(task);
             }
         }
@@ -204,15 +210,7 @@ public class BasicExecutionManager implements ExecutionManager {
     protected boolean deleteTaskNonRecursive(Task<?> task) {
         Set<?> tags = checkNotNull(task, "task").getTags();
         for (Object tag : tags) {
-            synchronized (tasksByTag) {
-                Set<Task<?>> tasks = tasksWithTagLiveOrNull(tag);
-                if (tasks != null) {
-                    tasks.remove(task);
-                    if (tasks.isEmpty()) {
-                        tasksByTag.remove(tag);
-                    }
-                }
-            }
+            removeTaskFromTag(tag, task);
         }
         Task<?> removed = tasksById.remove(task.getId());
         incompleteTaskIds.remove(task.getId());
@@ -246,24 +244,57 @@ public class BasicExecutionManager implements ExecutionManager {
         return tasksById.size();
     }
 
-    private Set<Task<?>> tasksWithTagCreating(Object tag) {
+    private void addTaskToTag(Object tag, Task<?> task, Long sequence) {
         Preconditions.checkNotNull(tag);
-        synchronized (tasksByTag) {
-            Set<Task<?>> result = tasksWithTagLiveOrNull(tag);
-            if (result==null) {
-                result = Collections.synchronizedSet(new LinkedHashSet<Task<?>>());
-                tasksByTag.put(tag, result);
+        while (true) {
+            ConcurrentMap<Task<?>,Long> tasks = tasksByTag.get(tag);
+            if (tasks==null) {
+                ConcurrentMap<Task<?>,Long> newTasks = new ConcurrentHashMap<Task<?>,Long>(4, 0.75f, 2);
+                tasks = tasksByTag.putIfAbsent(tag, newTasks);
+                if (tasks==null) tasks = newTasks;
+            }
+            tasks.put(task, sequence);
+            // if the map was emptied and removed concurrently then our add went to a detached map; try again
+            if (tasksByTag.get(tag)==tasks) return;
+        }
+    }
+
+    private void removeTaskFromTag(Object tag, Task<?> task) {
+        ConcurrentMap<Task<?>,Long> tasks = tasksByTag.get(tag);
+        if (tasks != null) {
+            tasks.remove(task);
+            if (tasks.isEmpty()) {
+                // a concurrent add may have slipped in before the remove; put it back rather than lose it
+                if (tasksByTag.remove(tag, tasks) && !tasks.isEmpty()) {
+                    for (Map.Entry<Task<?>,Long> t : tasks.entrySet()) addTaskToTag(tag, t.getKey(), t.getValue());
+                }
             }
-            return result;
         }
     }
 
-    /** exposes live view, for internal use only */
+    /** returns the given tasks as a set ordered by submission */
+    private static Set<Task<?>> inSubmissionOrder(Collection<Map.Entry<Task<?>,Long>> tasks) {
+        List<Map.Entry<Task<?>,Long>> sorted = new ArrayList<Map.Entry<Task<?>,Long>>(tasks);
+        Collections.sort(sorted, SUBMISSION_ORDER);
+        Set<Task<?>> result = new LinkedHashSet<Task<?>>(sorted.size()*4/3+1);
+        for (Map.Entry<Task<?>,Long> entry : sorted) {
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+    
+    private static final Comparator<Map.Entry<Task<?>,Long>> SUBMISSION_ORDER = new Comparator<Map.Entry<Task<?>,Long>>() {
+        @Override
+        public int compare(Map.Entry<Task<?>,Long> o1, Map.Entry<Task<?>,Long> o2) {
+            return o1.getValue().compareTo(o2.getValue());
+        }
+    };
+
+    /** exposes live view, for internal use only; the returned set is concurrent and unordered, iteration is weakly consistent */
     @Beta
     public Set<Task<?>> tasksWithTagLiveOrNull(Object tag) {
-        synchronized (tasksByTag) {
-            return tasksByTag.get(tag);
-        }
+        Map<Task<?>,Long> tasks = tasksByTag.get(tag);
+        return tasks==null ? null : tasks.keySet();
     }
 
     @Override
@@ -282,47 +313,50 @@ public class BasicExecutionManager implements ExecutionManager {
     
     @Override
     public Set<Task<?>> getTasksWithTag(Object tag) {
-        Set<Task<?>> result = tasksWithTagLiveOrNull(tag);
-        if (result==null) return Collections.emptySet();
-        synchronized (result) {
-            return (Set<Task<?>>)Collections.unmodifiableSet(new LinkedHashSet<Task<?>>(result));
-        }
+        Map<Task<?>,Long> tasks = tasksByTag.get(tag);
+        if (tasks==null) return Collections.emptySet();
+        return Collections.unmodifiableSet(inSubmissionOrder(tasks.entrySet()));
     }
     
     @Override
     public Set<Task<?>> getTasksWithAnyTag(Iterable<?> tags) {
-        Set<Task<?>> result = new LinkedHashSet<Task<?>>();
+        Map<Task<?>,Long> result = new HashMap<Task<?>,Long>();
         Iterator<?> ti = tags.iterator();
         while (ti.hasNext()) {
-            Set<Task<?>> tasksForTag = tasksWithTagLiveOrNull(ti.next());
+            Map<Task<?>,Long> tasksForTag = tasksByTag.get(ti.next());
             if (tasksForTag!=null) {
-                synchronized (tasksForTag) {
-                    result.addAll(tasksForTag);
-                }
+                result.putAll(tasksForTag);
             }
         }
-        return Collections.unmodifiableSet(result);
+        return Collections.unmodifiableSet(inSubmissionOrder(result.entrySet()));
     }
 
     /** only works with at least one tag; returns empty if no tags */
     @Override
     public Set<Task<?>> getTasksWithAllTags(Iterable<?> tags) {
-        //NB: for this method retrieval for multiple tags could be made (much) more efficient (if/when it is used with multiple tags!)
-        //by first looking for the least-used tag, getting those tasks, and then for each of those tasks
-        //checking whether it contains the other tags (looking for second-least used, then third-least used, etc)
-        Set<Task<?>> result = new LinkedHashSet<Task<?>>();
-        boolean first = true;
-        Iterator<?> ti = tags.iterator();
-        while (ti.hasNext()) {
-            Object tag = ti.next();
-            if (first) { 
-                first = false;
-                result.addAll(getTasksWithTag(tag));
-            } else {
-                result.retainAll(getTasksWithTag(tag));
+        // iterate over the least-used tag, checking membership of the (concurrent) maps for the other tags
+        List<Map<Task<?>,Long>> tasksForTags = new ArrayList<Map<Task<?>,Long>>();
+        Map<Task<?>,Long> smallest = null;
+        for (Object tag : tags) {
+            Map<Task<?>,Long> tasksForTag = tasksByTag.get(tag);
+            if (tasksForTag==null || tasksForTag.isEmpty()) return Collections.emptySet();
+            tasksForTags.add(tasksForTag);
+            if (smallest==null || tasksForTag.size() < smallest.size()) smallest = tasksForTag;
+        }
+        if (smallest==null) return Collections.emptySet();
+        
+        List<Map.Entry<Task<?>,Long>> result = new ArrayList<Map.Entry<Task<?>,Long>>();
+        for (Map.Entry<Task<?>,Long> entry : smallest.entrySet()) {
+            boolean inAll = true;
+            for (Map<Task<?>,Long> tasksForTag : tasksForTags) {
+                if (tasksForTag!=smallest && !tasksForTag.containsKey(entry.getKey())) {
+                    inAll = false;
+                    break;
+                }
             }
+            if (inAll) result.add(entry);
         }
-        return Collections.unmodifiableSet(result);
+        return Collections.unmodifiableSet(inSubmissionOrder(result));
     }
 
     /** live view of all tasks, for internal use only */
@@ -330,9 +364,7 @@ public class BasicExecutionManager implements ExecutionManager {
     public Collection<Task<?>> allTasksLive() { return tasksById.values(); }
     
     public Set<Object> getTaskTags() { 
-        synchronized (tasksByTag) {
-            return Collections.unmodifiableSet(Sets.newLinkedHashSet(tasksByTag.keySet())); 
-        }
+        return Collections.unmodifiableSet(Sets.newLinkedHashSet(tasksByTag.keySet())); 
     }
 
     public Task<?> submit(Runnable r) { return submit(new LinkedHashMap<Object,Object>(1), r); }
@@ -444,7 +476,7 @@ public class BasicExecutionManager implements ExecutionManager {
         }
     }
 
-    private final class SubmissionCallable<T> implements Callable<T> {
+    private final class SubmissionCallable<T> implements Callable<T>, TaskAdaptable<T>, SingleThreadedScheduler.CoalescableSubmission {
         private final Map<?, ?> flags;
         private final Task<T> task;
 
@@ -453,6 +485,16 @@ public class BasicExecutionManager implements ExecutionManager {
             this.task = task;
         }
 
+        @Override
+        public Task<T> asTask() {
+            return task;
+        }
+        
+        @Override
+        public Object getCoalescingKey() {
+            return flags.get("coalescingKey");
+        }
+
         public T call() {
             try {
                 T result = null;
@@ -607,8 +649,17 @@ public class BasicExecutionManager implements ExecutionManager {
         if (flags.get("tag")!=null) ((TaskInternal<?>)task).getMutableTags().add(flags.remove("tag"));
         if (flags.get("tags")!=null) ((TaskInternal<?>)task).getMutableTags().addAll((Collection<?>)flags.remove("tags"));
 
+        Long sequence = taskSequence.incrementAndGet();
         for (Object tag: ((TaskInternal<?>)task).getTags()) {
-            tasksWithTagCreating(tag).add(task);
+            addTaskToTag(tag, task, sequence);
+        }
+        
+        for (TaskStateListener listener : stateListeners) {
+            try {
+                listener.onTaskSubmitted(task);
+            } catch (Exception e) {
+                log.warn("Error running execution listener "+listener+" of task "+task+" submitted", e);
+            }
         }
     }
 
@@ -638,6 +689,14 @@ public class BasicExecutionManager implements ExecutionManager {
             ((TaskInternal<?>)task).setStartTimeUtc(System.currentTimeMillis());
         }
         ExecutionUtils.invoke(flags.get("newTaskStartCallback"), task);
+        
+        for (TaskStateListener listener : stateListeners) {
+            try {
+                listener.onTaskStarted(task);
+            } catch (Exception e) {
+                log.warn("Error running execution listener "+listener+" of task "+task+" started", e);
+            }
+        }
     }
 
     /** normally (if not interrupted) called once for each call to {@link #beforeSubmitScheduledTaskAllIterations(Map, Task)} */
@@ -747,6 +806,20 @@ public class BasicExecutionManager implements ExecutionManager {
         }
     }
     
+    /** 
+     * Returns queue metrics for each {@link SingleThreadedScheduler} registered against a tag,
+     * keyed by the tag's string form; see {@link SingleThreadedScheduler#getMetrics()}. 
+     */
+    public Map<String, Object> getSchedulerMetrics() {
+        Map<String, Object> result = MutableMap.of();
+        for (Map.Entry<Object, TaskScheduler> entry : schedulerByTag.entrySet()) {
+            if (entry.getValue() instanceof SingleThreadedScheduler) {
+                result.put(String.valueOf(entry.getKey()), ((SingleThreadedScheduler)entry.getValue()).getMetrics());
+            }
+        }
+        return result;
+    }
+
     @VisibleForTesting
     public ConcurrentMap<Object, TaskScheduler> getSchedulerByTag() {
         return schedulerByTag;
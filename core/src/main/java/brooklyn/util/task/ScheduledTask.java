@@ -50,8 +50,8 @@ public class ScheduledTask extends BasicTask {
     protected Duration delay;
     /** time to wait between executions, or null if not to repeat (default), set as flag to constructor;
      * this may be modified for subsequent submissions by a running task generated by the factory 
-     * using getSubmittedByTask().setPeriod(Duration) */
-    protected Duration period = null;
+     * using getSubmittedByTask().setPeriod(Duration); volatile as it may be set by the running task and read when rescheduling */
+    protected volatile Duration period = null;
     /** optional, set as flag in constructor; defaults to null meaning no limit */
     protected Integer maxIterations = null;
     
@@ -18,6 +18,8 @@
  */
 package brooklyn.util.task;
 
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
@@ -33,6 +35,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.management.Task;
+import brooklyn.management.TaskAdaptable;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Preconditions;
 
 /**
  * Instances of this class ensures that {@link Task}s execute with in-order
@@ -44,10 +51,36 @@ import brooklyn.management.Task;
  * This implementation does so by blocking on a {@link ConcurrentLinkedQueue}, <em>after</em>
  * the task is started in a thread (and {@link Task#isBegun()} returns true), but (of course)
  * <em>before</em> the {@link TaskInternal#getJob()} actually gets invoked.
+ * <p>
+ * By default the queue is unbounded. A capacity can be set with {@link #setMaxQueueSize(int)},
+ * in which case the {@link OverflowPolicy} determines what happens when a submission would exceed it.
+ * Queue statistics are available from {@link #getMetrics()}.
  */
 public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     private static final Logger LOG = LoggerFactory.getLogger(SingleThreadedScheduler.class);
     
+    /** What to do when a submission is made to a full queue. */
+    public enum OverflowPolicy {
+        /** block the submitter until there is room (unless it is submitting from a task run by this scheduler) */
+        BLOCK,
+        /** discard (cancel) the oldest queued submission which is allowed to be dropped (one with a non-null
+         * {@link CoalescableSubmission#getCoalescingKey() key}) to make room, whether or not anything later replaces it;
+         * if there is none, accept the submission, exceeding the capacity */
+        DROP_OLDEST,
+        /** replace a queued submission with the same {@link CoalescableSubmission#getCoalescingKey() key}, if there is one;
+         * otherwise accept the submission, exceeding the capacity */
+        COALESCE
+    }
+    
+    /** 
+     * Implemented by submissions which can be coalesced, with {@link OverflowPolicy#COALESCE},
+     * or dropped, with {@link OverflowPolicy#DROP_OLDEST}. Other submissions are never discarded.
+     */
+    public interface CoalescableSubmission {
+        /** submissions with equal (non-null) keys can be replaced by the most recent; null if it must always be run */
+        Object getCoalescingKey();
+    }
+    
     private final Queue<QueuedSubmission<?>> order = new ConcurrentLinkedQueue<QueuedSubmission<?>>();
     private int queueSize = 0;
     private final AtomicBoolean running = new AtomicBoolean(false);
@@ -56,11 +89,78 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
 
     private String name;
     
+    private int maxQueueSize = Integer.MAX_VALUE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private volatile Thread runningThread;
+    
+    // statistics, guarded by this
+    private int maxQueueSizeSeen = 0;
+    private long submittedCount = 0;
+    private long executedCount = 0;
+    private long droppedCount = 0;
+    private boolean loggedDrop = false;
+    private long coalescedCount = 0;
+    private long totalWaitTimeMillis = 0;
+    private long maxWaitTimeMillis = 0;
+    private long drainWindowStartTime = System.currentTimeMillis();
+    private long drainWindowCount = 0;
+    private double drainRatePerSec = 0;
+    
+    public SingleThreadedScheduler() {
+    }
+    
+    public SingleThreadedScheduler(int maxQueueSize, OverflowPolicy overflowPolicy) {
+        setMaxQueueSize(maxQueueSize);
+        setOverflowPolicy(overflowPolicy);
+    }
+    
     @Override
     public void setName(String name) {
         this.name = name;
     }
 
+    /** sets the maximum number of submissions which can be queued, waiting for the running task; default unbounded */
+    public synchronized void setMaxQueueSize(int maxQueueSize) {
+        if (maxQueueSize<1) throw new IllegalArgumentException("Queue size must be positive, for "+this+": "+maxQueueSize);
+        this.maxQueueSize = maxQueueSize;
+        notifyAll();
+    }
+    
+    public synchronized int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+    
+    public synchronized void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = Preconditions.checkNotNull(overflowPolicy, "overflowPolicy");
+        notifyAll();
+    }
+    
+    public synchronized OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    /** number of submissions currently queued, waiting for the running task */
+    public synchronized int getQueueSize() {
+        return queueSize;
+    }
+    
+    /** returns a snapshot of the queue statistics */
+    public synchronized Map<String,Object> getMetrics() {
+        Map<String,Object> result = MutableMap.of();
+        result.put("queueSize", queueSize);
+        result.put("maxQueueSizeSeen", maxQueueSizeSeen);
+        result.put("queueCapacity", maxQueueSize==Integer.MAX_VALUE ? null : maxQueueSize);
+        result.put("overflowPolicy", overflowPolicy);
+        result.put("submitted", submittedCount);
+        result.put("executed", executedCount);
+        result.put("dropped", droppedCount);
+        result.put("coalesced", coalescedCount);
+        result.put("meanWaitTimeMillis", executedCount==0 ? 0 : totalWaitTimeMillis / executedCount);
+        result.put("maxWaitTimeMillis", maxWaitTimeMillis);
+        result.put("drainRatePerSec", drainRatePerSec);
+        return result;
+    }
+
     @Override
     public String toString() {
         return name!=null ? "SingleThreadedScheduler["+name+"]" : super.toString();
@@ -73,12 +173,24 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
 
     @Override
     public synchronized <T> Future<T> submit(Callable<T> c) {
+        submittedCount++;
         if (running.compareAndSet(false, true)) {
+            recordWait(0);
             return executeNow(c);
         } else {
+            if (queueSize >= maxQueueSize) {
+                WrappingFuture<T> coalesced = makeRoom(c);
+                if (coalesced!=null) return coalesced;
+                if (!running.get() && running.compareAndSet(false, true)) {
+                    // queue drained while we were waiting
+                    recordWait(0);
+                    return executeNow(c);
+                }
+            }
             WrappingFuture<T> f = new WrappingFuture<T>();
             order.add(new QueuedSubmission<T>(c, f));
             queueSize++;
+            if (queueSize > maxQueueSizeSeen) maxQueueSizeSeen = queueSize;
             if (queueSize>0 && (queueSize == 50 || (queueSize<=500 && (queueSize%100)==0) || (queueSize%1000)==0) && queueSize!=lastSizeWarn) {
                 LOG.warn("{} is backing up, {} tasks queued", this, queueSize);
                 if (LOG.isDebugEnabled()) {
@@ -91,8 +203,98 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     }
     int lastSizeWarn = 0;
 
+    /** 
+     * Called when the queue is full, to apply the overflow policy. 
+     * Returns a future if the submission was coalesced with an existing one, otherwise null
+     * (in which case the submission should be queued).
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private <T> WrappingFuture<T> makeRoom(Callable<T> c) {
+        switch (overflowPolicy) {
+        case BLOCK:
+            if (Thread.currentThread()==runningThread) {
+                // would deadlock waiting for ourselves
+                if (LOG.isDebugEnabled()) LOG.debug("{} is full, but not blocking submission from its own task; accepting {}", this, c);
+                return null;
+            }
+            try {
+                while (queueSize >= maxQueueSize && running.get() && overflowPolicy==OverflowPolicy.BLOCK) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                throw Exceptions.propagate(e);
+            }
+            return null;
+        case DROP_OLDEST:
+            for (Iterator<QueuedSubmission<?>> it = order.iterator(); it.hasNext(); ) {
+                QueuedSubmission<?> oldest = it.next();
+                if (oldest.coalescingKey!=null) {
+                    it.remove();
+                    queueSize--;
+                    droppedCount++;
+                    if (!loggedDrop) {
+                        LOG.warn("{} is full, dropping oldest submission {} (subsequent drops logged at debug)", this, oldest);
+                        loggedDrop = true;
+                    } else {
+                        LOG.debug("{} is full, dropping oldest submission {}", this, oldest);
+                    }
+                    cancel(oldest);
+                    return null;
+                }
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("{} is full, but nothing can be dropped; accepting {}", this, c);
+            return null;
+        case COALESCE:
+            Object key = (c instanceof CoalescableSubmission) ? ((CoalescableSubmission)c).getCoalescingKey() : null;
+            if (key!=null) {
+                for (QueuedSubmission qs : order) {
+                    if (key.equals(qs.coalescingKey) && !qs.f.isCancelled()) {
+                        // replace in place, so that the new submission keeps the old one's position in the queue
+                        QueuedSubmission<?> old = new QueuedSubmission(qs.c, qs.f);
+                        WrappingFuture<T> f = new WrappingFuture<T>();
+                        qs.c = c;
+                        qs.f = f;
+                        // the wait is measured for the new submission
+                        qs.submitTime = System.currentTimeMillis();
+                        coalescedCount++;
+                        if (LOG.isTraceEnabled()) LOG.trace("{} is full, coalesced {} into position of {}", new Object[] {this, c, old});
+                        cancel(old);
+                        return f;
+                    }
+                }
+            }
+            return null;
+        default:
+            throw new IllegalStateException("Unknown overflow policy "+overflowPolicy+" in "+this);
+        }
+    }
+    
+    private void cancel(QueuedSubmission<?> qs) {
+        // cancel the task too, if we know it, so that its listeners are notified
+        if (qs.c instanceof TaskAdaptable) ((TaskAdaptable<?>)qs.c).asTask().cancel(false);
+        qs.f.cancel(false);
+    }
+    
+    private void recordWait(long waitTimeMillis) {
+        executedCount++;
+        totalWaitTimeMillis += waitTimeMillis;
+        if (waitTimeMillis > maxWaitTimeMillis) maxWaitTimeMillis = waitTimeMillis;
+    }
+    
+    private void recordDrained() {
+        long now = System.currentTimeMillis();
+        drainWindowCount++;
+        long windowDuration = now - drainWindowStartTime;
+        if (windowDuration >= 1000) {
+            drainRatePerSec = drainWindowCount * 1000.0 / windowDuration;
+            drainWindowStartTime = now;
+            drainWindowCount = 0;
+        }
+    }
+
     @SuppressWarnings({ "rawtypes", "unchecked" })
     private synchronized void onEnd() {
+        recordDrained();
         boolean done = false;
         while (!done) {
             if (order.isEmpty()) {
@@ -102,20 +304,24 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
                 QueuedSubmission<?> qs = order.remove();
                 queueSize--;
                 if (!qs.f.isCancelled()) {
+                    recordWait(System.currentTimeMillis() - qs.submitTime);
                     Future future = executeNow(qs.c);
                     qs.f.setDelegate(future);
                     done = true;
                 }
             }
         }
+        notifyAll();
     }
 
     private synchronized <T> Future<T> executeNow(final Callable<T> c) {
         return executor.submit(new Callable<T>() {
             @Override public T call() throws Exception {
+                runningThread = Thread.currentThread();
                 try {
                     return c.call();
                 } finally {
+                    runningThread = null;
                     onEnd();
                 }
             }});
@@ -123,12 +329,16 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     
     
     private static class QueuedSubmission<T> {
-        final Callable<T> c;
-        final WrappingFuture<T> f;
+        // mutable so that a submission can be replaced in place, when coalescing
+        Callable<T> c;
+        WrappingFuture<T> f;
+        long submitTime = System.currentTimeMillis();
+        final Object coalescingKey;
         
         QueuedSubmission(Callable<T> c, WrappingFuture<T> f) {
             this.c = c;
             this.f = f;
+            this.coalescingKey = (c instanceof CoalescableSubmission) ? ((CoalescableSubmission)c).getCoalescingKey() : null;
         }
         
         @Override
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import brooklyn.management.Task;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * An {@link ExecutionListener} which is also told when a task is submitted and when it starts running,
+ * e.g. to report task state transitions as they happen.
+ * <p>
+ * These callbacks are invoked synchronously, in the submitting thread and in the task's thread respectively,
+ * so implementations must be quick and must not block.
+ */
+@Beta
+public interface TaskStateListener extends ExecutionListener {
+
+    /** invoked when a task is submitted; its tags and {@link Task#getSubmitTimeUtc()} are set */
+    public void onTaskSubmitted(Task<?> task);
+
+    /** invoked in the task's thread when it starts to run, before doing any of its work;
+     * {@link Task#getStartTimeUtc()} is set (unless the task was cancelled) */
+    public void onTaskStarted(Task<?> task);
+
+}
@@ -19,6 +19,7 @@
 package brooklyn.enricher;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -26,10 +27,14 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.enricher.basic.Aggregator;
 import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BasicEntity;
 import brooklyn.entity.basic.BasicGroup;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityAdjuncts;
+import brooklyn.entity.basic.EntityLocal;
 import brooklyn.entity.basic.EntitySubscriptionTest.RecordingSensorEventListener;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.event.AttributeSensor;
@@ -52,6 +57,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.reflect.TypeToken;
 
 @SuppressWarnings("serial")
@@ -303,6 +309,117 @@ public class EnrichersTest extends BrooklynAppUnitTestSupport {
         EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 5);
     }
 
+    @Test
+    public void testAggregatingIncrementallyTracksChangesAndRemovals() {
+        AttributeSensor<Integer> min = Sensors.newIntegerSensor("test.min");
+        AttributeSensor<Integer> max = Sensors.newIntegerSensor("test.max");
+        AttributeSensor<Integer> count = Sensors.newIntegerSensor("test.count");
+        AttributeSensor<Double> average = Sensors.newDoubleSensor("test.average");
+        group.addMember(entity);
+        group.addMember(entity2);
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(NUM2).fromMembers().computingSum().build());
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(min).fromMembers().computingMin().build());
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(max).fromMembers().computingMax().build());
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(count).fromMembers().computingCount().build());
+        group.addEnricher(Enrichers.builder().aggregating(NUM1).publishing(average).fromMembers().computingAverage().build());
+        
+        entity.setAttribute(NUM1, 2);
+        entity2.setAttribute(NUM1, 6);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 8);
+        EntityTestUtils.assertAttributeEqualsEventually(group, min, 2);
+        EntityTestUtils.assertAttributeEqualsEventually(group, max, 6);
+        EntityTestUtils.assertAttributeEqualsEventually(group, count, 2);
+        EntityTestUtils.assertAttributeEqualsEventually(group, average, 4d);
+        
+        entity2.setAttribute(NUM1, 1);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 3);
+        EntityTestUtils.assertAttributeEqualsEventually(group, min, 1);
+        EntityTestUtils.assertAttributeEqualsEventually(group, max, 2);
+        EntityTestUtils.assertAttributeEqualsEventually(group, average, 1.5d);
+        
+        entity2.setAttribute(NUM1, null);
+        EntityTestUtils.assertAttributeEqualsEventually(group, count, 1);
+        EntityTestUtils.assertAttributeEqualsEventually(group, min, 2);
+        
+        group.removeMember(entity);
+        EntityTestUtils.assertAttributeEqualsEventually(group, count, 0);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, null);
+        EntityTestUtils.assertAttributeEqualsEventually(group, max, null);
+    }
+
+    @Test
+    public void testAggregatingIncrementallyUsesDefaultAndValueIfNone() {
+        group.addMember(entity);
+        group.addMember(entity2);
+        group.addEnricher(Enrichers.builder()
+                .aggregating(NUM1)
+                .publishing(NUM2)
+                .fromMembers()
+                .defaultValueForUnreportedSensors(10)
+                .valueToReportIfNoSensors(-1)
+                .computingSum()
+                .build());
+        
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 20);
+        
+        entity.setAttribute(NUM1, 1);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 11);
+        
+        group.removeMember(entity);
+        group.removeMember(entity2);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, -1);
+    }
+
+    @Test
+    public void testAggregatingIncrementalCountWithNonNumericDefault() {
+        AttributeSensor<Integer> count = Sensors.newIntegerSensor("test.count");
+        group.addMember(entity);
+        group.addMember(entity2);
+        group.addEnricher(Enrichers.builder()
+                .aggregating(STR1)
+                .publishing(count)
+                .fromMembers()
+                .defaultValueForUnreportedSensors("unknown")
+                .computingCount()
+                .build());
+        
+        EntityTestUtils.assertAttributeEqualsEventually(group, count, 2);
+        
+        entity.setAttribute(STR1, "myval");
+        group.removeMember(entity2);
+        EntityTestUtils.assertAttributeEqualsEventually(group, count, 1);
+    }
+
+    @Test
+    public void testAggregatingIncrementallyStaysIncrementalForManyProducers() {
+        int numProducers = 1100;
+        BasicEntity parent = app.addChild(EntitySpec.create(BasicEntity.class));
+        List<Entity> children = Lists.newArrayList();
+        for (int i = 0; i < numProducers; i++) {
+            children.add(parent.addChild(EntitySpec.create(BasicEntity.class)));
+        }
+        Entities.manage(parent);
+        Aggregator<?, ?> aggregator = (Aggregator<?, ?>) parent.addEnricher(Enrichers.builder()
+                .aggregating(NUM1)
+                .publishing(NUM2)
+                .fromChildren()
+                .computingSum()
+                .build());
+        
+        for (Entity child : children) {
+            ((EntityLocal)child).setAttribute(NUM1, 1);
+        }
+        EntityTestUtils.assertAttributeEqualsEventually(parent, NUM2, numProducers);
+        int recomputes = aggregator.getIncrementalRecomputeCount();
+        
+        for (int i = 0; i < 100; i++) {
+            ((EntityLocal)children.get(i)).setAttribute(NUM1, 2);
+        }
+        EntityTestUtils.assertAttributeEqualsEventually(parent, NUM2, numProducers + 100);
+        Assert.assertTrue(aggregator.getIncrementalRecomputeCount() <= recomputes + 1, 
+                "recomputes="+aggregator.getIncrementalRecomputeCount()+"; before="+recomputes);
+    }
+
     @Test
     public void testAggregatingExcludingBlankString() {
         group.addMember(entity);
@@ -48,6 +48,8 @@ import brooklyn.util.guava.Maybe;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
 public class AttributeMapTest {
@@ -61,11 +63,15 @@ public class AttributeMapTest {
     public void setUp() {
         app = TestApplication.Factory.newManagedInstanceForTests();
         entity = new TestEntityImpl(app);
-        map = new AttributeMap(entity, Collections.synchronizedMap(MutableMap.<Collection<String>,Object>of()));
+        map = newAttributeMap(entity);
         Entities.manage(entity);
         executor = Executors.newCachedThreadPool();
     }
     
+    protected AttributeMap newAttributeMap(AbstractEntity entity) {
+        return new AttributeMap(entity, Collections.synchronizedMap(MutableMap.<Collection<String>,Object>of()));
+    }
+    
     @AfterMethod(alwaysRun=true)
     public void tearDown() {
         if (executor != null) executor.shutdownNow();
@@ -199,6 +205,68 @@ public class AttributeMapTest {
             }});
     }
     
+    @Test
+    public void testUpdateIfChangedOnlyPublishesChanges() throws Exception {
+        AttributeSensor<Integer> sensor = Sensors.newIntegerSensor("a", "");
+        
+        assertEquals(map.updateIfChanged(sensor, null), Maybe.of((Integer)null));
+        assertTrue(map.updateIfChanged(sensor, null).isAbsent());
+        assertEquals(map.updateIfChanged(sensor, 1), Maybe.of((Integer)null));
+        assertTrue(map.updateIfChanged(sensor, 1).isAbsent());
+        assertEquals(map.updateIfChanged(sensor, 2), Maybe.of(1));
+        
+        assertEquals(map.getValue(sensor), Integer.valueOf(2));
+        assertEquals(map.getPublicationStats(), ImmutableMap.of("published", 3L, "suppressed", 2L));
+    }
+    
+    @Test
+    public void testUpdateIfChangedPublishesWhenOldValueCannotBeCoerced() throws Exception {
+        AttributeSensor<Integer> sensor = Sensors.newIntegerSensor("a", "");
+        map.update(sensor.getNameParts(), "notANumber");
+        
+        assertTrue(map.updateIfChanged(sensor, 1).isPresent());
+        assertEquals(map.getValue(sensor), Integer.valueOf(1));
+        assertTrue(map.updateIfChanged(sensor, 1).isAbsent());
+    }
+    
+    @Test
+    public void testSetAttributePublishesOnlyChangesForConfiguredSensors() throws Exception {
+        AttributeSensor<Integer> changesOnlySensor = Sensors.newIntegerSensor("attributeMapTest.changesOnly", "");
+        AttributeSensor<Integer> sensor = Sensors.newIntegerSensor("attributeMapTest.always", "");
+        entity.setConfig(BrooklynConfigKeys.PUBLISH_CHANGES_ONLY, ImmutableSet.of(changesOnlySensor.getName()));
+        final RecordingSensorEventListener listener = new RecordingSensorEventListener();
+        entity.subscribe(entity, changesOnlySensor, listener);
+        entity.subscribe(entity, sensor, listener);
+        
+        for (int val : new int[] {1, 1, 2, 2}) {
+            entity.setAttribute(changesOnlySensor, val);
+            entity.setAttribute(sensor, val);
+        }
+        
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(listener.getEvents().size(), 6, "events="+listener.getEvents());
+            }});
+        assertEquals(entity.getAttributeMap().getPublicationStats().get("suppressed"), Long.valueOf(2));
+    }
+    
+    @Test
+    public void testPublishChangesOnlyFollowsConfigChanges() throws Exception {
+        AttributeSensor<Integer> sensor = Sensors.newIntegerSensor("attributeMapTest.changesOnly", "");
+        entity.setAttribute(sensor, 1);
+        entity.setAttribute(sensor, 1);
+        assertEquals(entity.getAttributePublicationStats().get("suppressed"), Long.valueOf(0));
+        
+        // inherited from the parent
+        ((EntityInternal)app).setConfig(BrooklynConfigKeys.PUBLISH_CHANGES_ONLY, ImmutableSet.of(sensor.getName()));
+        entity.setAttribute(sensor, 1);
+        assertEquals(entity.getAttributePublicationStats().get("suppressed"), Long.valueOf(1));
+        
+        entity.setConfig(BrooklynConfigKeys.PUBLISH_CHANGES_ONLY, ImmutableSet.<String>of());
+        entity.setAttribute(sensor, 1);
+        assertEquals(entity.getAttributePublicationStats(), ImmutableMap.of("published", 3L, "suppressed", 1L));
+    }
+    
     protected <T> Runnable newUpdateMapRunnable(final AttributeMap map, final AttributeSensor<T> attribute, final T val) {
         return new Runnable() {
             @Override public void run() {
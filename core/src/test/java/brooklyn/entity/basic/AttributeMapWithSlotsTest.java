@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.basic;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.AttributeMap;
+import brooklyn.event.basic.AttributeSlots;
+import brooklyn.event.basic.Sensors;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.entity.TestEntityImpl;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/** Runs the {@link AttributeMapTest} tests against a map which holds declared sensors in slots. */
+public class AttributeMapWithSlotsTest extends AttributeMapTest {
+
+    @Override
+    protected AttributeMap newAttributeMap(AbstractEntity entity) {
+        return new AttributeMap(entity, AttributeSlots.forType(entity.getClass()), 
+                Collections.synchronizedMap(MutableMap.<Collection<String>,Object>of()));
+    }
+
+    @Test
+    public void testSlotsAreSharedPerType() throws Exception {
+        AttributeSlots slots = AttributeSlots.forType(TestEntityImpl.class);
+        
+        assertSame(AttributeSlots.forType(TestEntityImpl.class), slots);
+        assertTrue(slots.slotOf(TestEntity.SEQUENCE.getName()) >= 0, "slots="+slots);
+        assertEquals(slots.slotOf(TestEntity.SEQUENCE.getNameParts()), slots.slotOf(TestEntity.SEQUENCE.getName()));
+        assertEquals(slots.slotOf("attributeMapTest.notDeclared"), -1);
+        // config keys and effectors are not given slots
+        assertEquals(slots.slotOf(TestEntity.CONF_NAME.getName()), -1);
+    }
+    
+    @Test
+    public void testSlotOfSensorMatchesSlotOfName() throws Exception {
+        AttributeSlots slots = AttributeSlots.forType(TestEntityImpl.class);
+        
+        assertEquals(slots.slotOf(TestEntity.SEQUENCE), slots.slotOf(TestEntity.SEQUENCE.getName()));
+        // remembered per instance, so asking again gives the same answer
+        assertEquals(slots.slotOf(TestEntity.SEQUENCE), slots.slotOf(TestEntity.SEQUENCE.getName()));
+        // another instance with a declared name has the declared sensor's slot
+        assertEquals(slots.slotOf(Sensors.newStringSensor(TestEntity.NAME.getName(), "")), slots.slotOf(TestEntity.NAME.getName()));
+        assertEquals(slots.slotOf(Sensors.newStringSensor("attributeMapTest.notDeclared", "")), -1);
+    }
+    
+    @Test
+    public void testDeclaredAndDynamicSensorsCanBeRetrieved() throws Exception {
+        AttributeSensor<String> dynamicSensor = Sensors.newStringSensor("attributeMapTest.dynamic", "");
+        
+        assertNull(map.update(TestEntity.NAME, "declaredVal"));
+        assertNull(map.update(dynamicSensor, "dynamicVal"));
+        
+        assertEquals(map.getValue(TestEntity.NAME), "declaredVal");
+        assertEquals(map.getValue(TestEntity.NAME.getNameParts()), "declaredVal");
+        assertEquals(map.getValue(dynamicSensor), "dynamicVal");
+        assertEquals(map.update(TestEntity.NAME, "newVal"), "declaredVal");
+        assertEquals(map.getValue(Sensors.newStringSensor(TestEntity.NAME.getName(), "")), "newVal");
+    }
+    
+    @Test
+    public void testMapViewsIncludeSlotsAndDynamicSensors() throws Exception {
+        AttributeSensor<String> dynamicSensor = Sensors.newStringSensor("attributeMapTest.dynamic", "");
+        
+        map.update(TestEntity.NAME, "declaredVal");
+        map.update(TestEntity.SEQUENCE, null);
+        map.update(dynamicSensor, "dynamicVal");
+        
+        Map<String, Object> expected = MutableMap.<String, Object>of(
+                TestEntity.NAME.getName(), "declaredVal",
+                TestEntity.SEQUENCE.getName(), null,
+                dynamicSensor.getName(), "dynamicVal");
+        assertEquals(map.asMap(), expected);
+        assertEquals(map.asRawMap().keySet(), ImmutableSet.of(TestEntity.NAME.getNameParts(), TestEntity.SEQUENCE.getNameParts(), 
+                dynamicSensor.getNameParts()));
+        assertEquals(map.asRawMap().get(TestEntity.NAME.getNameParts()), "declaredVal");
+    }
+    
+    @Test
+    public void testNullIsDistinctFromUnsetAndRemoved() throws Exception {
+        map.update(TestEntity.SEQUENCE, null);
+        assertTrue(map.asMap().containsKey(TestEntity.SEQUENCE.getName()));
+        assertNull(map.getValue(TestEntity.SEQUENCE));
+        assertFalse(map.asMap().containsKey(TestEntity.NAME.getName()));
+        
+        map.update(TestEntity.SEQUENCE, 1);
+        map.remove(TestEntity.SEQUENCE);
+        assertNull(map.getValue(TestEntity.SEQUENCE));
+        assertFalse(map.asMap().containsKey(TestEntity.SEQUENCE.getName()));
+    }
+    
+    @Test
+    public void testRecordsDirtyNamesForSlots() throws Exception {
+        map.update(TestEntity.NAME, "before");
+        assertFalse(map.getAndClearDirtyNames().isPresent());
+        map.update(TestEntity.NAME, "val");
+        map.remove(ImmutableList.of("test", "sequence"));
+        
+        assertEquals(map.getAndClearDirtyNames().get(), ImmutableSet.of(TestEntity.NAME.getName(), TestEntity.SEQUENCE.getName()));
+    }
+}
@@ -20,6 +20,8 @@ package brooklyn.entity.basic;
 
 import static org.testng.Assert.assertEquals;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -29,6 +31,7 @@ import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.management.ManagementContext;
 import brooklyn.test.entity.LocalManagementContextForTests;
 import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.task.DeferredSupplier;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -150,6 +153,75 @@ public class EntityConfigTest {
         assertEquals(child.getLocalConfigBag().getAllConfig(), ImmutableMap.of("mychildentity.myconfigwithflagname", "overrideMyval"));
     }
     
+    @Test
+    public void testResolvedValueCachedUntilConfigChanged() throws Exception {
+        EntityInternal entity = managementContext.getEntityManager().createEntity(EntitySpec.create(MyEntity.class)
+                .configure(MyEntity.MY_CONFIG, "myval1"));
+        EntityConfigMap configMap = entity.getConfigMap();
+        long hits = configMap.getResolvedValueCacheStats().get("hits");
+        
+        assertEquals(entity.getConfig(MyEntity.MY_CONFIG), "myval1");
+        assertEquals(entity.getConfig(MyEntity.MY_CONFIG), "myval1");
+        assertEquals(configMap.getResolvedValueCacheStats().get("hits"), (Long)(hits+1));
+        
+        entity.setConfig(MyEntity.MY_CONFIG, "myval2");
+        assertEquals(entity.getConfig(MyEntity.MY_CONFIG), "myval2");
+        
+        // an explicit default is always used, rather than the cache
+        assertEquals(entity.getConfig(MyEntity.MY_CONFIG_WITH_FLAGNAME, "mydefault"), "mydefault");
+        assertEquals(entity.getConfig(MyEntity.MY_CONFIG_WITH_FLAGNAME), null);
+    }
+    
+    @Test
+    public void testResolvedValueNotSharedBetweenAdHocKeysWithDifferentDefaults() throws Exception {
+        EntityInternal entity = managementContext.getEntityManager().createEntity(EntitySpec.create(MyEntity.class));
+        ConfigKey<String> key1 = ConfigKeys.newStringConfigKey("myentity.adhoc", "", "default1");
+        ConfigKey<String> key2 = ConfigKeys.newStringConfigKey("myentity.adhoc", "", "default2");
+        
+        assertEquals(entity.getConfig(key1), "default1");
+        assertEquals(entity.getConfig(key2), "default2");
+        assertEquals(entity.getConfig(key1), "default1");
+        
+        // but an equivalent key can use the cached value
+        long hits = entity.getConfigMap().getResolvedValueCacheStats().get("hits");
+        assertEquals(entity.getConfig(ConfigKeys.newStringConfigKey("myentity.adhoc", "", "default1")), "default1");
+        assertEquals(entity.getConfigMap().getResolvedValueCacheStats().get("hits"), (Long)(hits+1));
+    }
+    
+    @Test
+    public void testResolvedValueOfChildInvalidatedWhenParentOrParentConfigChanged() throws Exception {
+        EntityInternal entity = managementContext.getEntityManager().createEntity(EntitySpec.create(MyEntity.class)
+                .configure(MyEntity.MY_CONFIG, "myval1"));
+        EntityInternal child = managementContext.getEntityManager().createEntity(EntitySpec.create(MyChildEntity.class));
+        assertEquals(child.getConfig(MyEntity.MY_CONFIG), null);
+        
+        child.setParent(entity);
+        assertEquals(child.getConfig(MyEntity.MY_CONFIG), "myval1");
+        
+        entity.setConfig(MyEntity.MY_CONFIG, "myval2");
+        assertEquals(child.getConfig(MyEntity.MY_CONFIG), "myval2");
+    }
+    
+    @Test
+    public void testDeferredValuesAndUncachedKeysResolvedEachTime() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        EntityInternal entity = managementContext.getEntityManager().createEntity(EntitySpec.create(MyEntity.class)
+                .configure(MyEntity.MY_CONFIG, new DeferredSupplier<String>() {
+                    @Override public String get() {
+                        return "myval"+counter.incrementAndGet();
+                    }})
+                .configure(MyEntity.MY_CONFIG_WITH_FLAGNAME, "myval"));
+        
+        assertEquals(entity.getConfig(MyEntity.MY_CONFIG), "myval1");
+        assertEquals(entity.getConfig(MyEntity.MY_CONFIG), "myval2");
+        
+        entity.getConfigMap().setResolvedValueCacheDisabled(MyEntity.MY_CONFIG_WITH_FLAGNAME);
+        long hits = entity.getConfigMap().getResolvedValueCacheStats().get("hits");
+        assertEquals(entity.getConfig(MyEntity.MY_CONFIG_WITH_FLAGNAME), "myval");
+        assertEquals(entity.getConfig(MyEntity.MY_CONFIG_WITH_FLAGNAME), "myval");
+        assertEquals(entity.getConfigMap().getResolvedValueCacheStats().get("hits"), (Long)hits);
+    }
+    
     public static class MyEntity extends AbstractEntity {
         public static final ConfigKey<String> MY_CONFIG = ConfigKeys.newStringConfigKey("myentity.myconfig");
 
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.drivers.downloads;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.localserver.LocalTestServer;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Attributes;
+import brooklyn.entity.basic.BrooklynConfigKeys;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.internal.ssh.RecordingSshTool;
+import brooklyn.util.internal.ssh.SshTool;
+import brooklyn.util.net.Networking;
+import brooklyn.util.os.Os;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+public class DownloadArtifactCacheTest {
+
+    private File cacheDir;
+    private File sourceDir;
+    private DownloadArtifactCache cache;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        cacheDir = Os.newTempDir(getClass());
+        sourceDir = Os.newTempDir(getClass());
+        cache = new DownloadArtifactCache(cacheDir);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (cacheDir != null) Os.deleteRecursively(cacheDir);
+        if (sourceDir != null) Os.deleteRecursively(sourceDir);
+    }
+
+    @Test
+    public void testDownloadsOnceThenHits() throws Exception {
+        String url = newSourceFile("artifact.tar.gz", "mycontents");
+
+        File first = cache.get(ImmutableList.of(url));
+        File second = cache.get(ImmutableList.of(url));
+
+        assertEquals(Files.toString(first, Charsets.UTF_8), "mycontents");
+        assertEquals(second, first);
+        Map<String, Object> metrics = cache.getMetrics();
+        assertEquals(metrics.get("misses"), 1L);
+        assertEquals(metrics.get("hits"), 1L);
+        assertEquals(metrics.get("bytesDownloaded"), 10L);
+        assertEquals(metrics.get("bytesSaved"), 10L);
+    }
+
+    @Test
+    public void testStoresSameContentOnce() throws Exception {
+        String url1 = newSourceFile("a.tar.gz", "samecontents");
+        String url2 = newSourceFile("b.tar.gz", "samecontents");
+
+        File first = cache.get(ImmutableList.of(url1));
+        File second = cache.get(ImmutableList.of(url2));
+
+        assertEquals(second, first);
+        assertEquals(new File(cacheDir, "sha256").list().length, 1);
+        assertEquals(cache.getMetrics().get("urls"), 2);
+    }
+
+    @Test
+    public void testTriesUrlsInOrderSkippingUnavailableAndRemoteOnly() throws Exception {
+        String url = newSourceFile("artifact.tar.gz", "mycontents");
+        String missing = new File(sourceDir, "missing.tar.gz").toURI().toString();
+
+        File result = cache.get(ImmutableList.of("file://$HOME/.brooklyn/repository/artifact.tar.gz", missing, url));
+
+        assertEquals(Files.toString(result, Charsets.UTF_8), "mycontents");
+        assertNull(cache.getIfCached(missing));
+        assertNotNull(cache.getIfCached(url));
+    }
+
+    @Test
+    public void testReturnsNullIfNothingAvailable() throws Exception {
+        String missing = new File(sourceDir, "missing.tar.gz").toURI().toString();
+
+        assertNull(cache.get(ImmutableList.of(missing)));
+        assertEquals(cache.getMetrics().get("failures"), 1L);
+    }
+
+    @Test
+    public void testIndexSurvivesRestart() throws Exception {
+        String url = newSourceFile("artifact.tar.gz", "mycontents");
+        File first = cache.get(ImmutableList.of(url));
+
+        new File(sourceDir, "artifact.tar.gz").delete();
+        DownloadArtifactCache cache2 = new DownloadArtifactCache(cacheDir);
+
+        assertEquals(cache2.get(ImmutableList.of(url)), first);
+        assertEquals(cache2.getMetrics().get("hits"), 1L);
+    }
+
+    @Test
+    public void testDoesNotCacheTruncatedDownload() throws Exception {
+        LocalTestServer server = new LocalTestServer(null, null);
+        server.register("/truncated", new HttpRequestHandler() {
+            @Override public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+                // claims more content than it sends, then closes the connection
+                response.setHeader(HTTP.CONN_DIRECTIVE, HTTP.CONN_CLOSE);
+                response.setEntity(new InputStreamEntity(new ByteArrayInputStream("mycontents".getBytes()), 100));
+            }});
+        server.start();
+        try {
+            InetSocketAddress addr = server.getServiceAddress();
+            String url = "http://"+addr.getHostName()+":"+addr.getPort()+"/truncated";
+
+            assertNull(cache.get(ImmutableList.of(url)));
+            assertNull(cache.getIfCached(url));
+            assertEquals(new File(cacheDir, "sha256").list().length, 0);
+            assertEquals(cache.getMetrics().get("failures"), 1L);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedWhenOverMaxSize() throws Exception {
+        cache = new DownloadArtifactCache(cacheDir, 25);
+        String url1 = newSourceFile("a.tar.gz", "contents-a");
+        String url2 = newSourceFile("b.tar.gz", "contents-b");
+        String url3 = newSourceFile("c.tar.gz", "contents-c");
+
+        File first = cache.get(ImmutableList.of(url1));
+        File second = cache.get(ImmutableList.of(url2));
+        // use the first more recently than the second (explicitly, as file times can be coarse)
+        second.setLastModified(System.currentTimeMillis() - 60*1000);
+        first.setLastModified(System.currentTimeMillis() - 30*1000);
+        assertEquals(cache.get(ImmutableList.of(url1)), first);
+        assertEquals(cache.getMetrics().get("evictions"), 0L);
+
+        File third = cache.get(ImmutableList.of(url3));
+
+        assertEquals(cache.getIfCached(url1), first);
+        assertNull(cache.getIfCached(url2));
+        assertFalse(second.exists());
+        assertEquals(cache.getIfCached(url3), third);
+        assertEquals(cache.getMetrics().get("evictions"), 1L);
+        assertEquals(cache.getMetrics().get("urls"), 2);
+    }
+
+    @Test
+    public void testKeepsNewArtifactLargerThanMaxSize() throws Exception {
+        cache = new DownloadArtifactCache(cacheDir, 5);
+        String url = newSourceFile("artifact.tar.gz", "mycontents");
+
+        File result = cache.get(ImmutableList.of(url));
+
+        assertEquals(cache.getIfCached(url), result);
+        assertEquals(cache.getMetrics().get("evictions"), 0L);
+    }
+
+    @Test
+    public void testDownloadsManagerPushesToSshMachine() throws Exception {
+        BrooklynProperties brooklynProperties = BrooklynProperties.Factory.newEmpty();
+        brooklynProperties.put(DownloadArtifactCache.CACHE_DIR, cacheDir.getAbsolutePath());
+        LocalManagementContext mgmt = new LocalManagementContext(brooklynProperties);
+        try {
+            TestApplication app = ApplicationBuilder.newManagedApp(TestApplication.class, mgmt);
+            TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+            SshMachineLocation machine = mgmt.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class)
+                    .configure("address", Networking.getLocalHost())
+                    .configure(SshTool.PROP_TOOL_CLASS, RecordingSshTool.class.getName()));
+            MyEntityDriver driver = new MyEntityDriver(entity, machine);
+            String url = newSourceFile("artifact.tar.gz", "mycontents");
+            entity.setConfig(BrooklynConfigKeys.SUGGESTED_VERSION, "myversion");
+            entity.setAttribute(Attributes.DOWNLOAD_URL, url);
+
+            // not pushed by default
+            DownloadResolver resolver = mgmt.getEntityDownloadsManager().newDownloader(driver);
+            assertEquals(resolver.getTargets().get(1), url, "targets="+resolver.getTargets());
+
+            // not pushed when installation is skipped
+            entity.setConfig(BrooklynConfigKeys.DOWNLOAD_CACHE_PUSH, true);
+            entity.setConfig(BrooklynConfigKeys.SKIP_INSTALLATION, true);
+            resolver = mgmt.getEntityDownloadsManager().newDownloader(driver);
+            assertEquals(resolver.getTargets().get(1), url, "targets="+resolver.getTargets());
+            assertEquals(mgmt.getDownloadArtifactCache().getMetrics().get("misses"), 0L);
+            
+            // pushed only when the targets are first used
+            entity.setConfig(BrooklynConfigKeys.SKIP_INSTALLATION, false);
+            resolver = mgmt.getEntityDownloadsManager().newDownloader(driver);
+            assertEquals(resolver.getFilename(), "artifact.tar.gz");
+            assertEquals(mgmt.getDownloadArtifactCache().getMetrics().get("misses"), 0L);
+            List<String> targets = resolver.getTargets();
+            assertEquals(mgmt.getDownloadArtifactCache().getMetrics().get("misses"), 1L);
+            String expectedHash = cache.get(ImmutableList.of(url)).getName();
+            assertEquals(targets.get(0), "file://$HOME/"+DownloadArtifactCache.REMOTE_CACHE_DIR+"/"+expectedHash);
+            assertTrue(targets.contains(url), "targets="+targets);
+            assertEquals(resolver.getTargets(), targets);
+        } finally {
+            Entities.destroyAll(mgmt);
+        }
+    }
+
+    private String newSourceFile(String name, String contents) throws Exception {
+        File file = new File(sourceDir, name);
+        Files.write(contents, file, Charsets.UTF_8);
+        return file.toURI().toString();
+    }
+}
@@ -57,7 +57,11 @@ import brooklyn.entity.trait.Changeable;
 import brooklyn.entity.trait.FailingEntity;
 import brooklyn.event.SensorEvent;
 import brooklyn.location.Location;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.NoMachinesAvailableException;
+import brooklyn.location.basic.FixedListMachineProvisioningLocation;
 import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.management.Task;
 import brooklyn.test.Asserts;
 import brooklyn.test.EntityTestUtils;
@@ -65,15 +69,18 @@ import brooklyn.test.entity.TestEntity;
 import brooklyn.test.entity.TestEntityImpl;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.net.Networking;
 import brooklyn.util.time.Time;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Atomics;
 
 
@@ -743,6 +750,192 @@ public class DynamicClusterTest extends BrooklynAppUnitTestSupport {
         }
     }
 
+    @Test
+    public void testMaxConcurrentChildStartsLimitsConcurrentStarts() throws Exception {
+        final AtomicInteger concurrentStarts = new AtomicInteger();
+        final AtomicInteger maxConcurrentStarts = new AtomicInteger();
+        
+        DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure(DynamicCluster.MAX_CONCURRENT_CHILD_STARTS, 2)
+                .configure("initialSize", 6)
+                .configure("factory", new EntityFactory() {
+                    @Override public Entity newEntity(Map flags, Entity parent) {
+                        return new TestEntityImpl(flags, parent) {
+                            @Override
+                            public void start(Collection<? extends Location> locs) {
+                                int current = concurrentStarts.incrementAndGet();
+                                synchronized (maxConcurrentStarts) {
+                                    maxConcurrentStarts.set(Math.max(current, maxConcurrentStarts.get()));
+                                }
+                                try {
+                                    Time.sleep(100);
+                                    super.start(locs);
+                                } finally {
+                                    concurrentStarts.decrementAndGet();
+                                }
+                            }
+                        };
+                    }}));
+
+        cluster.start(ImmutableList.of(loc));
+        
+        assertEquals(cluster.getCurrentSize(), (Integer)6);
+        for (Entity member : cluster.getMembers()) {
+            assertEquals(((TestEntity)member).getCounter().get(), 1);
+        }
+        assertTrue(maxConcurrentStarts.get() <= 2, "maxConcurrentStarts="+maxConcurrentStarts.get());
+    }
+
+    @Test
+    public void testReleaseMutexWhileStartingDoesNotBlockShrink() throws Exception {
+        final CountDownLatch startingLatch = new CountDownLatch(2);
+        final CountDownLatch continuationLatch = new CountDownLatch(1);
+        
+        final DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure(DynamicCluster.RELEASE_MUTEX_WHILE_STARTING, true)
+                .configure("initialSize", 0)
+                .configure("factory", new EntityFactory() {
+                    @Override public Entity newEntity(Map flags, Entity parent) {
+                        return new TestEntityImpl(flags, parent) {
+                            @Override
+                            public void start(Collection<? extends Location> locs) {
+                                super.start(locs);
+                                startingLatch.countDown();
+                                try {
+                                    continuationLatch.await();
+                                } catch (InterruptedException e) {
+                                    throw Exceptions.propagate(e);
+                                }
+                            }
+                        };
+                    }}));
+
+        cluster.start(ImmutableList.of(loc));
+
+        Thread thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    cluster.resize(2);
+                }});
+        
+        try {
+            // wait for both members to be starting
+            thread.start();
+            assertTrue(startingLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertEquals(cluster.getCurrentSize(), (Integer)2);
+
+            // the starting members count towards the size, and can be removed while still starting
+            assertEquals(cluster.resize(1), (Integer)1);
+            
+            // allow the resize to complete
+            continuationLatch.countDown();
+            thread.join(TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+            assertEquals(cluster.getCurrentSize(), (Integer)1);
+            assertEquals(Iterables.size(Iterables.filter(cluster.getChildren(), TestEntity.class)), 1);
+        } finally {
+            continuationLatch.countDown();
+            thread.interrupt();
+        }
+    }
+
+    private List<SshMachineLocation> newMachines(int count) {
+        List<SshMachineLocation> machines = Lists.newArrayList();
+        for (int i = 1; i <= count; i++) {
+            machines.add(mgmt.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class)
+                    .configure("address", Networking.getInetAddressWithFixedName("1.1.1."+i))));
+        }
+        return machines;
+    }
+    
+    @Test
+    public void testBatchProvisioningObtainsMachinesAndReleasesThemOnShrink() throws Exception {
+        List<SshMachineLocation> machines = newMachines(3);
+        FixedListMachineProvisioningLocation<SshMachineLocation> pool = mgmt.getLocationManager().createLocation(
+                LocationSpec.create(FixedListMachineProvisioningLocation.class).configure("machines", machines));
+        
+        DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure(DynamicCluster.MEMBER_SPEC, EntitySpec.create(TestEntity.class))
+                .configure(DynamicCluster.BATCH_PROVISIONING, true)
+                .configure("initialSize", 3));
+
+        cluster.start(ImmutableList.of(pool));
+        
+        assertEquals(pool.getAvailable(), ImmutableSet.of());
+        Set<Location> memberLocations = Sets.newLinkedHashSet();
+        for (Entity member : cluster.getMembers()) {
+            assertEquals(member.getAttribute(DynamicCluster.BATCH_PROVISIONING_LOCATION), pool);
+            Iterables.addAll(memberLocations, Iterables.filter(member.getLocations(), SshMachineLocation.class));
+        }
+        assertEquals(memberLocations, ImmutableSet.copyOf(machines));
+        
+        cluster.resize(1);
+        assertEquals(pool.getAvailable().size(), 2);
+        
+        cluster.stop();
+        assertEquals(pool.getAvailable(), ImmutableSet.copyOf(machines));
+    }
+
+    @Test
+    public void testBatchProvisioningReleasesMachinesOfQuarantinedMembersWhenExpunged() throws Exception {
+        List<SshMachineLocation> machines = newMachines(2);
+        FixedListMachineProvisioningLocation<SshMachineLocation> pool = mgmt.getLocationManager().createLocation(
+                LocationSpec.create(FixedListMachineProvisioningLocation.class).configure("machines", machines));
+        
+        DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure(DynamicCluster.MEMBER_SPEC, EntitySpec.create(FailingEntity.class)
+                        .configure(FailingEntity.FAIL_ON_START, true))
+                .configure(DynamicCluster.BATCH_PROVISIONING, true)
+                .configure("quarantineFailedEntities", true)
+                .configure("initialSize", 0));
+        cluster.start(ImmutableList.of(pool));
+        
+        try {
+            cluster.resize(2);
+            fail();
+        } catch (Exception e) {
+            // expected, as the members fail to start
+        }
+        QuarantineGroup quarantineGroup = cluster.getAttribute(DynamicCluster.QUARANTINE_GROUP);
+        assertEquals(quarantineGroup.getMembers().size(), 2);
+        // the quarantined members keep their machines until expunged
+        assertEquals(pool.getAvailable(), ImmutableSet.of());
+        
+        quarantineGroup.expungeMembers(true);
+        assertEquals(pool.getAvailable(), ImmutableSet.copyOf(machines));
+    }
+
+    @Test
+    public void testBatchProvisioningPassesMembersProvisioningFlags() throws Exception {
+        RecordingBatchMachineProvisioningLocation pool = mgmt.getLocationManager().createLocation(
+                LocationSpec.create(RecordingBatchMachineProvisioningLocation.class).configure("machines", newMachines(2)));
+        
+        DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
+                .configure(DynamicCluster.MEMBER_SPEC, EntitySpec.create(TestEntity.class)
+                        .configure(DynamicClusterImpl.MEMBER_PROVISIONING_PROPERTIES, ImmutableMap.<String,Object>of("myProp", "myVal")))
+                .configure(DynamicCluster.BATCH_PROVISIONING, true)
+                .configure("initialSize", 2));
+        cluster.start(ImmutableList.of(pool));
+        
+        assertEquals(pool.batchFlags.size(), 1, "flags="+pool.batchFlags);
+        Map<?,?> flags = pool.batchFlags.get(0);
+        assertEquals(flags.get("myProp"), "myVal", "flags="+flags);
+        assertEquals(flags.get("fromLocation"), TestEntityImpl.class.getName(), "flags="+flags);
+    }
+    
+    public static class RecordingBatchMachineProvisioningLocation extends FixedListMachineProvisioningLocation<SshMachineLocation> {
+        final List<Map<?,?>> batchFlags = new CopyOnWriteArrayList<Map<?,?>>();
+        
+        @Override
+        public Map<String, Object> getProvisioningFlags(Collection<String> tags) {
+            return MutableMap.<String, Object>of("fromLocation", Iterables.getOnlyElement(tags));
+        }
+        @Override
+        public List<SshMachineLocation> obtainBatch(int count, Map<?, ?> flags) throws NoMachinesAvailableException {
+            batchFlags.add(ImmutableMap.copyOf(flags));
+            return super.obtainBatch(count, flags);
+        }
+    }
+
     @Test
     public void testReplacesMember() throws Exception {
         DynamicCluster cluster = app.createAndManageChild(EntitySpec.create(DynamicCluster.class)
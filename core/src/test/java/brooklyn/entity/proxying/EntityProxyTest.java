@@ -85,6 +85,20 @@ public class EntityProxyTest extends BrooklynAppUnitTestSupport {
         assertTrue(task.getDescription().contains("identityEffector"));
     }
     
+    @Test
+    public void testRepeatedEffectorCallsOnProxyAreRecorded() {
+        // second and subsequent calls use the proxy's cached dispatch
+        for (int i = 0; i < 3; i++) {
+            assertEquals(entity.identityEffector("abc"+i), "abc"+i);
+            assertEquals(entity.getAttribute(TestEntity.SEQUENCE), null);
+        }
+        
+        Set<Task<?>> tasks = mgmt.getExecutionManager().getTasksWithAllTags(
+                ImmutableList.of(ManagementContextInternal.EFFECTOR_TAG, 
+                BrooklynTaskTags.tagForContextEntity(entity)));
+        assertEquals(tasks.size(), 3, "tasks="+tasks);
+    }
+    
     @Test
     public void testEntityManagerQueriesGiveProxies() {
         EntityManager entityManager = mgmt.getEntityManager();
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.persister.BinaryMementoSerializer;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.entity.rebind.persister.MementoFormatConverter;
+import brooklyn.entity.rebind.persister.MementoSerializationFormat;
+import brooklyn.event.basic.Sensors;
+import brooklyn.location.Location;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class RebindBinaryMementoTest extends RebindTestFixtureWithApp {
+
+    @Override
+    protected LocalManagementContext createOrigManagementContext() {
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .persistPeriodMillis(getPersistPeriodMillis())
+                .properties(newPropertiesWithFormat(MementoSerializationFormat.BINARY))
+                .buildStarted();
+    }
+
+    @Override
+    protected LocalManagementContext createNewManagementContext() {
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(newPropertiesWithFormat(MementoSerializationFormat.BINARY))
+                .buildUnstarted();
+    }
+
+    private BrooklynProperties newPropertiesWithFormat(MementoSerializationFormat format) {
+        BrooklynProperties result = BrooklynProperties.Factory.newEmpty();
+        result.put(BrooklynMementoPersisterToObjectStore.PERSISTER_SERIALIZATION_FORMAT, format);
+        return result;
+    }
+
+    @Test
+    public void testRebindsFromBinary() throws Exception {
+        TestEntity origE = newEntityWithLocation();
+        RebindTestUtils.waitForPersisted(origApp);
+
+        assertFormat(MementoSerializationFormat.BINARY, "entities", origE.getId());
+        assertFormat(MementoSerializationFormat.BINARY, "locations", Iterables.getOnlyElement(origE.getLocations()).getId());
+
+        newApp = rebind();
+        assertEntityRebound();
+    }
+
+    @Test
+    public void testConvertsStoreBetweenFormats() throws Exception {
+        TestEntity origE = newEntityWithLocation();
+        RebindTestUtils.waitForPersisted(origApp);
+        origManagementContext.getRebindManager().stopPersistence();
+
+        int count = MementoFormatConverter.convert(origManagementContext, null, mementoDir.getAbsolutePath(), MementoSerializationFormat.XML);
+        // the entities and location, as well as any enrichers
+        assertTrue(count >= 3, "count="+count);
+        assertFormat(MementoSerializationFormat.XML, "entities", origE.getId());
+        assertFormat(MementoSerializationFormat.XML, "locations", Iterables.getOnlyElement(origE.getLocations()).getId());
+        assertEquals(MementoFormatConverter.convert(origManagementContext, null, mementoDir.getAbsolutePath(), MementoSerializationFormat.XML), 0);
+
+        newApp = rebind(RebindOptions.create().newManagementContext(RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(newPropertiesWithFormat(MementoSerializationFormat.XML))
+                .buildUnstarted()));
+        assertEntityRebound();
+    }
+
+    private TestEntity newEntityWithLocation() {
+        Location loc = origManagementContext.getLocationManager().createLocation(LocationSpec.create(SimulatedLocation.class)
+                .displayName("mysimloc"));
+        TestEntity result = origApp.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, "myconf")
+                .location(loc));
+        result.setAttribute(TestEntity.NAME, "myname");
+        result.setAttribute(TestEntity.SERVICE_UP, true);
+        result.setAttribute(Sensors.newSensor(Object.class, "test.map"), MutableMap.of("a", ImmutableList.of(1, 2), "b_c", "d"));
+        return result;
+    }
+
+    private void assertEntityRebound() {
+        TestEntity newE = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getConfig(TestEntity.CONF_NAME), "myconf");
+        assertEquals(newE.getAttribute(TestEntity.NAME), "myname");
+        assertEquals(newE.getAttribute(TestEntity.SERVICE_UP), Boolean.TRUE);
+        assertEquals(newE.getAttribute(Sensors.newSensor(Object.class, "test.map")), MutableMap.of("a", ImmutableList.of(1, 2), "b_c", "d"));
+        assertEquals(Iterables.getOnlyElement(newE.getLocations()).getDisplayName(), "mysimloc");
+        assertTrue(Entities.isManaged(newE));
+    }
+
+    private void assertFormat(MementoSerializationFormat format, String subPath, String id) throws Exception {
+        String contents = Files.toString(new File(new File(mementoDir, subPath), id), Charsets.UTF_8);
+        assertEquals(BinaryMementoSerializer.isBinary(contents), format == MementoSerializationFormat.BINARY, contents);
+        assertFalse(contents.isEmpty());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+import com.google.common.reflect.TypeToken;
+
+public class RebindEntityPatchesTest extends RebindTestFixtureWithApp {
+
+    @SuppressWarnings("serial")
+    private static final AttributeSensor<Map<String, String>> MAP_SENSOR = Sensors.newSensor(
+            new TypeToken<Map<String, String>>() {}, "test.map", "a map sensor");
+    private static final AttributeSensor<String> OTHER_SENSOR = Sensors.newStringSensor("test_other.sensor");
+    private static final AttributeSensor<String> LARGE_SENSOR = Sensors.newStringSensor("test.large");
+
+    private static final int COMPACT_AFTER = 5;
+
+    @Override
+    protected int getPersistPeriodMillis() {
+        // persisted explicitly by the tests, so that what is written in each delta is deterministic
+        return (int) Duration.ONE_HOUR.toMilliseconds();
+    }
+
+    @Override
+    protected LocalManagementContext createOrigManagementContext() {
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .persistPeriodMillis(getPersistPeriodMillis())
+                .properties(newPropertiesWithPatches())
+                .buildStarted();
+    }
+
+    @Override
+    protected LocalManagementContext createNewManagementContext() {
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(newPropertiesWithPatches())
+                .buildUnstarted();
+    }
+
+    private BrooklynProperties newPropertiesWithPatches() {
+        BrooklynProperties result = BrooklynProperties.Factory.newEmpty();
+        result.put(BrooklynMementoPersisterToObjectStore.PERSISTER_ENTITY_PATCHES_ENABLED, true);
+        result.put(BrooklynMementoPersisterToObjectStore.PERSISTER_ENTITY_PATCHES_COMPACT_AFTER, COMPACT_AFTER);
+        return result;
+    }
+
+    @Test
+    public void testAttributeAndConfigChangesAreAppendedAsPatches() throws Exception {
+        TestEntity origE = newEntityWithLargeMemento();
+        origE.setAttribute(MAP_SENSOR, MutableMap.of("a", "1", "b", "2"));
+        origE.setAttribute(OTHER_SENSOR, "toBeRemoved");
+        persist();
+        String fullMemento = readEntityMemento(origE);
+        assertNull(readPatches(origE));
+
+        origE.setAttribute(TestEntity.NAME, "myname");
+        origE.setAttribute(MAP_SENSOR, MutableMap.of("a", "3"));
+        origE.removeAttribute(OTHER_SENSOR);
+        origE.setConfig(TestEntity.CONF_NAME, "myconf");
+        persist();
+
+        assertEquals(readEntityMemento(origE), fullMemento);
+        String patches = readPatches(origE);
+        assertEquals(countPatches(origE), 1, patches);
+        assertTrue(patches.contains("myname"), patches);
+        assertTrue(patches.contains("<removedAttribute>test_other.sensor</removedAttribute>"), patches);
+        assertFalse(patches.contains("test.sequence"), patches);
+
+        newApp = stopPersistingAndRebind();
+        TestEntity newE = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.NAME), "myname");
+        assertEquals(newE.getAttribute(MAP_SENSOR), MutableMap.of("a", "3"));
+        assertNull(newE.getAttribute(OTHER_SENSOR));
+        assertFalse(Entities.deproxy(newE).getAttributeMap().asMap().containsKey(OTHER_SENSOR.getName()));
+        assertEquals(newE.getConfig(TestEntity.CONF_NAME), "myconf");
+    }
+
+    @Test
+    public void testCompactsAfterMaxPatches() throws Exception {
+        TestEntity origE = newEntityWithLargeMemento();
+        persist();
+
+        for (int i = 0; i < COMPACT_AFTER; i++) {
+            origE.setAttribute(TestEntity.SEQUENCE, i);
+            persist();
+        }
+        assertEquals(countPatches(origE), COMPACT_AFTER);
+
+        origE.setAttribute(TestEntity.SEQUENCE, COMPACT_AFTER);
+        persist();
+        assertNull(readPatches(origE));
+        assertTrue(readEntityMemento(origE).contains("<test.sequence type=\"int\">"+COMPACT_AFTER+"</test.sequence>"));
+
+        newApp = stopPersistingAndRebind();
+        TestEntity newE = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.SEQUENCE), (Integer) COMPACT_AFTER);
+    }
+
+    @Test
+    public void testStructuralChangeWritesInFull() throws Exception {
+        TestEntity origE = newEntityWithLargeMemento();
+        persist();
+        origE.setAttribute(TestEntity.NAME, "myname");
+        persist();
+        assertEquals(countPatches(origE), 1);
+
+        Entity child = origE.createAndManageChild(EntitySpec.create(TestEntity.class));
+        origE.setAttribute(TestEntity.NAME, "myname2");
+        persist();
+        assertNull(readPatches(origE));
+        assertTrue(readEntityMemento(origE).contains(child.getId()));
+
+        newApp = stopPersistingAndRebind();
+        TestEntity newE = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.NAME), "myname2");
+        assertEquals(Iterables.getOnlyElement(newE.getChildren()).getId(), child.getId());
+    }
+
+    @Test
+    public void testIgnoresIncompleteTrailingPatch() throws Exception {
+        TestEntity origE = newEntityWithLargeMemento();
+        persist();
+        origE.setAttribute(TestEntity.NAME, "myname");
+        persist();
+        origManagementContext.getRebindManager().stopPersistence();
+
+        Files.append("<entityPatch>\n<entity>\n<attributes>", patchesFile(origE), Charsets.UTF_8);
+
+        newApp = stopPersistingAndRebind();
+        TestEntity newE = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.NAME), "myname");
+    }
+
+    private void persist() {
+        origManagementContext.getRebindManager().forcePersistNow();
+    }
+
+    private TestApplication stopPersistingAndRebind() throws Exception {
+        origManagementContext.getRebindManager().stopPersistence();
+        return rebind();
+    }
+
+    /** patches are only used while they are smaller than the full memento, so make that big */
+    private TestEntity newEntityWithLargeMemento() {
+        TestEntity result = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        result.setAttribute(LARGE_SENSOR, Strings.repeat("x", 10000));
+        return result;
+    }
+
+    private String readEntityMemento(Entity entity) throws Exception {
+        return Files.toString(new File(new File(mementoDir, "entities"), entity.getId()), Charsets.UTF_8);
+    }
+
+    private String readPatches(Entity entity) throws Exception {
+        File file = patchesFile(entity);
+        return file.exists() ? Files.toString(file, Charsets.UTF_8) : null;
+    }
+
+    private int countPatches(Entity entity) throws Exception {
+        String patches = readPatches(entity);
+        return (patches == null) ? 0 : Splitter.on("<entityPatch>").splitToList(patches).size() - 1;
+    }
+
+    private File patchesFile(Entity entity) {
+        return new File(new File(mementoDir, "entityPatches"), entity.getId());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.Application;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.BasicGroup;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityPredicates;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestApplicationNoEnrichersImpl;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+public class RebindInParallelTest extends RebindTestFixtureWithApp {
+
+    private static final int NUM_APPS = 5;
+    private static final int NUM_CHILDREN = 10;
+
+    @Override
+    protected LocalManagementContext createNewManagementContext() {
+        BrooklynProperties properties = BrooklynProperties.Factory.newEmpty();
+        properties.put(RebindManagerImpl.REBIND_PARALLELISM, 4);
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(properties)
+                .buildUnstarted();
+    }
+
+    @Test
+    public void testRebindsManyAppsInParallel() throws Exception {
+        List<TestApplication> origApps = Lists.newArrayList(origApp);
+        for (int i = 1; i < NUM_APPS; i++) {
+            origApps.add(ApplicationBuilder.newManagedApp(EntitySpec.create(TestApplication.class, TestApplicationNoEnrichersImpl.class), origManagementContext));
+        }
+        for (TestApplication app : origApps) {
+            TestEntity parent = app.createAndManageChild(EntitySpec.create(TestEntity.class).displayName("parent"));
+            for (int i = 0; i < NUM_CHILDREN; i++) {
+                parent.createAndManageChild(EntitySpec.create(TestEntity.class).displayName("child-"+i))
+                        .setAttribute(TestEntity.SEQUENCE, i);
+            }
+        }
+        // a group in one app whose members are in another
+        BasicGroup origGroup = origApps.get(1).createAndManageChild(EntitySpec.create(BasicGroup.class));
+        Entity origMember = Iterables.getOnlyElement(origApp.getChildren());
+        origGroup.addMember(origMember);
+
+        RebindTestUtils.waitForPersisted(origManagementContext);
+        newManagementContext = createNewManagementContext();
+        Collection<Application> newApps = RebindTestUtils.rebindAll(RebindOptions.create()
+                .newManagementContext(newManagementContext)
+                .mementoDir(mementoDir)
+                .classLoader(classLoader));
+
+        assertEquals(newApps.size(), NUM_APPS);
+        for (Application newApp : newApps) {
+            Entity parent = Iterables.find(newApp.getChildren(), EntityPredicates.displayNameEqualTo("parent"));
+            assertEquals(parent.getChildren().size(), NUM_CHILDREN);
+            for (Entity child : parent.getChildren()) {
+                assertEquals(child.getParent(), parent);
+                assertEquals(child.getAttribute(TestEntity.SEQUENCE), Integer.valueOf(child.getDisplayName().substring("child-".length())));
+                assertTrue(Entities.isManaged(child));
+            }
+        }
+        BasicGroup newGroup = (BasicGroup) newManagementContext.getEntityManager().getEntity(origGroup.getId());
+        assertEquals(ImmutableSet.copyOf(newGroup.getMembers()), ImmutableSet.of(newManagementContext.getEntityManager().getEntity(origMember.getId())));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Long> phaseTimes = (Map<String, Long>) newManagementContext.getRebindManager().getMetrics().get("lastRebindPhaseTimesMillis");
+        assertTrue(phaseTimes.keySet().containsAll(ImmutableSet.of("load", "instantiate", "deserialize", "reconstruct", "manage")), "phaseTimes="+phaseTimes);
+    }
+}
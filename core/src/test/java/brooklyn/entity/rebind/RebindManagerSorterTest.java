@@ -18,6 +18,7 @@
  */
 package brooklyn.entity.rebind;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -43,6 +44,8 @@ import brooklyn.test.entity.TestEntity;
 import brooklyn.util.collections.MutableSet;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class RebindManagerSorterTest {
@@ -118,6 +121,35 @@ public class RebindManagerSorterTest {
         assertOrder(sortedNodes, ImmutableList.of(e1a, e1b));
     }
     
+    @Test
+    public void testGroupByRoot() throws Exception {
+        TestApplication app2 = TestApplication.Factory.newManagedInstanceForTests();
+        mgmts.add(app2.getManagementContext());
+
+        TestEntity e1a = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity e1b = e1a.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity e2a = app2.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity e3a = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity e3b = e3a.createAndManageChild(EntitySpec.create(TestEntity.class));
+        
+        // e3b's parent is missing, so it is the root of its own tree
+        Map<String, EntityMemento> nodes = rebindManager.sortParentFirst(toMementos(ImmutableList.of(e2a, e1b, e1a, app, app2, e3b)));
+        Map<String, List<EntityMemento>> trees = rebindManager.groupByRoot(nodes);
+        
+        assertEquals(trees.keySet(), ImmutableSet.of(app.getId(), app2.getId(), e3b.getId()));
+        assertEquals(ids(trees.get(app.getId())), ImmutableList.of(app.getId(), e1a.getId(), e1b.getId()));
+        assertEquals(ids(trees.get(app2.getId())), ImmutableList.of(app2.getId(), e2a.getId()));
+        assertEquals(ids(trees.get(e3b.getId())), ImmutableList.of(e3b.getId()));
+    }
+    
+    private List<String> ids(Iterable<? extends TreeNode> nodes) {
+        List<String> result = Lists.newArrayList();
+        for (TreeNode node : nodes) {
+            result.add(node.getId());
+        }
+        return result;
+    }
+    
     @SuppressWarnings("unchecked")
     private void assertOrder(Map<String, ? extends TreeNode> nodes, Iterable<? extends Identifiable> order) {
         assertOrders(nodes, order);
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/** Runs all the {@link XmlMementoSerializerTest} tests against the binary form, as well as testing conversion. */
+public class BinaryMementoSerializerTest extends XmlMementoSerializerTest {
+
+    @Override
+    protected XmlMementoSerializer<Object> newSerializer() {
+        return new BinaryMementoSerializer<Object>(BinaryMementoSerializerTest.class.getClassLoader());
+    }
+
+    @Test
+    public void testWritesBinary() throws Exception {
+        String serializedForm = serializer.toString(MutableMap.of("a", 1));
+        assertTrue(BinaryMementoSerializer.isBinary(serializedForm), serializedForm);
+        assertFalse(serializedForm.contains("<"), serializedForm);
+    }
+
+    @Test
+    public void testEitherSerializerReadsEitherForm() throws Exception {
+        Map<String, Object> val = MutableMap.<String, Object>of("a", 1, "b", ImmutableList.of("x", "y"));
+        XmlMementoSerializer<Object> xmlSerializer = new XmlMementoSerializer<Object>(BinaryMementoSerializerTest.class.getClassLoader());
+
+        assertEquals(xmlSerializer.fromString(serializer.toString(val)), val);
+        assertEquals(serializer.fromString(xmlSerializer.toString(val)), val);
+    }
+
+    @Test
+    public void testConvertsBetweenForms() throws Exception {
+        // includes a name which xstream must escape in XML, and a key which is written as an attribute
+        Map<String, Object> val = MutableMap.<String, Object>of("a_b", 1, "c d", "e");
+        XmlMementoSerializer<Object> xmlSerializer = new XmlMementoSerializer<Object>(BinaryMementoSerializerTest.class.getClassLoader());
+        String xml = xmlSerializer.toString(val);
+        String binary = serializer.toString(val);
+
+        assertEquals(BinaryMementoSerializer.toBinary(xml), binary);
+        assertEquals(BinaryMementoSerializer.toXml(binary), xml);
+        assertEquals(BinaryMementoSerializer.toXml(xml), xml);
+        assertEquals(BinaryMementoSerializer.toBinary(binary), binary);
+        assertEquals(MementoSerializationFormat.XML.convert(binary), xml);
+        assertEquals(MementoSerializationFormat.BINARY.convert(xml), binary);
+    }
+
+    @Test
+    public void testLongValues() throws Exception {
+        // the binary form writes the length of such strings in several chars
+        String longVal = Strings.repeat("abcdefghij", 10*1000);
+        String serializedForm = serializer.toString(longVal);
+        assertEquals(serializer.fromString(serializedForm), longVal);
+        assertEquals(BinaryMementoSerializer.toBinary(BinaryMementoSerializer.toXml(serializedForm)), serializedForm);
+    }
+
+    @Test
+    public void testGetTopLevelValue() throws Exception {
+        Map<String, Object> val = MutableMap.<String, Object>of("id", "myid", "type", "mytype");
+        String binary = serializer.toString(val);
+        String xml = BinaryMementoSerializer.toXml(binary);
+        for (String serializedForm : ImmutableList.of(binary, xml)) {
+            assertEquals(BinaryMementoSerializer.getTopLevelValue(serializedForm, "id"), "myid");
+            assertEquals(BinaryMementoSerializer.getTopLevelValue(serializedForm, "type"), "mytype");
+            assertEquals(BinaryMementoSerializer.getTopLevelValue(serializedForm, "parent"), "");
+        }
+    }
+}
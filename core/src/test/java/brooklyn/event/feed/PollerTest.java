@@ -18,10 +18,14 @@
  */
 package brooklyn.event.feed;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -38,6 +42,10 @@ import brooklyn.util.collections.MutableMap;
 import brooklyn.util.task.DynamicTasks;
 import brooklyn.util.time.Duration;
 
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
 public class PollerTest extends BrooklynAppUnitTestSupport {
 
     private static final Logger LOG = LoggerFactory.getLogger(PollerTest.class);
@@ -104,4 +112,185 @@ public class PollerTest extends BrooklynAppUnitTestSupport {
             }
         });
     }
+    
+    @Test
+    public void testAsyncPollSkippedWhilePreviousInFlight() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger successes = new AtomicInteger();
+        final List<SettableFuture<Integer>> futures = new CopyOnWriteArrayList<SettableFuture<Integer>>();
+        poller.scheduleAtFixedRateAsync(
+                new Poller.AsyncCallable<Integer>() {
+                    @Override public ListenableFuture<Integer> call() {
+                        calls.incrementAndGet();
+                        SettableFuture<Integer> result = SettableFuture.create();
+                        futures.add(result);
+                        return result;
+                    }
+                },
+                new PollHandler<Integer>() {
+                    @Override public boolean checkSuccess(Integer val) {
+                        return true;
+                    }
+                    @Override public void onSuccess(Integer val) {
+                        successes.incrementAndGet();
+                    }
+                    @Override public void onFailure(Integer val) {
+                    }
+                    @Override public void onException(Exception exception) {
+                    }
+                    @Override public String getDescription() {
+                        return "myasyncpollhandler";
+                    }
+                }, 
+                Duration.millis(10));
+        poller.start();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(calls.get(), 1);
+            }
+        });
+        Asserts.succeedsContinually(MutableMap.of("timeout", 100), new Runnable() {
+            @Override public void run() {
+                assertEquals(calls.get(), 1);
+            }
+        });
+        
+        futures.get(0).set(1);
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(successes.get(), 1);
+                assertTrue(calls.get() >= 2);
+            }
+        });
+    }
+    
+    @Test
+    public void testAdaptivePollingBacksOffWhenUnchangedAndResetsOnChange() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicBoolean changing = new AtomicBoolean(false);
+        poller.setAdaptive(true, 50, Functions.identity());
+        poller.scheduleAtFixedRate(
+                new Callable<Integer>() {
+                    @Override public Integer call() {
+                        int count = calls.incrementAndGet();
+                        return changing.get() ? count : 0;
+                    }
+                },
+                new NoopPollHandler<Integer>(),
+                Duration.millis(10));
+        poller.start();
+        
+        // 10ms doubles to 20, 40, 80, 160 ms...
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue((Long)poller.getMetrics().get("pollsBackedOff") >= 4, "metrics="+poller.getMetrics());
+            }
+        });
+        
+        // ...and is reset to 10ms once values change, so many polls happen quickly
+        changing.set(true);
+        final int callsWhenChanged = calls.get();
+        Asserts.succeedsEventually(MutableMap.of("timeout", Duration.seconds(3)), new Runnable() {
+            @Override public void run() {
+                assertTrue(calls.get() >= callsWhenChanged + 20, "calls="+calls.get());
+            }
+        });
+    }
+    
+    @Test
+    public void testAdaptivePollingResetsPeriodForPollAfterChange() throws Exception {
+        final AtomicBoolean changing = new AtomicBoolean(false);
+        final List<Long> changedPollTimes = new CopyOnWriteArrayList<Long>();
+        poller.setAdaptive(true, 40, Functions.identity());
+        poller.scheduleAtFixedRate(
+                new Callable<Integer>() {
+                    @Override public Integer call() {
+                        if (!changing.get()) return 0;
+                        changedPollTimes.add(System.currentTimeMillis());
+                        return changedPollTimes.size();
+                    }
+                },
+                new NoopPollHandler<Integer>(),
+                Duration.millis(25));
+        poller.start();
+        
+        // backed off from 25ms to 800ms
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue((Long)poller.getMetrics().get("pollsBackedOff") >= 5, "metrics="+poller.getMetrics());
+            }
+        });
+        
+        // the poll after the first changed value is not made to wait the backed-off period
+        changing.set(true);
+        Asserts.succeedsEventually(MutableMap.of("timeout", Duration.seconds(5)), new Runnable() {
+            @Override public void run() {
+                assertTrue(changedPollTimes.size() >= 2, "polls="+changedPollTimes);
+            }
+        });
+        long gap = changedPollTimes.get(1) - changedPollTimes.get(0);
+        assertTrue(gap < 500, "gap="+gap);
+    }
+    
+    @Test
+    public void testSpreadAndJitteredPollsStillRun() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        poller.setStartSpread(Duration.millis(50));
+        poller.setJitter(0.5);
+        poller.scheduleAtFixedRate(
+                new Callable<Integer>() {
+                    @Override public Integer call() {
+                        return calls.incrementAndGet();
+                    }
+                },
+                new NoopPollHandler<Integer>(),
+                Duration.millis(10));
+        poller.start();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(calls.get() >= 5, "calls="+calls.get());
+                assertTrue((Long)poller.getMetrics().get("pollsRun") >= 5, "metrics="+poller.getMetrics());
+            }
+        });
+    }
+    
+    @Test
+    public void testCountsPollsSkippedWhenServiceNotUp() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        poller = new Poller<Integer>(entity, true);
+        poller.scheduleAtFixedRate(
+                new Callable<Integer>() {
+                    @Override public Integer call() {
+                        return calls.incrementAndGet();
+                    }
+                },
+                new NoopPollHandler<Integer>(),
+                Duration.millis(10));
+        poller.start();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue((Long)poller.getMetrics().get("pollsSkipped") >= 2, "metrics="+poller.getMetrics());
+            }
+        });
+        assertEquals(calls.get(), 0);
+    }
+    
+    private static class NoopPollHandler<V> implements PollHandler<V> {
+        @Override public boolean checkSuccess(V val) {
+            return true;
+        }
+        @Override public void onSuccess(V val) {
+        }
+        @Override public void onFailure(V val) {
+        }
+        @Override public void onException(Exception exception) {
+            LOG.info("Exception in test poller", exception);
+        }
+        @Override public String getDescription() {
+            return "noop";
+        }
+    }
 }
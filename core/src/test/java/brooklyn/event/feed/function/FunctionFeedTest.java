@@ -37,6 +37,8 @@ import org.testng.annotations.Test;
 
 import brooklyn.entity.BrooklynAppUnitTestSupport;
 import brooklyn.entity.Feed;
+import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityInternal.FeedSupport;
 import brooklyn.entity.basic.EntityLocal;
@@ -224,6 +226,35 @@ public class FunctionFeedTest extends BrooklynAppUnitTestSupport {
             }});
     }
     
+    @Test
+    public void testSuppressDuplicatesOnlyPublishesChanges() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        final List<Integer> ints = new CopyOnWriteArrayList<Integer>();
+        
+        entity.subscribe(entity, SENSOR_INT, new SensorEventListener<Integer>() {
+                @Override public void onEvent(SensorEvent<Integer> event) {
+                    ints.add(event.getValue());
+                }});
+        
+        feed = FunctionFeed.builder()
+                .entity(entity)
+                .poll(new FunctionPollConfig<Integer, Integer>(SENSOR_INT)
+                        .period(1)
+                        .suppressDuplicates(true)
+                        .callable(new Callable<Integer>() {
+                            @Override public Integer call() {
+                                return counter.getAndIncrement() / 3;
+                            }}))
+                .build();
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(ints.size() >= 3, "ints="+ints);
+                assertEquals(ints.subList(0, 3), ImmutableList.of(0, 1, 2));
+            }});
+        assertTrue(((AbstractEntity)Entities.deproxy(entity)).getAttributeMap().getPublicationStats().get("suppressed") >= 4);
+    }
+    
     @Test
     @SuppressWarnings("unused")
     public void testFunctionPollConfigBuilding() throws Exception {
@@ -19,6 +19,8 @@
 package brooklyn.event.feed.http;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 import java.net.URL;
@@ -134,6 +136,48 @@ public class HttpFeedTest extends BrooklynAppUnitTestSupport {
         Assert.assertEquals(feeds.getFeeds().size(), 1, "Wrong feed count: "+feeds.getFeeds());
     }
     
+    @Test
+    public void testPollsAsynchronously() throws Exception {
+        feed = HttpFeed.builder()
+                .entity(entity)
+                .baseUrl(baseUrl)
+                .async()
+                .poll(HttpPollConfig.forSensor(SENSOR_INT)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .poll(HttpPollConfig.forSensor(SENSOR_STRING)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.stringContentsFunction()))
+                .build();
+        
+        assertSensorEventually(SENSOR_INT, (Integer)200, TIMEOUT_MS);
+        assertSensorEventually(SENSOR_STRING, "{\"foo\":\"myfoo\"}", TIMEOUT_MS);
+        assertTrue((Long)mgmt.getHttpClientRegistry().getMetrics().get("asyncRequestsSubmitted") > 0);
+    }
+    
+    @Test
+    public void testAsyncPollHandlersRunInEntityContextNotHttpThread() throws Exception {
+        final AttributeSensor<String> threadSensor = Sensors.newStringSensor("handlerThread", "");
+        feed = HttpFeed.builder()
+                .entity(entity)
+                .baseUrl(baseUrl)
+                .async()
+                .poll(HttpPollConfig.forSensor(threadSensor)
+                        .period(100)
+                        .onSuccess(new Function<HttpToolResponse, String>() {
+                            public String apply(HttpToolResponse input) {
+                                return Thread.currentThread().getName();
+                            }}))
+                .build();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                String thread = entity.getAttribute(threadSensor);
+                assertNotNull(thread);
+                assertFalse(thread.startsWith("brooklyn-http-async"), "handler ran in "+thread);
+            }});
+    }
+    
     @Test
     public void testSetsConnectionTimeout() throws Exception {
         feed = HttpFeed.builder()
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.ssh;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.stream.Streams;
+import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/** Runs the combined script with a local bash, as the ssh tools would remotely (i.e. with {@code bash -e}). */
+public class MultiplexedSshScriptIntegrationTest {
+
+    @Test(groups="Integration")
+    public void testSplitsOutputOfEachCommand() throws Exception {
+        MultiplexedSshScript script = new MultiplexedSshScript(
+                ImmutableList.of(
+                        "echo hello",
+                        "printf 'no newline'; echo oops >&2",
+                        "echo first\necho second",
+                        "exit 123",
+                        "echo $MYVAR"),
+                ImmutableList.<Map<String,String>>of(
+                        ImmutableMap.<String,String>of(),
+                        ImmutableMap.<String,String>of(),
+                        ImmutableMap.<String,String>of(),
+                        ImmutableMap.<String,String>of(),
+                        ImmutableMap.of("MYVAR", "a \"quoted\" $value")),
+                true);
+        List<SshPollValue> results = script.parse(null, runLocally(script.getScriptLines()));
+
+        assertResult(results.get(0), 0, "hello\n", "");
+        assertResult(results.get(1), 0, "no newline", "oops\n");
+        assertResult(results.get(2), 0, "first\nsecond\n", "");
+        assertResult(results.get(3), 123, "", "");
+        assertResult(results.get(4), 0, "a \"quoted\" $value\n", "");
+    }
+
+    @Test(groups="Integration")
+    public void testEnvAndErrorHandlingAreIsolatedPerCommand() throws Exception {
+        List<String> commands = ImmutableList.of("export OTHER=set; false; echo notreached", "echo \"other=$OTHER\"");
+        List<Map<String,String>> envs = ImmutableList.<Map<String,String>>of(MutableMap.<String,String>of(), MutableMap.<String,String>of());
+
+        MultiplexedSshScript failOnError = new MultiplexedSshScript(commands, envs, true);
+        List<SshPollValue> results = failOnError.parse(null, runLocally(failOnError.getScriptLines()));
+        assertResult(results.get(0), 1, "", "");
+        assertResult(results.get(1), 0, "other=\n", "");
+
+        MultiplexedSshScript continueOnError = new MultiplexedSshScript(commands, envs, false);
+        results = continueOnError.parse(null, runLocally(continueOnError.getScriptLines()));
+        assertResult(results.get(0), 0, "notreached\n", "");
+    }
+
+    @Test(groups="Integration")
+    public void testIncompleteOutputGivesNoResult() throws Exception {
+        MultiplexedSshScript script = new MultiplexedSshScript(ImmutableList.of("echo a", "echo b"),
+                ImmutableList.<Map<String,String>>of(ImmutableMap.<String,String>of(), ImmutableMap.<String,String>of()), true);
+        String output = runLocally(script.getScriptLines());
+        String truncated = output.substring(0, output.indexOf("b\n"));
+
+        List<SshPollValue> results = script.parse(null, truncated);
+        assertResult(results.get(0), 0, "a\n", "");
+        assertNull(results.get(1));
+    }
+
+    @Test(groups="Integration")
+    public void testCommandKilledAfterTimeoutWithoutAffectingOthers() throws Exception {
+        MultiplexedSshScript script = new MultiplexedSshScript(ImmutableList.of("echo a", "echo started; sleep 60; echo notreached", "echo b"),
+                ImmutableList.<Map<String,String>>of(ImmutableMap.<String,String>of(), ImmutableMap.<String,String>of(), ImmutableMap.<String,String>of()), 
+                true, Duration.ONE_SECOND);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<SshPollValue> results = script.parse(null, runLocally(script.getScriptLines()));
+        
+        assertTrue(stopwatch.elapsed(TimeUnit.SECONDS) < 30, "elapsed="+stopwatch);
+        assertResult(results.get(0), 0, "a\n", "");
+        assertResult(results.get(1), MultiplexedSshScript.TIMED_OUT_EXIT_STATUS, "started\n", "");
+        assertResult(results.get(2), 0, "b\n", "");
+    }
+
+    private void assertResult(SshPollValue result, int exitStatus, String stdout, String stderr) {
+        assertEquals(result.getExitStatus(), exitStatus);
+        assertEquals(result.getStdout(), stdout);
+        assertEquals(result.getStderr(), stderr);
+    }
+
+    private String runLocally(List<String> lines) throws Exception {
+        Process process = new ProcessBuilder("bash", "-e", "-c", Strings.join(lines, "\n")).start();
+        process.getOutputStream().close();
+        String stdout = Streams.readFullyString(process.getInputStream());
+        assertEquals(process.waitFor(), 0, "stderr="+Streams.readFullyString(process.getErrorStream()));
+        return stdout;
+    }
+}
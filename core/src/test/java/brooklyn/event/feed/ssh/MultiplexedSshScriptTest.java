@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.ssh;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/** Checks the combined script without running it; see {@link MultiplexedSshScriptIntegrationTest} for its behaviour. */
+public class MultiplexedSshScriptTest {
+
+    private final List<Map<String,String>> envs = ImmutableList.<Map<String,String>>of(ImmutableMap.<String,String>of(), ImmutableMap.<String,String>of());
+    
+    @Test
+    public void testCommandsKilledAfterTimeoutInWholeSeconds() throws Exception {
+        MultiplexedSshScript script = new MultiplexedSshScript(ImmutableList.of("echo a", "echo b"), envs, true, Duration.millis(1500));
+        String lines = Strings.join(script.getScriptLines(), "\n");
+        
+        // a watchdog for each command
+        assertEquals(lines.split("sleep 2 &", -1).length - 1, 2, lines);
+        assertTrue(lines.contains("_EXIT="+MultiplexedSshScript.TIMED_OUT_EXIT_STATUS), lines);
+    }
+    
+    @Test
+    public void testNoWatchdogWithoutTimeout() throws Exception {
+        MultiplexedSshScript script = new MultiplexedSshScript(ImmutableList.of("echo a", "echo b"), envs, true);
+        String lines = Strings.join(script.getScriptLines(), "\n");
+        assertFalse(lines.contains("sleep"), lines);
+    }
+}
@@ -180,6 +180,29 @@ public class SshFeedIntegrationTest extends BrooklynAppUnitTestSupport {
         EntityTestUtils.assertAttributeEventually(entity, SENSOR_STRING, StringPredicates.containsLiteral("Exit status 123"));
     }
     
+    @Test(groups="Integration")
+    public void testMultiplexedPollsUseOneExec() throws Exception {
+        feed = SshFeed.builder()
+                .entity(entity)
+                .machine(machine)
+                .multiplexed()
+                .period(100)
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .command("echo hello")
+                        .onSuccess(SshValueFunctions.stdout()))
+                .poll(new SshPollConfig<Integer>(SENSOR_INT)
+                        .command("exit 123")
+                        .checkSuccess(Predicates.alwaysTrue())
+                        .onSuccess(SshValueFunctions.exitStatus()))
+                .build();
+
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_STRING, "hello\n");
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_INT, 123);
+        
+        Map<String, Object> metrics = feed.getPollMetrics();
+        Assert.assertEquals((long)(Long)metrics.get("sshCommands"), 2*(Long)metrics.get("sshExecs"), "metrics="+metrics);
+    }
+
     @Test(groups="Integration")
     public void testAddedEarly() throws Exception {
         final TestEntity entity2 = app.addChild(EntitySpec.create(TestEntity.class)
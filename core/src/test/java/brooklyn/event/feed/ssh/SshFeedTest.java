@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.ssh;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.event.feed.AbstractFeed;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.test.Asserts;
+import brooklyn.test.EntityTestUtils;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.internal.ssh.RecordingSshTool;
+import brooklyn.util.internal.ssh.SshTool;
+import brooklyn.util.net.Networking;
+import brooklyn.util.text.Strings;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Iterables;
+
+/** Tests the feed's handling of polls, with a mock ssh tool; see {@link SshFeedIntegrationTest} for real ssh. */
+public class SshFeedTest extends BrooklynAppUnitTestSupport {
+
+    final static AttributeSensor<String> SENSOR_STRING = Sensors.newStringSensor("aString", "");
+    final static AttributeSensor<String> SENSOR_STRING2 = Sensors.newStringSensor("aString2", "");
+
+    private SshMachineLocation machine;
+    private TestEntity entity;
+    private SshFeed feed;
+    
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        RecordingSshTool.execScriptCmds.clear();
+        machine = mgmt.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class)
+                .configure("address", Networking.getLocalHost())
+                .configure(SshTool.PROP_TOOL_CLASS, MultiplexedScriptSshTool.class.getName()));
+        entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+    }
+
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() throws Exception {
+        if (feed != null) feed.stop();
+        super.tearDown();
+        RecordingSshTool.execScriptCmds.clear();
+    }
+    
+    @Test
+    public void testMultiplexedPollWhoseCommandFailsDoesNotPreventOthers() throws Exception {
+        // poll configs resolve their suppliers when the feed is built, so only fail once polling
+        final AtomicBoolean polling = new AtomicBoolean(false);
+        feed = SshFeed.builder()
+                .entity(entity)
+                .machine(machine)
+                .multiplexed()
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .command("echo good")
+                        .onSuccess(SshValueFunctions.stdout()))
+                .poll(new SshPollConfig<String>(SENSOR_STRING2)
+                        .command(new Supplier<String>() {
+                            @Override public String get() {
+                                if (!polling.get()) return "echo bad";
+                                throw new IllegalStateException("Simulating failure to build command");
+                            }})
+                        .onSuccess(SshValueFunctions.stdout())
+                        .onException(Functions.constant("failed")))
+                .build();
+        polling.set(true);
+        
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_STRING, "ran\n");
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_STRING2, "failed");
+        String script = Strings.join(Iterables.getLast(RecordingSshTool.execScriptCmds).commands, "\n");
+        assertTrue(script.contains("echo good"), script);
+        assertFalse(script.contains("echo bad"), script);
+    }
+    
+    @Test
+    public void testMultiplexedPollWithAdaptivePolling() throws Exception {
+        mgmt.getBrooklynProperties().put(AbstractFeed.POLL_ADAPTIVE, true);
+        feed = SshFeed.builder()
+                .entity(entity)
+                .machine(machine)
+                .multiplexed()
+                .period(10)
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .command("echo good")
+                        .onSuccess(SshValueFunctions.stdout())
+                        .onException(Functions.constant("failed")))
+                .poll(new SshPollConfig<String>(SENSOR_STRING2)
+                        .command("echo other")
+                        .onSuccess(SshValueFunctions.stdout())
+                        .onException(Functions.constant("failed")))
+                .build();
+        
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_STRING, "ran\n");
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_STRING2, "ran\n");
+        // the output never changes, so the poller backs off
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue((Long)feed.getPollMetrics().get("pollsBackedOff") >= 1, "metrics="+feed.getPollMetrics());
+            }
+        });
+        EntityTestUtils.assertAttributeEquals(entity, SENSOR_STRING, "ran\n");
+    }
+    
+    /** Writes the output a multiplexed script would, with each command printing "ran". */
+    public static class MultiplexedScriptSshTool extends RecordingSshTool {
+        private static final Pattern OUT_MARKER = Pattern.compile("echo (BROOKLYN-SSH-FEED-[^ ;]+)-out-([0-9]+);");
+        
+        public MultiplexedScriptSshTool(Map<?, ?> props) {
+            super(props);
+        }
+        @Override public int execScript(Map<String, ?> props, List<String> commands, Map<String, ?> env) {
+            super.execScript(props, commands, env); 
+            StringBuilder output = new StringBuilder();
+            Matcher matcher = OUT_MARKER.matcher(Strings.join(commands, "\n"));
+            while (matcher.find()) {
+                String prefix = matcher.group(1)+"-";
+                String index = matcher.group(2);
+                output.append(prefix+"out-"+index+"\nran\n\n")
+                        .append(prefix+"err-"+index+"\n\n")
+                        .append(prefix+"exit-"+index+" 0\n");
+            }
+            try {
+                OutputStream out = (OutputStream) props.get(SshTool.PROP_OUT_STREAM.getName());
+                if (out != null) out.write(output.toString().getBytes());
+            } catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+            return 0;
+        }
+    }
+}
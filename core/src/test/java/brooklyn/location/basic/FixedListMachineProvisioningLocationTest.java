@@ -41,6 +41,7 @@ import brooklyn.util.net.Networking;
 import brooklyn.util.stream.Streams;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 /**
@@ -318,6 +319,36 @@ public class FixedListMachineProvisioningLocationTest {
         }
     }
     
+    @Test
+    public void testObtainBatch() throws Exception {
+        List<SshMachineLocation> machines = ImmutableList.of(
+                mgmt.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class).configure("address", Networking.getInetAddressWithFixedName("1.1.1.1"))),
+                mgmt.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class).configure("address", Networking.getInetAddressWithFixedName("1.1.1.2"))),
+                mgmt.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class).configure("address", Networking.getInetAddressWithFixedName("1.1.1.3"))));
+        
+        provisioner2 = mgmt.getLocationManager().createLocation(
+                MutableMap.of("machines", machines),
+                FixedListMachineProvisioningLocation.class);
+
+        List<SshMachineLocation> obtained = provisioner2.obtainBatch(2, ImmutableMap.of());
+        assertEquals(obtained, machines.subList(0, 2));
+        assertEquals(provisioner2.getInUse(), ImmutableSet.copyOf(obtained));
+        
+        // all or nothing: when not enough are available, none are obtained
+        try {
+            provisioner2.obtainBatch(2, ImmutableMap.of());
+            fail();
+        } catch (NoMachinesAvailableException e) {
+            // success
+        }
+        assertEquals(provisioner2.getAvailable(), ImmutableSet.of(machines.get(2)));
+        
+        for (SshMachineLocation machine : obtained) {
+            provisioner2.release(machine);
+        }
+        assertEquals(provisioner2.getAvailable(), ImmutableSet.copyOf(machines));
+    }
+    
     private static void assertUserAndHost(SshMachineLocation l, String user, String host) {
         assertEquals(l.getUser(), user);
         assertEquals(l.getAddress().getHostAddress(), host);
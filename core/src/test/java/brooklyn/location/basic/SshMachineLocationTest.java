@@ -54,6 +54,7 @@ import brooklyn.location.MachineLocation;
 import brooklyn.location.PortRange;
 import brooklyn.location.basic.PortRanges.LinearPortRange;
 import brooklyn.management.ManagementContext;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.test.Asserts;
 import brooklyn.test.entity.LocalManagementContextForTests;
 import brooklyn.test.entity.TestApplication;
@@ -122,6 +123,35 @@ public class SshMachineLocationTest {
         assertSame(host2.getMachineDetails(), machineDetails);
     }
     
+    @Test
+    public void testLocationsForSameHostShareSshConnection() throws Exception {
+        LocationSpec<SshMachineLocation> spec = LocationSpec.create(SshMachineLocation.class)
+                .configure("address", Networking.getLocalHost())
+                .configure(SshTool.PROP_TOOL_CLASS, RecordingSshTool.class.getName());
+        SshMachineLocation host2 = mgmt.getLocationManager().createLocation(spec);
+        SshMachineLocation host3 = mgmt.getLocationManager().createLocation(spec);
+
+        host2.execCommands("first", ImmutableList.of("true"));
+        host3.execCommands("second", ImmutableList.of("true"));
+
+        Map<String, Object> metrics = ((ManagementContextInternal)mgmt).getSshConnectionRegistry().getMetrics();
+        assertEquals(metrics.get("opens"), 1L);
+        assertEquals(metrics.get("reuses"), 1L);
+    }
+
+    @Test
+    public void testClosingLocationClosesSharedSshConnections() throws Exception {
+        SshMachineLocation host2 = mgmt.getLocationManager().createLocation(LocationSpec.create(SshMachineLocation.class)
+                .configure("address", Networking.getLocalHost())
+                .configure(SshTool.PROP_TOOL_CLASS, RecordingSshTool.class.getName()));
+
+        host2.execCommands("first", ImmutableList.of("true"));
+        assertEquals(((ManagementContextInternal)mgmt).getSshConnectionRegistry().getMetrics().get("idleConnections"), 1);
+        
+        host2.close();
+        assertEquals(((ManagementContextInternal)mgmt).getSshConnectionRegistry().getMetrics().get("idleConnections"), 0);
+    }
+
     // Wow, this is hard to test (until I accepted creating the entity + effector)! Code smell?
     // Need to call getMachineDetails in a DynamicSequentialTask so that the "innessential" takes effect,
     // to not fail its caller. But to get one of those outside of an effector is non-obvious.
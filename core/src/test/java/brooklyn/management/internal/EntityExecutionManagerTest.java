@@ -19,9 +19,11 @@
 package brooklyn.management.internal;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
@@ -54,6 +56,7 @@ import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.javalang.JavaClassNames;
+import brooklyn.util.os.Os;
 import brooklyn.util.repeat.Repeater;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.ExecutionListener;
@@ -178,6 +181,47 @@ public class EntityExecutionManagerTest {
         assertTaskCountForEntitySoon(e, 2);
     }
     
+    @Test
+    public void testGcTaskRecordedInTaskHistory() throws Exception {
+        File historyDir = Os.newTempDir(getClass());
+        try {
+            BrooklynProperties brooklynProperties = BrooklynProperties.Factory.newEmpty();
+            brooklynProperties.put(BrooklynGarbageCollector.MAX_TASKS_PER_TAG, 2);
+            brooklynProperties.put(BrooklynGarbageCollector.TASK_HISTORY_ENABLED, true);
+            brooklynProperties.put(BrooklynGarbageCollector.TASK_HISTORY_DIR, historyDir.getAbsolutePath());
+            brooklynProperties.put(BrooklynGarbageCollector.TASK_HISTORY_RECENT_TASKS, 1);
+            app = ApplicationBuilder.newManagedApp(TestApplication.class, LocalManagementContextForTests.newInstance(brooklynProperties));
+            e = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+
+            List<Task<?>> tasks = Lists.newArrayList();
+            for (int count=0; count<5; count++)
+                tasks.add(runEmptyTaskWithNameAndTags(e, "task"+count, ManagementContextInternal.NON_TRANSIENT_TASK_TAG, "boring-tag"));
+
+            assertTaskCountForEntitySoon(e, 2);
+
+            // tasks may complete in the same millisecond, so the order of deletion is not guaranteed
+            TaskHistoryStore history = ((ManagementContextInternal)app.getManagementContext()).getTaskHistory();
+            int archived = 0;
+            for (Task<?> task: tasks) {
+                if (app.getManagementContext().getExecutionManager().getTask(task.getId()) != null) {
+                    assertFalse(history.contains(task.getId()), "task="+task);
+                } else {
+                    TaskHistoryRecord record = history.getRecord(task.getId());
+                    assertEquals(record.getDisplayName(), task.getDisplayName());
+                    assertEquals(record.getEntityId(), e.getId());
+                    assertTrue(record.getTags().contains("boring-tag"), "tags="+record.getTags());
+                    archived++;
+                }
+            }
+            assertEquals(archived, 3);
+            assertEquals(history.getMetrics().get("recentTasks"), 1);
+        } finally {
+            if (app != null) Entities.destroyAll(app.getManagementContext());
+            app = null;
+            Os.deleteRecursively(historyDir);
+        }
+    }
+
     @Test
     public void testGcTaskAtEntityLimit() throws Exception {
         app = TestApplication.Factory.newManagedInstanceForTests();
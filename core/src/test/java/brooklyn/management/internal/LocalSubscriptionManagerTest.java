@@ -19,17 +19,21 @@
 package brooklyn.management.internal;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.config.BrooklynProperties;
 import brooklyn.entity.BrooklynAppUnitTestSupport;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.BasicGroup;
@@ -37,9 +41,16 @@ import brooklyn.entity.basic.Entities;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicSensorEvent;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
+import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.SingleThreadedScheduler.OverflowPolicy;
+
+import com.google.common.collect.ImmutableList;
 
 /**
  * testing the {@link SubscriptionManager} and associated classes.
@@ -140,6 +151,58 @@ public class LocalSubscriptionManagerTest extends BrooklynAppUnitTestSupport {
         assertEquals(events.get(0).getSource().getId(), member.getId());
     }
     
+    @Test
+    public void testBatchDeliveryPreservesOrder() throws Exception {
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        mgmt.getSubscriptionManager().subscribe(MutableMap.<String,Object>of("subscriber", app, "batchDelivery", true), 
+                entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        values.add(event.getValue());
+                    }});
+        for (int i = 0; i < 100; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(values.size(), 100);
+            }});
+        for (int i = 0; i < 100; i++) {
+            assertEquals(values.get(i), (Integer)i);
+        }
+    }
+    
+    @Test
+    public void testLatestValueOnlyCoalescesUndeliveredEvents() throws Exception {
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch continueDelivery = new CountDownLatch(1);
+        mgmt.getSubscriptionManager().subscribe(MutableMap.<String,Object>of("subscriber", app, "latestValueOnly", true), 
+                entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        values.add(event.getValue());
+                        firstEventReceived.countDown();
+                        try {
+                            continueDelivery.await();
+                        } catch (InterruptedException e) {
+                            throw Exceptions.propagate(e);
+                        }
+                    }});
+        
+        entity.setAttribute(TestEntity.SEQUENCE, 0);
+        assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        for (int i = 1; i <= 10; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        continueDelivery.countDown();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(values, ImmutableList.of(0, 10));
+            }});
+        assertEquals(((LocalSubscriptionManager)mgmt.getSubscriptionManager()).getTotalEventsCoalesced(), 9);
+    }
+    
     // Regression test for ConcurrentModificationException in issue #327
     @Test(groups="Integration")
     public void testConcurrentSubscribingAndPublishing() throws Exception {
@@ -178,4 +241,152 @@ public class LocalSubscriptionManagerTest extends BrooklynAppUnitTestSupport {
         if (threadException.get() != null) throw threadException.get();
     }
 
+
+    @Test
+    public void testFullDeliveryQueueDoesNotBlockPublisherByDefault() throws Exception {
+        BrooklynProperties config = BrooklynProperties.Factory.newEmpty();
+        config.put(LocalSubscriptionManager.DELIVERY_QUEUE_MAX_SIZE, 1);
+        LocalSubscriptionManager subscriptionManager = new LocalSubscriptionManager(mgmt.getExecutionManager(), config);
+        final CountDownLatch deliveryLatch = new CountDownLatch(1);
+        subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", "slowSubscriber"), entity, TestEntity.SEQUENCE, 
+                new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        try {
+                            deliveryLatch.await();
+                        } catch (InterruptedException e) {
+                            throw Exceptions.propagate(e);
+                        }
+                    }});
+        final LocalSubscriptionManager publisher = subscriptionManager;
+        Thread publishing = new Thread() {
+            public void run() {
+                for (int i = 0; i < 5; i++) {
+                    publisher.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, i));
+                }
+            }};
+        try {
+            publishing.start();
+            publishing.join(TIMEOUT_MS);
+            assertFalse(publishing.isAlive(), "publisher blocked by full delivery queue");
+        } finally {
+            deliveryLatch.countDown();
+        }
+    }
+
+    @Test
+    public void testBatchDeliveryResumesWhenDrainDroppedFromFullDeliveryQueue() throws Exception {
+        BrooklynProperties config = BrooklynProperties.Factory.newEmpty();
+        config.put(LocalSubscriptionManager.DELIVERY_QUEUE_MAX_SIZE, 1);
+        config.put(LocalSubscriptionManager.DELIVERY_QUEUE_OVERFLOW_POLICY, OverflowPolicy.DROP_OLDEST);
+        LocalSubscriptionManager subscriptionManager = new LocalSubscriptionManager(mgmt.getExecutionManager(), config);
+        final CountDownLatch blockingDeliveryStarted = new CountDownLatch(1);
+        final CountDownLatch continueDelivery = new CountDownLatch(1);
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", "slowSubscriber"), entity, TestEntity.NAME, 
+                new SensorEventListener<String>() {
+                    @Override public void onEvent(SensorEvent<String> event) {
+                        blockingDeliveryStarted.countDown();
+                        try {
+                            continueDelivery.await();
+                        } catch (InterruptedException e) {
+                            throw Exceptions.propagate(e);
+                        }
+                    }});
+        subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", "slowSubscriber", "batchDelivery", true), entity, TestEntity.SEQUENCE, 
+                new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        values.add(event.getValue());
+                    }});
+        try {
+            subscriptionManager.publish(new BasicSensorEvent<String>(TestEntity.NAME, entity, "a"));
+            assertTrue(blockingDeliveryStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            // fill the subscriber's queue with a drain task, then more deliveries which may displace it
+            for (int i = 0; i < 5; i++) {
+                subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, i));
+                subscriptionManager.publish(new BasicSensorEvent<String>(TestEntity.NAME, entity, "b"+i));
+            }
+        } finally {
+            continueDelivery.countDown();
+        }
+        
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(values.contains(4), "values="+values);
+            }});
+        
+        // and later events are still delivered
+        subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, 5));
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(values.contains(5), "values="+values);
+            }});
+    }
+    
+    @Test
+    public void testBatchDeliveryResumesWhenDrainFails() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean();
+        LocalSubscriptionManager subscriptionManager = new LocalSubscriptionManager(mgmt.getExecutionManager(), BrooklynProperties.Factory.newEmpty()) {
+            @Override
+            @SuppressWarnings("rawtypes")
+            protected void deliver(Subscription s, SensorEvent<?> event) {
+                if (Integer.valueOf(0).equals(event.getValue()) && failed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("simulated failure of drain task");
+                }
+                super.deliver(s, event);
+            }
+        };
+        final CountDownLatch blockingDeliveryStarted = new CountDownLatch(1);
+        final CountDownLatch continueDelivery = new CountDownLatch(1);
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", "slowSubscriber"), entity, TestEntity.NAME, 
+                new SensorEventListener<String>() {
+                    @Override public void onEvent(SensorEvent<String> event) {
+                        blockingDeliveryStarted.countDown();
+                        try {
+                            continueDelivery.await();
+                        } catch (InterruptedException e) {
+                            throw Exceptions.propagate(e);
+                        }
+                    }});
+        subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", "slowSubscriber", "batchDelivery", true), entity, TestEntity.SEQUENCE, 
+                new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        values.add(event.getValue());
+                    }});
+        try {
+            subscriptionManager.publish(new BasicSensorEvent<String>(TestEntity.NAME, entity, "a"));
+            assertTrue(blockingDeliveryStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            // all batched behind the blocked delivery, so drained together
+            for (int i = 0; i < 5; i++) {
+                subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, i));
+            }
+        } finally {
+            continueDelivery.countDown();
+        }
+        
+        // the rest of the batch is delivered without waiting for another event
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(values, ImmutableList.of(1, 2, 3, 4));
+            }});
+        assertTrue(failed.get());
+    }
+    
+    @Test
+    public void testBatchDeliveryWithoutSubscriberOrTag() throws Exception {
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        SubscriptionHandle handle = mgmt.getSubscriptionManager().subscribe(MutableMap.<String,Object>of("batchDelivery", true), 
+                entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        values.add(event.getValue());
+                    }});
+        for (int i = 0; i < 10; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(values.size(), 10);
+            }});
+        assertTrue(mgmt.getSubscriptionManager().unsubscribe(handle));
+    }
 }
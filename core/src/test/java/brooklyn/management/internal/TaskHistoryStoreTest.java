@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.management.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.management.Task;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.os.Os;
+import brooklyn.util.stream.Streams;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.Tasks;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Callables;
+
+public class TaskHistoryStoreTest {
+
+    private File dir;
+    private BasicExecutionManager em;
+    private TaskHistoryStore store;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        dir = Os.newTempDir(getClass());
+        em = new BasicExecutionManager("mycontext");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (store != null) store.close();
+        if (em != null) em.shutdownNow();
+        if (dir != null) Os.deleteRecursively(dir);
+    }
+
+    @Test
+    public void testRecordsCompletedTask() throws Exception {
+        store = new TaskHistoryStore(dir, 1024*1024, 10, 1);
+        Task<String> task = em.submit(Tasks.<String>builder().name("mytask").description("mydesc").dynamic(false)
+                .tag("mytag")
+                .tag(BrooklynTaskTags.tagForStream(BrooklynTaskTags.STREAM_STDOUT, Streams.byteArrayOfString("0123456789abcdef")))
+                .body(Callables.returning("myresult")).build());
+        task.get();
+        store.archive(task);
+
+        TaskHistoryRecord record = store.getRecord(task.getId());
+        assertEquals(record.getId(), task.getId());
+        assertEquals(record.getDisplayName(), "mytask");
+        assertEquals(record.getDescription(), "mydesc");
+        assertEquals(record.getResult(), "myresult");
+        assertFalse(record.isError());
+        assertTrue(record.getTags().contains("mytag"), "tags="+record.getTags());
+        assertEquals(record.getStartTimeUtc(), task.getStartTimeUtc());
+        assertEquals(record.getEndTimeUtc(), task.getEndTimeUtc());
+        assertTrue(record.getStreams().get(BrooklynTaskTags.STREAM_STDOUT).endsWith("6789abcdef"), "streams="+record.getStreams());
+        assertFalse(record.getStreams().get(BrooklynTaskTags.STREAM_STDOUT).contains("012345"), "streams="+record.getStreams());
+        assertSame(store.getRecentTask(task.getId()), task);
+    }
+
+    @Test
+    public void testRecordsFailedTask() throws Exception {
+        store = new TaskHistoryStore(dir, 1024*1024, 1000, 1);
+        Task<?> task = em.submit(Tasks.builder().name("failing").dynamic(false)
+                .body(new Runnable() {
+                    @Override public void run() {
+                        throw new IllegalStateException("simulated failure");
+                    }}).build());
+        try {
+            task.get();
+        } catch (Exception e) {
+            // expected
+        }
+        store.archive(task);
+
+        TaskHistoryRecord record = store.getRecord(task.getId());
+        assertTrue(record.isError());
+        assertTrue(record.getResult().contains("simulated failure"), "result="+record.getResult());
+    }
+
+    @Test
+    public void testKeepsOnlyRecentTasksInMemory() throws Exception {
+        store = new TaskHistoryStore(dir, 1024*1024, 1000, 2);
+        List<Task<?>> tasks = submitTasks(5, 0);
+        for (Task<?> task : tasks) {
+            store.archive(task);
+        }
+
+        assertEquals(store.size(), 5);
+        assertNull(store.getRecentTask(tasks.get(0).getId()));
+        assertSame(store.getRecentTask(tasks.get(4).getId()), tasks.get(4));
+        for (Task<?> task : tasks) {
+            assertEquals(store.getRecord(task.getId()).getDisplayName(), task.getDisplayName());
+        }
+    }
+
+    @Test
+    public void testIgnoresTransientTasksAndDuplicates() throws Exception {
+        store = new TaskHistoryStore(dir, 1024*1024, 1000, 2);
+        Task<?> transientTask = em.submit(Tasks.builder().name("transient").dynamic(false)
+                .tag(BrooklynTaskTags.TRANSIENT_TASK_TAG).body(Callables.returning(null)).build());
+        transientTask.get();
+        Task<?> task = submitTasks(1, 0).get(0);
+
+        store.archive(transientTask);
+        store.archive(task);
+        store.archive(task);
+
+        assertEquals(store.size(), 1);
+        assertFalse(store.contains(transientTask.getId()));
+    }
+
+    @Test
+    public void testDiscardsOldestRecordsWhenOverMaxSize() throws Exception {
+        // each record is over 1k, so with a max size of 10k each segment holds a handful
+        store = new TaskHistoryStore(dir, 10*1024, 2000, 0);
+        List<Task<?>> tasks = submitTasks(20, 1024);
+        for (Task<?> task : tasks) {
+            store.archive(task);
+        }
+
+        assertTrue(store.size() < 10, "size="+store.size());
+        assertFalse(store.contains(tasks.get(0).getId()));
+        assertNull(store.getRecord(tasks.get(0).getId()));
+        Task<?> last = tasks.get(tasks.size()-1);
+        assertEquals(store.getRecord(last.getId()).getDisplayName(), last.getDisplayName());
+
+        // the oldest remaining record is read from the previous segment
+        int firstRemaining = tasks.size() - store.size();
+        Task<?> oldest = tasks.get(firstRemaining);
+        assertTrue(store.contains(oldest.getId()));
+        assertEquals(store.getRecord(oldest.getId()).getDisplayName(), oldest.getDisplayName());
+        assertFalse(store.contains(tasks.get(firstRemaining-1).getId()));
+    }
+
+    @Test
+    public void testCloseDeletesFiles() throws Exception {
+        store = new TaskHistoryStore(dir, 1024*1024, 1000, 2);
+        store.archive(submitTasks(1, 0).get(0));
+        // the log, and its lock
+        assertEquals(dir.listFiles().length, 2);
+
+        store.close();
+        assertEquals(dir.listFiles().length, 0);
+        assertEquals(store.size(), 0);
+    }
+
+    @Test
+    public void testDeletesFilesLeftByStoresNotClosed() throws Exception {
+        // as left by a process which was killed: logs, and a lock file which is no longer locked
+        for (String name : new String[] {"tasks-killed.log", "tasks-killed.log.old", "tasks-killed.lock", "tasks-nolock.log"}) {
+            Files.touch(new File(dir, name));
+        }
+        File unrelated = new File(dir, "other.log");
+        Files.touch(unrelated);
+
+        store = new TaskHistoryStore(dir, 1024*1024, 1000, 2);
+        
+        assertEquals(dir.list().length, 3, "files="+Arrays.asList(dir.list()));
+        assertTrue(unrelated.exists());
+        for (String name : dir.list()) {
+            assertFalse(name.contains("killed") || name.contains("nolock"), "files="+Arrays.asList(dir.list()));
+        }
+    }
+
+    @Test
+    public void testDoesNotDeleteFilesOfOpenStore() throws Exception {
+        store = new TaskHistoryStore(dir, 1024*1024, 1000, 2);
+        Task<?> task = submitTasks(1, 0).get(0);
+        store.archive(task);
+
+        TaskHistoryStore store2 = new TaskHistoryStore(dir, 1024*1024, 1000, 2);
+        try {
+            assertEquals(dir.listFiles().length, 4);
+            assertEquals(store.getRecord(task.getId()).getDisplayName(), task.getDisplayName());
+        } finally {
+            store2.close();
+        }
+        assertEquals(dir.listFiles().length, 2);
+    }
+
+    private List<Task<?>> submitTasks(int count, int resultSize) throws Exception {
+        List<Task<?>> result = MutableList.of();
+        for (int i = 0; i < count; i++) {
+            Task<String> task = em.submit(Tasks.<String>builder().name("task"+i).dynamic(false)
+                    .body(Callables.returning(Strings.repeat("x", resultSize))).build());
+            task.get();
+            result.add(task);
+        }
+        return result;
+    }
+}
@@ -26,6 +26,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.entity.Entity;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.event.SensorEvent;
@@ -99,6 +100,32 @@ public class EntityPerformanceTest extends AbstractPerformanceTest {
             }});
     }
 
+    @Test(groups={"Integration", "Acceptance"})
+    public void testGetAttributeThroughProxy() {
+        int numIterations = numIterations() * 100;
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        
+        measureAndAssert("getAttributeThroughProxy", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                entity.getAttribute(TestEntity.SEQUENCE);
+            }});
+    }
+
+    /** for comparison with {@link #testGetAttributeThroughProxy()}, the cost of the call itself */
+    @Test(groups={"Integration", "Acceptance"})
+    public void testGetAttributeDirect() {
+        int numIterations = numIterations() * 100;
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        final Entity direct = Entities.deproxy(entity);
+        
+        measureAndAssert("getAttributeDirect", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                direct.getAttribute(TestEntity.SEQUENCE);
+            }});
+    }
+
     @Test(groups={"Integration", "Acceptance"})
     public void testInvokeEffector() {
         int numIterations = numIterations();
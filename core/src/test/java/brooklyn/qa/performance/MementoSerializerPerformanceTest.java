@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BasicEntity;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.MementoSerializationFormat;
+import brooklyn.entity.rebind.persister.MementoSerializer;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares, for each {@link MementoSerializationFormat}, the mean time over {@value #NUM_ITERATIONS} iterations
+ * to serialize and to deserialize the mementos of {@value #NUM_ENTITIES} test entities (each with a few simple
+ * attributes and a map-valued one), and the total size of the serialized mementos in UTF-8 bytes.
+ */
+public class MementoSerializerPerformanceTest extends AbstractPerformanceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MementoSerializerPerformanceTest.class);
+
+    private static final int NUM_ENTITIES = 10*1000;
+    private static final int NUM_ITERATIONS = 5;
+
+    private static final AttributeSensor<Object> MAP_SENSOR = Sensors.newSensor(Object.class, "test.map");
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCompareFormats() {
+        List<EntityMemento> mementos = newEntityMementos(NUM_ENTITIES);
+        Map<MementoSerializationFormat, Long> sizes = Maps.newLinkedHashMap();
+
+        for (MementoSerializationFormat format : MementoSerializationFormat.values()) {
+            final MementoSerializer<Object> serializer = format.newSerializer(getClass().getClassLoader());
+            final List<EntityMemento> toSerialize = mementos;
+            final List<String> serialized = Lists.newArrayListWithCapacity(mementos.size());
+
+            long serializeTime = measure(format+"-serialize", NUM_ITERATIONS, new Runnable() {
+                public void run() {
+                    serialized.clear();
+                    for (EntityMemento memento : toSerialize) {
+                        serialized.add(serializer.toString(memento));
+                    }
+                }});
+            long deserializeTime = measure(format+"-deserialize", NUM_ITERATIONS, new Runnable() {
+                public void run() {
+                    for (String contents : serialized) {
+                        serializer.fromString(contents);
+                    }
+                }});
+
+            // as written to the persistence store
+            long size = 0;
+            for (String contents : serialized) {
+                size += contents.getBytes(Charsets.UTF_8).length;
+            }
+            sizes.put(format, size);
+
+            EntityMemento sample = (EntityMemento) serializer.fromString(serialized.get(0));
+            assertEquals(sample.getId(), mementos.get(0).getId());
+            assertEquals(sample.getAttributes().size(), mementos.get(0).getAttributes().size());
+
+            String msg = format+" for "+NUM_ENTITIES+" entities: serialize "+(serializeTime/NUM_ITERATIONS)+"ms, "
+                    + "deserialize "+(deserializeTime/NUM_ITERATIONS)+"ms, size "+size+" bytes";
+            LOG.info(msg);
+            System.out.println("\n"+msg+"\n");
+        }
+
+        assertTrue(sizes.get(MementoSerializationFormat.BINARY) < sizes.get(MementoSerializationFormat.XML), "sizes="+sizes);
+    }
+
+    private List<EntityMemento> newEntityMementos(int count) {
+        List<EntityMemento> result = Lists.newArrayListWithCapacity(count);
+        Entity parent = null;
+        for (int i = 0; i < count; i++) {
+            // the app's enrichers look at all its children, so spread them among intermediate parents
+            if (i % 100 == 0) parent = app.createAndManageChild(EntitySpec.create(BasicEntity.class));
+            TestEntity entity = parent.addChild(EntitySpec.create(TestEntity.class)
+                    .configure(TestEntity.CONF_NAME, "myconf-"+i)
+                    .location(loc));
+            Entities.manage(entity);
+            entity.setAttribute(TestEntity.NAME, "myname-"+i);
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+            entity.setAttribute(TestEntity.SERVICE_UP, true);
+            entity.setAttribute(MAP_SENSOR, MutableMap.of("host", "10.0.0."+(i%256), "ports", ImmutableList.of(8080, 8443)));
+            result.add(MementosGenerators.newEntityMemento(Entities.deproxy(entity)));
+        }
+        return result;
+    }
+}
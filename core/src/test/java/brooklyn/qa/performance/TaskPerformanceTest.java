@@ -23,20 +23,25 @@ import static org.testng.Assert.assertTrue;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import brooklyn.management.Task;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.SingleThreadedScheduler;
 import brooklyn.util.time.Time;
 
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
@@ -119,6 +124,73 @@ public class TaskPerformanceTest extends AbstractPerformanceTest {
                     }});
     }
     
+    @DataProvider(name="submitterThreads")
+    public Object[][] submitterThreads() {
+        return new Object[][] { {1}, {8}, {32} };
+    }
+    
+    /**
+     * Submits and completes tagged tasks from many threads concurrently, and queries by tag while doing so,
+     * to measure contention on the execution manager's tag index.
+     */
+    @Test(groups={"Integration", "Acceptance"}, dataProvider="submitterThreads")
+    public void testExecuteRunnableWithTagsConcurrently(final int numThreads) throws Exception {
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        final int numIterationsPerThread = numIterations / numThreads;
+        final int totalIterations = numIterationsPerThread * numThreads;
+        
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch completionLatch = new CountDownLatch(1);
+        final List<Exception> exceptions = Lists.newCopyOnWriteArrayList();
+
+        final Runnable work = new Runnable() { public void run() {
+                int val = counter.incrementAndGet();
+                if (val >= totalIterations) completionLatch.countDown();
+            }
+        };
+
+        ExecutorService submitters = Executors.newFixedThreadPool(numThreads);
+        try {
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            for (int t = 0; t < numThreads; t++) {
+                final String threadTag = "submitter-"+t;
+                submitters.submit(new Runnable() { public void run() {
+                    try {
+                        startLatch.await();
+                        for (int i = 0; i < numIterationsPerThread; i++) {
+                            executionManager.submit(MutableMap.of("tags", ImmutableList.of("shared", threadTag)), work);
+                            if (i % 1000 == 0) {
+                                executionManager.getTasksWithAllTags(ImmutableList.of("shared", threadTag));
+                                for (Task<?> task : executionManager.getTasksWithTag(threadTag)) {
+                                    if (task.isDone()) executionManager.deleteTask(task);
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        exceptions.add(e);
+                        throw Exceptions.propagate(e);
+                    }
+                }});
+            }
+            
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            startLatch.countDown();
+            assertTrue(completionLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS), "completed "+counter.get()+" of "+totalIterations);
+            long durationMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            
+            double numPerSec = ((double)totalIterations/Math.max(1, durationMillis) * 1000);
+            String msg = "executeRunnableWithTagsConcurrently("+numThreads+" threads): "+durationMillis+"ms for "+totalIterations+" iterations"+
+                    ": numPerSec="+numPerSec+"; minAcceptableRate="+minRatePerSec;
+            LOG.info(msg);
+            System.out.println("\n"+msg+"\n");
+            assertTrue(numPerSec >= minRatePerSec, msg);
+        } finally {
+            submitters.shutdownNow();
+        }
+        
+        if (exceptions.size() > 0) throw exceptions.get(0);
+    }
+    
     @Test(groups={"Integration", "Acceptance"})
     public void testExecuteWithSingleThreadedScheduler() throws Exception {
         double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.Lifecycle;
+import brooklyn.util.flags.TypeCoercions;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.reflect.TypeToken;
+
+public class TypeCoercionsPerformanceTest extends AbstractPerformanceTest {
+
+    public static final int numIterations = 1000000;
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoercePrimitive() {
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+        final Integer val = 123;
+        
+        measureAndAssert("coercePrimitive", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                assertEquals(TypeCoercions.coerce(val, Long.class), (Long)123L);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceStringToEnum() {
+        double minRatePerSec = 10000 * PERFORMANCE_EXPECTATION;
+        
+        measureAndAssert("coerceStringToEnum", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                assertEquals(TypeCoercions.coerce("running", Lifecycle.class), Lifecycle.RUNNING);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceStringToDuration() {
+        double minRatePerSec = 10000 * PERFORMANCE_EXPECTATION;
+        
+        measureAndAssert("coerceStringToDuration", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                assertEquals(TypeCoercions.coerce("5s", Duration.class), Duration.FIVE_SECONDS);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceStringToListOfInteger() {
+        double minRatePerSec = 10000 * PERFORMANCE_EXPECTATION;
+        final TypeToken<List<Integer>> type = new TypeToken<List<Integer>>() {};
+        
+        measureAndAssert("coerceStringToListOfInteger", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                assertEquals(TypeCoercions.coerce("1,2,3", type), ImmutableList.of(1, 2, 3));
+            }});
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.test.Asserts;
+import brooklyn.util.http.HttpTool.HttpClientBuilder;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.mockwebserver.MockResponse;
+
+public class HttpClientRegistryTest {
+
+    private HttpClientRegistry registry;
+    private BetterMockWebServer server;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        registry = new HttpClientRegistry(2, 10, Duration.ONE_MINUTE);
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (registry != null) registry.close();
+        if (server != null) server.shutdown();
+    }
+    
+    @Test
+    public void testSharesClientForSameSettings() throws Exception {
+        HttpClient client1 = HttpTool.httpClientBuilder().uri("http://host1:8080").laxRedirect(true).sharedPool(registry).build();
+        HttpClient client2 = HttpTool.httpClientBuilder().uri("http://host2:8081").laxRedirect(true).sharedPool(registry).build();
+        assertSame(client1, client2);
+        
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("clients"), 1);
+        assertEquals(metrics.get("clientRequests"), 2L);
+        assertEquals(metrics.get("maxConnectionsPerRoute"), 2);
+    }
+    
+    @Test
+    public void testSeparateClientsForDifferentSettings() throws Exception {
+        HttpClient plain = HttpTool.httpClientBuilder().sharedPool(registry).build();
+        HttpClient trustAll = HttpTool.httpClientBuilder().uri("https://host1").trustAll().sharedPool(registry).build();
+        HttpClient timeout = HttpTool.httpClientBuilder().socketTimeout(Duration.TEN_SECONDS).sharedPool(registry).build();
+        HttpClient timeoutAgain = HttpTool.httpClientBuilder().socketTimeout(Duration.TEN_SECONDS).sharedPool(registry).build();
+        
+        assertNotSame(plain, trustAll);
+        assertNotSame(plain, timeout);
+        assertSame(timeout, timeoutAgain);
+        assertEquals(registry.getMetrics().get("clients"), 3);
+    }
+    
+    @Test
+    public void testCredentialsAreScopedToHost() throws Exception {
+        UsernamePasswordCredentials creds = new UsernamePasswordCredentials("me", "secret");
+        HttpClient client1 = HttpTool.httpClientBuilder().uri("http://host1:8080").credentials(creds).sharedPool(registry).build();
+        HttpClient client1Again = HttpTool.httpClientBuilder().uri("http://host1:8080/path").credentials(creds).sharedPool(registry).build();
+        HttpClient client2 = HttpTool.httpClientBuilder().uri("http://host2:8080").credentials(creds).sharedPool(registry).build();
+        HttpClient otherCreds = HttpTool.httpClientBuilder().uri("http://host1:8080").credentials(new UsernamePasswordCredentials("me", "other")).sharedPool(registry).build();
+        
+        assertSame(client1, client1Again);
+        assertNotSame(client1, client2);
+        assertNotSame(client1, otherCreds);
+    }
+    
+    @Test
+    public void testSharedHttpsClientDefaultsToStandardPort() throws Exception {
+        HttpClient client1 = HttpTool.httpClientBuilder().uri("https://host1:8443").trustAll().sharedPool(registry).build();
+        HttpClient client2 = HttpTool.httpClientBuilder().uri("https://host2:9443").trustAll().sharedPool(registry).build();
+        assertSame(client1, client2);
+        
+        // explicit ports in the URIs are used; the scheme's default must not be the first caller's port
+        assertEquals(client1.getConnectionManager().getSchemeRegistry().getScheme("https").getDefaultPort(), 443);
+    }
+    
+    @Test
+    public void testCustomConnectionSettingsAreNotShared() throws Exception {
+        HttpClient client1 = HttpTool.httpClientBuilder().port(8443).sharedPool(registry).build();
+        HttpClient client2 = HttpTool.httpClientBuilder().port(8443).sharedPool(registry).build();
+        assertNotSame(client1, client2);
+        assertEquals(registry.getMetrics().get("clients"), 0);
+    }
+    
+    @Test
+    public void testReusesConnectionsAndIgnoresShutdownOfSharedClient() throws Exception {
+        server = BetterMockWebServer.newInstanceLocalhost();
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"+i));
+        }
+        server.play();
+        URI uri = server.getUrl("/").toURI();
+        
+        HttpClient client = HttpTool.httpClientBuilder().uri(uri).sharedPool(registry).build();
+        assertEquals(HttpTool.httpGet(client, uri, ImmutableMap.<String,String>of()).getResponseCode(), 200);
+        client.getConnectionManager().shutdown();
+        
+        HttpClient client2 = HttpTool.httpClientBuilder().uri(uri).sharedPool(registry).build();
+        assertEquals(HttpTool.httpGet(client2, uri, ImmutableMap.<String,String>of()).getResponseCode(), 200);
+        
+        // second request was sent over the same (kept-alive) connection
+        assertEquals(server.takeRequest().getSequenceNumber(), 0);
+        assertEquals(server.takeRequest().getSequenceNumber(), 1);
+        
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("connectionsLeased"), 0);
+        assertEquals(metrics.get("connectionsAvailable"), 1);
+        
+        registry.evictIdleConnections();
+        assertEquals(registry.getMetrics().get("idleEvictionRuns"), 1L);
+    }
+    
+    @Test
+    public void testEvictsUnusedClientsButNotThoseInUse() throws Exception {
+        registry.close();
+        registry = new HttpClientRegistry(2, 10, Duration.ONE_MINUTE, 1, 10, Duration.ONE_MINUTE, Duration.ONE_MINUTE, Duration.ONE_MINUTE, 
+                Duration.millis(10));
+        server = BetterMockWebServer.newInstanceLocalhost();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        server.play();
+        URI uri = server.getUrl("/").toURI();
+        
+        HttpClient unused = HttpTool.httpClientBuilder().uri("http://host1:8080").sharedPool(registry).build();
+        HttpClient inUse = HttpTool.httpClientBuilder().uri(uri).laxRedirect(true).sharedPool(registry).build();
+        // response not consumed, so its connection stays leased
+        HttpResponse response = inUse.execute(new HttpGet(uri));
+        try {
+            Thread.sleep(50);
+            registry.evictIdleConnections();
+            
+            assertEquals(registry.getMetrics().get("clientsEvicted"), 1L);
+            assertEquals(registry.getMetrics().get("clients"), 1);
+            assertNotSame(HttpTool.httpClientBuilder().uri("http://host1:8080").sharedPool(registry).build(), unused);
+            assertSame(HttpTool.httpClientBuilder().uri(uri).laxRedirect(true).sharedPool(registry).build(), inUse);
+        } finally {
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+    
+    @Test
+    public void testSharedClientHasLeaseAndDefaultSocketTimeouts() throws Exception {
+        HttpClient client = HttpTool.httpClientBuilder().sharedPool(registry).build();
+        assertEquals(client.getParams().getLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, 0), registry.getLeaseTimeout().toMilliseconds());
+        assertEquals(HttpConnectionParams.getSoTimeout(client.getParams()), (int) registry.getDefaultSocketTimeout().toMilliseconds());
+        
+        // an explicit socket timeout is kept
+        HttpClient client2 = HttpTool.httpClientBuilder().socketTimeout(Duration.seconds(5)).sharedPool(registry).build();
+        assertEquals(HttpConnectionParams.getSoTimeout(client2.getParams()), 5000);
+    }
+    
+    @Test
+    public void testRequestFailsWhenNoConnectionAvailableWithinLeaseTimeout() throws Exception {
+        registry.close();
+        registry = new HttpClientRegistry(1, 1, Duration.ONE_MINUTE, 1, 1, Duration.ONE_MINUTE, Duration.millis(100), Duration.ONE_MINUTE);
+        server = BetterMockWebServer.newInstanceLocalhost();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        server.play();
+        URI uri = server.getUrl("/").toURI();
+        
+        HttpClient client = HttpTool.httpClientBuilder().uri(uri).sharedPool(registry).build();
+        // response not consumed, so its connection is not returned to the pool
+        HttpResponse response = client.execute(new HttpGet(uri));
+        try {
+            client.execute(new HttpGet(uri));
+            fail("Expected ConnectionPoolTimeoutException");
+        } catch (ConnectionPoolTimeoutException e) {
+            // expected
+        } finally {
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+    
+    @Test
+    public void testExecutesAsyncRequestWithSharedClient() throws Exception {
+        server = BetterMockWebServer.newInstanceLocalhost();
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        server.play();
+        URI uri = server.getUrl("/").toURI();
+        
+        HttpClientBuilder builder = HttpTool.httpClientBuilder().uri(uri).credentials(new UsernamePasswordCredentials("me", "secret"));
+        HttpToolResponse response = registry.executeAsync(builder, new HttpGet(uri)).get(10, TimeUnit.SECONDS);
+        assertEquals(response.getResponseCode(), 200);
+        assertEquals(response.getContentAsString(), "ok");
+        
+        // credentials are given with each request, so do not need a separate client
+        HttpClientBuilder otherCreds = HttpTool.httpClientBuilder().uri(uri).credentials(new UsernamePasswordCredentials("me", "other"));
+        assertSame(registry.getAsyncClient(otherCreds), registry.getAsyncClient(builder));
+        assertEquals(registry.getMetrics().get("asyncClients"), 1);
+        assertEquals(registry.getMetrics().get("asyncRequestsActive"), 0L);
+    }
+    
+    @Test
+    public void testManyAsyncRequestsInProgressWithOneIoThread() throws Exception {
+        registry.close();
+        registry = new HttpClientRegistry(50, 50, Duration.ONE_MINUTE, 1);
+        UnresponsiveServer unresponsive = new UnresponsiveServer();
+        try {
+            HttpClientBuilder builder = HttpTool.httpClientBuilder().uri(unresponsive.getUri());
+            List<ListenableFuture<HttpToolResponse>> futures = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                futures.add(registry.executeAsync(builder, new HttpGet(unresponsive.getUri())));
+            }
+            
+            // all are connected at once, though none has a thread of its own
+            final UnresponsiveServer server = unresponsive;
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(server.getConnectionCount(), 20);
+                }});
+            assertEquals(registry.getMetrics().get("asyncRequestsActive"), 20L);
+            assertTrue(countThreads("brooklyn-http-async-io-") <= 1, "threads="+countThreads("brooklyn-http-async-io-"));
+            
+            for (ListenableFuture<HttpToolResponse> future : futures) {
+                future.cancel(true);
+            }
+            assertEquals(registry.getMetrics().get("asyncRequestsActive"), 0L);
+        } finally {
+            unresponsive.close();
+        }
+    }
+    
+    @Test
+    public void testRejectsAsyncRequestsBeyondMaxRequests() throws Exception {
+        registry.close();
+        registry = new HttpClientRegistry(2, 10, Duration.ONE_MINUTE, 1, 1, Duration.ONE_MINUTE);
+        UnresponsiveServer unresponsive = new UnresponsiveServer();
+        try {
+            HttpClientBuilder builder = HttpTool.httpClientBuilder().uri(unresponsive.getUri());
+            ListenableFuture<HttpToolResponse> inProgress = registry.executeAsync(builder, new HttpGet(unresponsive.getUri()));
+            ListenableFuture<HttpToolResponse> rejected = registry.executeAsync(builder, new HttpGet(unresponsive.getUri()));
+            
+            assertFailsWith(rejected, RejectedExecutionException.class);
+            assertEquals(registry.getMetrics().get("asyncRequestsRejected"), 1L);
+            assertFalse(inProgress.isDone());
+            inProgress.cancel(true);
+        } finally {
+            unresponsive.close();
+        }
+    }
+    
+    @Test
+    public void testAsyncRequestTimesOut() throws Exception {
+        UnresponsiveServer unresponsive = new UnresponsiveServer();
+        try {
+            HttpClientBuilder builder = HttpTool.httpClientBuilder().uri(unresponsive.getUri());
+            ListenableFuture<HttpToolResponse> future = registry.executeAsync(builder, new HttpGet(unresponsive.getUri()), Duration.millis(50));
+            
+            assertFailsWith(future, TimeoutException.class);
+            assertEquals(registry.getMetrics().get("asyncRequestsTimedOut"), 1L);
+            assertEquals(registry.getMetrics().get("asyncRequestsActive"), 0L);
+        } finally {
+            unresponsive.close();
+        }
+    }
+    
+    private static int countThreads(String namePrefix) {
+        int result = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(namePrefix)) result++;
+        }
+        return result;
+    }
+    
+    /** Accepts connections, but never responds. */
+    private static class UnresponsiveServer {
+        private final ServerSocket serverSocket;
+        private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+        private final Thread acceptor;
+        
+        UnresponsiveServer() throws IOException {
+            serverSocket = new ServerSocket(0, 100, InetAddress.getByName("127.0.0.1"));
+            acceptor = new Thread("unresponsive-http-server") {
+                public void run() {
+                    try {
+                        while (true) {
+                            sockets.add(serverSocket.accept());
+                        }
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }};
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+        URI getUri() {
+            return URI.create("http://127.0.0.1:"+serverSocket.getLocalPort()+"/");
+        }
+        int getConnectionCount() {
+            return sockets.size();
+        }
+        void close() throws IOException {
+            serverSocket.close();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+    
+    private static void assertFailsWith(ListenableFuture<?> future, Class<? extends Exception> type) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected "+type.getSimpleName());
+        } catch (ExecutionException e) {
+            assertTrue(type.isInstance(e.getCause()), "cause="+e.getCause());
+        }
+    }
+}
@@ -20,8 +20,11 @@ package brooklyn.util.internal;
 
 import static org.testng.Assert.assertEquals;
 
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -312,6 +315,34 @@ public class TypeCoercionsTest {
         TypeCoercions.coerce(new Object(), TypeToken.of(Integer.class));
     }
 
+    @Test
+    public void testCachedAdaptersDoNotKeepClassesLoaded() throws Exception {
+        URL classes = TypeCoercionsTest.class.getProtectionDomain().getCodeSource().getLocation();
+        URLClassLoader loader = new URLClassLoader(new URL[] {classes}, null);
+        Class<?> clazz = loader.loadClass(Unadaptable.class.getName());
+        Assert.assertNotSame(clazz, Unadaptable.class);
+        Object value = clazz.newInstance();
+        try {
+            TypeCoercions.coerce(value, Integer.class);
+            Assert.fail();
+        } catch (ClassCoercionException e) {
+            // expected; but the class is now in the adapter caches
+        }
+        
+        WeakReference<ClassLoader> loaderRef = new WeakReference<ClassLoader>(loader);
+        loader = null;
+        clazz = null;
+        value = null;
+        for (int i = 0; i < 20 && loaderRef.get() != null; i++) {
+            System.gc(); System.gc();
+            Thread.sleep(50);
+        }
+        Assert.assertNull(loaderRef.get(), "class loader not collected");
+    }
+
+    public static class Unadaptable {
+    }
+
     public static class WithAs {
         String value;
         public WithAs(Object x) { value = ""+x; }
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.internal.ssh;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class SshConnectionRegistryTest {
+
+    private SshConnectionRegistry registry;
+    private List<SshTool> created;
+    private Supplier<SshTool> connector;
+    private Map<String, Object> props;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        registry = new SshConnectionRegistry(2, Duration.ONE_MINUTE, Duration.ZERO, Duration.ONE_MINUTE);
+        created = Lists.newCopyOnWriteArrayList();
+        connector = new Supplier<SshTool>() {
+            public SshTool get() {
+                SshTool result = new RecordingSshTool(ImmutableMap.of());
+                result.connect();
+                created.add(result);
+                return result;
+            }};
+        props = ImmutableMap.<String, Object>of("user", "me", "host", "somehost", "password", "secret");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (registry != null) registry.close();
+    }
+
+    @Test
+    public void testReusesConnectionForSameProps() throws Exception {
+        SshTool tool1 = registry.exec(props, connector, Functions.<SshTool>identity(), false);
+        SshTool tool2 = registry.exec(ImmutableMap.copyOf(props), connector, Functions.<SshTool>identity(), false);
+        SshTool otherCreds = registry.exec(ImmutableMap.<String, Object>of("user", "me", "host", "somehost", "password", "other"),
+                connector, Functions.<SshTool>identity(), false);
+
+        assertSame(tool1, tool2);
+        assertNotSame(tool1, otherCreds);
+        assertEquals(created.size(), 2);
+
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("opens"), 2L);
+        assertEquals(metrics.get("reuses"), 1L);
+        assertEquals(metrics.get("idleConnections"), 2);
+        assertEquals(metrics.get("activeSessions"), 0);
+    }
+
+    @Test
+    public void testConcurrentUsersGetDifferentConnections() throws Exception {
+        SshTool outer = registry.exec(props, connector, new Function<SshTool, SshTool>() {
+            public SshTool apply(SshTool input) {
+                SshTool inner = registry.exec(props, connector, Functions.<SshTool>identity(), false);
+                assertNotSame(inner, input);
+                return input;
+            }}, false);
+
+        assertTrue(outer.isConnected());
+        assertEquals(created.size(), 2);
+        assertEquals(registry.getMetrics().get("idleConnections"), 2);
+    }
+
+    @Test
+    public void testDiscardsConnectionNoLongerConnected() throws Exception {
+        SshTool tool1 = registry.exec(props, connector, Functions.<SshTool>identity(), false);
+        tool1.disconnect();
+        SshTool tool2 = registry.exec(props, connector, Functions.<SshTool>identity(), false);
+
+        assertNotSame(tool1, tool2);
+        assertEquals(registry.getMetrics().get("notViableDiscarded"), 1L);
+        assertEquals(registry.getMetrics().get("reuses"), 0L);
+    }
+
+    @Test
+    public void testCloseAfterUseDisconnects() throws Exception {
+        SshTool tool1 = registry.exec(props, connector, Functions.<SshTool>identity(), false);
+        SshTool tool2 = registry.exec(props, connector, new Function<SshTool, SshTool>() {
+            public SshTool apply(SshTool input) {
+                // the idle connection is in use, so another is opened
+                SshTool inner = registry.exec(props, connector, Functions.<SshTool>identity(), true);
+                assertNotSame(inner, input);
+                return input;
+            }}, false);
+
+        assertSame(tool1, tool2);
+        assertFalse(created.get(1).isConnected());
+        assertEquals(registry.getMetrics().get("idleConnections"), 1);
+    }
+
+    @Test
+    public void testClosesIdleConnections() throws Exception {
+        registry.close();
+        registry = new SshConnectionRegistry(2, Duration.ZERO, Duration.ZERO, Duration.ONE_MINUTE);
+
+        SshTool tool = registry.exec(props, connector, Functions.<SshTool>identity(), false);
+        assertTrue(tool.isConnected());
+        registry.closeIdleConnections();
+
+        assertFalse(tool.isConnected());
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("idleConnections"), 0);
+        assertEquals(metrics.get("idleConnectionKeys"), 0);
+        assertEquals(metrics.get("idleConnectionsClosed"), 1L);
+    }
+
+    @Test
+    public void testLimitsSessionsPerHost() throws Exception {
+        registry.close();
+        registry = new SshConnectionRegistry(1, Duration.ONE_MINUTE, Duration.ZERO, Duration.millis(10));
+
+        // different credentials, but the same host: the inner call waits for the limit, then proceeds anyway
+        registry.exec(props, connector, new Function<SshTool, Void>() {
+            public Void apply(SshTool input) {
+                registry.exec(ImmutableMap.<String, Object>of("user", "other", "host", "somehost"), connector, Functions.<SshTool>identity(), false);
+                return null;
+            }}, false);
+        registry.exec(ImmutableMap.<String, Object>of("user", "me", "host", "otherhost"), connector, Functions.<SshTool>identity(), false);
+
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("sessionLimitWaits"), 1L);
+        assertEquals(metrics.get("sessionLimitExceeded"), 1L);
+        assertEquals(metrics.get("opens"), 3L);
+    }
+
+    @Test
+    public void testNoSessionLimitByDefault() throws Exception {
+        registry.close();
+        registry = new SshConnectionRegistry();
+        assertEquals(registry.getMaxSessionsPerHost(), 0);
+
+        final int depth = 10;
+        registry.exec(props, connector, new Function<SshTool, Void>() {
+            int count = 1;
+            public Void apply(SshTool input) {
+                if (count++ < depth) registry.exec(props, connector, this, false);
+                return null;
+            }}, false);
+
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("opens"), (long) depth);
+        assertEquals(metrics.get("sessionLimitWaits"), 0L);
+        assertEquals(metrics.get("idleConnections"), depth);
+    }
+
+    @Test
+    public void testClosesIdleConnectionsForProps() throws Exception {
+        Map<String, Object> otherProps = ImmutableMap.<String, Object>of("user", "me", "host", "otherhost");
+        SshTool tool = registry.exec(props, connector, Functions.<SshTool>identity(), false);
+        SshTool other = registry.exec(otherProps, connector, Functions.<SshTool>identity(), false);
+
+        registry.closeIdleConnections(ImmutableMap.copyOf(props));
+
+        assertFalse(tool.isConnected());
+        assertTrue(other.isConnected());
+        assertEquals(registry.getMetrics().get("idleConnections"), 1);
+    }
+
+    @Test
+    public void testRecordsConnectFailures() throws Exception {
+        Supplier<SshTool> failingConnector = new Supplier<SshTool>() {
+            public SshTool get() {
+                throw new IllegalStateException("simulated failure");
+            }};
+        try {
+            registry.exec(props, failingConnector, Functions.<SshTool>identity(), false);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("failures"), 1L);
+        assertEquals(metrics.get("opens"), 0L);
+        assertEquals(metrics.get("activeSessions"), 0);
+    }
+}
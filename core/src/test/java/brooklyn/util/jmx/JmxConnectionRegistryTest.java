@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.jmx;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServerFactory;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.util.jmx.JmxConnectionRegistry.Lease;
+import brooklyn.util.time.Duration;
+
+public class JmxConnectionRegistryTest {
+
+    private JmxConnectionRegistry registry;
+    private JMXConnectorServer server;
+    private String url;
+    private AtomicInteger connectCount;
+    private Callable<JMXConnector> connectorFactory;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        registry = new JmxConnectionRegistry(Duration.ONE_MINUTE, Duration.ONE_MINUTE, Duration.ONE_MINUTE, Duration.ONE_MINUTE);
+
+        // an RMI connector without a registry; the returned address embeds the stub
+        server = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://localhost"), null, MBeanServerFactory.newMBeanServer());
+        server.start();
+        url = server.getAddress().toString();
+
+        connectCount = new AtomicInteger();
+        connectorFactory = new Callable<JMXConnector>() {
+            public JMXConnector call() throws IOException {
+                connectCount.incrementAndGet();
+                return JMXConnectorFactory.connect(server.getAddress());
+            }};
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (registry != null) registry.close();
+        if (server != null) server.stop();
+    }
+
+    @Test
+    public void testSharesConnectionForSameUrlAndCredentials() throws Exception {
+        Lease lease1 = registry.acquire(url, "me", "secret", connectorFactory);
+        Lease lease2 = registry.acquire(url, "me", "secret", connectorFactory);
+        Lease otherCreds = registry.acquire(url, "me", "other", connectorFactory);
+
+        assertSame(lease1.getConnection(), lease2.getConnection());
+        assertNotSame(lease1.getConnection(), otherCreds.getConnection());
+        assertEquals(connectCount.get(), 2);
+
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("openConnections"), 2);
+        assertEquals(metrics.get("leases"), 3);
+        assertEquals(metrics.get("connectionsCreated"), 2L);
+
+        lease1.release();
+        lease1.release();
+        assertEquals(registry.getMetrics().get("leases"), 2);
+    }
+
+    @Test
+    public void testClosesIdleConnectionsOnlyWhenNotLeased() throws Exception {
+        registry.close();
+        registry = new JmxConnectionRegistry(Duration.ZERO, Duration.ONE_MINUTE, Duration.ONE_MINUTE);
+
+        Lease lease1 = registry.acquire(url, null, null, connectorFactory);
+        Lease lease2 = registry.acquire(url, null, null, connectorFactory);
+        lease1.release();
+        registry.closeIdleConnections();
+        assertEquals(registry.getMetrics().get("openConnections"), 1);
+        lease2.getConnection().getMBeanCount();
+
+        lease2.release();
+        registry.closeIdleConnections();
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("openConnections"), 0);
+        assertEquals(metrics.get("idleConnectionsClosed"), 1L);
+
+        Lease lease3 = registry.acquire(url, null, null, connectorFactory);
+        lease3.getConnection().getMBeanCount();
+        assertEquals(connectCount.get(), 2);
+        assertEquals(registry.getMetrics().get("reconnects"), 0L);
+    }
+
+    @Test
+    public void testInvalidateReconnectsOnce() throws Exception {
+        Lease lease1 = registry.acquire(url, null, null, connectorFactory);
+        Lease lease2 = registry.acquire(url, null, null, connectorFactory);
+
+        lease1.invalidate();
+        lease1.release();
+        Lease lease3 = registry.acquire(url, null, null, connectorFactory);
+
+        // a second caller finding the old connection broken must not close the new one
+        lease2.invalidate();
+        lease2.release();
+        Lease lease4 = registry.acquire(url, null, null, connectorFactory);
+
+        assertSame(lease3.getConnection(), lease4.getConnection());
+        lease4.getConnection().getMBeanCount();
+        assertEquals(connectCount.get(), 2);
+
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("reconnects"), 1L);
+        assertEquals(metrics.get("invalidations"), 1L);
+    }
+
+    @Test
+    public void testHealthCheckDetectsBrokenConnection() throws Exception {
+        registry.close();
+        registry = new JmxConnectionRegistry(Duration.ONE_MINUTE, Duration.ZERO, Duration.ONE_MINUTE);
+
+        Lease lease1 = registry.acquire(url, null, null, connectorFactory);
+        Lease lease2 = registry.acquire(url, null, null, connectorFactory);
+        assertSame(lease1.getConnection(), lease2.getConnection());
+
+        server.stop();
+        server = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://localhost"), null, MBeanServerFactory.newMBeanServer());
+        server.start();
+
+        // same key, but the old connection fails its check so the factory is used to reach the new server
+        Lease lease3 = registry.acquire(url, null, null, connectorFactory);
+        assertNotSame(lease3.getConnection(), lease1.getConnection());
+        lease3.getConnection().getMBeanCount();
+        assertEquals(registry.getMetrics().get("healthCheckFailures"), 1L);
+        assertEquals(registry.getMetrics().get("reconnects"), 1L);
+    }
+
+    @Test
+    public void testBacksOffAfterReconnectFailure() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final boolean[] failing = new boolean[1];
+        Callable<JMXConnector> flakyFactory = new Callable<JMXConnector>() {
+            public JMXConnector call() throws Exception {
+                attempts.incrementAndGet();
+                if (failing[0]) throw new IOException("simulated failure");
+                return connectorFactory.call();
+            }};
+
+        Lease lease = registry.acquire(url, null, null, flakyFactory);
+        lease.invalidate();
+        lease.release();
+
+        failing[0] = true;
+        for (int i = 0; i < 2; i++) {
+            try {
+                registry.acquire(url, null, null, flakyFactory);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        // the second acquire does not try again, as within the backoff period
+        assertEquals(attempts.get(), 2);
+        Map<String, Object> metrics = registry.getMetrics();
+        assertEquals(metrics.get("connectFailures"), 1L);
+        assertEquals(metrics.get("leases"), 0);
+    }
+}
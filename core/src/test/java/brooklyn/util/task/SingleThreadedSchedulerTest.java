@@ -20,9 +20,11 @@ package brooklyn.util.task;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -39,9 +41,12 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.management.Task;
 import brooklyn.test.Asserts;
 import brooklyn.util.collections.MutableMap;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Callables;
 
 public class SingleThreadedSchedulerTest {
@@ -181,6 +186,115 @@ public class SingleThreadedSchedulerTest {
         assertEquals(future.get(), (Integer)123);
     }
     
+    @Test
+    public void testDropOldestWhenFull() throws Exception {
+        em.setTaskSchedulerForTag("bounded", new SingleThreadedScheduler(2, SingleThreadedScheduler.OverflowPolicy.DROP_OLDEST));
+        final CountDownLatch latch = new CountDownLatch(1);
+        em.submit(MutableMap.of("tag", "bounded"), newLatchAwaiter(latch));
+        
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            tasks.add(em.submit(MutableMap.of("tag", "bounded", "coalescingKey", "k"+i), newAdder(result, i)));
+        }
+        latch.countDown();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(result, ImmutableList.of(3, 4));
+            }});
+        for (int i = 0; i < 3; i++) {
+            assertTrue(tasks.get(i).isCancelled(), "task "+i);
+        }
+        Map<String, Object> metrics = ((SingleThreadedScheduler)em.getTaskSchedulerForTag("bounded")).getMetrics();
+        assertEquals(metrics.get("dropped"), 3L);
+        assertEquals(metrics.get("maxQueueSizeSeen"), 2);
+    }
+    
+    @Test
+    public void testDropOldestNeverDropsSubmissionsWithoutKey() throws Exception {
+        em.setTaskSchedulerForTag("bounded", new SingleThreadedScheduler(2, SingleThreadedScheduler.OverflowPolicy.DROP_OLDEST));
+        final CountDownLatch latch = new CountDownLatch(1);
+        em.submit(MutableMap.of("tag", "bounded"), newLatchAwaiter(latch));
+        
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        em.submit(MutableMap.of("tag", "bounded"), newAdder(result, 1));
+        em.submit(MutableMap.of("tag", "bounded", "coalescingKey", "a"), newAdder(result, 2));
+        em.submit(MutableMap.of("tag", "bounded"), newAdder(result, 3));
+        // nothing left which can be dropped, so accepted beyond the capacity
+        em.submit(MutableMap.of("tag", "bounded"), newAdder(result, 4));
+        latch.countDown();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(result, ImmutableList.of(1, 3, 4));
+            }});
+        Map<String, Object> metrics = ((SingleThreadedScheduler)em.getTaskSchedulerForTag("bounded")).getMetrics();
+        assertEquals(metrics.get("dropped"), 1L);
+        assertEquals(metrics.get("maxQueueSizeSeen"), 3);
+    }
+    
+    @Test
+    public void testCoalesceWhenFull() throws Exception {
+        em.setTaskSchedulerForTag("bounded", new SingleThreadedScheduler(2, SingleThreadedScheduler.OverflowPolicy.COALESCE));
+        final CountDownLatch latch = new CountDownLatch(1);
+        em.submit(MutableMap.of("tag", "bounded"), newLatchAwaiter(latch));
+        
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        em.submit(MutableMap.of("tag", "bounded", "coalescingKey", "a"), newAdder(result, 1));
+        em.submit(MutableMap.of("tag", "bounded", "coalescingKey", "b"), newAdder(result, 2));
+        em.submit(MutableMap.of("tag", "bounded", "coalescingKey", "a"), newAdder(result, 3));
+        // no key, so cannot coalesce; accepted beyond the capacity
+        em.submit(MutableMap.of("tag", "bounded"), newAdder(result, 4));
+        latch.countDown();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(result, ImmutableList.of(3, 2, 4));
+            }});
+        assertEquals(((SingleThreadedScheduler)em.getTaskSchedulerForTag("bounded")).getMetrics().get("coalesced"), 1L);
+    }
+    
+    @Test
+    public void testBlockWhenFull() throws Exception {
+        em.setTaskSchedulerForTag("bounded", new SingleThreadedScheduler(1, SingleThreadedScheduler.OverflowPolicy.BLOCK));
+        final CountDownLatch latch = new CountDownLatch(1);
+        em.submit(MutableMap.of("tag", "bounded"), newLatchAwaiter(latch));
+        
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        em.submit(MutableMap.of("tag", "bounded"), newAdder(result, 1));
+        final AtomicBoolean submitted = new AtomicBoolean();
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                em.submit(MutableMap.of("tag", "bounded"), newAdder(result, 2));
+                submitted.set(true);
+            }});
+        thread.start();
+        try {
+            Asserts.succeedsContinually(MutableMap.of("timeout", 100), new Runnable() {
+                @Override public void run() {
+                    assertFalse(submitted.get());
+                }});
+            latch.countDown();
+            Asserts.succeedsEventually(new Runnable() {
+                @Override public void run() {
+                    assertTrue(submitted.get());
+                    assertEquals(result, ImmutableList.of(1, 2));
+                }});
+        } finally {
+            latch.countDown();
+            thread.interrupt();
+        }
+    }
+    
+    private Runnable newAdder(final List<Integer> result, final int val) {
+        return new Runnable() {
+            public void run() {
+                result.add(val);
+            }
+        };
+    }
+    
     private Callable<Void> newLatchAwaiter(final CountDownLatch latch) {
         return new Callable<Void>() {
             public Void call() throws Exception {
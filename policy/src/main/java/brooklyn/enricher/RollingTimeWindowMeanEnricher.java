@@ -18,9 +18,6 @@
  */
 package brooklyn.enricher;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-
 import com.google.common.base.Preconditions;
 
 import brooklyn.catalog.Catalog;
@@ -29,6 +26,7 @@ import brooklyn.entity.Entity;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
+import brooklyn.util.collections.SlidingWindow;
 import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.javalang.JavaClassNames;
 import brooklyn.util.time.Duration;
@@ -69,8 +67,7 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
         }
     }
     
-    private final LinkedList<T> values = new LinkedList<T>();
-    private final LinkedList<Long> timestamps = new LinkedList<Long>();
+    private final SlidingWindow values = new SlidingWindow();
     volatile ConfidenceQualifiedNumber lastAverage = new ConfidenceQualifiedNumber(0d,0d);
     
     @SetFromFlag
@@ -101,9 +98,11 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
     }
     
     public void onEvent(SensorEvent<T> event, long eventTime) {
-        values.addLast(event.getValue());
-        timestamps.addLast(eventTime);
-        pruneValues(eventTime);
+        T val = event.getValue();
+        synchronized (this) {
+            values.add(eventTime, (val != null) ? val.doubleValue() : Double.NaN);
+            pruneValues(eventTime);
+        }
         entity.setAttribute((AttributeSensor<Double>)target, getAverage(eventTime).value); //TODO this can potentially go stale... maybe we need to timestamp as well?
     }
     
@@ -111,19 +110,19 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
         return getAverage(System.currentTimeMillis());
     }
     
-    public ConfidenceQualifiedNumber getAverage(long now) {
+    public synchronized ConfidenceQualifiedNumber getAverage(long now) {
         pruneValues(now);
-        if (timestamps.isEmpty()) {
+        if (values.isEmpty()) {
             return lastAverage = new ConfidenceQualifiedNumber(lastAverage.value, 0.0d);
         }
 
         // XXX grkvlt - see email to development list
 
         
-        long lastTimestamp = timestamps.get(timestamps.size()-1);
+        long lastTimestamp = values.getTimestamp(values.size()-1);
         Double confidence = ((double)(timePeriod.toMilliseconds() - (now - lastTimestamp))) / timePeriod.toMilliseconds();
         if (confidence <= 0.0d) {
-            double lastValue = values.get(values.size()-1).doubleValue();
+            double lastValue = values.getLatestValue();
             return lastAverage = new ConfidenceQualifiedNumber(lastValue, 0.0d);
         }
         
@@ -131,15 +130,13 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
         long end;
         double weightedAverage = 0.0d;
         
-        Iterator<T> valuesIter = values.iterator();
-        Iterator<Long> timestampsIter = timestamps.iterator();
-        while (valuesIter.hasNext()) {
-            // Ignores null and out-of-date values (and also values that are received out-of-order, but that shouldn't happen!)
-            Number val = valuesIter.next();
-            Long timestamp = timestampsIter.next();
-            if (val!=null && timestamp >= start) {
+        for (int i = 0; i < values.size(); i++) {
+            // Ignores null and out-of-date values (values received out-of-order are treated as arriving with the previous one)
+            double val = values.getValue(i);
+            long timestamp = values.getTimestamp(i);
+            if (!Double.isNaN(val) && timestamp >= start) {
                 end = timestamp;
-                weightedAverage += ((end - start) / (confidence * timePeriod.toMilliseconds())) * val.doubleValue();
+                weightedAverage += ((end - start) / (confidence * timePeriod.toMilliseconds())) * val;
                 start = timestamp;
             }
         }
@@ -151,9 +148,7 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
      * Discards out-of-date values, but keeps at least one value.
      */
     private void pruneValues(long now) {
-        while(timestamps.size() > 1 && timestamps.get(0) < (now - timePeriod.toMilliseconds())) {
-            timestamps.removeFirst();
-            values.removeFirst();
-        }
+        int expired = values.indexOfFirstAtOrAfter(now - timePeriod.toMilliseconds());
+        values.removeOldest(Math.min(expired, values.size()-1));
     }
 }
@@ -18,17 +18,13 @@
  */
 package brooklyn.policy.autoscaling;
 
-import java.util.List;
-
-import brooklyn.util.collections.MutableMap;
-import brooklyn.util.collections.TimeWindowedList;
-import brooklyn.util.collections.TimestampedValue;
+import brooklyn.util.collections.SlidingWindow;
 import brooklyn.util.time.Duration;
 
 import com.google.common.base.Objects;
 
 /**
- * Using a {@link TimeWindowedList}, tracks the recent history of values to allow a summary of 
+ * Using a {@link SlidingWindow}, tracks the recent history of values to allow a summary of 
  * those values to be obtained. 
  *   
  * @author aled
@@ -66,18 +62,21 @@ public class SizeHistory {
         }
     }
     
-    private final TimeWindowedList<Number> recentDesiredResizes;
+    private final SlidingWindow recentDesiredResizes = new SlidingWindow();
+    private volatile Duration windowSize;
     
     public SizeHistory(long windowSize) {
-        recentDesiredResizes = new TimeWindowedList<Number>(MutableMap.of("timePeriod", windowSize, "minExpiredVals", 1));
+        this.windowSize = Duration.millis(windowSize);
     }
 
-    public void add(final int val) {
-        recentDesiredResizes.add(val);
+    public synchronized void add(final int val) {
+        long now = System.currentTimeMillis();
+        recentDesiredResizes.add(now, val);
+        pruneValues(now);
     }
 
     public void setWindowSize(Duration newWindowSize) {
-        recentDesiredResizes.setTimePeriod(newWindowSize);
+        windowSize = newWindowSize;
     }
     
     /**
@@ -90,14 +89,27 @@ public class SizeHistory {
      *   <li>"stable for shrinking" means that since that low value, there have not been any lower values
      * </ul>
      */
-    public WindowSummary summarizeWindow(Duration windowSize) {
+    public synchronized WindowSummary summarizeWindow(Duration windowSize) {
         long now = System.currentTimeMillis();
-        List<TimestampedValue<Number>> windowVals = recentDesiredResizes.getValuesInWindow(now, windowSize);
+        long epoch = now - windowSize.toMilliseconds();
         
-        Number latestObj = latestInWindow(windowVals);
-        long latest = (latestObj == null) ? -1: latestObj.longValue();
-        long max = maxInWindow(windowVals, windowSize).longValue();
-        long min = minInWindow(windowVals, windowSize).longValue();
+        // include the most recent value from before the window, as the "initial" value
+        int firstInWindow = recentDesiredResizes.indexOfFirstAtOrAfter(epoch);
+        int from = Math.max(0, firstInWindow - 1);
+        
+        long latest;
+        long max;
+        long min;
+        if (recentDesiredResizes.isEmpty()) {
+            latest = -1;
+            max = Integer.MAX_VALUE;
+            min = Integer.MIN_VALUE;
+        } else {
+            latest = (long) recentDesiredResizes.getLatestValue();
+            boolean windowCovered = recentDesiredResizes.getTimestamp(from) <= epoch;
+            max = windowCovered ? (long) recentDesiredResizes.getMax(from) : Integer.MAX_VALUE;
+            min = windowCovered ? (long) recentDesiredResizes.getMin(from) : Integer.MIN_VALUE;
+        }
         
         // TODO Could do more sophisticated "stable" check; this is the easiest code - correct but not most efficient
         // in terms of the caller having to schedule additional stability checks.
@@ -107,56 +119,12 @@ public class SizeHistory {
     }
     
     /**
-     * If the entire time-window is not covered by the given values, then returns Integer.MAX_VALUE.
-     */
-    private <T extends Number> T maxInWindow(List<TimestampedValue<T>> vals, Duration timeWindow) {
-        // TODO bad casting from Integer default result to T
-        long now = System.currentTimeMillis();
-        long epoch = now - timeWindow.toMilliseconds();
-        T result = null;
-        double resultAsDouble = Integer.MAX_VALUE;
-        for (TimestampedValue<T> val : vals) {
-            T valAsNum = val.getValue();
-            double valAsDouble = (valAsNum != null) ? valAsNum.doubleValue() : 0;
-            if (result == null && val.getTimestamp() > epoch) {
-                result = (T) Integer.valueOf(Integer.MAX_VALUE);
-                resultAsDouble = result.doubleValue();
-            }
-            if (result == null || (valAsNum != null && valAsDouble > resultAsDouble)) {
-                result = valAsNum;
-                resultAsDouble = valAsDouble;
-            }
-        }
-        return (T) (result != null ? result : Integer.MAX_VALUE);
-    }
-    
-    /**
-     * If the entire time-window is not covered by the given values, then returns Integer.MIN_VALUE
-     */
-    private <T extends Number> T minInWindow(List<TimestampedValue<T>> vals, Duration timeWindow) {
-        long now = System.currentTimeMillis();
-        long epoch = now - timeWindow.toMilliseconds();
-        T result = null;
-        double resultAsDouble = Integer.MIN_VALUE;
-        for (TimestampedValue<T> val : vals) {
-            T valAsNum = val.getValue();
-            double valAsDouble = (valAsNum != null) ? valAsNum.doubleValue() : 0;
-            if (result == null && val.getTimestamp() > epoch) {
-                result = (T) Integer.valueOf(Integer.MIN_VALUE);
-                resultAsDouble = result.doubleValue();
-            }
-            if (result == null || (val.getValue() != null && valAsDouble < resultAsDouble)) {
-                result = valAsNum;
-                resultAsDouble = valAsDouble;
-            }
-        }
-        return (T) (result != null ? result : Integer.MIN_VALUE);
-    }
-
-    /**
-     * @return null if empty, or the most recent value
+     * Discards values older than the window, except for the most recent of those.
      */
-    private <T extends Number> T latestInWindow(List<TimestampedValue<T>> vals) {
-        return vals.isEmpty() ? null : vals.get(vals.size()-1).getValue();
+    private void pruneValues(long now) {
+        int expired = windowSize.equals(Duration.ZERO) 
+                ? recentDesiredResizes.size() 
+                : recentDesiredResizes.indexOfFirstAtOrAfter(now - windowSize.toMilliseconds());
+        recentDesiredResizes.removeOldest(expired - 1);
     }
 }
@@ -93,6 +93,9 @@ public interface SoftwareProcess extends Entity, Startable {
     @SetFromFlag("downloadAddonUrls")
     AttributeSensorAndConfigKey<Map<String,String>,Map<String,String>> DOWNLOAD_ADDON_URLS = Attributes.DOWNLOAD_ADDON_URLS;
 
+    @SetFromFlag("downloadCachePush")
+    ConfigKey<Boolean> DOWNLOAD_CACHE_PUSH = BrooklynConfigKeys.DOWNLOAD_CACHE_PUSH;
+
     @SetFromFlag("installLabel")
     ConfigKey<String> INSTALL_UNIQUE_LABEL = BrooklynConfigKeys.INSTALL_UNIQUE_LABEL;
 
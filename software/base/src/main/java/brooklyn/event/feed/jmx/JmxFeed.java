@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.Notification;
 import javax.management.NotificationFilter;
@@ -43,11 +44,15 @@ import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
 import brooklyn.event.feed.PollHandler;
 import brooklyn.event.feed.Poller;
+import brooklyn.util.collections.MutableMap;
 import brooklyn.util.time.Duration;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
@@ -179,6 +184,8 @@ public class JmxFeed extends AbstractFeed {
     }
 
     private final SetMultimap<ObjectName, NotificationListener> notificationListeners = HashMultimap.create();
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong roundTripNanos = new AtomicLong();
 
     /**
      * For rebind; do not call directly; use builder
@@ -297,9 +304,21 @@ public class JmxFeed extends AbstractFeed {
             });
         }
         
-        // Setup polling of sensors
-        for (final String jmxAttributeName : attributePolls.keys()) {
-            registerAttributePoller(attributePolls.get(jmxAttributeName));
+        // Setup polling of sensors, with one request for all attributes of each MBean which are polled at the same period
+        Map<List<Object>, Map<String, Set<JmxAttributePollConfig<?>>>> attributePollsByObjectNameAndPeriod = Maps.newLinkedHashMap();
+        for (final String objectNameAndAttribute : attributePolls.keySet()) {
+            Set<JmxAttributePollConfig<?>> configs = attributePolls.get(objectNameAndAttribute);
+            JmxAttributePollConfig<?> config = Iterables.get(configs, 0);
+            List<Object> key = ImmutableList.<Object>of(config.getObjectName(), getMinPeriod(configs));
+            Map<String, Set<JmxAttributePollConfig<?>>> configsByAttribute = attributePollsByObjectNameAndPeriod.get(key);
+            if (configsByAttribute == null) {
+                configsByAttribute = Maps.newLinkedHashMap();
+                attributePollsByObjectNameAndPeriod.put(key, configsByAttribute);
+            }
+            configsByAttribute.put(config.getAttributeName(), configs);
+        }
+        for (Map.Entry<List<Object>, Map<String, Set<JmxAttributePollConfig<?>>>> entry : attributePollsByObjectNameAndPeriod.entrySet()) {
+            registerAttributesPoller((ObjectName) entry.getKey().get(0), (Long) entry.getKey().get(1), entry.getValue());
         }
         
         // Setup polling of operations
@@ -347,40 +366,129 @@ public class JmxFeed extends AbstractFeed {
                 new Callable<Object>() {
                     public Object call() throws Exception {
                         if (log.isDebugEnabled()) log.debug("jmx operation polling for {} sensors at {} -> {}", new Object[] {getEntity(), getJmxUri(), operationName});
-                        if (signature.size() == params.size()) {
-                            return getHelper().operation(objectName, operationName, signature, params);
-                        } else {
-                            return getHelper().operation(objectName, operationName, params.toArray());
+                        long startTime = System.nanoTime();
+                        try {
+                            if (signature.size() == params.size()) {
+                                return getHelper().operation(objectName, operationName, signature, params);
+                            } else {
+                                return getHelper().operation(objectName, operationName, params.toArray());
+                            }
+                        } finally {
+                            recordRoundTrip(startTime);
                         }
                     }
                 }, 
                 new DelegatingPollHandler<Object>(handlers), minPeriod);
     }
 
-    /**
-     * Registers to poll a jmx-attribute for an ObjectName, where all the given configs are for that same ObjectName + attribute.
-     */
-    private void registerAttributePoller(Set<JmxAttributePollConfig<?>> configs) {
-        Set<AttributePollHandler<? super Object>> handlers = Sets.newLinkedHashSet();
+    private static long getMinPeriod(Set<JmxAttributePollConfig<?>> configs) {
         long minPeriod = Integer.MAX_VALUE;
-        
-        final ObjectName objectName = Iterables.get(configs, 0).getObjectName();
-        final String jmxAttributeName = Iterables.get(configs, 0).getAttributeName();
-        
         for (JmxAttributePollConfig<?> config : configs) {
-            handlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
             if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
         }
+        return minPeriod;
+    }
+
+    /**
+     * Registers to poll jmx-attributes for an ObjectName, where the given configs (keyed by attribute name) are all 
+     * for that same ObjectName and period. The attributes are read in one request, with each attribute which
+     * could not be read then being requested on its own (so that its handlers are given the reason).
+     */
+    private void registerAttributesPoller(final ObjectName objectName, long period, Map<String, Set<JmxAttributePollConfig<?>>> configsByAttribute) {
+        final Map<String, PollHandler<Object>> handlersByAttribute = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Set<JmxAttributePollConfig<?>>> entry : configsByAttribute.entrySet()) {
+            Set<AttributePollHandler<? super Object>> handlers = Sets.newLinkedHashSet();
+            for (JmxAttributePollConfig<?> config : entry.getValue()) {
+                handlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
+            }
+            handlersByAttribute.put(entry.getKey(), new DelegatingPollHandler<Object>(handlers));
+        }
+        final Set<String> jmxAttributeNames = ImmutableSet.copyOf(handlersByAttribute.keySet());
         
         // TODO Not good calling this holding the synchronization lock
         getPoller().scheduleAtFixedRate(
                 new Callable<Object>() {
                     public Object call() throws Exception {
-                        if (log.isTraceEnabled()) log.trace("jmx attribute polling for {} sensors at {} -> {}", new Object[] {getEntity(), getJmxUri(), jmxAttributeName});
-                        return getHelper().getAttribute(objectName, jmxAttributeName);
+                        if (log.isTraceEnabled()) log.trace("jmx attribute polling for {} sensors at {} -> {}", new Object[] {getEntity(), getJmxUri(), jmxAttributeNames});
+                        long startTime = System.nanoTime();
+                        try {
+                            return getHelper().getAttributes(objectName, jmxAttributeNames);
+                        } finally {
+                            recordRoundTrip(startTime);
+                        }
                     }
                 }, 
-                new DelegatingPollHandler<Object>(handlers), minPeriod);
+                new PollHandler<Object>() {
+                    @Override public boolean checkSuccess(Object val) {
+                        return true;
+                    }
+                    @Override public void onSuccess(Object val) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> vals = (Map<String, Object>) val;
+                        for (Map.Entry<String, PollHandler<Object>> entry : handlersByAttribute.entrySet()) {
+                            onAttributeResult(objectName, entry.getKey(), vals, entry.getValue());
+                        }
+                    }
+                    @Override public void onFailure(Object val) {
+                        onSuccess(val);
+                    }
+                    @Override public void onException(Exception exception) {
+                        for (PollHandler<Object> handler : handlersByAttribute.values()) {
+                            handler.onException(exception);
+                        }
+                    }
+                    @Override public String getDescription() {
+                        return "jmx attributes "+objectName.getCanonicalName()+" "+jmxAttributeNames;
+                    }
+                }, 
+                period);
+    }
+
+    /**
+     * Passes the value of the attribute to its handler, as read in the given values
+     * (which are null if the MBean was not found, so all values are null as for {@link JmxHelper#getAttribute(ObjectName, String)}).
+     */
+    private void onAttributeResult(ObjectName objectName, String jmxAttributeName, Map<String, Object> vals, PollHandler<Object> handler) {
+        Object val;
+        if (vals == null || vals.containsKey(jmxAttributeName)) {
+            val = (vals == null) ? null : vals.get(jmxAttributeName);
+        } else {
+            long startTime = System.nanoTime();
+            try {
+                val = getHelper().getAttribute(objectName, jmxAttributeName);
+            } catch (Exception e) {
+                handler.onException(e);
+                return;
+            } finally {
+                recordRoundTrip(startTime);
+            }
+        }
+        if (handler.checkSuccess(val)) {
+            handler.onSuccess(val);
+        } else {
+            handler.onFailure(val);
+        }
+    }
+
+    private void recordRoundTrip(long startTimeNanos) {
+        roundTrips.incrementAndGet();
+        roundTripNanos.addAndGet(System.nanoTime() - startTimeNanos);
+    }
+
+    /**
+     * Adds to {@link AbstractFeed#getPollMetrics()} the number of JMX requests made when polling attributes and operations,
+     * and their total and mean latency.
+     */
+    @Override
+    public Map<String, Object> getPollMetrics() {
+        long count = roundTrips.get();
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(roundTripNanos.get());
+        return MutableMap.<String, Object>builder()
+                .putAll(super.getPollMetrics())
+                .put("jmxRoundTrips", count)
+                .put("jmxRoundTripTotalTimeMillis", totalMillis)
+                .put("jmxRoundTripMeanTimeMillis", (count == 0) ? 0d : ((double)totalMillis)/count)
+                .build();
     }
 
     /**
@@ -27,16 +27,19 @@ import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -63,18 +66,25 @@ import javax.net.ssl.TrustManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.BrooklynServerConfig;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.entity.java.JmxSupport;
 import brooklyn.entity.java.UsesJmx;
+import brooklyn.management.ManagementContext;
+import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.management.internal.NonDeploymentManagementContext;
 import brooklyn.util.crypto.SecureKeys;
 import brooklyn.util.crypto.SslTrustUtils;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.exceptions.RuntimeInterruptedException;
+import brooklyn.util.jmx.JmxConnectionRegistry;
 import brooklyn.util.jmx.jmxmp.JmxmpAgent;
 import brooklyn.util.repeat.Repeater;
 import brooklyn.util.time.Duration;
 import brooklyn.util.time.Time;
 
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
@@ -155,12 +165,19 @@ public class JmxHelper {
 
     private volatile transient JMXConnector connector;
     private volatile transient MBeanServerConnection connection;
+    // set instead of the connector when using a connection shared via the management context
+    private volatile transient JmxConnectionRegistry.Lease lease;
     private transient boolean triedConnecting;
     private transient boolean failedReconnecting;
     private transient long failedReconnectingTime;
     private int minTimeBetweenReconnectAttempts = 1000;
     private final AtomicBoolean terminated = new AtomicBoolean();
     
+    // notification listeners are registered on the connection, so are re-registered whenever we reconnect;
+    // a helper with listeners uses its own connection, as a shared one can be replaced by another of its users
+    private final Set<NotificationListenerRegistration> notificationListeners = new CopyOnWriteArraySet<NotificationListenerRegistration>();
+    private volatile boolean dedicatedConnection = false;
+    
     // Tracks the MBeans we have failed to find for this JmsHelper's connection URL (so can log just once for each)
     private final Set<ObjectName> notFoundMBeans;
 
@@ -245,6 +262,9 @@ public class JmxHelper {
     }
     
     public synchronized void reconnect() throws IOException {
+        // the shared connection is presumably broken, so make sure others sharing it also get a new one
+        JmxConnectionRegistry.Lease oldLease = lease;
+        if (oldLease != null) oldLease.invalidate();
         disconnect();
 
         try {
@@ -263,27 +283,23 @@ public class JmxHelper {
     }
 
     /** attempts to connect immediately */
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     public synchronized void connect() throws IOException {
         if (terminated.get()) throw new IllegalStateException("JMX Helper "+this+" already terminated");
         if (connection != null) return;
 
         triedConnecting = true;
         if (connector != null) connector.close();
-        JMXServiceURL serviceUrl = new JMXServiceURL(url);
-        Map env = getConnectionEnvVars();
         try {
-            connector = JMXConnectorFactory.connect(serviceUrl, env);
-        } catch (NullPointerException npe) {
-            //some software -- eg WSO2 -- will throw an NPE exception if the JMX connection can't be created, instead of an IOException.
-            //this is a break of contract with the JMXConnectorFactory.connect method, so this code verifies if the NPE is
-            //thrown by a known offender (wso2) and if so replaces the bad exception by a new IOException.
-            //ideally WSO2 will fix this bug and we can remove this code.
-            boolean thrownByWso2 = npe.getStackTrace()[0].toString().contains("org.wso2.carbon.core.security.CarbonJMXAuthenticator.authenticate");
-            if (thrownByWso2) {
-                throw new IOException("Failed to connect to url "+url+". NullPointerException is thrown, but replaced by an IOException to fix a WSO2 JMX problem", npe);
+            JmxConnectionRegistry registry = getConnectionRegistry();
+            if (registry != null) {
+                lease = registry.acquire(url, user, password, new Callable<JMXConnector>() {
+                    public JMXConnector call() throws IOException {
+                        return newConnector();
+                    }});
+                connection = lease.getConnection();
             } else {
-                throw npe;
+                connector = newConnector();
+                connection = connector.getMBeanServerConnection();
             }
         } catch (IOException e) {
             Exceptions.propagateIfFatal(e);
@@ -293,12 +309,63 @@ public class JmxHelper {
                 throw e;
             }
         }
-        connection = connector.getMBeanServerConnection();
         
         if (terminated.get()) {
             disconnectNow();
             throw new IllegalStateException("JMX Helper "+this+" already terminated");
         }
+        
+        for (NotificationListenerRegistration registration : notificationListeners) {
+            try {
+                connection.addNotificationListener(registration.objectName, registration.listener, registration.filter, null);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Unable to re-register JMX notification listener for "+registration.objectName+" at "+url+" after connecting; notifications will be missed: "+e);
+            }
+        }
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private JMXConnector newConnector() throws IOException {
+        JMXServiceURL serviceUrl = new JMXServiceURL(url);
+        Map env = getConnectionEnvVars();
+        try {
+            return JMXConnectorFactory.connect(serviceUrl, env);
+        } catch (NullPointerException npe) {
+            //some software -- eg WSO2 -- will throw an NPE exception if the JMX connection can't be created, instead of an IOException.
+            //this is a break of contract with the JMXConnectorFactory.connect method, so this code verifies if the NPE is
+            //thrown by a known offender (wso2) and if so replaces the bad exception by a new IOException.
+            //ideally WSO2 will fix this bug and we can remove this code.
+            boolean thrownByWso2 = npe.getStackTrace()[0].toString().contains("org.wso2.carbon.core.security.CarbonJMXAuthenticator.authenticate");
+            if (thrownByWso2) {
+                throw new IOException("Failed to connect to url "+url+". NullPointerException is thrown, but replaced by an IOException to fix a WSO2 JMX problem", npe);
+            } else {
+                throw npe;
+            }
+        }
+    }
+
+    /**
+     * Returns the management context's registry of shared connections, if this helper is for a managed entity
+     * and sharing is enabled; otherwise null, in which case this helper has its own connection.
+     * Connections using SSL are not shared, as the keys used can differ between entities;
+     * nor are those of helpers with notification listeners.
+     */
+    private JmxConnectionRegistry getConnectionRegistry() {
+        if (dedicatedConnection) return null;
+        if (!(entity instanceof EntityInternal)) return null;
+        if (groovyTruth(entity.getConfig(UsesJmx.JMX_SSL_ENABLED))) return null;
+        ManagementContext managementContext = ((EntityInternal)entity).getManagementContext();
+        if (!(managementContext instanceof ManagementContextInternal) || !managementContext.isRunning()) return null;
+        // entity not (or no longer) managed
+        if (managementContext instanceof NonDeploymentManagementContext) return null;
+        if (!Boolean.TRUE.equals(managementContext.getConfig().getConfig(BrooklynServerConfig.JMX_POOL_ENABLED))) return null;
+        return ((ManagementContextInternal)managementContext).getJmxConnectionRegistry();
+    }
+
+    /** Whether this helper is using a connection shared with other helpers (for the same JMX URL and credentials). */
+    public boolean isSharedConnection() {
+        return lease != null;
     }
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -425,11 +492,19 @@ public class JmxHelper {
      */
     public void terminate() {
         terminated.set(true);
+        notificationListeners.clear();
         disconnectNow();
     }
     
     protected void disconnectNow() {
         triedConnecting = false;
+        JmxConnectionRegistry.Lease oldLease = lease;
+        if (oldLease != null) {
+            if (LOG.isDebugEnabled()) LOG.debug("Releasing shared connection to JMX URL {}", url);
+            lease = null;
+            connection = null;
+            oldLease.release();
+        }
         if (connector != null) {
             if (LOG.isDebugEnabled()) LOG.debug("Disconnecting from JMX URL {}", url);
             try {
@@ -617,6 +692,34 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * Returns the given attributes of a JMX {@link ObjectName}, in a single request.
+     * <p>
+     * Attributes which could not be read (e.g. because they do not exist, or their getter threw)
+     * are absent from the result; use {@link #getAttribute(ObjectName, String)} to find out why.
+     * Returns null if the MBean is not found.
+     */
+    public Map<String, Object> getAttributes(ObjectName objectName, Collection<String> attributes) {
+        final ObjectName realObjectName = toLiteralObjectName(objectName);
+        final String[] attributeNames = attributes.toArray(new String[attributes.size()]);
+
+        if (realObjectName != null) {
+            AttributeList attributeList = invokeWithReconnect(new Callable<AttributeList>() {
+                    public AttributeList call() throws Exception {
+                        return getConnectionOrFail().getAttributes(realObjectName, attributeNames);
+                    }});
+
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (javax.management.Attribute attribute : attributeList.asList()) {
+                result.put(attribute.getName(), attribute.getValue());
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("From {}, for jmx attributes {}.{}, got values {}", new Object[] {url, objectName.getCanonicalName(), attributes, result});
+            return result;
+        } else {
+            return null;
+        }
+    }
+
     public void setAttribute(String objectName, String attribute, Object val) {
         setAttribute(createObjectName(objectName), attribute, val);
     }
@@ -675,11 +778,30 @@ public class JmxHelper {
     }
     
     public void addNotificationListener(final ObjectName objectName, final NotificationListener listener, final NotificationFilter filter) {
+        useDedicatedConnection();
         invokeWithReconnect(new Callable<Void>() {
                 public Void call() throws Exception {
                     getConnectionOrFail().addNotificationListener(objectName, listener, filter, null);
                     return null;
                 }});
+        // only once registered, otherwise a reconnect while registering would register it twice
+        notificationListeners.add(new NotificationListenerRegistration(objectName, listener, filter));
+    }
+    
+    /** switches from a shared connection (if using one) to a connection of our own */
+    private synchronized void useDedicatedConnection() {
+        if (dedicatedConnection) return;
+        dedicatedConnection = true;
+        if (lease != null) {
+            if (LOG.isDebugEnabled()) LOG.debug("Using own connection to JMX URL {}, rather than a shared one, for notification listeners", url);
+            disconnectNow();
+            try {
+                connect();
+            } catch (IOException e) {
+                // will retry when registering the listener
+                if (LOG.isDebugEnabled()) LOG.debug("Unable to connect to JMX URL {} for notification listeners (will retry): {}", url, e);
+            }
+        }
     }
 
     public void removeNotificationListener(String objectName, NotificationListener listener) {
@@ -691,6 +813,7 @@ public class JmxHelper {
     }
     
     public void removeNotificationListener(final ObjectName objectName, final NotificationListener listener, final NotificationFilter filter) {
+        notificationListeners.remove(new NotificationListenerRegistration(objectName, listener, filter));
         if (isConnected()) invokeWithReconnect(new Callable<Void>() {
                 public Void call() throws Exception {
                     getConnectionOrFail().removeNotificationListener(objectName, listener, filter, null);
@@ -722,4 +845,28 @@ public class JmxHelper {
             throw new RuntimeInterruptedException(e);
         }
     }
+
+    private static class NotificationListenerRegistration {
+        final ObjectName objectName;
+        final NotificationListener listener;
+        final NotificationFilter filter;
+        
+        NotificationListenerRegistration(ObjectName objectName, NotificationListener listener, NotificationFilter filter) {
+            this.objectName = checkNotNull(objectName, "objectName");
+            this.listener = checkNotNull(listener, "listener");
+            this.filter = filter;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof NotificationListenerRegistration)) return false;
+            NotificationListenerRegistration o = (NotificationListenerRegistration) obj;
+            return objectName.equals(o.objectName) && listener == o.listener && filter == o.filter;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(objectName, System.identityHashCode(listener), System.identityHashCode(filter));
+        }
+    }
 }
@@ -20,6 +20,7 @@ package brooklyn.event.feed.jmx;
 
 import static brooklyn.test.TestUtils.executeUntilSucceeds;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import java.util.Collections;
@@ -67,6 +68,7 @@ import brooklyn.event.feed.ConfigToAttributes;
 import brooklyn.location.basic.LocalhostMachineProvisioningLocation;
 import brooklyn.location.basic.PortRanges;
 import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.test.Asserts;
 import brooklyn.test.GeneralisedDynamicMBean;
 import brooklyn.test.JmxService;
@@ -75,8 +77,10 @@ import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestApplicationImpl;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.test.entity.TestEntityImpl;
+import brooklyn.util.jmx.JmxConnectionRegistry;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
@@ -169,6 +173,98 @@ public class JmxFeedTest {
         assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
     }
 
+    @Test
+    public void testJmxAttributesOfSameMBeanPolledInOneRequest() throws Exception {
+        final AttributeSensor<Integer> intAttribute2 = Sensors.newIntegerSensor("brooklyn.test.intAttribute2", "Brooklyn testing int attribute 2");
+        GeneralisedDynamicMBean mbean = jmxService.registerMBean(ImmutableMap.of("myint", 42, "mystring", "abc", "myint2", 7), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName("myint"))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName("mystring"))
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute2)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName("myint2"))
+                .build();
+
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "abc", TIMEOUT_MS);
+        assertSensorEventually(intAttribute2, 7, TIMEOUT_MS);
+
+        mbean.updateAttributeValue("mystring", "def");
+        assertSensorEventually(stringAttribute, "def", TIMEOUT_MS);
+
+        // one request per poll for all three attributes
+        Map<String, Object> metrics = feed.getPollMetrics();
+        long roundTrips = (Long) metrics.get("jmxRoundTrips");
+        long pollsRun = (Long) metrics.get("pollsRun");
+        assertTrue(roundTrips > 0 && roundTrips <= pollsRun, "metrics="+metrics);
+    }
+
+    @Test
+    public void testJmxFeedsOfEntityShareConnection() throws Exception {
+        jmxService.registerMBean(ImmutableMap.of(attributeName, 42), objectName);
+        JmxConnectionRegistry registry = ((ManagementContextInternal)app.getManagementContext()).getJmxConnectionRegistry();
+        
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName(attributeName))
+                .build();
+        JmxFeed feed2 = JmxFeed.builder()
+                .entity(entity)
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName(attributeName)
+                        .onSuccess(Functions.toStringFunction()))
+                .build();
+        try {
+            assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+            assertSensorEventually(stringAttribute, "42", TIMEOUT_MS);
+            assertTrue(feed.getHelper().isSharedConnection());
+            assertTrue(feed2.getHelper().isSharedConnection());
+            
+            Map<String, Object> metrics = registry.getMetrics();
+            assertEquals(metrics.get("openConnections"), 1, "metrics="+metrics);
+            assertEquals(metrics.get("connectionsCreated"), 1L, "metrics="+metrics);
+        } finally {
+            feed2.stop();
+        }
+        assertEquals(registry.getMetrics().get("leases"), 1);
+    }
+
+    @Test
+    public void testJmxAttributeMissingFromBatchStillPolled() throws Exception {
+        jmxService.registerMBean(ImmutableMap.of(attributeName, 42), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName(attributeName))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName("doesNotExist")
+                        .onSuccess(Functions.constant("polled")))
+                .build();
+
+        // the test mbean gives null rather than failing for unknown attributes, so just check its handler is called
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "polled", TIMEOUT_MS);
+    }
+
     @Test
     public void testJmxAttributeOfTypeTabularDataProviderConvertedToMap() throws Exception {
         // Create the CompositeType and TabularData
@@ -291,6 +387,8 @@ public class JmxFeedTest {
             public void run() {
                 assertEquals(entity.getAttribute(intAttribute), (Integer)123);
             }});
+        // listeners would be lost if a shared connection were replaced by another of its users
+        assertFalse(feed.getHelper().isSharedConnection());
     }
     
     @Test
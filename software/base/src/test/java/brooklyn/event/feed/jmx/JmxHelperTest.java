@@ -24,6 +24,7 @@ import static org.testng.Assert.fail;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.management.DynamicMBean;
 import javax.management.MBeanOperationInfo;
@@ -256,6 +257,30 @@ public class JmxHelperTest {
             }});
     }
 
+    @Test
+    public void testNotificationListenerReregisteredOnReconnect() throws Exception {
+        StandardEmitterMBean mbean = jmxService.registerMBean(ImmutableList.of("one"), objectName);
+        int sequence = 0;
+        final List<Notification> received = new CopyOnWriteArrayList<Notification>();
+
+        jmxHelper.addNotificationListener(jmxObjectName, new NotificationListener() {
+            public void handleNotification(Notification notif, Object callback) {
+                received.add(notif);
+            }});
+        jmxHelper.reconnect();
+
+        final Notification notif = sendNotification(mbean, "one", sequence++, "abc");
+
+        TestUtils.executeUntilSucceeds(ImmutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            public void run() {
+                assertEquals(received.size(), 1);
+                assertNotificationsEqual(received.get(0), notif);
+            }});
+        // and registered only once
+        Thread.sleep(SHORT_WAIT_MS);
+        assertEquals(received.size(), 1);
+    }
+
     // Visual-inspection test that LOG.warn happens only once; TODO setup a listener to the logging output
     @Test
     public void testMBeanNotFoundLoggedOnlyOncePerUrl() throws Exception {
@@ -27,7 +27,9 @@ import brooklyn.entity.group.Cluster;
 import brooklyn.entity.proxying.ImplementedBy;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.basic.BasicAttributeSensorAndConfigKey;
+import brooklyn.event.basic.Sensors;
 import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.time.Duration;
 
 /**
  * Represents a controller mechanism for a {@link Cluster}.
@@ -48,6 +50,30 @@ public interface AbstractController extends SoftwareProcess, LoadBalancer {
     ConfigKey<String> SERVICE_UP_URL_PATH = ConfigKeys.newStringConfigKey(
             "controller.config.serviceUpUrlPath", "The path that will be appended to the root URL to determine SERVICE_UP", "");
 
+    @SetFromFlag("updateDebounce")
+    ConfigKey<Duration> UPDATE_DEBOUNCE = ConfigKeys.newConfigKey(Duration.class,
+            "controller.update.debounce", "Time to wait after a change to the server pool for further changes, "
+                    + "so that a burst of changes (e.g. when scaling out) is applied with one reconfigure and reload; "
+                    + "if zero, each change is applied immediately", Duration.ZERO);
+
+    @SetFromFlag("updateMaxLatency")
+    ConfigKey<Duration> UPDATE_MAX_LATENCY = ConfigKeys.newConfigKey(Duration.class,
+            "controller.update.maxLatency", "When debouncing, the maximum time from a change to the server pool "
+                    + "until it is applied, even if further changes keep arriving", Duration.seconds(10));
+
+    AttributeSensor<Long> RELOAD_COUNT = Sensors.newLongSensor(
+            "controller.reload.count", "Number of reloads applying changes to the configuration");
+
+    AttributeSensor<Integer> RELOADS_PER_MINUTE = Sensors.newIntegerSensor(
+            "controller.reload.perMinute", "Number of reloads in the minute up to the most recent reload");
+
+    AttributeSensor<Integer> SERVER_POOL_CHANGES_PER_RELOAD = Sensors.newIntegerSensor(
+            "controller.reload.serverPoolChanges", "Number of server pool changes applied by the most recent reload");
+
+    AttributeSensor<Long> UPDATE_LATENCY = Sensors.newLongSensor(
+            "controller.update.latency", "Time in milliseconds from the first server pool change applied by the most recent reload "
+                    + "until that reload completed");
+
     boolean isActive();
 
     ProxySslConfig getSslConfig();
@@ -24,6 +24,8 @@ import static com.google.common.base.Preconditions.checkState;
 
 import java.net.URI;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 
@@ -51,6 +53,8 @@ import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.guava.Maybe;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Predicates;
@@ -80,6 +84,15 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
     protected AbstractMembershipTrackingPolicy serverPoolMemberTrackerPolicy;
     protected Set<String> serverPoolAddresses = Sets.newLinkedHashSet();
     protected Map<Entity,String> serverPoolTargets = Maps.newLinkedHashMap();
+
+    // server pool changes not yet applied by a reload; guarded by this
+    private int pendingServerPoolChanges;
+    private long firstPendingChangeTime;
+    private long lastPendingChangeTime;
+    private boolean debouncedUpdateQueued;
+
+    // guarded by itself
+    private final Deque<Long> recentReloadTimes = new LinkedList<Long>();
     
     public AbstractControllerImpl() {
         this(MutableMap.of(), null, null);
@@ -382,16 +395,94 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
         if (!isActive()) updateNeeded = true;
         else {
             updateNeeded = false;
+            final int changes = pendingServerPoolChanges;
+            final long firstChangeTime = firstPendingChangeTime;
+            pendingServerPoolChanges = 0;
+            firstPendingChangeTime = 0;
             LOG.debug("Updating {} in response to changes", this);
             LOG.info("Updating {}, server pool targets {}", new Object[] {this, getAttribute(SERVER_POOL_TARGETS)});
             reconfigureService();
             LOG.debug("Reloading {} in response to changes", this);
             // reload should happen synchronously
-            result = invoke(RELOAD);
+            final Task<?> reload = invoke(RELOAD);
+            // not run in the same thread: listeners are called before the task's result is available
+            reload.addListener(new Runnable() {
+                @Override public void run() {
+                    if (!reload.isError()) onReloadCompleted(changes, firstChangeTime);
+                }}, getExecutionContext());
+            result = reload;
         }
         return result;
     }
 
+    /**
+     * Records a change to the server pool targets, and applies it: immediately, or if {@link #UPDATE_DEBOUNCE}
+     * is set then once no further changes have happened for that long (or {@link #UPDATE_MAX_LATENCY}
+     * after the first pending change), so that a burst of changes results in one reconfigure and reload.
+     */
+    protected synchronized void onServerPoolTargetsChanged() {
+        long now = System.currentTimeMillis();
+        if (pendingServerPoolChanges == 0) firstPendingChangeTime = now;
+        pendingServerPoolChanges++;
+        lastPendingChangeTime = now;
+
+        Duration debounce = getConfig(UPDATE_DEBOUNCE);
+        if (debounce == null || debounce.toMilliseconds() <= 0) {
+            updateAsync();
+        } else if (!debouncedUpdateQueued) {
+            debouncedUpdateQueued = true;
+            LOG.debug("queueing a debounced update task for "+this+"; update will occur within "+getConfig(UPDATE_MAX_LATENCY));
+            Entities.submit(this, Tasks.builder().name("update-debounced").body(new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        long delay;
+                        synchronized (AbstractControllerImpl.this) {
+                            if (pendingServerPoolChanges == 0) {
+                                // already applied by another update
+                                debouncedUpdateQueued = false;
+                                return;
+                            }
+                            delay = getDebouncedUpdateDelay(System.currentTimeMillis());
+                            if (delay <= 0) {
+                                debouncedUpdateQueued = false;
+                                break;
+                            }
+                        }
+                        Time.sleep(delay);
+                    }
+                    AbstractControllerImpl.this.update();
+                }
+            }).build());
+        }
+    }
+
+    /** millis until the pending server pool changes should be applied; guarded by this */
+    private long getDebouncedUpdateDelay(long now) {
+        Duration debounce = getConfig(UPDATE_DEBOUNCE);
+        Duration maxLatency = getConfig(UPDATE_MAX_LATENCY);
+        long dueTime = lastPendingChangeTime + (debounce != null ? debounce.toMilliseconds() : 0);
+        if (maxLatency != null) dueTime = Math.min(dueTime, firstPendingChangeTime + maxLatency.toMilliseconds());
+        return dueTime - now;
+    }
+
+    private void onReloadCompleted(int serverPoolChanges, long firstChangeTime) {
+        long now = System.currentTimeMillis();
+        int reloadsInLastMinute;
+        synchronized (recentReloadTimes) {
+            recentReloadTimes.addLast(now);
+            while (recentReloadTimes.getFirst() < now - Duration.ONE_MINUTE.toMilliseconds()) {
+                recentReloadTimes.removeFirst();
+            }
+            reloadsInLastMinute = recentReloadTimes.size();
+        }
+        Long count = getAttribute(RELOAD_COUNT);
+        setAttribute(RELOAD_COUNT, (count != null ? count : 0) + 1);
+        setAttribute(RELOADS_PER_MINUTE, reloadsInLastMinute);
+        setAttribute(SERVER_POOL_CHANGES_PER_RELOAD, serverPoolChanges);
+        if (firstChangeTime > 0) setAttribute(UPDATE_LATENCY, now - firstChangeTime);
+    }
+
     protected synchronized void onServerPoolMemberChanged(Entity member) {
         if (LOG.isTraceEnabled()) LOG.trace("For {}, considering membership of {} which is in locations {}", 
                 new Object[] {this, member, member.getLocations()});
@@ -438,10 +529,8 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
             return;
         }
         
-        // TODO this does it synchronously; an async method leaning on `updateNeeded` and `update` might
-        // be more appropriate, especially when this is used in a listener
         MapAttribute.put(this, SERVER_POOL_TARGETS, member, newAddress);
-        updateAsync();
+        onServerPoolTargetsChanged();
     }
     
     protected synchronized void removeServerPoolMember(Entity member) {
@@ -454,7 +543,7 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
         
         LOG.info("Removing from {}, member {} with address {}", new Object[] {this, member, address});
         
-        updateAsync();
+        onServerPoolTargetsChanged();
     }
     
     protected String getAddressOfEntity(Entity member) {
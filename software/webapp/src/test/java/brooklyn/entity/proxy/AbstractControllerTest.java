@@ -19,6 +19,7 @@
 package brooklyn.entity.proxy;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 import java.net.Inet4Address;
@@ -53,12 +54,14 @@ import brooklyn.location.NoMachinesAvailableException;
 import brooklyn.location.basic.FixedListMachineProvisioningLocation;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.test.Asserts;
+import brooklyn.test.EntityTestUtils;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.test.entity.TestEntityImpl;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.collections.MutableSet;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.time.Duration;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -202,6 +205,28 @@ public class AbstractControllerTest extends BrooklynAppUnitTestSupport {
         assertEventuallyAddressesMatch(ImmutableList.<Entity>of());
     }
 
+    @Test
+    public void testDebouncedUpdateCoalescesServerPoolChanges() throws Exception {
+        controller = app.createAndManageChild(EntitySpec.create(TrackingAbstractController.class)
+                .configure("serverPool", cluster) 
+                .configure("portNumberSensor", ClusteredEntity.HTTP_PORT)
+                .configure("domain", "mydomain")
+                .configure(AbstractController.UPDATE_DEBOUNCE, Duration.ONE_SECOND));
+        controller.start(Arrays.asList(loc));
+
+        cluster.resize(3);
+        for (Entity it: cluster.getMembers()) { 
+            ((EntityLocal)it).setAttribute(ClusteredEntity.HTTP_PORT, 1234);
+            ((EntityLocal)it).setAttribute(Startable.SERVICE_UP, true);
+        }
+        assertEventuallyAddressesMatchCluster();
+
+        List<Collection<String>> u = Lists.newArrayList(controller.getUpdates());
+        assertEquals(u.size(), 1, "expected one update, but got "+u);
+        EntityTestUtils.assertAttributeEqualsEventually(controller, AbstractController.SERVER_POOL_CHANGES_PER_RELOAD, 3);
+        assertNotNull(controller.getAttribute(AbstractController.UPDATE_LATENCY));
+    }
+
     @Test
     public void testUsesHostAndPortSensor() throws Exception {
         controller = app.createAndManageChild(EntitySpec.create(TrackingAbstractController.class)
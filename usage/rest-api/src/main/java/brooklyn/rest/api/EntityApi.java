@@ -242,4 +242,16 @@ public interface EntityApi {
       @PathParam("entity") String entity
   ) ;
 
+  @GET
+  @Path("/{entity}/sensor-stats")
+  @ApiOperation(value = "Fetch the number of sensor changes published by the entity, and the number of unchanged values not published")
+  @ApiErrors(value = {
+      @ApiError(code = 404, reason = "Application or entity missing")
+  })
+  public Map<String, Long> getSensorPublicationStats(
+      @ApiParam(value = "Application ID or name", required = true)
+      @PathParam("application") String application,
+      @ApiParam(value = "Entity ID or name", required = true)
+      @PathParam("entity") String entity);
+
 }
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.rest.api;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import brooklyn.rest.apidoc.Apidoc;
+
+import com.wordnik.swagger.core.ApiError;
+import com.wordnik.swagger.core.ApiErrors;
+import com.wordnik.swagger.core.ApiOperation;
+import com.wordnik.swagger.core.ApiParam;
+
+@Path("/v1/events")
+@Apidoc("Events")
+@Produces(MediaType.APPLICATION_JSON)
+public interface EventStreamApi {
+
+    /** media type of the Server-Sent Events stream returned by {@link #stream(String, String, String, Boolean, String)} */
+    public static final String SERVER_SENT_EVENTS = "text/event-stream";
+
+    @GET
+    @Produces(SERVER_SENT_EVENTS)
+    @ApiOperation(
+            value = "Stream sensor changes, entities being added and removed, and task state changes, as Server-Sent Events",
+            notes = "Each event is named sensor, entityAdded, entityRemoved or task, with its details as JSON data. "
+                    + "Successive values of an attribute sensor which the client has not yet read are coalesced to the latest. "
+                    + "The stream is open until the client disconnects, or until the timeout; "
+                    + "the timeout is capped at (and defaults to) the server's maximum stream duration."
+    )
+    @ApiErrors(value = {
+            @ApiError(code = 404, reason = "Could not find application"),
+            @ApiError(code = 503, reason = "Too many event streams are open")
+    })
+    public Response stream(
+            @ApiParam(name = "application", value = "Application ID or name; if omitted, events for all applications are sent", required = false)
+            @QueryParam("application") String application,
+
+            @ApiParam(name = "entity", value = "Glob of the IDs or names of the entities whose events are sent", required = false)
+            @QueryParam("entity") @DefaultValue("*") String entity,
+
+            @ApiParam(name = "sensor", value = "Glob of the names of the sensors whose changes are sent", required = false)
+            @QueryParam("sensor") @DefaultValue("*") String sensor,
+
+            @ApiParam(name = "tasks", value = "Whether to send task state changes", required = false)
+            @QueryParam("tasks") @DefaultValue("true") Boolean tasks,
+
+            @ApiParam(name = "timeout", value = "Time after which to close the stream, e.g. 30s; if omitted the server's maximum stream duration is used", required = false)
+            @QueryParam("timeout") @DefaultValue("") String timeout);
+
+}
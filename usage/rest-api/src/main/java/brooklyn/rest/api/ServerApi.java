@@ -104,6 +104,11 @@ public interface ServerApi {
     @ApiOperation(value = "Returns a collection of HA metrics")
     public Map<String,Object> getHighAvailabilityMetrics();
     
+    @GET
+    @Path("/tasks/schedulers/metrics")
+    @ApiOperation(value = "Returns queue metrics for each single-threaded task scheduler, such as those delivering subscription events, keyed by tag")
+    public Map<String,Object> getTaskSchedulerMetrics();
+    
     @POST
     @Path("/ha/state")
     @ApiOperation(value = "Changes the HA state of this management node")
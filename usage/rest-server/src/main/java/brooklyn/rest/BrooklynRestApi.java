@@ -31,6 +31,7 @@ import brooklyn.rest.resources.CatalogResource;
 import brooklyn.rest.resources.EffectorResource;
 import brooklyn.rest.resources.EntityConfigResource;
 import brooklyn.rest.resources.EntityResource;
+import brooklyn.rest.resources.EventStreamResource;
 import brooklyn.rest.resources.LocationResource;
 import brooklyn.rest.resources.PolicyConfigResource;
 import brooklyn.rest.resources.PolicyResource;
@@ -60,6 +61,7 @@ public class BrooklynRestApi {
         resources.add(new PolicyResource());
         resources.add(new PolicyConfigResource());
         resources.add(new ActivityResource());
+        resources.add(new EventStreamResource());
         resources.add(new AccessResource());
         resources.add(new ScriptResource());
         resources.add(new ServerResource());
@@ -24,6 +24,7 @@ import brooklyn.config.ConfigPredicates;
 import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.rest.security.provider.DelegatingSecurityProvider;
 import brooklyn.rest.security.provider.ExplicitUsersSecurityProvider;
+import brooklyn.util.time.Duration;
 
 public class BrooklynWebConfig {
 
@@ -82,6 +83,18 @@ public class BrooklynWebConfig {
             BASE_NAME+".security.keystore.certificate.alias",
             "Alias in "+KEYSTORE_URL+" for the certificate to use; defaults to the first if not supplied");
 
+    public final static ConfigKey<Integer> EVENT_STREAM_MAX_CONCURRENT = ConfigKeys.newIntegerConfigKey(
+            BASE_NAME+".eventStream.maxConcurrent",
+            "Maximum number of event streams open at once, each of which holds a request thread; "
+            + "further requests are refused with 503 Service Unavailable", 
+            50);
+
+    public final static ConfigKey<Duration> EVENT_STREAM_MAX_DURATION = ConfigKeys.newConfigKey(Duration.class,
+            BASE_NAME+".eventStream.maxDuration",
+            "Time after which an event stream is closed, if the client does not request a shorter timeout; "
+            + "clients such as browsers' EventSource reconnect automatically", 
+            Duration.ONE_HOUR);
+
     public final static boolean hasNoSecurityOptions(ConfigMap config) {
         return config.submap(ConfigPredicates.startingWith(BASE_NAME_SECURITY)).isEmpty();
     }
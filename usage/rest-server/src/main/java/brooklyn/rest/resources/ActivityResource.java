@@ -26,6 +26,9 @@ import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.BrooklynTaskTags.WrappedStream;
 import brooklyn.management.HasTaskChildren;
 import brooklyn.management.Task;
+import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.management.internal.TaskHistoryRecord;
+import brooklyn.management.internal.TaskHistoryStore;
 import brooklyn.rest.api.ActivityApi;
 import brooklyn.rest.domain.TaskSummary;
 import brooklyn.rest.transform.TaskTransformer;
@@ -38,17 +41,28 @@ public class ActivityResource extends AbstractBrooklynRestResource implements Ac
 
   @Override
   public TaskSummary get(String taskId) {
-      Task<?> t = mgmt().getExecutionManager().getTask(taskId);
-      if (t==null)
-          throw WebResourceUtils.notFound("Cannot find task '%s'", taskId);
-      return TaskTransformer.FROM_TASK.apply(t);
+      Task<?> t = findTask(taskId);
+      if (t!=null)
+          return TaskTransformer.FROM_TASK.apply(t);
+      return TaskTransformer.fromArchivedTask(findArchivedTask(taskId));
   }
 
   @Override
   public List<TaskSummary> children(String taskId) {
-      Task<?> t = mgmt().getExecutionManager().getTask(taskId);
-      if (t==null)
-          throw WebResourceUtils.notFound("Cannot find task '%s'", taskId);
+      Task<?> t = findTask(taskId);
+      if (t==null) {
+          List<TaskSummary> result = new LinkedList<TaskSummary>();
+          for (String childId: findArchivedTask(taskId).getChildIds()) {
+              Task<?> child = findTask(childId);
+              if (child!=null) {
+                  result.add(TaskTransformer.FROM_TASK.apply(child));
+              } else {
+                  TaskHistoryRecord childRecord = findArchivedTaskOrNull(childId);
+                  if (childRecord!=null) result.add(TaskTransformer.fromArchivedTask(childRecord));
+              }
+          }
+          return result;
+      }
       if (!(t instanceof HasTaskChildren))
           return Collections.emptyList();
       return new LinkedList<TaskSummary>(Collections2.transform(Lists.newArrayList(((HasTaskChildren)t).getChildren()), 
@@ -56,13 +70,40 @@ public class ActivityResource extends AbstractBrooklynRestResource implements Ac
   }
 
   public String stream(String taskId, String streamId) {
-      Task<?> t = mgmt().getExecutionManager().getTask(taskId);
-      if (t==null)
-          throw WebResourceUtils.notFound("Cannot find task '%s'", taskId);
+      Task<?> t = findTask(taskId);
+      if (t==null) {
+          String contents = findArchivedTask(taskId).getStreams().get(streamId);
+          if (contents==null)
+              throw WebResourceUtils.notFound("Cannot find stream '%s' in task '%s'", streamId, taskId);
+          return contents;
+      }
       WrappedStream stream = BrooklynTaskTags.stream(t, streamId);
       if (stream==null)
           throw WebResourceUtils.notFound("Cannot find stream '%s' in task '%s'", streamId, taskId);
       return stream.streamContents.get();
   }
+
+  /** the task, if in the execution manager or recently deleted by the garbage collector, otherwise null */
+  protected Task<?> findTask(String taskId) {
+      Task<?> t = mgmt().getExecutionManager().getTask(taskId);
+      if (t==null) {
+          TaskHistoryStore history = ((ManagementContextInternal)mgmt()).getTaskHistory();
+          if (history!=null) t = history.getRecentTask(taskId);
+      }
+      return t;
+  }
+
+  /** the record of a task which has been deleted by the garbage collector, throwing not found if unavailable */
+  protected TaskHistoryRecord findArchivedTask(String taskId) {
+      TaskHistoryRecord record = findArchivedTaskOrNull(taskId);
+      if (record==null)
+          throw WebResourceUtils.notFound("Cannot find task '%s'", taskId);
+      return record;
+  }
+
+  protected TaskHistoryRecord findArchivedTaskOrNull(String taskId) {
+      TaskHistoryStore history = ((ManagementContextInternal)mgmt()).getTaskHistory();
+      return (history!=null) ? history.getRecord(taskId) : null;
+  }
   
 }
@@ -42,6 +42,7 @@ import brooklyn.entity.Entity;
 import brooklyn.entity.basic.BrooklynTags;
 import brooklyn.entity.basic.BrooklynTags.NamedStringTag;
 import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.location.Location;
 import brooklyn.management.Task;
@@ -220,4 +221,10 @@ public class EntityResource extends AbstractBrooklynRestResource implements Enti
       return (String) getValueForDisplay(spec.getContents(), true, true);
   }
   
+  @Override
+  public Map<String, Long> getSensorPublicationStats(String application, String entityToken) {
+      EntityLocal entity = brooklyn().getEntity(application, entityToken);
+      return ((EntityInternal)entity).getAttributePublicationStats();
+  }
+
 }
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.rest.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Application;
+import brooklyn.entity.Entity;
+import brooklyn.management.ManagementContext;
+import brooklyn.rest.BrooklynWebConfig;
+import brooklyn.rest.api.EventStreamApi;
+import brooklyn.rest.transform.TaskTransformer;
+import brooklyn.rest.util.EventStream;
+import brooklyn.rest.util.EventStream.Event;
+import brooklyn.rest.util.WebResourceUtils;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.text.Strings;
+import brooklyn.util.text.WildcardGlobs.InvalidPatternException;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+public class EventStreamResource extends AbstractBrooklynRestResource implements EventStreamApi {
+
+    private static final Logger log = LoggerFactory.getLogger(EventStreamResource.class);
+
+    /** interval after which a comment is sent on an idle stream, so that a client which has gone away is noticed */
+    private static final Duration KEEP_ALIVE_INTERVAL = Duration.seconds(15);
+
+    /** number of streams open in each management context, as each holds a request thread */
+    private static final LoadingCache<ManagementContext, AtomicInteger> OPEN_STREAMS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<ManagementContext, AtomicInteger>() {
+                @Override public AtomicInteger load(ManagementContext mgmt) {
+                    return new AtomicInteger();
+                }});
+
+    @VisibleForTesting
+    public static int getOpenStreamCount(ManagementContext mgmt) {
+        return OPEN_STREAMS.getUnchecked(mgmt).get();
+    }
+
+    @Override
+    public Response stream(String application, String entity, String sensor, Boolean tasks, String timeout) {
+        Application app = (application != null) ? brooklyn().getApplication(application) : null;
+        Duration maxDuration = mgmt().getConfig().getConfig(BrooklynWebConfig.EVENT_STREAM_MAX_DURATION);
+        try {
+            if (Strings.isNonBlank(timeout)) maxDuration = Duration.min(Duration.parse(timeout), maxDuration);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            throw WebResourceUtils.badRequest("Invalid timeout '%s'", timeout);
+        }
+        EventStream events;
+        try {
+            events = new EventStream(mgmt(), app, entity, sensor, !Boolean.FALSE.equals(tasks));
+        } catch (InvalidPatternException e) {
+            throw WebResourceUtils.badRequest("Invalid glob: %s", e.getMessage());
+        }
+        // refuse early if there is no slot; the slot itself is only taken when the stream is written, as the entity
+        // is not written at all for a HEAD request, or if a response filter fails
+        checkStreamAvailable();
+        return Response.ok(new EventStreamOutput(events, maxDuration), SERVER_SENT_EVENTS)
+                .header("Cache-Control", "no-cache")
+                .build();
+    }
+
+    private void checkStreamAvailable() {
+        int max = mgmt().getConfig().getConfig(BrooklynWebConfig.EVENT_STREAM_MAX_CONCURRENT);
+        if (OPEN_STREAMS.getUnchecked(mgmt()).get() >= max) {
+            throw WebResourceUtils.serviceUnavailable("Too many event streams open (limit %s); try again later", max);
+        }
+    }
+
+    private void acquireStream() {
+        int max = mgmt().getConfig().getConfig(BrooklynWebConfig.EVENT_STREAM_MAX_CONCURRENT);
+        AtomicInteger open = OPEN_STREAMS.getUnchecked(mgmt());
+        while (true) {
+            int current = open.get();
+            if (current >= max) {
+                throw WebResourceUtils.serviceUnavailable("Too many event streams open (limit %s); try again later", max);
+            }
+            if (open.compareAndSet(current, current+1)) return;
+        }
+    }
+
+    private void releaseStream() {
+        OPEN_STREAMS.getUnchecked(mgmt()).decrementAndGet();
+    }
+
+    /** writes the events in the Server-Sent Events format, holding the request thread until the stream ends */
+    protected class EventStreamOutput implements StreamingOutput {
+        private final EventStream events;
+        private final Duration maxDuration;
+
+        protected EventStreamOutput(EventStream events, Duration maxDuration) {
+            this.events = events;
+            this.maxDuration = maxDuration;
+        }
+
+        @Override
+        public void write(OutputStream output) throws IOException {
+            Writer writer = new OutputStreamWriter(output, Charsets.UTF_8);
+            // take the slot and subscribe only once the response is being written, so there is nothing to clean up 
+            // if it never is; nothing has been written yet, so if there is no slot the client is still sent a 503
+            acquireStream();
+            try {
+                events.start();
+                long endTime = System.currentTimeMillis() + maxDuration.toMilliseconds();
+                // sends the headers, so the client knows the stream is open
+                writer.write(":\n\n");
+                writer.flush();
+                while (true) {
+                    long remaining = endTime - System.currentTimeMillis();
+                    if (remaining <= 0) break;
+                    Event event = events.next(Duration.millis(Math.min(remaining, KEEP_ALIVE_INTERVAL.toMilliseconds())));
+                    if (event != null) {
+                        writer.write("event: "+event.getType().getName()+"\n");
+                        writer.write("data: "+mapper().writeValueAsString(toData(event))+"\n\n");
+                    } else if (events.isClosed()) {
+                        break;
+                    } else if (System.currentTimeMillis() < endTime) {
+                        writer.write(":\n\n");
+                    }
+                    writer.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // normally the client has disconnected
+                log.debug("Closing "+events+", after error writing it: "+e);
+            } finally {
+                events.close();
+                releaseStream();
+            }
+        }
+    }
+
+    protected Map<String, Object> toData(Event event) {
+        Entity entity = event.getEntity();
+        Map<String, Object> result = MutableMap.<String, Object>of(
+                "application", entity.getApplicationId(),
+                "entity", entity.getId(),
+                "entityDisplayName", entity.getDisplayName(),
+                "timestamp", event.getTimestamp());
+        switch (event.getType()) {
+        case SENSOR:
+            result.put("sensor", event.getSensor().getName());
+            result.put("value", getValueForDisplay(event.getValue(), true, false));
+            break;
+        case ENTITY_ADDED:
+        case ENTITY_REMOVED:
+            result.put("type", entity.getEntityType().getName());
+            result.put("parent", (entity.getParent() != null) ? entity.getParent().getId() : null);
+            break;
+        case TASK:
+            result.put("state", event.getTaskState().name().toLowerCase());
+            result.put("task", TaskTransformer.FROM_TASK.apply(event.getTask()));
+            break;
+        }
+        return result;
+    }
+
+}
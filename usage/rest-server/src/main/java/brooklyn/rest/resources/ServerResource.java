@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -44,6 +45,7 @@ import brooklyn.entity.basic.StartableApplication;
 import brooklyn.entity.rebind.persister.BrooklynPersistenceUtils;
 import brooklyn.entity.rebind.persister.FileBasedObjectStore;
 import brooklyn.entity.rebind.persister.PersistenceObjectStore;
+import brooklyn.management.ExecutionManager;
 import brooklyn.management.Task;
 import brooklyn.management.entitlement.EntitlementContext;
 import brooklyn.management.entitlement.Entitlements;
@@ -63,6 +65,7 @@ import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.file.ArchiveBuilder;
 import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.os.Os;
+import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.text.Identifiers;
 import brooklyn.util.text.Strings;
 import brooklyn.util.time.CountdownTimer;
@@ -265,6 +268,15 @@ public class ServerResource extends AbstractBrooklynRestResource implements Serv
         return mgmt().getHighAvailabilityManager().getMetrics();
     }
     
+    @Override
+    public Map<String, Object> getTaskSchedulerMetrics() {
+        ExecutionManager em = mgmt().getExecutionManager();
+        if (em instanceof BasicExecutionManager) {
+            return ((BasicExecutionManager)em).getSchedulerMetrics();
+        }
+        return Collections.emptyMap();
+    }
+    
     @Override
     public long getHighAvailabitlityPriority() {
         return mgmt().getHighAvailabilityManager().getPriority();
@@ -22,6 +22,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +36,7 @@ import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.BrooklynTaskTags.WrappedStream;
 import brooklyn.management.HasTaskChildren;
 import brooklyn.management.Task;
+import brooklyn.management.internal.TaskHistoryRecord;
 import brooklyn.rest.domain.LinkWithMetadata;
 import brooklyn.rest.domain.TaskSummary;
 import brooklyn.rest.util.WebResourceUtils;
@@ -127,6 +129,52 @@ public class TaskTransformer {
       }
     }
 
+    /** summary of a task which has been deleted from memory, from its record in the {@link brooklyn.management.internal.TaskHistoryStore} */
+    public static TaskSummary fromArchivedTask(TaskHistoryRecord record) {
+      try {
+        Preconditions.checkNotNull(record);
+        String selfLink = "/v1/activities/"+record.getId();
+
+        URI entityLink = null;
+        if (record.getEntityId() != null && record.getApplicationId() != null) {
+            entityLink = new URI("/v1/applications/"+record.getApplicationId()+"/"+"entities"+"/"+record.getEntityId());
+        }
+
+        List<LinkWithMetadata> children = new ArrayList<LinkWithMetadata>();
+        for (String childId: record.getChildIds()) {
+            children.add(asLink(childId, null));
+        }
+
+        Map<String,LinkWithMetadata> streams = new MutableMap<String, LinkWithMetadata>();
+        for (Map.Entry<String,String> stream: record.getStreams().entrySet()) {
+            MutableMap<String, Object> metadata = MutableMap.<String,Object>of("name", stream.getKey());
+            if (stream.getValue()!=null) {
+                metadata.add("size", stream.getValue().length());
+                metadata.add("sizeText", Strings.makeSizeString(stream.getValue().length()));
+            }
+            streams.put(stream.getKey(), new LinkWithMetadata(selfLink+"/stream/"+stream.getKey(), metadata));
+        }
+
+        Map<String,URI> links = MutableMap.of("self", new URI(selfLink),
+                "children", new URI(selfLink+"/"+"children"));
+        if (entityLink!=null) links.put("entity", entityLink);
+
+        return new TaskSummary(record.getId(), record.getDisplayName(), record.getDescription(), 
+                record.getEntityId(), record.getEntityDisplayName(), 
+                new LinkedHashSet<Object>(record.getTags()), 
+                ifPositive(record.getSubmitTimeUtc()), ifPositive(record.getStartTimeUtc()), ifPositive(record.getEndTimeUtc()),
+                record.getStatusSummary(), record.getResult(), record.isError(), record.isCancelled(),
+                children, asLink(record.getSubmittedByTaskId(), null), 
+                null, null, 
+                record.getStatusDetail(),
+                streams,
+                links);
+      } catch (URISyntaxException e) {
+          // shouldn't happen
+          throw Exceptions.propagate(e);
+      }
+    }
+
     private static Long ifPositive(Long time) {
         if (time==null || time<=0) return null;
         return time;
@@ -145,4 +193,13 @@ public class TaskTransformer {
         return new LinkWithMetadata("/v1/activities/"+t.getId(), data);
     }
 
+    /** link to a task known only by its id (e.g. when the task has been deleted from memory) */
+    public static LinkWithMetadata asLink(String taskId, String taskName) {
+        if (taskId==null) return null;
+        MutableMap<String,Object> data = new MutableMap<String,Object>();
+        data.put("id", taskId);
+        if (taskName!=null) data.put("taskName", taskName);
+        return new LinkWithMetadata("/v1/activities/"+taskId, data);
+    }
+
 }
@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.rest.util;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Application;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.management.ExecutionManager;
+import brooklyn.management.ManagementContext;
+import brooklyn.management.SubscriptionHandle;
+import brooklyn.management.Task;
+import brooklyn.management.entitlement.Entitlements;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.TaskStateListener;
+import brooklyn.util.text.WildcardGlobs;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Events in a management context (sensor changes, entities added and removed, and task state changes)
+ * which match a filter, queued for one reader, e.g. a client of the REST API event stream.
+ * <p>
+ * Sensor events come from a single subscription to all sensors, with the filter applied as each event is published;
+ * the streams share a batch delivery queue ({@link #DELIVERY_TAG}), so an event does not need a task per stream.
+ * Task state changes come from a {@link TaskStateListener} on the execution manager, for tasks
+ * in the context of a matching entity which are not transient.
+ * <p>
+ * A value of an attribute sensor, or a state of a task, not yet read is replaced by a newer one.
+ * If the reader falls more than {@link #getMaxPending()} events behind, further events are dropped
+ * (see {@link #getDroppedCount()}) until it catches up.
+ */
+@Beta
+public class EventStream implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(EventStream.class);
+
+    /** execution manager tag for delivering sensor events to all event streams */
+    public static final String DELIVERY_TAG = "rest-event-stream-delivery";
+
+    public static final int DEFAULT_MAX_PENDING = 10000;
+
+    public enum EventType {
+        SENSOR("sensor"),
+        ENTITY_ADDED("entityAdded"),
+        ENTITY_REMOVED("entityRemoved"),
+        TASK("task");
+
+        private final String name;
+
+        private EventType(String name) {
+            this.name = name;
+        }
+
+        /** @return the name of this type of event, as used in the stream */
+        public String getName() {
+            return name;
+        }
+    }
+
+    public enum TaskState { SUBMITTED, STARTED, DONE }
+
+    /** An event read from the stream; which of the fields are set depends on the {@link #getType()}. */
+    public static class Event {
+        private final EventType type;
+        private final Entity entity;
+        private final Sensor<?> sensor;
+        private final Object value;
+        private final Task<?> task;
+        private final TaskState taskState;
+        private final long timestamp;
+
+        protected Event(EventType type, Entity entity, Sensor<?> sensor, Object value, Task<?> task, TaskState taskState, long timestamp) {
+            this.type = type;
+            this.entity = entity;
+            this.sensor = sensor;
+            this.value = value;
+            this.task = task;
+            this.taskState = taskState;
+            this.timestamp = timestamp;
+        }
+
+        public EventType getType() {
+            return type;
+        }
+
+        /** the entity whose sensor changed, which was added or removed, or in whose context the task is */
+        public Entity getEntity() {
+            return entity;
+        }
+
+        /** for {@link EventType#SENSOR} events */
+        public Sensor<?> getSensor() {
+            return sensor;
+        }
+
+        /** for {@link EventType#SENSOR} events */
+        public Object getValue() {
+            return value;
+        }
+
+        /** for {@link EventType#TASK} events */
+        public Task<?> getTask() {
+            return task;
+        }
+
+        /** for {@link EventType#TASK} events */
+        public TaskState getTaskState() {
+            return taskState;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "Event["+type.getName()+"; "+entity+(sensor!=null ? "; "+sensor.getName()+"="+value : "")+(task!=null ? "; "+task+" "+taskState : "")+"]";
+        }
+    }
+
+    private final ManagementContext mgmt;
+    private final String applicationId;
+    private final List<String> entityGlobs;
+    private final List<String> sensorGlobs;
+    private final boolean includeTasks;
+    private final int maxPending;
+
+    /** events not yet read, keyed so that newer attribute values and task states replace older ones */
+    private final LinkedHashMap<Object, Event> pending = new LinkedHashMap<Object, Event>();
+    private long sequence = 0;
+    private long droppedCount = 0;
+    private boolean started = false;
+    private boolean closed = false;
+
+    private SubscriptionHandle subscription;
+    private TaskStateListener taskListener;
+
+    /**
+     * @param application if non-null, only events for entities in this application are streamed
+     * @param entityGlob glob matched against the IDs and display names of entities
+     * @param sensorGlob glob matched against sensor names (for sensor events)
+     * @param includeTasks whether to stream task state changes
+     * 
+     * @throws WildcardGlobs.InvalidPatternException if one of the globs is invalid
+     */
+    public EventStream(ManagementContext mgmt, @Nullable Application application, String entityGlob, String sensorGlob, boolean includeTasks) {
+        this(mgmt, application, entityGlob, sensorGlob, includeTasks, DEFAULT_MAX_PENDING);
+    }
+
+    public EventStream(ManagementContext mgmt, @Nullable Application application, String entityGlob, String sensorGlob, boolean includeTasks, int maxPending) {
+        this.mgmt = mgmt;
+        this.applicationId = (application != null) ? application.getId() : null;
+        this.entityGlobs = expandGlob(entityGlob);
+        this.sensorGlobs = expandGlob(sensorGlob);
+        this.includeTasks = includeTasks;
+        this.maxPending = maxPending;
+    }
+
+    /** subscribes to the events; must be called (once) before events can be read */
+    @SuppressWarnings("unchecked")
+    public synchronized EventStream start() {
+        if (started) throw new IllegalStateException("Already started: "+this);
+        started = true;
+
+        Predicate<SensorEvent<Object>> filter = new Predicate<SensorEvent<Object>>() {
+            @Override
+            public boolean apply(SensorEvent<Object> event) {
+                return isMatch(event);
+            }
+        };
+        subscription = mgmt.getSubscriptionManager().subscribe(
+                MutableMap.<String, Object>of("subscriber", this, "subscriberExecutionManagerTag", DELIVERY_TAG,
+                        "eventFilter", filter, "batchDelivery", true),
+                null, (Sensor<Object>) null, new SensorEventListener<Object>() {
+                    @Override
+                    public void onEvent(SensorEvent<Object> event) {
+                        onSensorEvent(event);
+                    }
+                });
+
+        if (includeTasks) {
+            ExecutionManager em = mgmt.getExecutionManager();
+            if (em instanceof BasicExecutionManager) {
+                taskListener = new TaskStateListener() {
+                    @Override
+                    public void onTaskSubmitted(Task<?> task) {
+                        onTaskState(task, TaskState.SUBMITTED);
+                    }
+                    @Override
+                    public void onTaskStarted(Task<?> task) {
+                        onTaskState(task, TaskState.STARTED);
+                    }
+                    @Override
+                    public void onTaskDone(Task<?> task) {
+                        onTaskState(task, TaskState.DONE);
+                    }
+                };
+                ((BasicExecutionManager) em).addListener(taskListener);
+            } else {
+                log.debug("Task state changes not available in event stream for {}: unsupported execution manager {}", this, em);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Waits for and returns the next event which the current entitlement context is allowed to see.
+     * 
+     * @return the event, or null if none is available within the timeout or the stream is closed
+     */
+    public Event next(Duration timeout) throws InterruptedException {
+        long endTime = System.currentTimeMillis() + timeout.toMilliseconds();
+        while (true) {
+            Event result = null;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    long remaining = endTime - System.currentTimeMillis();
+                    if (remaining <= 0) return null;
+                    wait(remaining);
+                }
+                if (closed) return null;
+                Iterator<Event> it = pending.values().iterator();
+                result = it.next();
+                it.remove();
+            }
+            // checked in the reading thread, which has the entitlement context of the client
+            if (isEntitled(result)) return result;
+        }
+    }
+
+    /** unsubscribes, discarding any events not yet read; readers waiting for an event get null */
+    @Override
+    public void close() {
+        SubscriptionHandle subscriptionToRemove;
+        TaskStateListener taskListenerToRemove;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            pending.clear();
+            subscriptionToRemove = subscription;
+            taskListenerToRemove = taskListener;
+            subscription = null;
+            taskListener = null;
+            notifyAll();
+        }
+        if (subscriptionToRemove != null) {
+            mgmt.getSubscriptionManager().unsubscribe(subscriptionToRemove);
+        }
+        if (taskListenerToRemove != null) {
+            ((BasicExecutionManager) mgmt.getExecutionManager()).removeListener(taskListenerToRemove);
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /** @return the number of events waiting to be read */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** @return the number of events dropped because the reader was too far behind */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "EventStream["+(applicationId != null ? "application="+applicationId+"; " : "")
+                +"entity="+entityGlobs+"; sensor="+sensorGlobs+(includeTasks ? "; tasks" : "")+"]";
+    }
+
+    /** invoked in the thread publishing the event, so must be quick */
+    protected boolean isMatch(SensorEvent<?> event) {
+        Entity source = event.getSource();
+        if (source == null || !isInApplication(source)) return false;
+        String sensorName = event.getSensor().getName();
+        if (sensorName.equals(AbstractEntity.CHILD_ADDED.getName()) || sensorName.equals(AbstractEntity.CHILD_REMOVED.getName())) {
+            return (event.getValue() instanceof Entity) && isMatch(entityGlobs, (Entity) event.getValue());
+        }
+        return isMatch(entityGlobs, source) && isMatch(sensorGlobs, sensorName);
+    }
+
+    protected boolean isMatch(Task<?> task) {
+        if (BrooklynTaskTags.isTransient(task)) return false;
+        Entity entity = BrooklynTaskTags.getTargetOrContextEntity(task);
+        return entity != null && isInApplication(entity) && isMatch(entityGlobs, entity);
+    }
+
+    protected boolean isInApplication(Entity entity) {
+        return applicationId == null || applicationId.equals(entity.getApplicationId());
+    }
+
+    protected boolean isEntitled(Event event) {
+        if (!Entitlements.isEntitled(mgmt.getEntitlementManager(), Entitlements.SEE_ENTITY, event.getEntity())) return false;
+        if (event.getType() == EventType.SENSOR) {
+            return Entitlements.isEntitled(mgmt.getEntitlementManager(), Entitlements.SEE_SENSOR,
+                    Entitlements.EntityAndItem.of(event.getEntity(), event.getSensor().getName()));
+        }
+        return true;
+    }
+
+    protected void onSensorEvent(SensorEvent<?> event) {
+        Sensor<?> sensor = event.getSensor();
+        Object key;
+        Event e;
+        if (sensor.getName().equals(AbstractEntity.CHILD_ADDED.getName())) {
+            key = null;
+            e = new Event(EventType.ENTITY_ADDED, (Entity) event.getValue(), null, null, null, null, event.getTimestamp());
+        } else if (sensor.getName().equals(AbstractEntity.CHILD_REMOVED.getName())) {
+            key = null;
+            e = new Event(EventType.ENTITY_REMOVED, (Entity) event.getValue(), null, null, null, null, event.getTimestamp());
+        } else {
+            key = (sensor instanceof AttributeSensor) ? ImmutableList.of(event.getSource().getId(), sensor.getName()) : null;
+            e = new Event(EventType.SENSOR, event.getSource(), sensor, event.getValue(), null, null, event.getTimestamp());
+        }
+        add(key, e);
+    }
+
+    protected void onTaskState(Task<?> task, TaskState state) {
+        if (!isMatch(task)) return;
+        add(task.getId(), new Event(EventType.TASK, BrooklynTaskTags.getTargetOrContextEntity(task), null, null, task, state, System.currentTimeMillis()));
+    }
+
+    /** adds the event, replacing any pending event with the same (non-null) key but keeping that one's position */
+    protected synchronized void add(@Nullable Object key, Event event) {
+        if (closed) return;
+        if (key == null) key = sequence++;
+        if (!pending.containsKey(key) && pending.size() >= maxPending) {
+            if (droppedCount++ == 0) {
+                log.warn("Reader of "+this+" is more than "+maxPending+" events behind; dropping events");
+            }
+            return;
+        }
+        pending.put(key, event);
+        notifyAll();
+    }
+
+    private static List<String> expandGlob(String glob) {
+        if (glob == null || glob.isEmpty() || glob.equals("*")) return null;
+        return WildcardGlobs.getGlobsAfterBraceExpansion(glob);
+    }
+
+    private static boolean isMatch(@Nullable List<String> globs, Entity entity) {
+        return isMatch(globs, entity.getId()) || isMatch(globs, entity.getDisplayName());
+    }
+
+    private static boolean isMatch(@Nullable List<String> globs, String text) {
+        if (globs == null) return true;
+        if (text == null) return false;
+        for (String glob : globs) {
+            if (WildcardGlobs.isNoBraceGlobMatched(glob, text)) return true;
+        }
+        return false;
+    }
+}
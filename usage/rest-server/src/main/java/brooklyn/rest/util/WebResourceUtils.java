@@ -75,6 +75,11 @@ public class WebResourceUtils {
         return throwWebApplicationException(Response.Status.PRECONDITION_FAILED, format, args);
     }
 
+    /** @throws WebApplicationException With code 503 service unavailable */
+    public static WebApplicationException serviceUnavailable(String format, Object... args) {
+        return throwWebApplicationException(Response.Status.SERVICE_UNAVAILABLE, format, args);
+    }
+
     public final static Map<String,com.google.common.net.MediaType> IMAGE_FORMAT_MIME_TYPES = ImmutableMap.<String, com.google.common.net.MediaType>builder()
             .put("jpg", com.google.common.net.MediaType.JPEG)
             .put("jpeg", com.google.common.net.MediaType.JPEG)
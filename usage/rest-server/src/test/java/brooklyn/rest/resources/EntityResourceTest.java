@@ -37,6 +37,8 @@ import brooklyn.entity.Entity;
 import brooklyn.entity.basic.BasicApplication;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityInternal;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
 import brooklyn.rest.domain.ApplicationSpec;
 import brooklyn.rest.domain.EntitySpec;
 import brooklyn.rest.domain.TaskSummary;
@@ -51,6 +53,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.GenericType;
 
 @Test(singleThreaded = true)
 public class EntityResourceTest extends BrooklynRestResourceTest {
@@ -143,6 +146,19 @@ public class EntityResourceTest extends BrooklynRestResourceTest {
         }
     }
     
+    @Test
+    public void testSensorPublicationStats() throws Exception {
+        AttributeSensor<String> sensor = Sensors.newStringSensor("entityResourceTest.changesOnly");
+        entity.setAttribute(sensor, "a");
+        entity.setAttributeIfChanged(sensor, "a");
+        
+        Map<String, Long> stats = client().resource(entityEndpoint + "/sensor-stats")
+                .get(new GenericType<Map<String, Long>>() {});
+        Assert.assertEquals(stats, entity.getAttributePublicationStats());
+        Assert.assertTrue(stats.get("published") >= 1, "stats="+stats);
+        Assert.assertTrue(stats.get("suppressed") >= 1, "stats="+stats);
+    }
+    
     @Test
     public void testTagsDoNotSerializeTooMuch() throws Exception {
         entity.tags().addTag("foo");
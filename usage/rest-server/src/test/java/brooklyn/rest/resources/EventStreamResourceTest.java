@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.rest.resources;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.rest.BrooklynWebConfig;
+import brooklyn.rest.api.EventStreamApi;
+import brooklyn.rest.testing.BrooklynRestResourceTest;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.sun.jersey.api.client.ClientResponse;
+
+@Test(singleThreaded = true)
+public class EventStreamResourceTest extends BrooklynRestResourceTest {
+
+    private static final AttributeSensor<Integer> MY_COUNT = Sensors.newIntegerSensor("my.count");
+
+    private TestApplication app;
+
+    @BeforeClass(alwaysRun = true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        app = ApplicationBuilder.newManagedApp(TestApplication.class, getManagementContext());
+    }
+
+    @AfterClass(alwaysRun = true)
+    @Override
+    public void tearDown() throws Exception {
+        if (app != null) Entities.destroy(app);
+        super.tearDown();
+    }
+
+    @Test
+    public void testStreamsSensorChangesUntilTimeout() throws Exception {
+        // the in-memory client returns only once the stream ends, so keep publishing while it is open
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread publisher = new Thread() {
+            public void run() {
+                for (int i = 0; !done.get(); i++) {
+                    app.setAttribute(MY_COUNT, i);
+                    Time.sleep(Duration.millis(50));
+                }
+            }
+        };
+        publisher.start();
+        try {
+            ClientResponse response = client().resource("/v1/events")
+                    .queryParam("application", app.getId())
+                    .queryParam("sensor", "my.*")
+                    .queryParam("tasks", "false")
+                    .queryParam("timeout", "1s")
+                    .get(ClientResponse.class);
+
+            assertEquals(response.getStatus(), 200);
+            assertTrue(response.getType().toString().startsWith(EventStreamApi.SERVER_SENT_EVENTS), "type="+response.getType());
+            String body = response.getEntity(String.class);
+            assertTrue(body.contains("event: sensor\ndata: {"), body);
+            assertTrue(body.contains("\"sensor\":\"my.count\""), body);
+            assertTrue(body.contains("\"entity\":\""+app.getId()+"\""), body);
+        } finally {
+            done.set(true);
+            publisher.join();
+        }
+    }
+
+    @Test
+    public void testUnknownApplicationNotFound() throws Exception {
+        ClientResponse response = client().resource("/v1/events")
+                .queryParam("application", "doesNotExist")
+                .get(ClientResponse.class);
+        assertEquals(response.getStatus(), 404);
+    }
+
+    @Test
+    public void testInvalidTimeoutRejected() throws Exception {
+        ClientResponse response = client().resource("/v1/events")
+                .queryParam("timeout", "notaduration")
+                .get(ClientResponse.class);
+        assertEquals(response.getStatus(), 400);
+    }
+
+    @Test
+    public void testStreamClosedAfterMaxDuration() throws Exception {
+        BrooklynProperties props = ((ManagementContextInternal)getManagementContext()).getBrooklynProperties();
+        props.put(BrooklynWebConfig.EVENT_STREAM_MAX_DURATION, Duration.millis(500));
+        try {
+            // no timeout given, and a longer one is capped
+            for (String timeout : new String[] {"", "1h"}) {
+                ClientResponse response = client().resource("/v1/events")
+                        .queryParam("application", app.getId())
+                        .queryParam("timeout", timeout)
+                        .get(ClientResponse.class);
+                assertEquals(response.getStatus(), 200);
+            }
+            assertEquals(EventStreamResource.getOpenStreamCount(getManagementContext()), 0);
+        } finally {
+            props.remove(BrooklynWebConfig.EVENT_STREAM_MAX_DURATION);
+        }
+    }
+
+    @Test
+    public void testHeadRequestDoesNotHoldStream() throws Exception {
+        // the entity is not written for HEAD, so the stream must not be counted as open
+        for (int i = 0; i < 3; i++) {
+            ClientResponse response = client().resource("/v1/events")
+                    .queryParam("application", app.getId())
+                    .queryParam("timeout", "1s")
+                    .head();
+            assertEquals(response.getStatus(), 200);
+        }
+        assertEquals(EventStreamResource.getOpenStreamCount(getManagementContext()), 0);
+    }
+
+    @Test
+    public void testRefusesStreamsBeyondMaxConcurrent() throws Exception {
+        BrooklynProperties props = ((ManagementContextInternal)getManagementContext()).getBrooklynProperties();
+        props.put(BrooklynWebConfig.EVENT_STREAM_MAX_CONCURRENT, 1);
+        Thread streamer = new Thread() {
+            public void run() {
+                client().resource("/v1/events")
+                        .queryParam("application", app.getId())
+                        .queryParam("timeout", "2s")
+                        .get(ClientResponse.class);
+            }
+        };
+        try {
+            streamer.start();
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(EventStreamResource.getOpenStreamCount(getManagementContext()), 1);
+                }});
+            
+            ClientResponse response = client().resource("/v1/events")
+                    .queryParam("application", app.getId())
+                    .queryParam("timeout", "1s")
+                    .get(ClientResponse.class);
+            assertEquals(response.getStatus(), 503);
+            
+            streamer.join();
+            assertEquals(EventStreamResource.getOpenStreamCount(getManagementContext()), 0);
+        } finally {
+            props.remove(BrooklynWebConfig.EVENT_STREAM_MAX_CONCURRENT);
+            streamer.join();
+        }
+    }
+}
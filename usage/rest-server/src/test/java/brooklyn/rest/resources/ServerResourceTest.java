@@ -23,6 +23,7 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -35,6 +36,8 @@ import brooklyn.rest.domain.HighAvailabilitySummary;
 import brooklyn.rest.domain.VersionSummary;
 import brooklyn.rest.testing.BrooklynRestResourceTest;
 import brooklyn.test.Asserts;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.SingleThreadedScheduler;
 
 import com.google.common.collect.ImmutableSet;
 
@@ -74,6 +77,17 @@ public class ServerResourceTest extends BrooklynRestResourceTest {
         assertEquals(summary.getNodes().get(ownNodeId).getLocalTimestamp(), summary.getNodes().get(ownNodeId).getRemoteTimestamp());
     }
 
+    @Test
+    public void testGetTaskSchedulerMetrics() throws Exception {
+        BasicExecutionManager em = (BasicExecutionManager) getManagementContext().getExecutionManager();
+        em.setTaskSchedulerForTag("testGetTaskSchedulerMetrics", SingleThreadedScheduler.class);
+        
+        Map<?,?> metrics = client().resource("/v1/server/tasks/schedulers/metrics").get(Map.class);
+        Map<?,?> schedulerMetrics = (Map<?,?>) metrics.get("testGetTaskSchedulerMetrics");
+        assertNotNull(schedulerMetrics, "metrics="+metrics);
+        assertEquals(schedulerMetrics.get("queueSize"), 0);
+    }
+
     @Test
     public void testReloadsBrooklynProperties() throws Exception {
         final AtomicInteger reloadCount = new AtomicInteger();
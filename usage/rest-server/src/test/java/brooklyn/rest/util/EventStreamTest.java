@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.rest.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.util.concurrent.Callable;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.management.Task;
+import brooklyn.rest.util.EventStream.Event;
+import brooklyn.rest.util.EventStream.EventType;
+import brooklyn.rest.util.EventStream.TaskState;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.task.Tasks;
+import brooklyn.util.time.Duration;
+
+public class EventStreamTest extends BrooklynAppUnitTestSupport {
+
+    private static final AttributeSensor<Integer> MY_COUNT = Sensors.newIntegerSensor("my.count");
+    private static final AttributeSensor<String> OTHER = Sensors.newStringSensor("other.sensor");
+    private static final Duration TIMEOUT = Duration.TEN_SECONDS;
+
+    private TestEntity entity;
+    private EventStream events;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        entity = app.createAndManageChild(EntitySpec.create(TestEntity.class).displayName("myentity"));
+    }
+
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() throws Exception {
+        if (events != null) events.close();
+        super.tearDown();
+    }
+
+    @Test
+    public void testStreamsMatchingSensorChanges() throws Exception {
+        events = new EventStream(mgmt, app, "myentity", "my.*", false).start();
+
+        app.setAttribute(MY_COUNT, 1);
+        entity.setAttribute(OTHER, "ignored");
+        entity.setAttribute(MY_COUNT, 2);
+
+        Event event = events.next(TIMEOUT);
+        assertEquals(event.getType(), EventType.SENSOR);
+        assertEquals(event.getEntity(), entity);
+        assertEquals(event.getSensor().getName(), MY_COUNT.getName());
+        assertEquals(event.getValue(), 2);
+        assertNull(events.next(Duration.millis(100)));
+    }
+
+    @Test
+    public void testFiltersByApplication() throws Exception {
+        TestApplication otherApp = TestApplication.Factory.newManagedInstanceForTests(mgmt);
+        try {
+            events = new EventStream(mgmt, app, "*", "my.count", false).start();
+
+            otherApp.setAttribute(MY_COUNT, 1);
+            entity.setAttribute(MY_COUNT, 2);
+
+            assertEquals(events.next(TIMEOUT).getEntity(), entity);
+            assertNull(events.next(Duration.millis(100)));
+        } finally {
+            Entities.unmanage(otherApp);
+        }
+    }
+
+    @Test
+    public void testCoalescesUnreadAttributeValues() throws Exception {
+        events = new EventStream(mgmt, app, "*", "my.count", false).start();
+
+        for (int i = 1; i <= 100; i++) {
+            entity.setAttribute(MY_COUNT, i);
+        }
+        app.setAttribute(MY_COUNT, -1);
+        // events are delivered in order, so all of the entity's have been once the app's has
+        assertPendingCountEventually(2);
+
+        Event event = events.next(TIMEOUT);
+        assertEquals(event.getEntity(), entity);
+        assertEquals(event.getValue(), 100);
+        event = events.next(TIMEOUT);
+        assertEquals(event.getEntity(), app);
+        assertEquals(event.getValue(), -1);
+        assertNull(events.next(Duration.millis(100)));
+    }
+
+    @Test
+    public void testDropsEventsWhenTooFarBehind() throws Exception {
+        EntityLocal child1 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        EntityLocal child2 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        events = new EventStream(mgmt, app, "*", "other.*", false, 2).start();
+
+        entity.setAttribute(OTHER, "a");
+        child1.setAttribute(OTHER, "b");
+        child2.setAttribute(OTHER, "c");
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(events.getDroppedCount(), 1);
+            }});
+
+        assertEquals(events.next(TIMEOUT).getValue(), "a");
+        assertEquals(events.next(TIMEOUT).getValue(), "b");
+        assertNull(events.next(Duration.millis(100)));
+    }
+
+    @Test
+    public void testStreamsEntitiesAddedAndRemoved() throws Exception {
+        events = new EventStream(mgmt, app, "*", "none", false).start();
+
+        TestEntity child = entity.addChild(EntitySpec.create(TestEntity.class));
+        Entities.manage(child);
+        Event added = events.next(TIMEOUT);
+        assertEquals(added.getType(), EventType.ENTITY_ADDED);
+        assertEquals(added.getEntity(), child);
+
+        Entities.unmanage(child);
+        Event removed = events.next(TIMEOUT);
+        assertEquals(removed.getType(), EventType.ENTITY_REMOVED);
+        assertEquals(removed.getEntity(), child);
+    }
+
+    @Test
+    public void testStreamsTaskStateChanges() throws Exception {
+        events = new EventStream(mgmt, app, "myentity", "none", true).start();
+
+        Task<String> task = ((EntityInternal)entity).getExecutionContext().submit(Tasks.<String>builder()
+                .name("mytask")
+                .body(new Callable<String>() {
+                    public String call() { return "done"; }
+                })
+                .build());
+        task.get();
+
+        TaskState state = null;
+        while (state != TaskState.DONE) {
+            Event event = events.next(TIMEOUT);
+            assertNotNull(event, "last state="+state);
+            if (event.getType() != EventType.TASK || !event.getTask().equals(task)) continue;
+            assertEquals(event.getEntity(), entity);
+            state = event.getTaskState();
+        }
+    }
+
+    @Test
+    public void testCloseUnsubscribes() throws Exception {
+        events = new EventStream(mgmt, app, "*", "*", true).start();
+        events.close();
+
+        entity.setAttribute(MY_COUNT, 1);
+        assertNull(events.next(Duration.millis(100)));
+        assertEquals(mgmt.getSubscriptionManager().getSubscriptionsForSubscriber(events).size(), 0);
+    }
+
+    private void assertPendingCountEventually(final int expected) {
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(events.getPendingCount(), expected);
+            }});
+    }
+}
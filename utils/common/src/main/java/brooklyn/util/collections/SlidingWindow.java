@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.collections;
+
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A sliding window of timestamped numeric values, held in primitive ring buffers so that adding
+ * and expiring values does not allocate (other than when the buffers grow).
+ * <p>
+ * Values are added at the newest end and removed from the oldest end. The sum of the values is
+ * kept as they are added and removed, and monotonic deques of the values give the min and max
+ * in O(1) for the whole window (or O(log n) for the values since a given index), rather than
+ * re-scanning the values as with {@link TimeWindowedList}.
+ * <p>
+ * {@link Double#NaN} can be added (e.g. for a null sensor value), to record the timestamp; such
+ * values are ignored by {@link #getSum()}, {@link #getMean()}, {@link #getMin()} and {@link #getMax()}.
+ * <p>
+ * Not thread-safe; callers must synchronize if used from multiple threads.
+ */
+public class SlidingWindow {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Recompute the running sum after this many removals, so that floating-point errors do not accumulate. */
+    private static final int REMOVALS_PER_SUM_RECOMPUTE = 4096;
+
+    private final int maxSize;
+
+    private long[] timestamps;
+    private double[] values;
+    private int head;
+    private int size;
+
+    /** Sequence number of the oldest value; the value at index i has sequence number firstSeq+i. */
+    private long firstSeq;
+
+    /** Sequence numbers of decreasing values, for the max of any suffix of the window. */
+    private final LongDeque maxCandidates = new LongDeque();
+
+    /** Sequence numbers of increasing values, for the min of any suffix of the window. */
+    private final LongDeque minCandidates = new LongDeque();
+
+    private double sum;
+    private int numericCount;
+    private int removalsSinceSumRecompute;
+
+    /** Creates a window that keeps values until they are removed. */
+    public SlidingWindow() {
+        this(0);
+    }
+
+    /**
+     * Creates a window that keeps at most the given number of values, discarding the oldest when full.
+     *
+     * @param maxSize the maximum number of values, or 0 for unbounded
+     */
+    public SlidingWindow(int maxSize) {
+        Preconditions.checkArgument(maxSize >= 0, "maxSize must be non-negative, but was %s", maxSize);
+        this.maxSize = maxSize;
+        int capacity = (maxSize > 0) ? Math.min(maxSize, INITIAL_CAPACITY) : INITIAL_CAPACITY;
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    /**
+     * Adds a value as the newest in the window. Timestamps must not go backwards: an earlier timestamp
+     * than the newest value's is treated as being the same as the newest.
+     */
+    public void add(long timestamp, double value) {
+        if (size > 0) {
+            timestamp = Math.max(timestamp, getTimestamp(size-1));
+        }
+        if (maxSize > 0 && size == maxSize) {
+            removeOldest();
+        } else if (size == values.length) {
+            grow();
+        }
+
+        int index = physicalIndex(size);
+        timestamps[index] = timestamp;
+        values[index] = value;
+        long seq = firstSeq + size;
+        size++;
+
+        if (!Double.isNaN(value)) {
+            sum += value;
+            numericCount++;
+            while (!maxCandidates.isEmpty() && valueOfSeq(maxCandidates.peekLast()) <= value) {
+                maxCandidates.removeLast();
+            }
+            maxCandidates.addLast(seq);
+            while (!minCandidates.isEmpty() && valueOfSeq(minCandidates.peekLast()) >= value) {
+                minCandidates.removeLast();
+            }
+            minCandidates.addLast(seq);
+        }
+    }
+
+    /** Removes the oldest value. */
+    public void removeOldest() {
+        if (size == 0) throw new NoSuchElementException("Window is empty");
+
+        double value = values[head];
+        if (!Double.isNaN(value)) {
+            numericCount--;
+            sum -= value;
+            if (!maxCandidates.isEmpty() && maxCandidates.peekFirst() == firstSeq) maxCandidates.removeFirst();
+            if (!minCandidates.isEmpty() && minCandidates.peekFirst() == firstSeq) minCandidates.removeFirst();
+        }
+        head = (head + 1) % values.length;
+        size--;
+        firstSeq++;
+
+        if (numericCount == 0) {
+            sum = 0;
+            removalsSinceSumRecompute = 0;
+        } else if (++removalsSinceSumRecompute >= REMOVALS_PER_SUM_RECOMPUTE) {
+            recomputeSum();
+        }
+    }
+
+    /** Removes the given number of oldest values (or all values, if there are fewer). */
+    public void removeOldest(int count) {
+        for (int i = 0; i < count && size > 0; i++) {
+            removeOldest();
+        }
+    }
+
+    public void clear() {
+        removeOldest(size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return the value at the given index, where 0 is the oldest */
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[physicalIndex(index)];
+    }
+
+    /** @return the timestamp of the value at the given index, where 0 is the oldest */
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[physicalIndex(index)];
+    }
+
+    /** @return the newest value */
+    public double getLatestValue() {
+        return getValue(size-1);
+    }
+
+    /**
+     * @return the index of the oldest value whose timestamp is at or after the given time, or {@link #size()} if none;
+     *         i.e. the number of values that are older than the given time
+     */
+    public int indexOfFirstAtOrAfter(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[physicalIndex(mid)] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** @return the sum of the (non-NaN) values */
+    public double getSum() {
+        return sum;
+    }
+
+    /** @return the mean of the (non-NaN) values, or NaN if there are none */
+    public double getMean() {
+        return (numericCount == 0) ? Double.NaN : sum / numericCount;
+    }
+
+    /** @return the max of the (non-NaN) values, or NaN if there are none */
+    public double getMax() {
+        return getMax(0);
+    }
+
+    /** @return the max of the (non-NaN) values from the given index to the newest, or NaN if there are none */
+    public double getMax(int fromIndex) {
+        return suffixExtreme(maxCandidates, fromIndex);
+    }
+
+    /** @return the min of the (non-NaN) values, or NaN if there are none */
+    public double getMin() {
+        return getMin(0);
+    }
+
+    /** @return the min of the (non-NaN) values from the given index to the newest, or NaN if there are none */
+    public double getMin(int fromIndex) {
+        return suffixExtreme(minCandidates, fromIndex);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("SlidingWindow[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) result.append(", ");
+            result.append(getValue(i)).append("@").append(getTimestamp(i));
+        }
+        return result.append("]").toString();
+    }
+
+    /** The candidates hold ascending sequence numbers; the first at or after fromIndex is the extreme of that suffix. */
+    private double suffixExtreme(LongDeque candidates, int fromIndex) {
+        Preconditions.checkElementIndex(fromIndex, size+1);
+        long fromSeq = firstSeq + fromIndex;
+        int low = 0;
+        int high = candidates.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (candidates.get(mid) < fromSeq) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return (low < candidates.size()) ? valueOfSeq(candidates.get(low)) : Double.NaN;
+    }
+
+    private double valueOfSeq(long seq) {
+        return values[physicalIndex((int) (seq - firstSeq))];
+    }
+
+    private int physicalIndex(int index) {
+        return (head + index) % values.length;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index "+index+" for window of size "+size);
+    }
+
+    private void grow() {
+        int newCapacity = values.length * 2;
+        if (maxSize > 0) newCapacity = Math.min(newCapacity, maxSize);
+        long[] newTimestamps = new long[newCapacity];
+        double[] newValues = new double[newCapacity];
+        for (int i = 0; i < size; i++) {
+            int index = physicalIndex(i);
+            newTimestamps[i] = timestamps[index];
+            newValues[i] = values[index];
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+    }
+
+    private void recomputeSum() {
+        double newSum = 0;
+        for (int i = 0; i < size; i++) {
+            double value = values[physicalIndex(i)];
+            if (!Double.isNaN(value)) newSum += value;
+        }
+        sum = newSum;
+        removalsSinceSumRecompute = 0;
+    }
+
+    /** A double-ended queue of primitive longs, in a ring buffer. */
+    private static class LongDeque {
+        private long[] elements = new long[INITIAL_CAPACITY];
+        private int head;
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(int index) {
+            return elements[(head + index) % elements.length];
+        }
+
+        long peekFirst() {
+            return elements[head];
+        }
+
+        long peekLast() {
+            return get(size-1);
+        }
+
+        void addLast(long element) {
+            if (size == elements.length) {
+                long[] newElements = new long[elements.length * 2];
+                for (int i = 0; i < size; i++) {
+                    newElements[i] = get(i);
+                }
+                elements = newElements;
+                head = 0;
+            }
+            elements[(head + size) % elements.length] = element;
+            size++;
+        }
+
+        void removeFirst() {
+            head = (head + 1) % elements.length;
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+    }
+}
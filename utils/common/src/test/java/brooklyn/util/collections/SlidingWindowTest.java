@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Stopwatch;
+
+public class SlidingWindowTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SlidingWindowTest.class);
+
+    @Test
+    public void testEmptyWindow() {
+        SlidingWindow window = new SlidingWindow();
+        assertTrue(window.isEmpty());
+        assertEquals(window.getSum(), 0d);
+        assertTrue(Double.isNaN(window.getMean()));
+        assertTrue(Double.isNaN(window.getMax()));
+        assertTrue(Double.isNaN(window.getMin()));
+        assertEquals(window.indexOfFirstAtOrAfter(0), 0);
+    }
+
+    @Test
+    public void testTracksSumMinAndMaxAsValuesAddedAndRemoved() {
+        SlidingWindow window = new SlidingWindow();
+        window.add(0, 3);
+        window.add(10, 1);
+        window.add(20, 4);
+        window.add(30, 2);
+        assertEquals(window.size(), 4);
+        assertEquals(window.getSum(), 10d);
+        assertEquals(window.getMean(), 2.5d);
+        assertEquals(window.getMax(), 4d);
+        assertEquals(window.getMin(), 1d);
+
+        window.removeOldest(2);
+        assertEquals(window.getSum(), 6d);
+        assertEquals(window.getMax(), 4d);
+        assertEquals(window.getMin(), 2d);
+        assertEquals(window.getValue(0), 4d);
+        assertEquals(window.getTimestamp(0), 20L);
+        assertEquals(window.getLatestValue(), 2d);
+    }
+
+    @Test
+    public void testMinAndMaxSinceIndex() {
+        SlidingWindow window = new SlidingWindow();
+        double[] vals = {5, 9, 2, 7, 7, 3};
+        for (int i = 0; i < vals.length; i++) {
+            window.add(i, vals[i]);
+        }
+        for (int from = 0; from < vals.length; from++) {
+            double max = Double.NEGATIVE_INFINITY;
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = from; i < vals.length; i++) {
+                max = Math.max(max, vals[i]);
+                min = Math.min(min, vals[i]);
+            }
+            assertEquals(window.getMax(from), max, "from="+from);
+            assertEquals(window.getMin(from), min, "from="+from);
+        }
+        assertTrue(Double.isNaN(window.getMax(vals.length)));
+    }
+
+    @Test
+    public void testBoundedWindowDiscardsOldest() {
+        SlidingWindow window = new SlidingWindow(3);
+        for (int i = 1; i <= 100; i++) {
+            window.add(i, i);
+        }
+        assertEquals(window.size(), 3);
+        assertEquals(window.getSum(), 98d+99d+100d);
+        assertEquals(window.getMin(), 98d);
+        assertEquals(window.getValue(0), 98d);
+    }
+
+    @Test
+    public void testIgnoresNaNInStatistics() {
+        SlidingWindow window = new SlidingWindow();
+        window.add(0, 1);
+        window.add(1, Double.NaN);
+        window.add(2, 3);
+        assertEquals(window.size(), 3);
+        assertEquals(window.getMean(), 2d);
+        assertEquals(window.getMax(1), 3d);
+        assertEquals(window.getMin(), 1d);
+
+        window.removeOldest(2);
+        assertEquals(window.getMin(), 3d);
+    }
+
+    @Test
+    public void testIndexOfFirstAtOrAfter() {
+        SlidingWindow window = new SlidingWindow();
+        window.add(100, 1);
+        window.add(200, 2);
+        window.add(200, 3);
+        window.add(300, 4);
+        assertEquals(window.indexOfFirstAtOrAfter(50), 0);
+        assertEquals(window.indexOfFirstAtOrAfter(100), 0);
+        assertEquals(window.indexOfFirstAtOrAfter(150), 1);
+        assertEquals(window.indexOfFirstAtOrAfter(200), 1);
+        assertEquals(window.indexOfFirstAtOrAfter(301), 4);
+    }
+
+    @Test
+    public void testOutOfOrderTimestampTreatedAsLatest() {
+        SlidingWindow window = new SlidingWindow();
+        window.add(100, 1);
+        window.add(50, 2);
+        assertEquals(window.getTimestamp(1), 100L);
+    }
+
+    @Test
+    public void testMatchesBruteForceWhenWrapping() {
+        Random random = new Random(0);
+        SlidingWindow window = new SlidingWindow();
+        List<Double> expected = MutableList.of();
+        for (int i = 0; i < 10000; i++) {
+            double val = random.nextInt(100);
+            window.add(i, val);
+            expected.add(val);
+            if (random.nextInt(3) == 0) {
+                int count = Math.min(random.nextInt(4), expected.size());
+                window.removeOldest(count);
+                expected.subList(0, count).clear();
+            }
+            if (!expected.isEmpty()) {
+                double sum = 0;
+                double max = Double.NEGATIVE_INFINITY;
+                double min = Double.POSITIVE_INFINITY;
+                for (double v : expected) {
+                    sum += v;
+                    max = Math.max(max, v);
+                    min = Math.min(min, v);
+                }
+                assertEquals(window.size(), expected.size());
+                assertEquals(window.getSum(), sum, 0.0001);
+                assertEquals(window.getMax(), max);
+                assertEquals(window.getMin(), min);
+            }
+        }
+    }
+
+    @Test(groups="Integration")
+    public void testPerformanceComparedToTimeWindowedList() {
+        final int numValues = 100*1000;
+        final long windowSize = 1000;
+
+        TimeWindowedList<Number> list = new TimeWindowedList<Number>(Duration.millis(windowSize));
+        Stopwatch listStopwatch = Stopwatch.createStarted();
+        double listChecksum = 0;
+        for (int i = 0; i < numValues; i++) {
+            list.add(i % 97, i);
+            double max = Double.NEGATIVE_INFINITY;
+            for (TimestampedValue<Number> val : list.getValuesInWindow(i, Duration.millis(windowSize))) {
+                max = Math.max(max, val.getValue().doubleValue());
+            }
+            listChecksum += max;
+        }
+        long listMillis = listStopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+        SlidingWindow window = new SlidingWindow();
+        Stopwatch windowStopwatch = Stopwatch.createStarted();
+        double windowChecksum = 0;
+        for (int i = 0; i < numValues; i++) {
+            window.add(i, i % 97);
+            window.removeOldest(window.indexOfFirstAtOrAfter(i - windowSize));
+            windowChecksum += window.getMax();
+        }
+        long windowMillis = windowStopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+        log.info("Added and took max of window for "+numValues+" values: TimeWindowedList "+listMillis+"ms; SlidingWindow "+windowMillis+"ms");
+        assertEquals(windowChecksum, listChecksum);
+        assertTrue(windowMillis < listMillis, "windowMillis="+windowMillis+"; listMillis="+listMillis);
+    }
+}